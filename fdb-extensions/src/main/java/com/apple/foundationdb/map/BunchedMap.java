@@ -534,6 +534,140 @@ public class BunchedMap<K,V> {
         });
     }
 
+    /**
+     * Inserts or updates several keys of a map at once. This sorts the entries by key, reads every bunch
+     * that the keys fall into with a single range read, and then writes each bunch that receives new entries
+     * once, instead of reading and writing a bunch for each key as {@link #put(TransactionContext, Subspace, Object, Object) put}
+     * does. Keys that fall before the first bunch in the map are written to new bunches of their own.
+     *
+     * <p>
+     * When a bunch is re-written, its entries are packed into as many bunches as needed so that each has at most
+     * the bunch size number of entries and, unless it contains only a single entry, serializes to at most the
+     * maximum value size. Entries with large values are therefore bunched with fewer neighbors than entries with
+     * small values. Unlike {@code put}, this does not merge new entries into the bunch after the last key, so
+     * bunches may be less full than they would be if the entries had been inserted one at a time.
+     * </p>
+     *
+     * <p>
+     * The range read covers all of the bunches between the smallest and largest key, so this is most efficient
+     * when the keys are close together within the map. Note that this method is <b>not</b> thread-safe if multiple
+     * threads call it with the same transaction and subspace.
+     * </p>
+     *
+     * @param tcx database or transaction to use when performing the insertion
+     * @param subspace subspace within which the map's data are located
+     * @param entries keys and values of the map entries to insert
+     * @return a future that will complete when all of the entries have been inserted
+     */
+    @Nonnull
+    public CompletableFuture<Void> putAll(@Nonnull TransactionContext tcx, @Nonnull Subspace subspace, @Nonnull Map<K,V> entries) {
+        if (entries.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        final List<Map.Entry<K,V>> sortedEntries = new ArrayList<>(entries.size());
+        for (Map.Entry<K,V> entry : entries.entrySet()) {
+            sortedEntries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+        sortedEntries.sort(Map.Entry.comparingByKey(keyComparator));
+        return tcx.runAsync(tr -> {
+            final byte[] subspaceKey = subspace.getKey();
+            final List<byte[]> keyBytesList = new ArrayList<>(sortedEntries.size());
+            for (Map.Entry<K,V> entry : sortedEntries) {
+                keyBytesList.add(ByteArrayUtil.join(subspaceKey, serializer.serializeKey(entry.getKey())));
+            }
+            // Read from the bunch containing the first key through the last bunch starting at or before the last key.
+            // As with put, this is done at snapshot isolation level and conflict ranges are added for what is written.
+            return instrumentRangeRead(tr.snapshot().getRange(
+                    KeySelector.lastLessOrEqual(keyBytesList.get(0)),
+                    KeySelector.firstGreaterThan(keyBytesList.get(keyBytesList.size() - 1)),
+                    ReadTransaction.ROW_LIMIT_UNLIMITED, false, StreamingMode.WANT_ALL
+            ).asList()).thenAccept(keyValues -> {
+                final List<KeyValue> bunches = new ArrayList<>(keyValues.size());
+                for (KeyValue kv : keyValues) {
+                    if (ByteArrayUtil.startsWith(kv.getKey(), subspaceKey)) {
+                        bunches.add(kv);
+                    }
+                }
+                int bunchIndex = -1; // -1 for entries before the first bunch
+                int entryIndex = 0;
+                while (entryIndex < sortedEntries.size()) {
+                    while (bunchIndex + 1 < bunches.size() && ByteArrayUtil.compareUnsigned(bunches.get(bunchIndex + 1).getKey(), keyBytesList.get(entryIndex)) <= 0) {
+                        bunchIndex++;
+                    }
+                    int endIndex = entryIndex + 1;
+                    while (endIndex < sortedEntries.size() &&
+                           (bunchIndex + 1 >= bunches.size() || ByteArrayUtil.compareUnsigned(keyBytesList.get(endIndex), bunches.get(bunchIndex + 1).getKey()) < 0)) {
+                        endIndex++;
+                    }
+                    final List<Map.Entry<K,V>> newEntries = sortedEntries.subList(entryIndex, endIndex);
+                    if (bunchIndex < 0) {
+                        writeBunches(tr, subspaceKey, null, newEntries);
+                    } else {
+                        mergeIntoBunch(tr, subspaceKey, bunches.get(bunchIndex), newEntries, keyBytesList.subList(entryIndex, endIndex));
+                    }
+                    entryIndex = endIndex;
+                }
+            });
+        });
+    }
+
+    private void mergeIntoBunch(@Nonnull Transaction tr, @Nonnull byte[] subspaceKey, @Nonnull KeyValue kv,
+                                @Nonnull List<Map.Entry<K,V>> newEntries, @Nonnull List<byte[]> newKeyBytes) {
+        final K signpostKey = serializer.deserializeKey(kv.getKey(), subspaceKey.length);
+        final List<Map.Entry<K,V>> oldEntries = serializer.deserializeEntries(signpostKey, kv.getValue());
+        final List<Map.Entry<K,V>> merged = new ArrayList<>(oldEntries.size() + newEntries.size());
+        boolean changed = false;
+        int oldIndex = 0;
+        for (Map.Entry<K,V> newEntry : newEntries) {
+            while (oldIndex < oldEntries.size() && keyComparator.compare(oldEntries.get(oldIndex).getKey(), newEntry.getKey()) < 0) {
+                merged.add(oldEntries.get(oldIndex));
+                oldIndex++;
+            }
+            if (oldIndex < oldEntries.size() && keyComparator.compare(oldEntries.get(oldIndex).getKey(), newEntry.getKey()) == 0) {
+                changed |= !oldEntries.get(oldIndex).getValue().equals(newEntry.getValue());
+                oldIndex++;
+            } else {
+                changed = true;
+            }
+            merged.add(newEntry);
+        }
+        merged.addAll(oldEntries.subList(oldIndex, oldEntries.size()));
+        if (changed) {
+            writeBunches(tr, subspaceKey, kv, merged);
+        } else {
+            // Every value is already present, so nothing is re-written, but as with put,
+            // a concurrent change to any of them means this transaction needs to set it back.
+            for (byte[] keyBytes : newKeyBytes) {
+                tr.addReadConflictKey(keyBytes);
+            }
+        }
+    }
+
+    private void writeBunches(@Nonnull Transaction tr, @Nonnull byte[] subspaceKey, @Nullable KeyValue oldKv,
+                              @Nonnull List<Map.Entry<K,V>> entryList) {
+        final byte[] firstKey = ByteArrayUtil.join(subspaceKey, serializer.serializeKey(entryList.get(0).getKey()));
+        final byte[] end = ByteArrayUtil.join(subspaceKey, serializer.serializeKey(entryList.get(entryList.size() - 1).getKey()), ZERO_ARRAY);
+        // These bunches become responsible for the whole range, including the gaps between them, so conflict with
+        // any concurrent change to it. The read conflict range has to be added before the writes.
+        tr.addReadConflictRange(firstKey, end);
+        int startIndex = 0;
+        while (startIndex < entryList.size()) {
+            int endIndex = Math.min(startIndex + bunchSize, entryList.size());
+            List<Map.Entry<K,V>> bunch = entryList.subList(startIndex, endIndex);
+            byte[] serializedBytes = serializer.serializeEntries(bunch);
+            while (serializedBytes.length > MAX_VALUE_SIZE && bunch.size() > 1) {
+                // Shrink the bunch in proportion to how much too large it is, so large entries get fewer neighbors.
+                endIndex = startIndex + Math.max(1, Math.min(bunch.size() - 1, (int)((long)bunch.size() * MAX_VALUE_SIZE / serializedBytes.length)));
+                bunch = entryList.subList(startIndex, endIndex);
+                serializedBytes = serializer.serializeEntries(bunch);
+            }
+            final byte[] keyBytes = startIndex == 0 ? firstKey : ByteArrayUtil.join(subspaceKey, serializer.serializeKey(bunch.get(0).getKey()));
+            writeEntryListWithoutChecking(tr, subspaceKey, keyBytes, startIndex == 0 ? oldKv : null, keyBytes, bunch, serializedBytes);
+            startIndex = endIndex;
+        }
+        tr.addWriteConflictRange(firstKey, end);
+    }
+
     /**
      * Determines whether a key is contained within the map. This method is safe to run concurrently
      * with other map operations in other threads. However, if there are concurrent
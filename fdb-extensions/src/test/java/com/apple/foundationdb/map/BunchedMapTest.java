@@ -53,8 +53,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.UUID;
@@ -254,6 +256,46 @@ public class BunchedMapTest extends FDBTestBase {
         }
     }
 
+    @Test
+    public void putAll() throws ExecutionException, InterruptedException {
+        final Tuple value = Tuple.from("hello", "there");
+        final Map<Tuple,Tuple> entries = new HashMap<>();
+        LongStream.range(100L, 125L).forEach(l -> entries.put(Tuple.from(l), value));
+        db.run(tr -> map.putAll(tr, bmSubspace, entries).join());
+        verifyBoundaryKeys(Arrays.asList(Tuple.from(100L), Tuple.from(110L), Tuple.from(120L)));
+
+        // Setting the same values again changes nothing.
+        db.run(tr -> map.putAll(tr, bmSubspace, entries).join());
+        verifyBoundaryKeys(Arrays.asList(Tuple.from(100L), Tuple.from(110L), Tuple.from(120L)));
+
+        // Before the first bunch, into the middle of a full bunch, and at the end of the last bunch.
+        final Map<Tuple,Tuple> moreEntries = new HashMap<>();
+        moreEntries.put(Tuple.from(99L), value);
+        moreEntries.put(Tuple.from(105L, 1L), value);
+        moreEntries.put(Tuple.from(130L), value);
+        moreEntries.put(Tuple.from(110L), Tuple.from("updated"));
+        db.run(tr -> map.putAll(tr, bmSubspace, moreEntries).join());
+        verifyBoundaryKeys(Arrays.asList(Tuple.from(99L), Tuple.from(100L), Tuple.from(109L), Tuple.from(110L), Tuple.from(120L)));
+
+        entries.putAll(moreEntries);
+        db.run(tr -> {
+            entries.forEach((k, v) -> assertEquals(Optional.of(v), map.get(tr, bmSubspace, k).join(), k.toString()));
+            return null;
+        });
+    }
+
+    @Test
+    public void putAllLargeValues() throws ExecutionException, InterruptedException {
+        // Ten of these values do not fit in one key, so the bunches are split by size.
+        final byte[] bytes = new byte[3000];
+        Arrays.fill(bytes, (byte)0x01);
+        final Tuple value = Tuple.from(bytes);
+        final Map<Tuple,Tuple> entries = new HashMap<>();
+        LongStream.range(0L, 10L).forEach(l -> entries.put(Tuple.from(l), value));
+        db.run(tr -> map.putAll(tr, bmSubspace, entries).join());
+        verifyBoundaryKeys(Arrays.asList(Tuple.from(0L), Tuple.from(3L), Tuple.from(6L), Tuple.from(9L)));
+    }
+
     private void verifyBoundaryKeys(@Nonnull List<Tuple> boundaryKeys) throws ExecutionException, InterruptedException {
         try (Transaction tr = db.createTransaction()) {
             map.verifyIntegrity(tr, bmSubspace).get();
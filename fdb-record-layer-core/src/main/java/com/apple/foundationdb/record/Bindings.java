@@ -41,7 +41,8 @@ public class Bindings {
      */
     public enum Internal {
         IN("__in_"),
-        RANK("__rank_");
+        RANK("__rank_"),
+        CONSTANT("__const_");
 
         public static final String PREFIX = "__";
         private final String value;
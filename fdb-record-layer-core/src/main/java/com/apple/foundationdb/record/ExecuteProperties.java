@@ -43,6 +43,11 @@ public class ExecuteProperties {
      * A constant representing that no time limit is set.
      */
     public static final long UNLIMITED_TIME = 0L;
+    /**
+     * A constant representing that no limit is set on the state kept by unordered distinct plans, which therefore
+     * only remove duplicates within a single execution.
+     */
+    public static final long UNLIMITED_DISTINCT_BYTES = 0L;
     /**
      * A basic set of properties for an unlimited query/scan execution with serializable isolation.
      */
@@ -74,8 +79,12 @@ public class ExecuteProperties {
 
     private final CursorStreamingMode defaultCursorStreamingMode;
 
+    // a limit on the memory used to remember keys already returned by unordered distinct plans, if they are to be kept across continuations
+    private final long distinctBytesLimit;
+
     private ExecuteProperties(int skip, int rowLimit, @Nonnull IsolationLevel isolationLevel, long timeLimit,
-                              @Nonnull ExecuteState state, boolean failOnScanLimitReached, @Nonnull CursorStreamingMode defaultCursorStreamingMode) {
+                              @Nonnull ExecuteState state, boolean failOnScanLimitReached, @Nonnull CursorStreamingMode defaultCursorStreamingMode,
+                              long distinctBytesLimit) {
         this.skip = skip;
         this.rowLimit = rowLimit;
         this.isolationLevel = isolationLevel;
@@ -83,6 +92,7 @@ public class ExecuteProperties {
         this.state = state;
         this.failOnScanLimitReached = failOnScanLimitReached;
         this.defaultCursorStreamingMode = defaultCursorStreamingMode;
+        this.distinctBytesLimit = distinctBytesLimit;
     }
 
     @Nonnull
@@ -292,6 +302,18 @@ public class ExecuteProperties {
         return copy(skip, rowLimit, timeLimit, isolationLevel, state, failOnScanLimitReached, defaultCursorStreamingMode);
     }
 
+    /**
+     * Get the limit on the memory used by unordered distinct plans to remember the keys they have already returned.
+     * When this is {@link #UNLIMITED_DISTINCT_BYTES}, the keys are only remembered for a single execution and
+     * records can be returned again after a continuation. Otherwise, the keys are carried in the continuation and
+     * the query fails if they would take more than this many bytes.
+     * @return the limit on the size of distinct state in bytes or {@link #UNLIMITED_DISTINCT_BYTES}
+     * @see com.apple.foundationdb.record.provider.foundationdb.cursors.DistinctCursor
+     */
+    public long getDistinctBytesLimit() {
+        return distinctBytesLimit;
+    }
+
     /**
      * Reset the stateful parts of the properties to their "original" values, creating an independent mutable state.
      * @see ExecuteState#reset()
@@ -316,7 +338,7 @@ public class ExecuteProperties {
     @Nonnull
     protected ExecuteProperties copy(int skip, int rowLimit, long timeLimit, @Nonnull IsolationLevel isolationLevel,
                                      @Nonnull ExecuteState state, boolean failOnScanLimitReached, CursorStreamingMode defaultCursorStreamingMode) {
-        return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode);
+        return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode, distinctBytesLimit);
     }
 
     @Nonnull
@@ -370,6 +392,9 @@ public class ExecuteProperties {
         if (failOnScanLimitReached) {
             components.add("fail on scan limit");
         }
+        if (distinctBytesLimit != UNLIMITED_DISTINCT_BYTES) {
+            components.add(String.format("distinctBytesLimit %d", distinctBytesLimit));
+        }
         components.add(state.toString());
         return String.format("ExecuteProperties(%s)", String.join(", ", components));
     }
@@ -390,6 +415,7 @@ public class ExecuteProperties {
         private ExecuteState executeState = null;
         private boolean failOnScanLimitReached = false;
         private CursorStreamingMode defaultCursorStreamingMode = CursorStreamingMode.ITERATOR;
+        private long distinctBytesLimit = UNLIMITED_DISTINCT_BYTES;
 
         private Builder() {
         }
@@ -402,6 +428,7 @@ public class ExecuteProperties {
             this.executeState = executeProperties.state;
             this.failOnScanLimitReached = executeProperties.failOnScanLimitReached;
             this.defaultCursorStreamingMode = executeProperties.defaultCursorStreamingMode;
+            this.distinctBytesLimit = executeProperties.distinctBytesLimit;
         }
 
         @Nonnull
@@ -520,6 +547,29 @@ public class ExecuteProperties {
             return this;
         }
 
+        /**
+         * Set the limit on the memory used by unordered distinct plans to remember the keys they have already returned.
+         * Setting a limit also makes those plans carry the keys in their continuations, so that a record returned before
+         * a continuation is not returned again after it. If the keys would take more than this many bytes, the query
+         * fails rather than return duplicates.
+         * @param distinctBytesLimit the limit on the size of distinct state in bytes or {@link #UNLIMITED_DISTINCT_BYTES}
+         * to only remove duplicates within a single execution
+         * @return an updated builder
+         */
+        @Nonnull
+        public Builder setDistinctBytesLimit(long distinctBytesLimit) {
+            if (distinctBytesLimit < 0) {
+                throw new RecordCoreException("Invalid distinct bytes limit specified: " + distinctBytesLimit);
+            }
+            this.distinctBytesLimit = distinctBytesLimit;
+            return this;
+        }
+
+        @Nonnull
+        public Builder clearDistinctBytesLimit() {
+            return setDistinctBytesLimit(UNLIMITED_DISTINCT_BYTES);
+        }
+
         @Nonnull
         public ExecuteProperties build() {
             final ExecuteState state;
@@ -534,7 +584,7 @@ public class ExecuteProperties {
             } else {
                 state = new ExecuteState(RecordScanLimiterFactory.enforce(scannedRecordsLimit), ByteScanLimiterFactory.enforce(scannedBytesLimit));
             }
-            return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode);
+            return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode, distinctBytesLimit);
         }
     }
 }
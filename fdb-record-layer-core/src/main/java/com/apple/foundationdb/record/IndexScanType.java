@@ -45,6 +45,9 @@ public class IndexScanType implements PlanHashable {
     public static final IndexScanType BY_TIME_WINDOW = new IndexScanType("BY_TIME_WINDOW");
     @Nonnull
     public static final IndexScanType BY_TEXT_TOKEN = new IndexScanType("BY_TEXT_TOKEN");
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public static final IndexScanType BY_TEXT_SCORE = new IndexScanType("BY_TEXT_SCORE");
 
     private final String name;
 
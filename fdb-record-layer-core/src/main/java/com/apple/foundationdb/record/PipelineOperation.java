@@ -51,6 +51,8 @@ public class PipelineOperation {
     @Nonnull
     public static final PipelineOperation TEXT_INDEX_UPDATE = new PipelineOperation("TEXT_INDEX_UPDATE");
     @Nonnull
+    public static final PipelineOperation TEXT_INDEX_SCORE = new PipelineOperation("TEXT_INDEX_SCORE");
+    @Nonnull
     public static final PipelineOperation SYNTHETIC_RECORD_JOIN = new PipelineOperation("SYNTHETIC_RECORD_JOIN");
 
     private final String name;
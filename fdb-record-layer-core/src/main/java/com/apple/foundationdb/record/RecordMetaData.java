@@ -570,6 +570,9 @@ public class RecordMetaData implements RecordMetaDataProvider {
             if (recordType.hasExplicitRecordTypeKey()) {
                 typeBuilder.setExplicitKey(LiteralKeyExpression.toProtoValue(recordType.getExplicitRecordTypeKey()));
             }
+            if (recordType.isAppendOnly()) {
+                typeBuilder.setAppendOnly(true);
+            }
         }
         indexBuilders.values().forEach(builder::addIndexes);
 
@@ -279,6 +279,9 @@ public class RecordMetaDataBuilder implements RecordMetaDataProvider {
             if (typeProto.hasExplicitKey()) {
                 typeBuilder.setRecordTypeKey(LiteralKeyExpression.fromProtoValue(typeProto.getExplicitKey()));
             }
+            if (typeProto.hasAppendOnly()) {
+                typeBuilder.setAppendOnly(typeProto.getAppendOnly());
+            }
         }
         if (metaDataProto.hasSplitLongRecords()) {
             splitLongRecords = metaDataProto.getSplitLongRecords();
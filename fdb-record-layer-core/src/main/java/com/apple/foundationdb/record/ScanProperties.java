@@ -51,6 +51,9 @@ public class ScanProperties {
     @Nonnull
     private final CursorStreamingMode cursorStreamingMode;
 
+    // how many entries to read ahead of the consumer, or zero to read only as entries are asked for
+    private final int readAhead;
+
     /**
      * Creates scan properties.
      * @param executeProperties the execution properties (such as isolation level and row limit) associated with this scan
@@ -75,9 +78,27 @@ public class ScanProperties {
      * @param cursorStreamingMode streaming mode to use if opening an FDB cursor
      */
     public ScanProperties(@Nonnull ExecuteProperties executeProperties, boolean reverse, @Nonnull CursorStreamingMode cursorStreamingMode) {
+        this(executeProperties, reverse, cursorStreamingMode, 0);
+    }
+
+    /**
+     * Creates scan properties.
+     * @param executeProperties the execution properties (such as isolation level and row limit) associated with this scan
+     * @param reverse if true, the scan direction will be reversed
+     * @param cursorStreamingMode streaming mode to use if opening an FDB cursor
+     * @param readAhead number of entries to read ahead of the consumer if opening an FDB cursor
+     * @see #getReadAhead
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public ScanProperties(@Nonnull ExecuteProperties executeProperties, boolean reverse, @Nonnull CursorStreamingMode cursorStreamingMode,
+                          int readAhead) {
+        if (readAhead < 0) {
+            throw new RecordCoreException("Cannot set read ahead to a negative number");
+        }
         this.executeProperties = executeProperties;
         this.reverse = reverse;
         this.cursorStreamingMode = cursorStreamingMode;
+        this.readAhead = readAhead;
     }
 
     /**
@@ -104,7 +125,7 @@ public class ScanProperties {
      */
     @Nonnull
     public ScanProperties with(@Nonnull Function<ExecuteProperties, ExecuteProperties> modifier) {
-        return new ScanProperties(modifier.apply(executeProperties), reverse, cursorStreamingMode);
+        return new ScanProperties(modifier.apply(executeProperties), reverse, cursorStreamingMode, readAhead);
     }
 
     /**
@@ -117,7 +138,7 @@ public class ScanProperties {
         if (reverse == isReverse()) {
             return this;
         }
-        return new ScanProperties(executeProperties, reverse, cursorStreamingMode);
+        return new ScanProperties(executeProperties, reverse, cursorStreamingMode, readAhead);
     }
 
     /**
@@ -139,12 +160,51 @@ public class ScanProperties {
         if (cursorStreamingMode == getCursorStreamingMode()) {
             return this;
         }
-        return new ScanProperties(executeProperties, reverse, cursorStreamingMode);
+        return new ScanProperties(executeProperties, reverse, cursorStreamingMode, readAhead);
+    }
+
+    /**
+     * Get the number of entries to read ahead of the consumer.
+     *
+     * <p>
+     * When this is greater than zero, a cursor that scans the database keeps reading until it has this many entries
+     * that have not yet been returned, so that the next range read is in flight while the current entries are being
+     * processed. When this is zero, the next range read is only started once all the entries read so far have been
+     * returned.
+     * </p>
+     *
+     * <p>
+     * Reading ahead is only done for scans with {@link com.apple.foundationdb.record.IsolationLevel#SNAPSHOT} isolation.
+     * A serializable scan adds a read conflict range covering everything it reads, so reading ahead would make it
+     * conflict with writes to entries that the consumer never gets to, such as when it stops early. So for a serializable
+     * scan this setting is ignored.
+     * </p>
+     * @return the number of entries to read ahead
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Set the number of entries to read ahead of the consumer.
+     * @param readAhead number of entries to read ahead or zero to not read ahead
+     * @return a new scan properties with given read ahead
+     * @see #getReadAhead
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public ScanProperties setReadAhead(int readAhead) {
+        if (readAhead == getReadAhead()) {
+            return this;
+        }
+        return new ScanProperties(executeProperties, reverse, cursorStreamingMode, readAhead);
     }
 
     @Override
     public String toString() {
-        return String.format("ScanProperties(%s, direction: %s, streaming mode: %s)",
-                executeProperties, reverse ? "reverse" : "forward", cursorStreamingMode);
+        return String.format("ScanProperties(%s, direction: %s, streaming mode: %s%s)",
+                executeProperties, reverse ? "reverse" : "forward", cursorStreamingMode,
+                readAhead > 0 ? ", read ahead: " + readAhead : "");
     }
 }
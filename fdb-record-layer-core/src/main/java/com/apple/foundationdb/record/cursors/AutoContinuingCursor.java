@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.cursors;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordCursorResult;
@@ -36,6 +37,7 @@ import javax.annotation.Nullable;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
 /**
@@ -67,6 +69,15 @@ import java.util.function.BiFunction;
  * exhausted, at most 10 records at a transaction.
  * </p>
  *
+ * <p>
+ * If created with {@code prefetch}, the {@link AutoContinuingCursor} asks the <i>underlying cursor</i> for its next
+ * result as soon as it has returned one, rather than when it is itself asked. So when a transaction reaches its limits,
+ * the next transaction is opened and its first read started while the caller is still processing the last result of
+ * the previous one. The previous transaction is only closed once the next result is returned, so the last result
+ * returned from it can still be used until then. Combined with
+ * {@link com.apple.foundationdb.record.ScanProperties#setReadAhead}, this keeps reads in flight for the whole of a scan.
+ * </p>
+ *
  * @param <T> the type of elements returned by this cursor
  */
 @API(API.Status.EXPERIMENTAL)
@@ -77,16 +88,26 @@ public class AutoContinuingCursor<T> implements RecordCursor<T> {
     private FDBDatabaseRunner runner;
     @Nonnull
     private BiFunction<FDBRecordContext, byte[], RecordCursor<T>> nextCursorGenerator;
+    @Nullable
+    private final byte[] initialContinuation;
+    private final boolean prefetch;
 
     @Nullable
     private RecordCursor<T> currentCursor;
     @Nullable
     private FDBRecordContext currentContext;
+    // The cursor and context of the last result returned when a prefetch has already moved on to a new context.
+    @Nullable
+    private RecordCursor<T> retiredCursor;
+    @Nullable
+    private FDBRecordContext retiredContext;
 
     @Nullable
     private CompletableFuture<Boolean> nextFuture;
     @Nullable
     private RecordCursorResult<T> lastResult;
+    @Nullable
+    private CompletableFuture<RecordCursorResult<T>> prefetched;
 
     // for detecting incorrect cursor usage
     private boolean mayGetContinuation = false;
@@ -99,27 +120,82 @@ public class AutoContinuingCursor<T> implements RecordCursor<T> {
      */
     public AutoContinuingCursor(@Nonnull FDBDatabaseRunner runner,
                                 @Nonnull BiFunction<FDBRecordContext, byte[], RecordCursor<T>> nextCursorGenerator) {
+        this(runner, nextCursorGenerator, false);
+    }
+
+    /**
+     * Creates a new {@link AutoContinuingCursor}.
+     * @param runner the runner from which it can open new contexts
+     * @param nextCursorGenerator the method which can generate the underlying cursor given a record context and a
+     * continuation
+     * @param prefetch whether to get the next result from the underlying cursor, opening a new context if needed,
+     * before being asked for it
+     */
+    public AutoContinuingCursor(@Nonnull FDBDatabaseRunner runner,
+                                @Nonnull BiFunction<FDBRecordContext, byte[], RecordCursor<T>> nextCursorGenerator,
+                                boolean prefetch) {
+        this(runner, nextCursorGenerator, null, prefetch);
+    }
+
+    /**
+     * Creates a new {@link AutoContinuingCursor} that resumes from a continuation.
+     * @param runner the runner from which it can open new contexts
+     * @param nextCursorGenerator the method which can generate the underlying cursor given a record context and a
+     * continuation
+     * @param continuation the continuation given to the first underlying cursor, such as one returned from a
+     * previous {@link AutoContinuingCursor} with the same generator
+     * @param prefetch whether to get the next result from the underlying cursor, opening a new context if needed,
+     * before being asked for it
+     */
+    @SpotBugsSuppressWarnings(value = "EI2", justification = "copies are expensive")
+    public AutoContinuingCursor(@Nonnull FDBDatabaseRunner runner,
+                                @Nonnull BiFunction<FDBRecordContext, byte[], RecordCursor<T>> nextCursorGenerator,
+                                @Nullable byte[] continuation,
+                                boolean prefetch) {
         this.runner = runner;
         this.nextCursorGenerator = nextCursorGenerator;
+        this.initialContinuation = continuation;
+        this.prefetch = prefetch;
     }
 
     @Nonnull
     @Override
     public CompletableFuture<RecordCursorResult<T>> onNext() {
+        final CompletableFuture<RecordCursorResult<T>> resultFuture;
+        if (prefetched != null) {
+            resultFuture = prefetched;
+            prefetched = null;
+        } else {
+            resultFuture = advance(false);
+        }
+        return resultFuture.thenApply(result -> {
+            lastResult = result;
+            // The caller has moved on from the result returned before this one.
+            closeRetired();
+            if (prefetch && result.hasNext()) {
+                prefetched = advance(true);
+            }
+            return result;
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<RecordCursorResult<T>> advance(boolean prefetching) {
         if (currentCursor == null) {
-            openContextAndGenerateCursor(null);
+            openContextAndGenerateCursor(initialContinuation, false);
         }
+        final AtomicReference<RecordCursorResult<T>> resultRef = new AtomicReference<>();
         return AsyncUtil.whileTrue(() ->
                         currentCursor.onNext().thenApply(result -> {
                             if (result.hasStoppedBeforeEnd()) {
-                                openContextAndGenerateCursor(result.getContinuation().toBytes());
+                                openContextAndGenerateCursor(result.getContinuation().toBytes(), prefetching);
                                 return true;
                             } else {
-                                lastResult = result;
+                                resultRef.set(result);
                                 return false;
                             }
                         }), getExecutor())
-                .thenApply(ignore -> lastResult);
+                .thenApply(ignore -> resultRef.get());
     }
 
     @Nonnull
@@ -128,17 +204,38 @@ public class AutoContinuingCursor<T> implements RecordCursor<T> {
         return runner.asyncToSync(FDBStoreTimer.Waits.WAIT_ADVANCE_CURSOR, onNext());
     }
 
-    private void openContextAndGenerateCursor(@Nullable byte[] continuation) {
+    // When prefetching, the current context may be the one that the caller's last result came from, so it is kept open
+    // until the next result is returned.
+    private void openContextAndGenerateCursor(@Nullable byte[] continuation, boolean prefetching) {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Open context and generate a cursor");
         }
-        if (currentContext != null) {
-            currentContext.close();
+        if (prefetching && retiredContext == null) {
+            retiredCursor = currentCursor;
+            retiredContext = currentContext;
+        } else {
+            if (currentCursor != null) {
+                currentCursor.close();
+            }
+            if (currentContext != null) {
+                currentContext.close();
+            }
         }
         currentContext = runner.openContext();
         currentCursor = nextCursorGenerator.apply(currentContext, continuation);
     }
 
+    private void closeRetired() {
+        if (retiredCursor != null) {
+            retiredCursor.close();
+            retiredCursor = null;
+        }
+        if (retiredContext != null) {
+            retiredContext.close();
+            retiredContext = null;
+        }
+    }
+
     @Nonnull
     @Override
     @Deprecated
@@ -183,6 +280,13 @@ public class AutoContinuingCursor<T> implements RecordCursor<T> {
         if (nextFuture != null) {
             nextFuture.cancel(true);
         }
+        if (prefetched != null) {
+            prefetched.cancel(true);
+        }
+        closeRetired();
+        if (currentCursor != null) {
+            currentCursor.close();
+        }
         if (currentContext != null) {
             currentContext.close();
         }
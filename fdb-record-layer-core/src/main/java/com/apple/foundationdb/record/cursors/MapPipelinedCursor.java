@@ -37,6 +37,7 @@ import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
 
 /**
  * A cursor that applies an asynchronous function to the elements of another cursor.
@@ -54,7 +55,8 @@ public class MapPipelinedCursor<T, V> implements RecordCursor<V> {
     private final RecordCursor<T> inner;
     @Nonnull
     private final Function<T, CompletableFuture<V>> func;
-    private final int pipelineSize;
+    @Nonnull
+    private final IntSupplier pipelineSize;
     @Nonnull
     private final Queue<CompletableFuture<RecordCursorResult<V>>> pipeline;
     @Nullable
@@ -73,10 +75,22 @@ public class MapPipelinedCursor<T, V> implements RecordCursor<V> {
 
     public MapPipelinedCursor(@Nonnull RecordCursor<T> inner, @Nonnull Function<T, CompletableFuture<V>> func,
                               int pipelineSize) {
+        this(inner, func, () -> pipelineSize);
+    }
+
+    /**
+     * Create a cursor whose pipeline size can change while it runs.
+     * @param inner the source cursor
+     * @param func the asynchronous function to apply to each element
+     * @param pipelineSize a supplier of the number of pending futures to allow, which is called each time the pipeline is refilled
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public MapPipelinedCursor(@Nonnull RecordCursor<T> inner, @Nonnull Function<T, CompletableFuture<V>> func,
+                              @Nonnull IntSupplier pipelineSize) {
         this.inner = inner;
         this.func = func;
         this.pipelineSize = pipelineSize;
-        this.pipeline = new ArrayDeque<>(pipelineSize);
+        this.pipeline = new ArrayDeque<>(pipelineSize.getAsInt());
     }
 
     @Nonnull
@@ -173,7 +187,8 @@ public class MapPipelinedCursor<T, V> implements RecordCursor<V> {
      * @return a future that will complete with {@code false} if an item is available or none will ever be, or with {@code true} if this method should be called to try again
      */
     protected CompletableFuture<Boolean> tryToFillPipeline() {
-        while (!innerExhausted && pipeline.size() < pipelineSize) {
+        final int size = pipelineSize.getAsInt();
+        while (!innerExhausted && pipeline.size() < size) {
             // try to add a future to the pipeline
             if (waitInnerFuture == null) {
                 waitInnerFuture = inner.onNext();
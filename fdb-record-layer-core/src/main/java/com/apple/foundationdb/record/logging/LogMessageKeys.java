@@ -137,6 +137,7 @@ public enum LogMessageKeys {
     SESSION_ID("session_id"),
     INDEXER_SESSION_ID("indexer_session_id"),
     INDEXER_ID("indexer_id"),
+    TARGET_INDEX_NAMES("target_index_names"),
     INDEX_STATE_PRECONDITION("index_state_precondition"),
     INITIAL_INDEX_STATE("initial_index_state"),
     SHOULD_BUILD_INDEX("do_build_index"),
@@ -81,6 +81,14 @@ public class IndexOptions {
      * It will only be possible to determine that an indexed field contains the token someplace.
      */
     public static final String TEXT_OMIT_POSITIONS_OPTION = "textOmitPositions";
+    /**
+     * If {@code "true"}, a {@link IndexTypes#TEXT} index will keep the document frequency of each token and the length
+     * of each document, so that it can be scanned by {@link com.apple.foundationdb.record.IndexScanType#BY_TEXT_SCORE}.
+     *
+     * Changing this option requires rebuilding the index.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String TEXT_SCORING_STATISTICS_OPTION = "textScoringStatistics";
 
     /**
      * The number of levels in the {@link IndexTypes#RANK} skip list {@link com.apple.foundationdb.async.RankedSet}.
@@ -56,6 +56,7 @@ public class RecordType implements RecordTypeOrBuilder, RecordMetaDataProvider {
     private final Integer sinceVersion;
     @Nullable
     private final Object explicitRecordTypeKey;
+    private final boolean appendOnly;
     @Nullable
     private Object recordTypeKey;
     @Nullable
@@ -63,6 +64,12 @@ public class RecordType implements RecordTypeOrBuilder, RecordMetaDataProvider {
 
     public RecordType(@Nonnull RecordMetaData metaData, @Nonnull Descriptors.Descriptor descriptor, @Nonnull KeyExpression primaryKey,
                       @Nonnull List<Index> indexes, @Nonnull List<Index> multiTypeIndexes, @Nullable Integer sinceVersion, @Nullable Object recordTypeKey) {
+        this(metaData, descriptor, primaryKey, indexes, multiTypeIndexes, sinceVersion, recordTypeKey, false);
+    }
+
+    public RecordType(@Nonnull RecordMetaData metaData, @Nonnull Descriptors.Descriptor descriptor, @Nonnull KeyExpression primaryKey,
+                      @Nonnull List<Index> indexes, @Nonnull List<Index> multiTypeIndexes, @Nullable Integer sinceVersion, @Nullable Object recordTypeKey,
+                      boolean appendOnly) {
         this.metaData = metaData;
         this.descriptor = descriptor;
         this.primaryKey = primaryKey;
@@ -71,6 +78,7 @@ public class RecordType implements RecordTypeOrBuilder, RecordMetaDataProvider {
         this.multiTypeIndexes = multiTypeIndexes;
         this.sinceVersion = sinceVersion;
         this.recordTypeKey = this.explicitRecordTypeKey = TupleTypeUtil.toTupleEquivalentValue(recordTypeKey);
+        this.appendOnly = appendOnly;
     }
 
     @Override
@@ -135,6 +143,22 @@ public class RecordType implements RecordTypeOrBuilder, RecordMetaDataProvider {
         return sinceVersion;
     }
 
+    /**
+     * Get whether records of this type are only ever inserted, never replaced by a record with the same primary key.
+     *
+     * <p>
+     * A record of an append-only type saved with {@link com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase.RecordExistenceCheck#NONE}
+     * is written without first reading any existing record, so the save adds no read conflict. It is up to the caller
+     * to never save two records with the same primary key: the second would overwrite the first without removing
+     * its index entries. {@link com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore#scanAppendOnlyViolations}
+     * finds the index entries left by such a mistake.
+     * </p>
+     * @return {@code true} if records of this type are never replaced
+     */
+    public boolean isAppendOnly() {
+        return appendOnly;
+    }
+
     /**
      * Get whether this record type sets an explicit value for {@link #getRecordTypeKey}.
      * If there is no explicit value, then {@code #getRecordTypeKey} will use the union message field number.
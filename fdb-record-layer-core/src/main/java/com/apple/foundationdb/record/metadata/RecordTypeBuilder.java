@@ -22,7 +22,9 @@ package com.apple.foundationdb.record.metadata;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.expressions.HashBucketFunctionKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.TimeBucketFunctionKeyExpression;
 import com.google.protobuf.Descriptors;
 
 import javax.annotation.Nonnull;
@@ -47,6 +49,7 @@ public class RecordTypeBuilder extends RecordTypeIndexesBuilder implements Recor
     private KeyExpression primaryKey;
     @Nullable
     private Integer sinceVersion;
+    private boolean appendOnly;
 
     public RecordTypeBuilder(@Nonnull Descriptors.Descriptor descriptor) {
         super(descriptor.getName());
@@ -63,6 +66,7 @@ public class RecordTypeBuilder extends RecordTypeIndexesBuilder implements Recor
         this.descriptor = descriptor;
         this.primaryKey = other.primaryKey;
         this.sinceVersion = other.sinceVersion;
+        this.appendOnly = other.appendOnly;
     }
 
     @Override
@@ -90,6 +94,35 @@ public class RecordTypeBuilder extends RecordTypeIndexesBuilder implements Recor
         this.primaryKey = primaryKey;
     }
 
+    /**
+     * Set the primary key for records that are written in time order, so that they are spread over the database and
+     * can be expired a bucket of time at a time.
+     *
+     * The primary key is the {@linkplain TimeBucketFunctionKeyExpression time bucket} of the given time, then a
+     * {@linkplain HashBucketFunctionKeyExpression hash bucket} of the given primary key, then the given primary key itself.
+     * @param time the time of the record, as a whole number
+     * @param bucketWidth the width of each time bucket, in the unit of {@code time}
+     * @param hashBuckets the number of hash buckets within each time bucket, or {@code 1} for none
+     * @param primaryKey the key that identifies the record within its time bucket
+     * @see com.apple.foundationdb.record.provider.foundationdb.TimeBucketExpirer
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setTimeBucketedPrimaryKey(@Nonnull KeyExpression time, long bucketWidth, int hashBuckets,
+                                          @Nonnull KeyExpression primaryKey) {
+        if (bucketWidth <= 0 || hashBuckets <= 0) {
+            throw new MetaDataException("bucket sizes must be positive");
+        }
+        final KeyExpression timeBucket = Key.Expressions.function(TimeBucketFunctionKeyExpression.FUNCTION_NAME,
+                Key.Expressions.concat(time, Key.Expressions.value(bucketWidth)));
+        if (hashBuckets == 1) {
+            setPrimaryKey(Key.Expressions.concat(timeBucket, primaryKey));
+        } else {
+            final KeyExpression hashBucket = Key.Expressions.function(HashBucketFunctionKeyExpression.FUNCTION_NAME,
+                    Key.Expressions.concat(primaryKey, Key.Expressions.value(hashBuckets)));
+            setPrimaryKey(Key.Expressions.concat(timeBucket, hashBucket, primaryKey));
+        }
+    }
+
     @Nullable
     @Override
     public Integer getSinceVersion() {
@@ -100,11 +133,29 @@ public class RecordTypeBuilder extends RecordTypeIndexesBuilder implements Recor
         this.sinceVersion = sinceVersion;
     }
 
+    /**
+     * Get whether records of this type are only ever inserted.
+     * @return {@code true} if records of this type are never replaced
+     * @see RecordType#isAppendOnly
+     */
+    public boolean isAppendOnly() {
+        return appendOnly;
+    }
+
+    /**
+     * Set whether records of this type are only ever inserted, never replaced by a record with the same primary key.
+     * @param appendOnly {@code true} if records of this type are never replaced
+     * @see RecordType#isAppendOnly
+     */
+    public void setAppendOnly(boolean appendOnly) {
+        this.appendOnly = appendOnly;
+    }
+
     public RecordType build(@Nonnull RecordMetaData metaData) {
         if (primaryKey == null) {
             throw new NonbuildableException("Missing primary key");
         }
-        return new RecordType(metaData, descriptor, primaryKey, indexes, multiTypeIndexes, sinceVersion, recordTypeKey);
+        return new RecordType(metaData, descriptor, primaryKey, indexes, multiTypeIndexes, sinceVersion, recordTypeKey, appendOnly);
     }
 
     /**
@@ -0,0 +1,111 @@
+/*
+ * HashBucketFunctionKeyExpression.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata.expressions;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.record.query.plan.temp.view.Element;
+import com.apple.foundationdb.record.query.plan.temp.view.Source;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code HASH_BUCKET} function.
+ *
+ * Assigns a value to one of a fixed number of buckets by a hash of its {@link Tuple} encoding, which is the same
+ * in every process.
+ *
+ * <p>
+ * The function takes the following arguments:<ol>
+ * <li>one or more values to hash (mandatory)</li>
+ * <li>number of buckets (mandatory, last)</li>
+ * </ol>
+ *
+ * <p>
+ * For example,
+ * <pre>
+ * Key.Expressions.function("hash_bucket", Key.Expressions.concat(Key.Expressions.field("event_id"),
+ *     Key.Expressions.value(16)))
+ * </pre>
+ * is a number from 0 to 15.
+ *
+ * <p>
+ * As a primary key element before a value that increases with time, this spreads records written at about the same
+ * time over several key ranges, and so over several storage servers, instead of always appending to the end of one.
+ *
+ * @see TimeBucketFunctionKeyExpression
+ */
+@API(API.Status.EXPERIMENTAL)
+public class HashBucketFunctionKeyExpression extends FunctionKeyExpression implements QueryableKeyExpression {
+    public static final String FUNCTION_NAME = "hash_bucket";
+
+    protected HashBucketFunctionKeyExpression(@Nonnull String name, @Nonnull KeyExpression arguments) {
+        super(name, arguments);
+    }
+
+    @Override
+    public int getMinArguments() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxArguments() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> List<Key.Evaluated> evaluateFunction(@Nullable FDBRecord<M> record,
+                                                                    @Nullable Message message,
+                                                                    @Nonnull Key.Evaluated arguments) {
+        final int last = arguments.size() - 1;
+        final long buckets = arguments.getLong(last);
+        if (buckets <= 0) {
+            throw new InvalidResultException("number of buckets must be positive");
+        }
+        final byte[] bytes = arguments.subKey(0, last).toTuple().pack();
+        final int hash = Hashing.murmur3_32().hashBytes(bytes).asInt();
+        return Collections.singletonList(Key.Evaluated.scalar(Math.floorMod((long)hash, buckets)));
+    }
+
+    @Override
+    public boolean createsDuplicates() {
+        return getArguments().createsDuplicates();
+    }
+
+    @Override
+    public int getColumnSize() {
+        return 1;
+    }
+
+    @Nonnull
+    @Override
+    public Element toElement(@Nonnull Source rootSource) {
+        return normalizeForPlanner(rootSource, Collections.emptyList()).flattenForPlanner().get(0);
+    }
+}
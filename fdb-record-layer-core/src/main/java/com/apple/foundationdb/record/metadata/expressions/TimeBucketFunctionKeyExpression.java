@@ -0,0 +1,143 @@
+/*
+ * TimeBucketFunctionKeyExpression.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata.expressions;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.record.query.plan.temp.view.Element;
+import com.apple.foundationdb.record.query.plan.temp.view.Source;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code TIME_BUCKET} function.
+ *
+ * Rounds a time down to the start of the fixed-width bucket that contains it.
+ *
+ * <p>
+ * The function takes the following arguments:<ol>
+ * <li>time field, as a whole number in any unit (mandatory)</li>
+ * <li>width of each bucket, in the same unit, which must be a literal (mandatory)</li>
+ * </ol>
+ *
+ * <p>
+ * For example,
+ * <pre>
+ * Key.Expressions.function("time_bucket", Key.Expressions.concat(Key.Expressions.field("timestamp"),
+ *     Key.Expressions.value(TimeUnit.HOURS.toMillis(1))))
+ * </pre>
+ * puts a millisecond timestamp into hourly buckets.
+ *
+ * <p>
+ * As a prefix of a primary key, this keeps records from the same time range together, so that all the records in a
+ * bucket can be removed with a single {@link com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore#deleteRecordsWhere
+ * deleteRecordsWhere}.
+ *
+ * @see HashBucketFunctionKeyExpression
+ * @see com.apple.foundationdb.record.provider.foundationdb.TimeBucketExpirer
+ */
+@API(API.Status.EXPERIMENTAL)
+public class TimeBucketFunctionKeyExpression extends FunctionKeyExpression implements QueryableKeyExpression {
+    public static final String FUNCTION_NAME = "time_bucket";
+
+    @Nullable
+    private final Long bucketWidth;
+
+    protected TimeBucketFunctionKeyExpression(@Nonnull String name, @Nonnull KeyExpression arguments) {
+        super(name, arguments);
+        this.bucketWidth = literalLongArgument(arguments, 1);
+    }
+
+    @Nullable
+    static Long literalLongArgument(@Nonnull KeyExpression arguments, int index) {
+        if (arguments instanceof ThenKeyExpression) {
+            final List<KeyExpression> children = ((ThenKeyExpression)arguments).getChildren();
+            if (children.size() > index && children.get(index) instanceof LiteralKeyExpression<?>) {
+                final Object literal = ((LiteralKeyExpression<?>)children.get(index)).getValue();
+                if (literal instanceof Number) {
+                    return ((Number)literal).longValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the width of each bucket.
+     * @return the width of each bucket, in the unit of the time field
+     */
+    public long getBucketWidth() {
+        if (bucketWidth == null) {
+            throw new MetaDataException("bucket width must be a number literal",
+                    LogMessageKeys.FUNCTION, getName());
+        }
+        return bucketWidth;
+    }
+
+    @Override
+    public int getMinArguments() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxArguments() {
+        return 2;
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> List<Key.Evaluated> evaluateFunction(@Nullable FDBRecord<M> record,
+                                                                    @Nullable Message message,
+                                                                    @Nonnull Key.Evaluated arguments) {
+        if (arguments.getObject(0) == null) {
+            return Collections.singletonList(Key.Evaluated.NULL);
+        }
+        final long time = arguments.getLong(0);
+        final long width = arguments.getLong(1);
+        if (width <= 0) {
+            throw new InvalidResultException("bucket width must be positive");
+        }
+        return Collections.singletonList(Key.Evaluated.scalar(Math.floorDiv(time, width) * width));
+    }
+
+    @Override
+    public boolean createsDuplicates() {
+        return getArguments().createsDuplicates();
+    }
+
+    @Override
+    public int getColumnSize() {
+        return 1;
+    }
+
+    @Nonnull
+    @Override
+    public Element toElement(@Nonnull Source rootSource) {
+        return normalizeForPlanner(rootSource, Collections.emptyList()).flattenForPlanner().get(0);
+    }
+}
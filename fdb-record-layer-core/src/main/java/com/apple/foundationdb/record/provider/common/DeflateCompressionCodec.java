@@ -0,0 +1,115 @@
+/*
+ * DeflateCompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+
+import javax.annotation.Nonnull;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link RecordCompressionCodec} using {@link Deflater} at a given compression level.
+ *
+ * <p>
+ * {@link Deflater} and {@link Inflater} objects hold native memory until they are ended or finalized, so they are
+ * kept in a {@link MappedPool}, by level for compressors, and reset and reused rather than created for each record.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class DeflateCompressionCodec implements RecordCompressionCodec {
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 1;
+
+    protected static final MappedPool<Integer, Deflater, RuntimeException> DEFLATER_POOL = new MappedPool<>(Deflater::new);
+    // Keyed by the nowrap flag, which is always false, since the compressed data has zlib headers.
+    protected static final MappedPool<Boolean, Inflater, RuntimeException> INFLATER_POOL = new MappedPool<>(Inflater::new);
+
+    private final int level;
+
+    /**
+     * Create a new codec.
+     * @param level the compression level, as used by {@link Deflater}
+     */
+    public DeflateCompressionCodec(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public int compress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                        @Nonnull byte[] output, int outputOffset, int maxOutputLength) {
+        Deflater compressor = DEFLATER_POOL.poll(level);
+        int compressedLength;
+        try {
+            compressor.setInput(input, inputOffset, inputLength);
+            compressedLength = compressor.deflate(output, outputOffset, maxOutputLength, Deflater.FULL_FLUSH);
+        } catch (RuntimeException ex) {
+            compressor.end();
+            throw ex;
+        }
+        compressor.reset();
+        if (!DEFLATER_POOL.offer(level, compressor)) {
+            compressor.end();
+        }
+        // Filling the buffer means that there may be more still to come.
+        return compressedLength == maxOutputLength ? -1 : compressedLength;
+    }
+
+    @Override
+    public void decompress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                           @Nonnull byte[] output, int outputOffset, int outputLength) throws DataFormatException {
+        Inflater decompressor = INFLATER_POOL.poll(false);
+        try {
+            decompressor.setInput(input, inputOffset, inputLength);
+            decompressor.inflate(output, outputOffset, outputLength);
+        } catch (DataFormatException | RuntimeException ex) {
+            decompressor.end();
+            throw ex;
+        }
+        decompressor.reset();
+        if (!INFLATER_POOL.offer(false, decompressor)) {
+            decompressor.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "(" + level + ")";
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * LZ4CompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * A {@link RecordCompressionCodec} writing the LZ4 block format.
+ *
+ * <p>
+ * LZ4 only replaces repeated sequences of bytes with references to earlier ones, without any entropy coding, so it
+ * compresses less than {@link DeflateCompressionCodec} but takes much less CPU both to compress and to decompress.
+ * This is a plain Java implementation of the greedy single-pass compressor.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class LZ4CompressionCodec implements RecordCompressionCodec {
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 2;
+
+    private static final LZ4CompressionCodec INSTANCE = new LZ4CompressionCodec();
+
+    private static final int MIN_MATCH = 4;
+    // The last match must start at least this far from the end, and the last this many bytes are always literals.
+    private static final int MATCH_START_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0x0F;
+
+    // The hash table is only used during a single call to compress, so each thread can keep reusing its own.
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    /**
+     * Get the codec.
+     * @return the LZ4 codec
+     */
+    @Nonnull
+    public static LZ4CompressionCodec instance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public int compress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                        @Nonnull byte[] output, int outputOffset, int maxOutputLength) {
+        final int inputEnd = inputOffset + inputLength;
+        final int outputEnd = outputOffset + maxOutputLength;
+        final int matchLimit = inputEnd - LAST_LITERALS;
+        final int matchStartLimit = inputEnd - MATCH_START_LIMIT;
+        int anchor = inputOffset;
+        int inputPosition = inputOffset;
+        int outputPosition = outputOffset;
+        if (inputLength > MATCH_START_LIMIT) {
+            final int[] hashTable = HASH_TABLE.get();
+            Arrays.fill(hashTable, -1);
+            while (inputPosition < matchStartLimit) {
+                final int sequence = readInt(input, inputPosition);
+                final int hash = hash(sequence);
+                int reference = hashTable[hash];
+                hashTable[hash] = inputPosition;
+                if (reference < 0 || inputPosition - reference > MAX_DISTANCE || readInt(input, reference) != sequence) {
+                    inputPosition++;
+                    continue;
+                }
+                // Extend the match backwards over any literals and then forwards as far as possible.
+                while (inputPosition > anchor && reference > inputOffset && input[inputPosition - 1] == input[reference - 1]) {
+                    inputPosition--;
+                    reference--;
+                }
+                int matchLength = MIN_MATCH;
+                while (inputPosition + matchLength < matchLimit && input[inputPosition + matchLength] == input[reference + matchLength]) {
+                    matchLength++;
+                }
+                outputPosition = writeSequence(input, anchor, inputPosition - anchor, inputPosition - reference, matchLength,
+                        output, outputPosition, outputEnd);
+                if (outputPosition < 0) {
+                    return -1;
+                }
+                inputPosition += matchLength;
+                anchor = inputPosition;
+            }
+        }
+        outputPosition = writeSequence(input, anchor, inputEnd - anchor, 0, 0, output, outputPosition, outputEnd);
+        return outputPosition < 0 ? -1 : outputPosition - outputOffset;
+    }
+
+    // Write literals followed by a match, or just the literals if the match length is zero, which is only for the last sequence.
+    // Returns the new output position or -1 if there is not enough room.
+    private static int writeSequence(@Nonnull byte[] input, int literalStart, int literalLength, int matchDistance, int matchLength,
+                                     @Nonnull byte[] output, int outputPosition, int outputEnd) {
+        final int matchLengthCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        final int needed = 1 + extraLengthBytes(literalLength) + literalLength +
+                           (matchLength == 0 ? 0 : 2 + extraLengthBytes(matchLengthCode));
+        if (needed > outputEnd - outputPosition) {
+            return -1;
+        }
+        final int tokenPosition = outputPosition++;
+        int token = Math.min(literalLength, RUN_MASK) << 4;
+        outputPosition = writeExtraLength(literalLength, output, outputPosition);
+        System.arraycopy(input, literalStart, output, outputPosition, literalLength);
+        outputPosition += literalLength;
+        if (matchLength > 0) {
+            output[outputPosition++] = (byte)matchDistance;
+            output[outputPosition++] = (byte)(matchDistance >>> 8);
+            token |= Math.min(matchLengthCode, RUN_MASK);
+            outputPosition = writeExtraLength(matchLengthCode, output, outputPosition);
+        }
+        output[tokenPosition] = (byte)token;
+        return outputPosition;
+    }
+
+    private static int extraLengthBytes(int length) {
+        return length < RUN_MASK ? 0 : (length - RUN_MASK) / 255 + 1;
+    }
+
+    private static int writeExtraLength(int length, @Nonnull byte[] output, int outputPosition) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                output[outputPosition++] = (byte)255;
+                remaining -= 255;
+            }
+            output[outputPosition++] = (byte)remaining;
+        }
+        return outputPosition;
+    }
+
+    private static int readInt(@Nonnull byte[] data, int position) {
+        return (data[position] & 0xFF) | ((data[position + 1] & 0xFF) << 8) |
+               ((data[position + 2] & 0xFF) << 16) | ((data[position + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    @Override
+    public void decompress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                           @Nonnull byte[] output, int outputOffset, int outputLength) throws DataFormatException {
+        final int inputEnd = inputOffset + inputLength;
+        final int outputEnd = outputOffset + outputLength;
+        int inputPosition = inputOffset;
+        int outputPosition = outputOffset;
+        while (true) {
+            if (inputPosition >= inputEnd) {
+                throw new DataFormatException("truncated LZ4 block");
+            }
+            final int token = input[inputPosition++] & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int lengthByte;
+                do {
+                    if (inputPosition >= inputEnd) {
+                        throw new DataFormatException("truncated LZ4 literal length");
+                    }
+                    lengthByte = input[inputPosition++] & 0xFF;
+                    literalLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            if (literalLength > inputEnd - inputPosition || literalLength > outputEnd - outputPosition) {
+                throw new DataFormatException("LZ4 literals out of bounds");
+            }
+            System.arraycopy(input, inputPosition, output, outputPosition, literalLength);
+            inputPosition += literalLength;
+            outputPosition += literalLength;
+            if (inputPosition == inputEnd) {
+                break;
+            }
+            if (inputEnd - inputPosition < 2) {
+                throw new DataFormatException("truncated LZ4 match distance");
+            }
+            final int matchDistance = (input[inputPosition] & 0xFF) | ((input[inputPosition + 1] & 0xFF) << 8);
+            inputPosition += 2;
+            if (matchDistance == 0 || matchDistance > outputPosition - outputOffset) {
+                throw new DataFormatException("LZ4 match distance out of bounds");
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int lengthByte;
+                do {
+                    if (inputPosition >= inputEnd) {
+                        throw new DataFormatException("truncated LZ4 match length");
+                    }
+                    lengthByte = input[inputPosition++] & 0xFF;
+                    matchLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > outputEnd - outputPosition) {
+                throw new DataFormatException("LZ4 match out of bounds");
+            }
+            // The match can overlap the bytes it is producing, so copy a byte at a time.
+            final int matchStart = outputPosition - matchDistance;
+            for (int i = 0; i < matchLength; i++) {
+                output[outputPosition + i] = output[matchStart + i];
+            }
+            outputPosition += matchLength;
+        }
+        if (outputPosition != outputEnd) {
+            throw new DataFormatException("LZ4 block decompressed to the wrong length");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * RecordCompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+
+import javax.annotation.Nonnull;
+import java.util.zip.DataFormatException;
+
+/**
+ * A compression algorithm used by a {@link TransformedRecordSerializer}.
+ *
+ * <p>
+ * Each compressed record begins with the codec's {@linkplain #getId() identifier} and the length of the uncompressed
+ * data, so that a serializer can read records compressed by any codec that it knows about, not just the one
+ * it uses for writing. {@link DeflateCompressionCodec}, with identifier {@value DeflateCompressionCodec#ID}, was the
+ * only compression before codecs could be chosen, and is always known.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public interface RecordCompressionCodec {
+    /**
+     * Get the identifier of this codec, which is stored in each record it compresses.
+     * It must be between {@code 1} and {@code 127} and must never change once records have been written with it.
+     * @return the codec identifier
+     */
+    int getId();
+
+    /**
+     * Get a name for this codec, for logging.
+     * @return the codec name
+     */
+    @Nonnull
+    String getName();
+
+    /**
+     * Compress some data, provided that it fits in the given space.
+     * @param input the array with the data to compress
+     * @param inputOffset the start of the data in {@code input}
+     * @param inputLength the length of the data
+     * @param output the array in which to put the compressed data
+     * @param outputOffset the start of the compressed data in {@code output}
+     * @param maxOutputLength the most bytes of compressed data to write
+     * @return the length of the compressed data, or {@code -1} if it would be longer than {@code maxOutputLength}
+     */
+    int compress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                 @Nonnull byte[] output, int outputOffset, int maxOutputLength);
+
+    /**
+     * Decompress some data.
+     * @param input the array with the compressed data
+     * @param inputOffset the start of the compressed data in {@code input}
+     * @param inputLength the length of the compressed data
+     * @param output the array in which to put the decompressed data
+     * @param outputOffset the start of the decompressed data in {@code output}
+     * @param outputLength the length of the decompressed data, as it was when compressed
+     * @throws DataFormatException if the compressed data is not valid
+     */
+    void decompress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                    @Nonnull byte[] output, int outputOffset, int outputLength) throws DataFormatException;
+}
@@ -36,10 +36,15 @@ import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 /**
  * A {@link RecordSerializer} implementation that transforms the bytes produced
@@ -59,6 +64,13 @@ import java.util.zip.Inflater;
  * </p>
  *
  * <p>
+ * Compression is done by a {@link RecordCompressionCodec}, which is {@link DeflateCompressionCodec}
+ * unless another, such as {@link LZ4CompressionCodec} or {@link ZstdCompressionCodec}, is given to the builder. The codec's identifier
+ * is stored at the start of the compressed data, so records compressed with Deflate can still be read after
+ * changing the codec.
+ * </p>
+ *
+ * <p>
  * This base class does not itself support encryption: an exception will be thrown
  * when trying to construct a serializer with encryption enabled or when encountering
  * a serialized record that requires decryption. Subclasses, such as {@link TransformedRecordSerializerJCE},
@@ -87,22 +99,48 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected static final int ENCODING_PROTO_MESSAGE_FIELD = 0x02;
     protected static final int ENCODING_PROTO_TYPE_MASK = 0x07;
     protected static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
-    protected static final int MIN_COMPRESSION_VERSION = 1;
-    protected static final int MAX_COMPRESSION_VERSION = 1;
+    // The compression version written before there were codecs, which is the codec ID of Deflate.
+    protected static final int MIN_COMPRESSION_VERSION = DeflateCompressionCodec.ID;
+    protected static final int MAX_COMPRESSION_VERSION = DeflateCompressionCodec.ID;
+    // Compressed data is always copied into the serialized record, so each thread can compress into the same buffer,
+    // unless the record is too big to keep such a buffer around.
+    protected static final int MAX_COMPRESSION_BUFFER_SIZE = 128 * 1024;
+    private static final ThreadLocal<byte[]> COMPRESSION_BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
 
     @Nonnull
     protected final RecordSerializer<M> inner;
     protected final boolean compressWhenSerializing;
     protected final int compressionLevel;
+    @Nonnull
+    protected final RecordCompressionCodec compressionCodec;
+    @Nonnull
+    protected final Map<Integer, RecordCompressionCodec> decompressionCodecs;
     protected final boolean encryptWhenSerializing;
 
     protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
                                           boolean compressWhenSerializing,
                                           int compressionLevel,
                                           boolean encryptWhenSerializing) {
+        this(inner, compressWhenSerializing, compressionLevel, null, Collections.emptyList(), encryptWhenSerializing);
+    }
+
+    protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
+                                          boolean compressWhenSerializing,
+                                          int compressionLevel,
+                                          @Nullable RecordCompressionCodec compressionCodec,
+                                          @Nonnull Collection<RecordCompressionCodec> decompressionCodecs,
+                                          boolean encryptWhenSerializing) {
         this.inner = inner;
         this.compressWhenSerializing = compressWhenSerializing;
         this.compressionLevel = compressionLevel;
+        this.compressionCodec = compressionCodec == null ? new DeflateCompressionCodec(compressionLevel) : compressionCodec;
+        final Map<Integer, RecordCompressionCodec> codecs = new HashMap<>();
+        codecs.put(DeflateCompressionCodec.ID, new DeflateCompressionCodec(compressionLevel));
+        for (RecordCompressionCodec codec : decompressionCodecs) {
+            codecs.put(codec.getId(), codec);
+        }
+        codecs.put(this.compressionCodec.getId(), this.compressionCodec);
+        this.decompressionCodecs = codecs;
         this.encryptWhenSerializing = encryptWhenSerializing;
     }
 
@@ -154,24 +192,51 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         }
     }
 
+    /**
+     * Get a buffer into which to compress a record of the given size. Unless the record is very large, this is
+     * a buffer belonging to the current thread, which is overwritten by the next call on the same thread.
+     * @param size the minimum size of the buffer
+     * @return an array with at least {@code size} bytes
+     */
+    @Nonnull
+    protected static byte[] getCompressionBuffer(int size) {
+        if (size > MAX_COMPRESSION_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        byte[] buffer = COMPRESSION_BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, Math.min(buffer.length * 2, MAX_COMPRESSION_BUFFER_SIZE))];
+            COMPRESSION_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Compress the data in the given state. If compression succeeds, the state's data is left in the
+     * {@linkplain #getCompressionBuffer(int) compression buffer}, so it must be copied before this thread compresses
+     * anything else.
+     * @param state the state of the transformation
+     * @param timer an optional timer for recording compression
+     */
     protected void compress(@Nonnull TransformState state, @Nullable StoreTimer timer) {
         long startTime = System.nanoTime();
 
-        byte[] compressed = new byte[state.length];
-
-        // Write compression version number and uncompressed size as these
-        // meta-data are needed when decompressing.
-        compressed[0] = (byte) MAX_COMPRESSION_VERSION;
-        ByteBuffer.wrap(compressed, 1, 4).order(ByteOrder.BIG_ENDIAN).putInt(state.length);
-
-        // Actually compress. If we end up filling the buffer, then just
+        // Actually compress. If the result does not fit in the buffer, then just
         // return the uncompressed value because it's pointless to compress
         // if we actually increase the amount of data.
-        Deflater compressor = new Deflater(compressionLevel);
-        compressor.setInput(state.data, state.offset, state.length);
-        int compressedLength = compressor.deflate(compressed, 5, compressed.length - 5, Deflater.FULL_FLUSH);
-        compressor.end();
-        if (compressedLength == compressed.length - 5) {
+        int compressedLength = -1;
+        byte[] compressed = null;
+        if (state.length > 5) {
+            compressed = getCompressionBuffer(state.length);
+
+            // Write compression codec and uncompressed size as these
+            // meta-data are needed when decompressing.
+            compressed[0] = (byte) compressionCodec.getId();
+            ByteBuffer.wrap(compressed, 1, 4).order(ByteOrder.BIG_ENDIAN).putInt(state.length);
+
+            compressedLength = compressionCodec.compress(state.data, state.offset, state.length, compressed, 5, state.length - 5);
+        }
+        if (compressedLength < 0) {
             state.compressed = false;
         } else {
             state.compressed = true;
@@ -238,12 +303,11 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected void decompress(@Nonnull TransformState state, @Nullable StoreTimer timer) throws DataFormatException {
         long startTime = System.nanoTime();
 
-        // At the moment, there is only one compression version, so
-        // we after we've verified it is in the right range, we
-        // can just move on. If we ever introduce a new format version,
-        // we will need to make this code more complicated.
+        // The compression version is the ID of the codec that compressed the record,
+        // which must be one that this serializer knows about.
         int compressionVersion = state.data[state.offset];
-        if (compressionVersion < MIN_COMPRESSION_VERSION || compressionVersion > MAX_COMPRESSION_VERSION) {
+        RecordCompressionCodec codec = decompressionCodecs.get(compressionVersion);
+        if (codec == null) {
             throw new RecordSerializationException("unknown compression version")
                     .addLogInfo("compressionVersion", compressionVersion);
         }
@@ -251,10 +315,7 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         int decompressedLength = ByteBuffer.wrap(state.data, state.offset + 1, 4).order(ByteOrder.BIG_ENDIAN).getInt();
         byte[] decompressed = new byte[decompressedLength];
 
-        Inflater decompressor = new Inflater();
-        decompressor.setInput(state.data, state.offset + 5, state.length - 5);
-        decompressor.inflate(decompressed);
-        decompressor.end();
+        codec.decompress(state.data, state.offset + 5, state.length - 5, decompressed, 0, decompressedLength);
         state.setDataArray(decompressed);
 
         if (timer != null) {
@@ -324,7 +385,8 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     @Nonnull
     @Override
     public RecordSerializer<Message> widen() {
-        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel, encryptWhenSerializing);
+        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel,
+                compressionCodec, decompressionCodecs.values(), encryptWhenSerializing);
     }
 
     /**
@@ -368,6 +430,10 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         protected final RecordSerializer<M> inner;
         protected boolean compressWhenSerializing;
         protected int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        @Nullable
+        protected RecordCompressionCodec compressionCodec;
+        @Nonnull
+        protected final List<RecordCompressionCodec> decompressionCodecs = new ArrayList<>();
         protected boolean encryptWhenSerializing;
 
         protected Builder(@Nonnull RecordSerializer<M> inner) {
@@ -406,6 +472,34 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
             return this;
         }
 
+        /**
+         * Compression codec to use if compressing. If none is set
+         * here, a {@link DeflateCompressionCodec} is used with the
+         * level given by {@link #setCompressionLevel(int)}. Records
+         * compressed with this codec or with Deflate can be deserialized.
+         * Setting this does <i>not</i> automatically enable compression when
+         * serializing.
+         * @param compressionCodec the codec with which to compress records
+         * @return this <code>Builder</code>
+         */
+        public Builder<M> setCompressionCodec(@Nullable RecordCompressionCodec compressionCodec) {
+            this.compressionCodec = compressionCodec;
+            return this;
+        }
+
+        /**
+         * Add a compression codec for deserializing records, in addition to Deflate
+         * and the one set by {@link #setCompressionCodec(RecordCompressionCodec)}. This is
+         * needed to read records written with a different codec before the one
+         * used for compressing was changed.
+         * @param decompressionCodec another codec with which records might have been compressed
+         * @return this <code>Builder</code>
+         */
+        public Builder<M> addDecompressionCodec(@Nonnull RecordCompressionCodec decompressionCodec) {
+            this.decompressionCodecs.add(decompressionCodec);
+            return this;
+        }
+
         /**
          * Whether to encrypt records after serializing. Should
          * compression and encryption both be set, then data
@@ -439,6 +533,8 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
                     inner,
                     compressWhenSerializing,
                     compressionLevel,
+                    compressionCodec,
+                    decompressionCodecs,
                     encryptWhenSerializing
             );
         }
@@ -31,6 +31,8 @@ import javax.crypto.spec.IvParameterSpec;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * An extension of {@link TransformedRecordSerializer} to use JCE to encrypt and decrypt records.
@@ -58,7 +60,20 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
                                              @Nullable String cipherName,
                                              @Nullable Key encryptionKey,
                                              @Nullable SecureRandom secureRandom) {
-        super(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing);
+        this(inner, compressWhenSerializing, compressionLevel, null, Collections.emptyList(), encryptWhenSerializing,
+                cipherName, encryptionKey, secureRandom);
+    }
+
+    protected TransformedRecordSerializerJCE(@Nonnull RecordSerializer<M> inner,
+                                             boolean compressWhenSerializing,
+                                             int compressionLevel,
+                                             @Nullable RecordCompressionCodec compressionCodec,
+                                             @Nonnull Collection<RecordCompressionCodec> decompressionCodecs,
+                                             boolean encryptWhenSerializing,
+                                             @Nullable String cipherName,
+                                             @Nullable Key encryptionKey,
+                                             @Nullable SecureRandom secureRandom) {
+        super(inner, compressWhenSerializing, compressionLevel, compressionCodec, decompressionCodecs, encryptWhenSerializing);
         this.cipherName = cipherName;
         this.encryptionKey = encryptionKey;
         this.secureRandom = secureRandom;
@@ -77,15 +92,12 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
         Cipher cipher = MAPPED_POOL.poll(cipherName);
         cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, iv);
 
-        byte[] plainText = state.getDataArray();
-        byte[] cipherText = cipher.doFinal(plainText);
-
-        int totalSize = IV_SIZE + cipherText.length;
-        byte[] serialized = new byte[totalSize];
-        System.arraycopy(iv.getIV(), 0, serialized, 0, IV_SIZE);
-        System.arraycopy(cipherText, 0, serialized, IV_SIZE, cipherText.length);
+        // Encrypt straight from the state's data, which may be a compression buffer, to after the IV.
+        byte[] serialized = new byte[IV_SIZE + cipher.getOutputSize(state.length)];
+        System.arraycopy(ivData, 0, serialized, 0, IV_SIZE);
+        int cipherTextLength = cipher.doFinal(state.data, state.offset, state.length, serialized, IV_SIZE);
         state.encrypted = true;
-        state.setDataArray(serialized);
+        state.setDataArray(serialized, 0, IV_SIZE + cipherTextLength);
         MAPPED_POOL.offer(cipherName, cipher);
         if (timer != null) {
             timer.recordSinceNanoTime(Events.ENCRYPT_SERIALIZED_RECORD, startTime);
@@ -99,16 +111,11 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
         }
         long startTime = System.nanoTime();
 
-        byte[] ivData = new byte[IV_SIZE];
-        System.arraycopy(state.data, state.offset, ivData, 0, IV_SIZE);
-        IvParameterSpec iv = new IvParameterSpec(ivData);
-
-        byte[] cipherText = new byte[state.length - IV_SIZE];
-        System.arraycopy(state.data, state.offset + IV_SIZE, cipherText, 0, cipherText.length);
+        IvParameterSpec iv = new IvParameterSpec(state.data, state.offset, IV_SIZE);
         Cipher cipher = MAPPED_POOL.poll(cipherName);
         cipher.init(Cipher.DECRYPT_MODE, encryptionKey, iv);
 
-        byte[] plainText = cipher.doFinal(cipherText);
+        byte[] plainText = cipher.doFinal(state.data, state.offset + IV_SIZE, state.length - IV_SIZE);
         state.setDataArray(plainText);
         MAPPED_POOL.offer(cipherName, cipher);
 
@@ -177,6 +184,18 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
             return this;
         }
 
+        @Override
+        public Builder<M> setCompressionCodec(@Nullable RecordCompressionCodec compressionCodec) {
+            super.setCompressionCodec(compressionCodec);
+            return this;
+        }
+
+        @Override
+        public Builder<M> addDecompressionCodec(@Nonnull RecordCompressionCodec decompressionCodec) {
+            super.addDecompressionCodec(decompressionCodec);
+            return this;
+        }
+
         /**
          * Whether to encrypt records after serializing. Should
          * compression and encryption both be set, then data
@@ -282,6 +301,8 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
                     inner,
                     compressWhenSerializing,
                     compressionLevel,
+                    compressionCodec,
+                    decompressionCodecs,
                     encryptWhenSerializing,
                     cipherName,
                     encryptionKey,
@@ -0,0 +1,122 @@
+/*
+ * ZstdCompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+import javax.annotation.Nonnull;
+import java.util.zip.DataFormatException;
+
+/**
+ * A {@link RecordCompressionCodec} writing Zstandard frames.
+ *
+ * <p>
+ * Zstandard finds matches much like {@link LZ4CompressionCodec} and then entropy codes them, so it compresses about as
+ * well as {@link DeflateCompressionCodec} with less CPU, especially to decompress. This uses the plain Java
+ * implementation from aircompressor, which has a single compression level and does not support dictionaries.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ZstdCompressionCodec implements RecordCompressionCodec {
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 3;
+
+    private static final ZstdCompressionCodec INSTANCE = new ZstdCompressionCodec();
+
+    // The compressor needs room for its worst case, which is more than a record is allowed to take, so it writes here
+    // first, unless the record is too big to keep such a buffer around.
+    private static final int MAX_BUFFER_SIZE = 128 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    // The compressor keeps no state between calls, but the decompressor does, so each thread has its own.
+    private static final ZstdCompressor COMPRESSOR = new ZstdCompressor();
+    private static final ThreadLocal<ZstdDecompressor> DECOMPRESSOR = ThreadLocal.withInitial(ZstdDecompressor::new);
+
+    /**
+     * Get the codec.
+     * @return the Zstandard codec
+     */
+    @Nonnull
+    public static ZstdCompressionCodec instance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "zstd";
+    }
+
+    @Override
+    public int compress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                        @Nonnull byte[] output, int outputOffset, int maxOutputLength) {
+        final int bufferSize = COMPRESSOR.maxCompressedLength(inputLength);
+        if (maxOutputLength >= bufferSize) {
+            return COMPRESSOR.compress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+        }
+        final byte[] buffer = getBuffer(bufferSize);
+        final int compressedLength = COMPRESSOR.compress(input, inputOffset, inputLength, buffer, 0, bufferSize);
+        if (compressedLength > maxOutputLength) {
+            return -1;
+        }
+        System.arraycopy(buffer, 0, output, outputOffset, compressedLength);
+        return compressedLength;
+    }
+
+    @Nonnull
+    private static byte[] getBuffer(int size) {
+        if (size > MAX_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, Math.min(buffer.length * 2, MAX_BUFFER_SIZE))];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void decompress(@Nonnull byte[] input, int inputOffset, int inputLength,
+                           @Nonnull byte[] output, int outputOffset, int outputLength) throws DataFormatException {
+        final int decompressedLength;
+        try {
+            decompressedLength = DECOMPRESSOR.get().decompress(input, inputOffset, inputLength, output, outputOffset, outputLength);
+        } catch (MalformedInputException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            final DataFormatException dataFormatException = new DataFormatException("invalid Zstandard frame");
+            dataFormatException.initCause(ex);
+            throw dataFormatException;
+        }
+        if (decompressedLength != outputLength) {
+            throw new DataFormatException("Zstandard frame decompressed to the wrong length");
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * AdaptivePipelineSizer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.cursors.MapPipelinedCursor;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A {@link FDBRecordStoreBase.PipelineSizer} that adjusts the size of each kind of pipeline from how long its
+ * futures take to complete.
+ *
+ * <p>
+ * Sizes are adjusted in the same way as a TCP congestion window, additive increase / multiplicative decrease. The sizer
+ * keeps a moving average of the latency of each operation's futures, along with the lowest average seen, which is
+ * taken to be the latency when the database is not busy. While the average stays within a tolerance of that baseline,
+ * the pipeline grows by one for each pipeline's worth of completed futures. Once it goes over, the pipeline is cut
+ * by a factor, at most once per pipeline's worth of futures. So a pipeline grows when reads are cheap, such as when
+ * the data is cached, and backs off when more pending reads only make each read slower.
+ * </p>
+ *
+ * <p>
+ * A single sizer is meant to be shared by all the record stores opened against a database, so that what is learned
+ * in one transaction is used by the next. The latency is only measured for pipelines created through
+ * {@link #mapPipelined(RecordCursor, Function, PipelineOperation)}, which also change their size while they run. Other
+ * pipelines, such as those of {@link RecordCursor#flatMapPipelined}, take the size at the time they are created.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class AdaptivePipelineSizer implements FDBRecordStoreBase.PipelineSizer {
+    /**
+     * The default smallest pipeline size.
+     */
+    public static final int DEFAULT_MIN_SIZE = 1;
+    /**
+     * The default initial pipeline size, which is also the fixed size used by default.
+     */
+    public static final int DEFAULT_INITIAL_SIZE = FDBRecordStore.DEFAULT_PIPELINE_SIZE;
+    /**
+     * The default largest pipeline size.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+    /**
+     * The default ratio of average latency to baseline latency above which the pipeline size is cut.
+     */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    // Weight of each new latency in the moving average.
+    private static final double AVERAGE_WEIGHT = 0.2;
+    // How much the baseline is allowed to rise with each completion, so that it recovers from an unusually fast period.
+    private static final double BASELINE_AGING = 0.001;
+    // Factor by which the pipeline size is cut.
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final int minSize;
+    private final int initialSize;
+    private final int maxSize;
+    private final double latencyTolerance;
+    @Nonnull
+    private final Map<PipelineOperation, OperationState> states = new ConcurrentHashMap<>();
+
+    public AdaptivePipelineSizer() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_INITIAL_SIZE, DEFAULT_MAX_SIZE, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    public AdaptivePipelineSizer(int minSize, int initialSize, int maxSize, double latencyTolerance) {
+        if (minSize < 1 || initialSize < minSize || maxSize < initialSize) {
+            throw new RecordCoreArgumentException("pipeline sizes must satisfy 1 <= min <= initial <= max")
+                    .addLogInfo(LogMessageKeys.LIMIT, maxSize);
+        }
+        if (!(latencyTolerance > 1.0)) {
+            throw new RecordCoreArgumentException("latency tolerance must be greater than one");
+        }
+        this.minSize = minSize;
+        this.initialSize = initialSize;
+        this.maxSize = maxSize;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public int getPipelineSize(@Nonnull PipelineOperation pipelineOperation) {
+        final OperationState state = states.get(pipelineOperation);
+        return state == null ? initialSize : state.getSize();
+    }
+
+    @Nonnull
+    @Override
+    public <T, V> RecordCursor<V> mapPipelined(@Nonnull RecordCursor<T> cursor,
+                                               @Nonnull Function<T, CompletableFuture<V>> func,
+                                               @Nonnull PipelineOperation pipelineOperation) {
+        final OperationState state = getState(pipelineOperation);
+        return new MapPipelinedCursor<>(cursor, value -> {
+            final long startTime = System.nanoTime();
+            return func.apply(value).whenComplete((result, err) -> {
+                if (err == null) {
+                    state.completed(System.nanoTime() - startTime);
+                }
+            });
+        }, state::getSize);
+    }
+
+    /**
+     * Record how long a future of the given operation took to complete, adjusting the pipeline size accordingly.
+     * This can be used to feed latencies measured elsewhere, such as from the {@link FDBStoreTimer} events of an
+     * operation run in a pipeline not created by this sizer.
+     * @param pipelineOperation the kind of operation
+     * @param latencyNanos the time from starting to completing the future in nanoseconds
+     */
+    public void recordLatency(@Nonnull PipelineOperation pipelineOperation, long latencyNanos) {
+        getState(pipelineOperation).completed(latencyNanos);
+    }
+
+    /**
+     * Get the moving average of the latency of the given operation's futures.
+     * @param pipelineOperation the kind of operation
+     * @return the average latency in nanoseconds or {@code 0} if none have completed
+     */
+    public double getAverageLatencyNanos(@Nonnull PipelineOperation pipelineOperation) {
+        final OperationState state = states.get(pipelineOperation);
+        return state == null ? 0.0 : state.getAverageNanos();
+    }
+
+    @Nonnull
+    private OperationState getState(@Nonnull PipelineOperation pipelineOperation) {
+        return states.computeIfAbsent(pipelineOperation, op -> new OperationState(initialSize));
+    }
+
+    private class OperationState {
+        private double size;
+        private double averageNanos;
+        private double baselineNanos = Double.MAX_VALUE;
+        private int sinceDecrease;
+
+        OperationState(int size) {
+            this.size = size;
+        }
+
+        synchronized int getSize() {
+            return (int)size;
+        }
+
+        synchronized double getAverageNanos() {
+            return averageNanos;
+        }
+
+        synchronized void completed(long latencyNanos) {
+            if (averageNanos == 0.0) {
+                averageNanos = latencyNanos;
+            } else {
+                averageNanos += AVERAGE_WEIGHT * (latencyNanos - averageNanos);
+            }
+            baselineNanos = Math.min(baselineNanos * (1.0 + BASELINE_AGING), averageNanos);
+            sinceDecrease++;
+            if (averageNanos > baselineNanos * latencyTolerance) {
+                if (sinceDecrease >= size) {
+                    size = Math.max(minSize, size * DECREASE_FACTOR);
+                    sinceDecrease = 0;
+                }
+            } else {
+                size = Math.min(maxSize, size + 1.0 / size);
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * BulkRecordLoader.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.logging.KeyValueLogMessage;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Loads a large number of new records into a record store, such as for an initial import.
+ *
+ * <p>
+ * A normal save reads any existing record with the same primary key, so that index maintainers can remove its
+ * entries. The loader instead assumes that none of the records it is given exist yet, and saves them without that read.
+ * Records are saved in batches, each in its own transaction, bounded by both the number of records and their
+ * serialized size.
+ * </p>
+ *
+ * <p>
+ * Most kinds of index can then be updated with one write for each entry: value indexes set a key, and aggregate and
+ * bitmap indexes use atomic mutations. Indexes that need to read to add an entry are not maintained during the load:
+ * unique indexes, which check for an existing entry, and other index types, such as rank and text, which update
+ * structures stored across several keys. These are disabled at the start of the load and built by an
+ * {@link OnlineIndexer} once all the records are saved, making one pass over the records for all the indexes on the same
+ * record types. Further indexes can be deferred the same way with {@link Builder#addDeferredIndex}.
+ * </p>
+ *
+ * <p>
+ * A batch whose commit fails with {@code commit_unknown_result} is retried, and so may be saved twice. Saving the same
+ * records again only sets the same keys, but some index entries are not like that. So indexes whose maintainer is not
+ * {@linkplain IndexMaintainer#isIdempotent idempotent}, such as {@code COUNT} and {@code SUM} indexes, which add to a
+ * total, are deferred too, as are version indexes, whose entries would be written again with a new version. For the
+ * same reason, the loader refuses to load into a record store whose meta-data has a record count key, since
+ * those counts are kept by adding to them. A {@code COUNT} index can count the records instead.
+ * </p>
+ *
+ * <p>
+ * Since nothing is read, a record that does exist is overwritten without removing its old index entries. So by default
+ * the loader checks that the record store is empty before it starts. That check can be turned off to load into
+ * a store that has records, as long as none of the new records have the same primary key as an existing one.
+ * </p>
+ *
+ * <p>
+ * The deferred indexes are disabled in a transaction of their own, and each batch is committed as it is saved, so
+ * a load that fails part way leaves the batches before the failure in the store. If so, the loader still builds the
+ * deferred indexes over the records that were saved, so that the store is left usable, and throws a
+ * {@link PartialLoadException} giving the number of records saved. To finish the load, run the loader again with
+ * {@link Builder#setRequireEmpty setRequireEmpty(false)} on the records after that many. If building the indexes
+ * fails too, they are left disabled, and that second run builds them along with its own.
+ * </p>
+ *
+ * <pre><code>
+ * try (BulkRecordLoader loader = BulkRecordLoader.newBuilder()
+ *         .setRecordStoreBuilder(recordStoreBuilder)
+ *         .build()) {
+ *     loader.loadRecords(records);
+ * }
+ * </code></pre>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class BulkRecordLoader implements AutoCloseable {
+    /**
+     * Default most number of records saved in one transaction.
+     */
+    public static final int DEFAULT_MAX_RECORDS_PER_TRANSACTION = 1000;
+    /**
+     * Default most number of serialized record bytes saved in one transaction, which leaves room under the FDB limit on
+     * transaction size for index entries.
+     */
+    public static final long DEFAULT_MAX_BYTES_PER_TRANSACTION = 1_000_000L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkRecordLoader.class);
+
+    // Index types that add an entry for a new record without reading anything, unless the index is unique, and write
+    // the same entry again when a record is saved again.
+    private static final Set<String> BLIND_WRITE_INDEX_TYPES = ImmutableSet.of(
+            IndexTypes.VALUE, IndexTypes.BITMAP_VALUE,
+            IndexTypes.COUNT, IndexTypes.COUNT_UPDATES, IndexTypes.COUNT_NOT_NULL, IndexTypes.SUM,
+            IndexTypes.MIN_EVER_TUPLE, IndexTypes.MAX_EVER_TUPLE,
+            IndexTypes.MIN_EVER_LONG, IndexTypes.MAX_EVER_LONG, IndexTypes.MAX_EVER_VERSION);
+
+    @Nonnull
+    private final FDBDatabaseRunner runner;
+    @Nonnull
+    private final FDBRecordStore.Builder recordStoreBuilder;
+    private final int maxRecordsPerTransaction;
+    private final long maxBytesPerTransaction;
+    @Nonnull
+    private final Set<String> deferredIndexNames;
+    private final boolean requireEmpty;
+
+    protected BulkRecordLoader(@Nonnull FDBDatabaseRunner runner,
+                               @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                               int maxRecordsPerTransaction, long maxBytesPerTransaction,
+                               @Nonnull Set<String> deferredIndexNames, boolean requireEmpty) {
+        this.runner = runner;
+        this.recordStoreBuilder = recordStoreBuilder;
+        this.maxRecordsPerTransaction = maxRecordsPerTransaction;
+        this.maxBytesPerTransaction = maxBytesPerTransaction;
+        this.deferredIndexNames = deferredIndexNames;
+        this.requireEmpty = requireEmpty;
+    }
+
+    /**
+     * Get whether adding an entry to the given index for a new record can be done without reading. An index for which
+     * this is {@code true} is still deferred if its maintainer is not idempotent.
+     * @param index the index to check
+     * @return {@code true} if the index type can be maintained during a bulk load
+     */
+    public static boolean canMaintainWithoutRead(@Nonnull Index index) {
+        return BLIND_WRITE_INDEX_TYPES.contains(index.getType()) && !index.isUnique();
+    }
+
+    /**
+     * Save all the given records, which must not already exist, and then build any deferred indexes.
+     * This is blocking and should not be called in asynchronous contexts.
+     * @param records the records to save
+     * @return the number of records saved
+     * @throws PartialLoadException if saving fails after the deferred indexes were disabled
+     */
+    public long loadRecords(@Nonnull Iterator<? extends Message> records) {
+        final List<Index> deferredIndexes = runner.run(this::prepare);
+        long count = 0;
+        try {
+            while (records.hasNext()) {
+                final List<Message> batch = nextBatch(records);
+                runner.run(context -> {
+                    final FDBRecordStore store = recordStoreBuilder.copyBuilder().setContext(context).open();
+                    final List<CompletableFuture<FDBStoredRecord<Message>>> futures = new ArrayList<>(batch.size());
+                    for (Message record : batch) {
+                        futures.add(store.saveNewRecordWithoutReadAsync(record));
+                    }
+                    return context.asyncToSync(FDBStoreTimer.Waits.WAIT_SAVE_RECORD, AsyncUtil.whenAll(futures));
+                });
+                count += batch.size();
+            }
+        } catch (RuntimeException e) {
+            throw partialLoad(e, count, deferredIndexes);
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(KeyValueLogMessage.of("bulk loaded records",
+                    LogMessageKeys.RECORD_COUNT, count,
+                    LogMessageKeys.TARGET_INDEX_NAMES, deferredIndexes.stream().map(Index::getName).collect(Collectors.toList())));
+        }
+        buildDeferredIndexes(deferredIndexes);
+        return count;
+    }
+
+    // Build the deferred indexes over the records saved before a failure, so that they are not left disabled.
+    @Nonnull
+    private PartialLoadException partialLoad(@Nonnull RuntimeException cause, long count, @Nonnull List<Index> deferredIndexes) {
+        final PartialLoadException partialLoadException = new PartialLoadException(count, cause);
+        try {
+            buildDeferredIndexes(deferredIndexes);
+        } catch (RuntimeException buildException) {
+            partialLoadException.addSuppressed(buildException);
+        }
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn(KeyValueLogMessage.of("bulk load failed",
+                    LogMessageKeys.RECORD_COUNT, count,
+                    LogMessageKeys.TARGET_INDEX_NAMES, deferredIndexes.stream().map(Index::getName).collect(Collectors.toList())),
+                    cause);
+        }
+        return partialLoadException;
+    }
+
+    // Check that the store can be loaded into and disable the indexes that will be built at the end.
+    @Nonnull
+    private List<Index> prepare(@Nonnull FDBRecordContext context) {
+        final FDBRecordStore store = recordStoreBuilder.copyBuilder().setContext(context).createOrOpen();
+        if (requireEmpty) {
+            final boolean empty = context.asyncToSync(FDBStoreTimer.Waits.WAIT_SCAN_RECORDS,
+                    store.scanRecords(null, new ScanProperties(ExecuteProperties.newBuilder().setReturnedRowLimit(1).build()))
+                            .onNext().thenApply(result -> !result.hasNext()));
+            if (!empty) {
+                throw new RecordCoreException("record store is not empty");
+            }
+        }
+        final RecordMetaData metaData = store.getRecordMetaData();
+        if (metaData.getRecordCountKey() != null) {
+            // A retried batch would be counted twice.
+            throw new RecordCoreException("record store with a record count key cannot be bulk loaded");
+        }
+        for (String indexName : deferredIndexNames) {
+            // Throws if there is no such index.
+            metaData.getIndex(indexName);
+        }
+        final List<Index> deferredIndexes = new ArrayList<>();
+        for (Index index : metaData.getAllIndexes()) {
+            if (deferredIndexNames.contains(index.getName()) || !canMaintainWithoutRead(index)
+                    || !store.getIndexMaintainer(index).isIdempotent()) {
+                deferredIndexes.add(index);
+                if (!store.isIndexDisabled(index)) {
+                    context.asyncToSync(FDBStoreTimer.Waits.WAIT_INDEX_OPERATION, store.markIndexDisabled(index));
+                }
+            }
+        }
+        return deferredIndexes;
+    }
+
+    @Nonnull
+    private List<Message> nextBatch(@Nonnull Iterator<? extends Message> records) {
+        final List<Message> batch = new ArrayList<>();
+        long bytes = 0;
+        while (records.hasNext() && batch.size() < maxRecordsPerTransaction && bytes < maxBytesPerTransaction) {
+            final Message record = records.next();
+            batch.add(record);
+            bytes += record.getSerializedSize();
+        }
+        return batch;
+    }
+
+    // An online indexer builds indexes on the same record types in a single pass.
+    private void buildDeferredIndexes(@Nonnull List<Index> deferredIndexes) {
+        if (deferredIndexes.isEmpty()) {
+            return;
+        }
+        final RecordMetaData metaData = runner.run(context -> recordStoreBuilder.copyBuilder().setContext(context).open().getRecordMetaData());
+        final Map<Set<String>, List<Index>> byRecordTypes = new LinkedHashMap<>();
+        for (Index index : deferredIndexes) {
+            final Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
+            final Set<String> recordTypeNames = recordTypes.stream().map(RecordType::getName).collect(Collectors.toCollection(LinkedHashSet::new));
+            byRecordTypes.computeIfAbsent(recordTypeNames, key -> new ArrayList<>()).add(index);
+        }
+        for (List<Index> indexes : byRecordTypes.values()) {
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setRunner(runner.getDatabase().newRunner())
+                    .setRecordStoreBuilder(recordStoreBuilder)
+                    .setTargetIndexes(indexes)
+                    .build()) {
+                indexer.buildIndex();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        runner.close();
+    }
+
+    /**
+     * Thrown when a load fails after some of its records have been saved.
+     * @see BulkRecordLoader
+     */
+    @SuppressWarnings("serial")
+    public static class PartialLoadException extends RecordCoreException {
+        private final long recordCount;
+
+        public PartialLoadException(long recordCount, @Nullable Throwable cause) {
+            super("bulk load failed after saving some records", cause);
+            this.recordCount = recordCount;
+            addLogInfo(LogMessageKeys.RECORD_COUNT, recordCount);
+        }
+
+        /**
+         * Get the number of records that were saved before the failure. These are the first records given to the
+         * loader, and the load can be finished by loading the rest of them.
+         * @return the number of records saved
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+    }
+
+    /**
+     * Create a builder for a {@link BulkRecordLoader}.
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for {@link BulkRecordLoader}.
+     *
+     * <pre><code>
+     * BulkRecordLoader.newBuilder().setRecordStoreBuilder(recordStoreBuilder).addDeferredIndex("big_index").build()
+     * </code></pre>
+     */
+    public static class Builder extends RecordStoreRunnerBuilder<Builder> {
+        private int maxRecordsPerTransaction = DEFAULT_MAX_RECORDS_PER_TRANSACTION;
+        private long maxBytesPerTransaction = DEFAULT_MAX_BYTES_PER_TRANSACTION;
+        @Nonnull
+        private final Set<String> deferredIndexNames = new LinkedHashSet<>();
+        private boolean requireEmpty = true;
+
+        protected Builder() {
+        }
+
+        @Nonnull
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        /**
+         * Set the most number of records saved in one transaction.
+         * @param maxRecordsPerTransaction the most number of records in a transaction
+         * @return this builder
+         */
+        public Builder setMaxRecordsPerTransaction(int maxRecordsPerTransaction) {
+            if (maxRecordsPerTransaction < 1) {
+                throw new RecordCoreArgumentException("maxRecordsPerTransaction must be positive")
+                        .addLogInfo(LogMessageKeys.LIMIT, maxRecordsPerTransaction);
+            }
+            this.maxRecordsPerTransaction = maxRecordsPerTransaction;
+            return this;
+        }
+
+        /**
+         * Set the most number of serialized record bytes saved in one transaction. A transaction always has at least
+         * one record, and the record that goes over this is included in the transaction.
+         * @param maxBytesPerTransaction the most number of record bytes in a transaction
+         * @return this builder
+         */
+        public Builder setMaxBytesPerTransaction(long maxBytesPerTransaction) {
+            if (maxBytesPerTransaction < 1) {
+                throw new RecordCoreArgumentException("maxBytesPerTransaction must be positive")
+                        .addLogInfo(LogMessageKeys.LIMIT, maxBytesPerTransaction);
+            }
+            this.maxBytesPerTransaction = maxBytesPerTransaction;
+            return this;
+        }
+
+        /**
+         * Add an index that is not to be maintained while records are saved, but built once they all are. Indexes for
+         * which {@link #canMaintainWithoutRead} is {@code false} or whose maintainer is not idempotent are always
+         * deferred.
+         * @param indexName the name of the index to defer
+         * @return this builder
+         */
+        public Builder addDeferredIndex(@Nonnull String indexName) {
+            deferredIndexNames.add(indexName);
+            return this;
+        }
+
+        /**
+         * Set whether to check that the record store has no records before loading.
+         * @param requireEmpty {@code false} to load into a store that may have records, none of which have the same
+         * primary key as a loaded record
+         * @return this builder
+         */
+        public Builder setRequireEmpty(boolean requireEmpty) {
+            this.requireEmpty = requireEmpty;
+            return this;
+        }
+
+        /**
+         * Build a {@link BulkRecordLoader}.
+         * @return a new loader
+         */
+        @Nonnull
+        public BulkRecordLoader build() {
+            final FDBRecordStore.Builder recordStoreBuilder = getRecordStoreBuilder();
+            final FDBDatabaseRunner runner = getRunner();
+            return new BulkRecordLoader(runner, recordStoreBuilder, maxRecordsPerTransaction, maxBytesPerTransaction,
+                    ImmutableSet.copyOf(deferredIndexNames), requireEmpty);
+        }
+    }
+}
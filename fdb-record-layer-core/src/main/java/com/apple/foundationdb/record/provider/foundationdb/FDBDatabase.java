@@ -132,6 +132,8 @@ public class FDBDatabase {
     private final long reverseDirectoryMaxMillisPerTransaction;
     @Nonnull
     private FDBRecordStoreStateCache storeStateCache = PassThroughRecordStoreStateCache.instance();
+    @Nullable
+    private FDBRecordCache recordCache;
     private final Supplier<Boolean> transactionIsTracedSupplier;
     private final long warnAndCloseOpenContextsAfterSeconds;
     // The number of cache entries to maintain in memory
@@ -713,6 +715,33 @@ public class FDBDatabase {
         this.storeStateCache = storeStateCache;
     }
 
+    /**
+     * Get the record cache for this database, if any. This cache is used when loading records by primary key
+     * from record stores associated with this database.
+     *
+     * @return the record cache for this database or {@code null} if records are not cached
+     * @see FDBRecordCache
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public FDBRecordCache getRecordCache() {
+        return recordCache;
+    }
+
+    /**
+     * Set the record cache for this database. By default, there is no record cache. Note that the record cache
+     * should <em>not</em> be set with a record cache that is used by a different database.
+     *
+     * @param recordCache the record cache or {@code null} to stop caching records
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setRecordCache(@Nullable FDBRecordCache recordCache) {
+        if (recordCache != null) {
+            recordCache.validateDatabase(this);
+        }
+        this.recordCache = recordCache;
+    }
+
     @VisibleForTesting
     @API(API.Status.INTERNAL)
     public void clearCaches() {
@@ -720,6 +749,9 @@ public class FDBDatabase {
         clearForwardDirectoryCache();
         clearReverseDirectoryCache();
         storeStateCache.clear();
+        if (recordCache != null) {
+            recordCache.clear();
+        }
     }
 
     public synchronized void close() {
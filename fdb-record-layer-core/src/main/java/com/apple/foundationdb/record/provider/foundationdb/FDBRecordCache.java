@@ -0,0 +1,186 @@
+/*
+ * FDBRecordCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Message;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory cache of records loaded from the record stores of a single {@link FDBDatabase}.
+ *
+ * <p>
+ * When a cache is {@linkplain FDBDatabase#setRecordCache(FDBRecordCache) set on the database},
+ * {@link FDBRecordStore#loadRecordAsync(Tuple)} first looks for the record here, by the store's subspace and the
+ * record's primary key. A cached record is only returned if it is provably what the database would return:
+ * either the transaction has the same read version as the one the record was loaded at, or the record store
+ * {@linkplain com.apple.foundationdb.record.RecordMetaData#isStoreRecordVersions() stores record versions} and the
+ * record's version, which changes every time the record is saved, is still the same. Checking the version
+ * still reads a key, but just a single small one, rather than all of the record's keys, and skips deserializing.
+ * In both cases, the cached record must also have been loaded with the same meta-data version.
+ * </p>
+ *
+ * <p>
+ * Transactions that have saved or deleted any records neither use nor fill the cache, since a cached record might not
+ * include their changes. Records saved with an explicit version that matches the version of a different cached
+ * record, or modified other than through a record store, can make the cache return stale data.
+ * </p>
+ *
+ * <p>
+ * The cache holds at most a given number of records, evicting the least recently used ones. The
+ * {@link FDBStoreTimer.Counts#RECORD_CACHE_HIT} and {@link FDBStoreTimer.Counts#RECORD_CACHE_MISS} counts
+ * give its hit rate.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class FDBRecordCache {
+    /**
+     * The default maximum number of records in the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 10_000;
+
+    @Nonnull
+    private final FDBDatabase database;
+    private final long maxSize;
+    @Nonnull
+    private final Cache<Pair<Subspace, Tuple>, Entry> cache;
+
+    public FDBRecordCache(@Nonnull FDBDatabase database) {
+        this(database, DEFAULT_MAX_SIZE);
+    }
+
+    public FDBRecordCache(@Nonnull FDBDatabase database, long maxSize) {
+        this.database = database;
+        this.maxSize = maxSize;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Get the maximum number of records held in this cache.
+     * @return the maximum size of the cache
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the number of records currently held in this cache.
+     * @return the size of the cache
+     */
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Get a cached record, which may be out of date.
+     * @param subspace the subspace of the record store
+     * @param primaryKey the primary key of the record
+     * @return the cache entry for the record or {@code null} if there is none
+     */
+    @API(API.Status.INTERNAL)
+    @Nullable
+    public Entry get(@Nonnull Subspace subspace, @Nonnull Tuple primaryKey) {
+        return cache.getIfPresent(Pair.of(subspace, primaryKey));
+    }
+
+    /**
+     * Add a record to the cache.
+     * @param subspace the subspace of the record store
+     * @param primaryKey the primary key of the record
+     * @param entry the record as read at a given read version
+     */
+    @API(API.Status.INTERNAL)
+    public void put(@Nonnull Subspace subspace, @Nonnull Tuple primaryKey, @Nonnull Entry entry) {
+        cache.put(Pair.of(subspace, primaryKey), entry);
+    }
+
+    /**
+     * Remove a record from the cache.
+     * @param subspace the subspace of the record store
+     * @param primaryKey the primary key of the record
+     */
+    public void invalidate(@Nonnull Subspace subspace, @Nonnull Tuple primaryKey) {
+        cache.invalidate(Pair.of(subspace, primaryKey));
+    }
+
+    /**
+     * Remove all records from the cache.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Check that this cache is being used with the database that it was created for.
+     * @param database the database with which the cache is to be used
+     */
+    public void validateDatabase(@Nonnull FDBDatabase database) {
+        if (database != this.database) {
+            throw new RecordCoreArgumentException("record cache used with different database than the one it was initialized with");
+        }
+    }
+
+    /**
+     * A record in the cache, together with what is needed to tell whether it is still current.
+     */
+    @API(API.Status.INTERNAL)
+    public static class Entry {
+        @Nonnull
+        private final FDBStoredRecord<Message> record;
+        private final long readVersion;
+        private final int metaDataVersion;
+
+        public Entry(@Nonnull FDBStoredRecord<Message> record, long readVersion, int metaDataVersion) {
+            this.record = record;
+            this.readVersion = readVersion;
+            this.metaDataVersion = metaDataVersion;
+        }
+
+        @Nonnull
+        public FDBStoredRecord<Message> getRecord() {
+            return record;
+        }
+
+        /**
+         * Get the read version at which the record was known to be current.
+         * @return the read version of the cached record
+         */
+        public long getReadVersion() {
+            return readVersion;
+        }
+
+        /**
+         * Get the version of the meta-data with which the record was deserialized.
+         * @return the meta-data version of the cached record
+         */
+        public int getMetaDataVersion() {
+            return metaDataVersion;
+        }
+    }
+}
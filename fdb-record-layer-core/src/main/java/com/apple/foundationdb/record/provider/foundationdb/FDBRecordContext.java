@@ -155,6 +155,7 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
     @Nonnull
     private final Map<String, PostCommit> postCommits = new LinkedHashMap<>();
     private boolean dirtyStoreState;
+    private boolean dirtyRecords;
     private boolean dirtyMetaDataVersionStamp;
     private long trackOpenTimeNanos;
 
@@ -206,6 +207,7 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         }
 
         this.dirtyStoreState = false;
+        this.dirtyRecords = false;
     }
 
     @Nullable
@@ -634,6 +636,27 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         return dirtyStoreState;
     }
 
+    @API(API.Status.INTERNAL)
+    public void setDirtyRecords(boolean dirtyRecords) {
+        this.dirtyRecords = dirtyRecords;
+    }
+
+    /**
+     * Return whether any record store opened with this context has saved or deleted records. This is then used to
+     * avoid using the {@linkplain FDBRecordCache record cache}, whose records might not reflect those changes.
+     * Like {@link #hasDirtyStoreState()}, this applies to all the record stores opened within a single transaction.
+     *
+     * <p>
+     * This method is internal to the Record Layer and should not be used by external consumers.
+     * </p>
+     *
+     * @return whether records have been modified in the course of this transaction
+     */
+    @API(API.Status.INTERNAL)
+    public boolean hasDirtyRecords() {
+        return dirtyRecords;
+    }
+
     /**
      * A consistency check, such as uniqueness, that can execute asynchronously and is finally checked at or before commit time.
      * @see #addCommitCheck(CommitCheckAsync)
@@ -77,6 +77,7 @@ import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.common.DynamicMessageRecordSerializer;
 import com.apple.foundationdb.record.provider.common.RecordSerializer;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.InvalidIndexEntry;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
 import com.apple.foundationdb.record.provider.foundationdb.storestate.FDBRecordStoreStateCache;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
@@ -85,6 +86,7 @@ import com.apple.foundationdb.record.query.expressions.AndComponent;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.expressions.RecordTypeKeyComparison;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromStoredRecordPlan;
@@ -115,12 +117,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
@@ -244,6 +248,9 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Nullable
     protected final FDBRecordStoreStateCache storeStateCache;
 
+    @Nullable
+    protected final RecordQueryPlanCache planCache;
+
     @Nullable
     private Subspace cachedRecordsSubspace;
 
@@ -257,6 +264,11 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Nonnull
     private final Set<String> indexStateReadConflicts = ConcurrentHashMap.newKeySet(8);
 
+    // Maintainers only depend on their index and on this store's transaction, so one per index is shared by every
+    // save in the transaction, rather than building a state and maintainer for each index of each record.
+    @Nonnull
+    private final Map<Index, IndexMaintainer> indexMaintainers = new ConcurrentHashMap<>();
+
     @SuppressWarnings("squid:S00107")
     protected FDBRecordStore(@Nonnull FDBRecordContext context,
                              @Nonnull SubspaceProvider subspaceProvider,
@@ -266,7 +278,8 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                              @Nonnull IndexMaintainerRegistry indexMaintainerRegistry,
                              @Nonnull IndexMaintenanceFilter indexMaintenanceFilter,
                              @Nonnull PipelineSizer pipelineSizer,
-                             @Nullable FDBRecordStoreStateCache storeStateCache) {
+                             @Nullable FDBRecordStoreStateCache storeStateCache,
+                             @Nullable RecordQueryPlanCache planCache) {
         super(context, subspaceProvider);
         this.formatVersion = formatVersion;
         this.metaDataProvider = metaDataProvider;
@@ -275,6 +288,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         this.indexMaintenanceFilter = indexMaintenanceFilter;
         this.pipelineSizer = pipelineSizer;
         this.storeStateCache = storeStateCache;
+        this.planCache = planCache;
         this.omitUnsplitRecordSuffix = formatVersion < SAVE_UNSPLIT_WITH_SUFFIX_FORMAT_VERSION;
         this.preloadCache = CacheBuilder.newBuilder().maximumSize(PRELOAD_CACHE_SIZE).build();
     }
@@ -404,6 +418,11 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         final Tuple primaryKey = primaryKeyExpression.evaluateSingleton(recordBuilder).toTuple();
         recordBuilder.setPrimaryKey(primaryKey);
 
+        if (recordType.isAppendOnly() && existenceCheck == RecordExistenceCheck.NONE) {
+            // An append-only record is assumed to be new, so there is nothing to check or replace.
+            return context.instrument(FDBStoreTimer.Events.SAVE_RECORD,
+                    saveRecordReplacing(typedSerializer, recordBuilder, metaData, null));
+        }
         final CompletableFuture<FDBStoredRecord<M>> result = loadExistingRecord(typedSerializer, primaryKey).thenCompose(oldRecord -> {
             if (oldRecord == null) {
                 if (existenceCheck.errorIfNotExists()) {
@@ -422,19 +441,47 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                             LogMessageKeys.EXPECTED_TYPE, recordType.getName());
                 }
             }
-            final FDBStoredRecord<M> newRecord = serializeAndSaveRecord(typedSerializer, recordBuilder, metaData, oldRecord);
-            if (oldRecord == null) {
-                addRecordCount(metaData, newRecord, LITTLE_ENDIAN_INT64_ONE);
-            } else {
-                if (getTimer() != null) {
-                    getTimer().increment(FDBStoreTimer.Counts.REPLACE_RECORD_VALUE_BYTES, oldRecord.getValueSize());
-                }
-            }
-            return updateSecondaryIndexes(oldRecord, newRecord).thenApply(v -> newRecord);
+            return saveRecordReplacing(typedSerializer, recordBuilder, metaData, oldRecord);
         });
         return context.instrument(FDBStoreTimer.Events.SAVE_RECORD, result);
     }
 
+    /**
+     * Save a record that is known not to exist yet, without first reading any existing record. If a record with the
+     * same primary key does exist, it is overwritten but its index entries are not removed, leaving the indexes
+     * inconsistent. Index maintainers are called as for a new record, so ones that need to read, such as for a unique
+     * index, still do.
+     * @param record the record to save
+     * @return a future that completes with the stored record form of the saved record
+     * @see BulkRecordLoader
+     */
+    @Nonnull
+    CompletableFuture<FDBStoredRecord<Message>> saveNewRecordWithoutReadAsync(@Nonnull final Message record) {
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final RecordType recordType = metaData.getRecordTypeForDescriptor(record.getDescriptorForType());
+        final FDBStoredRecordBuilder<Message> recordBuilder = FDBStoredRecord.newBuilder(record).setRecordType(recordType);
+        recordBuilder.setVersion(recordVersionForSave(metaData, null, VersionstampSaveBehavior.DEFAULT));
+        recordBuilder.setPrimaryKey(recordType.getPrimaryKey().evaluateSingleton(recordBuilder).toTuple());
+        return context.instrument(FDBStoreTimer.Events.SAVE_RECORD,
+                saveRecordReplacing(serializer, recordBuilder, metaData, null));
+    }
+
+    @Nonnull
+    private <M extends Message> CompletableFuture<FDBStoredRecord<M>> saveRecordReplacing(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                          @Nonnull FDBStoredRecordBuilder<M> recordBuilder,
+                                                                                          @Nonnull RecordMetaData metaData,
+                                                                                          @Nullable FDBStoredRecord<M> oldRecord) {
+        final FDBStoredRecord<M> newRecord = serializeAndSaveRecord(typedSerializer, recordBuilder, metaData, oldRecord);
+        if (oldRecord == null) {
+            addRecordCount(metaData, newRecord, LITTLE_ENDIAN_INT64_ONE);
+        } else {
+            if (getTimer() != null) {
+                getTimer().increment(FDBStoreTimer.Counts.REPLACE_RECORD_VALUE_BYTES, oldRecord.getValueSize());
+            }
+        }
+        return updateSecondaryIndexes(oldRecord, newRecord).thenApply(v -> newRecord);
+    }
+
     private <M extends Message> void addRecordCount(@Nonnull RecordMetaData metaData, @Nonnull FDBStoredRecord<M> record, @Nonnull byte[] increment) {
         if (metaData.getRecordCountKey() == null) {
             return;
@@ -477,6 +524,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         final FDBRecordVersion splitVersion = useOldVersionFormat() ? null : version;
         final SplitHelper.SizeInfo sizeInfo = new SplitHelper.SizeInfo();
         preloadCache.invalidate(primaryKey); // clear out cache of older value if present
+        context.setDirtyRecords(true);
         SplitHelper.saveWithSplit(context, recordsSubspace(), recordBuilder.getPrimaryKey(), serialized, splitVersion, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldSizeInfo, sizeInfo);
         countKeysAndValues(FDBStoreTimer.Counts.SAVE_RECORD_KEY, FDBStoreTimer.Counts.SAVE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.SAVE_RECORD_VALUE_BYTES, sizeInfo);
         recordBuilder.setSize(sizeInfo);
@@ -800,12 +848,15 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     }
 
     /**
-     * Get the maintainer for a given index.
+     * Get the maintainer for a given index. The maintainer is created the first time it is needed and then used for
+     * every operation on the index for as long as this store is open.
      * @param index the required index
      * @return the maintainer for the given index
      */
     public IndexMaintainer getIndexMaintainer(@Nonnull Index index) {
-        return indexMaintainerRegistry.getIndexMaintainer(new IndexMaintainerState(this, index, indexMaintenanceFilter));
+        ensureContextActive();
+        return indexMaintainers.computeIfAbsent(index,
+                i -> indexMaintainerRegistry.getIndexMaintainer(new IndexMaintainerState(this, i, indexMaintenanceFilter)));
     }
 
     public int getKeySizeLimit() {
@@ -832,9 +883,77 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     public CompletableFuture<FDBStoredRecord<Message>> loadRecordInternal(@Nonnull final Tuple primaryKey,
                                                                           @Nonnull ExecuteState executeState,
                                                                           final boolean snapshot) {
+        final FDBRecordCache recordCache = context.getDatabase().getRecordCache();
+        if (recordCache != null && !context.hasDirtyRecords()) {
+            return loadRecordWithCache(recordCache, primaryKey, executeState, snapshot);
+        }
         return loadTypedRecord(serializer, primaryKey, executeState, snapshot);
     }
 
+    @Nonnull
+    private CompletableFuture<FDBStoredRecord<Message>> loadRecordWithCache(@Nonnull final FDBRecordCache recordCache,
+                                                                            @Nonnull final Tuple primaryKey,
+                                                                            @Nonnull ExecuteState executeState,
+                                                                            final boolean snapshot) {
+        final int metaDataVersion = metaDataProvider.getRecordMetaData().getVersion();
+        final FDBRecordCache.Entry cached = recordCache.get(getSubspace(), primaryKey);
+        return context.getReadVersionAsync().thenCompose(readVersion -> {
+            if (cached != null && cached.getMetaDataVersion() == metaDataVersion) {
+                if (cached.getReadVersion() == readVersion) {
+                    return CompletableFuture.completedFuture(recordFromCache(cached, primaryKey, snapshot));
+                }
+                // Every save writes a new version, so if the version has not changed, neither has the record.
+                final FDBRecordVersion cachedVersion = cached.getRecord().getVersion();
+                final Optional<CompletableFuture<FDBRecordVersion>> versionFutureOptional =
+                        cachedVersion == null || useOldVersionFormat() ? Optional.empty() : loadRecordVersionAsync(primaryKey, snapshot);
+                if (versionFutureOptional.isPresent()) {
+                    return versionFutureOptional.get().thenCompose(version -> {
+                        if (cachedVersion.equals(version)) {
+                            if (readVersion > cached.getReadVersion()) {
+                                recordCache.put(getSubspace(), primaryKey, new FDBRecordCache.Entry(cached.getRecord(), readVersion, metaDataVersion));
+                            }
+                            return CompletableFuture.completedFuture(recordFromCache(cached, primaryKey, snapshot));
+                        }
+                        return loadRecordIntoCache(recordCache, primaryKey, executeState, snapshot, readVersion, metaDataVersion);
+                    });
+                }
+            }
+            return loadRecordIntoCache(recordCache, primaryKey, executeState, snapshot, readVersion, metaDataVersion);
+        });
+    }
+
+    @Nonnull
+    private FDBStoredRecord<Message> recordFromCache(@Nonnull FDBRecordCache.Entry cached, @Nonnull Tuple primaryKey, boolean snapshot) {
+        if (!snapshot) {
+            // Conflict as though the record had actually been read.
+            final Range range = getRangeForRecord(primaryKey);
+            ensureContextActive().addReadConflictRange(range.begin, range.end);
+        }
+        context.increment(FDBStoreTimer.Counts.RECORD_CACHE_HIT);
+        return cached.getRecord();
+    }
+
+    @Nonnull
+    private CompletableFuture<FDBStoredRecord<Message>> loadRecordIntoCache(@Nonnull final FDBRecordCache recordCache,
+                                                                            @Nonnull final Tuple primaryKey,
+                                                                            @Nonnull ExecuteState executeState,
+                                                                            final boolean snapshot,
+                                                                            final long readVersion,
+                                                                            final int metaDataVersion) {
+        context.increment(FDBStoreTimer.Counts.RECORD_CACHE_MISS);
+        return loadTypedRecord(serializer, primaryKey, executeState, snapshot).thenApply(record -> {
+            // Records changed by this transaction must not be seen by others.
+            if (!context.hasDirtyRecords()) {
+                if (record == null) {
+                    recordCache.invalidate(getSubspace(), primaryKey);
+                } else {
+                    recordCache.put(getSubspace(), primaryKey, new FDBRecordCache.Entry(record, readVersion, metaDataVersion));
+                }
+            }
+            return record;
+        });
+    }
+
     @Nonnull
     protected <M extends Message> CompletableFuture<FDBStoredRecord<M>> loadTypedRecord(@Nonnull RecordSerializer<M> typedSerializer,
                                                                                         @Nonnull final Tuple primaryKey,
@@ -869,6 +988,109 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return context.instrument(FDBStoreTimer.Events.LOAD_RECORD, result);
     }
 
+    @Override
+    @Nonnull
+    public CompletableFuture<List<FDBStoredRecord<Message>>> loadRecordsAsync(@Nonnull final List<Tuple> primaryKeys,
+                                                                              final boolean snapshot) {
+        return loadTypedRecords(serializer, primaryKeys, snapshot);
+    }
+
+    @Nonnull
+    protected <M extends Message> CompletableFuture<List<FDBStoredRecord<M>>> loadTypedRecords(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                               @Nonnull final List<Tuple> primaryKeys,
+                                                                                               final boolean snapshot) {
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        // Formats that do not keep everything about a record under its primary key are loaded a record at a time.
+        final boolean rangeReads = !useOldVersionFormat() && (metaData.isSplitLongRecords() || !omitUnsplitRecordSuffix);
+        final List<List<Tuple>> runs = new ArrayList<>();
+        List<Tuple> run = null;
+        // The packed form of the last key of the current run, or null if the run cannot be extended.
+        byte[] runEnd = null;
+        for (Tuple primaryKey : new TreeSet<>(primaryKeys)) {
+            // A preloaded record is taken from the cache on its own, so it neither starts nor joins a range read.
+            final byte[] packedKey = rangeReads && preloadCache.getIfPresent(primaryKey) == null ? primaryKey.pack() : null;
+            if (runEnd != null && packedKey != null && isAdjacentKey(runEnd, packedKey)) {
+                run.add(primaryKey);
+            } else {
+                run = new ArrayList<>();
+                run.add(primaryKey);
+                runs.add(run);
+            }
+            runEnd = packedKey;
+        }
+        CompletableFuture<List<FDBStoredRecord<M>>> result = pipelineSizer.mapPipelined(RecordCursor.fromList(getExecutor(), runs),
+                keys -> keys.size() == 1 ?
+                        loadTypedRecord(typedSerializer, keys.get(0), snapshot).thenApply(Collections::singletonList) :
+                        loadTypedRecordRange(typedSerializer, keys, metaData, snapshot),
+                PipelineOperation.KEY_TO_RECORD)
+                .asList()
+                .thenApply(loaded -> {
+                    final Map<Tuple, FDBStoredRecord<M>> byPrimaryKey = new HashMap<>();
+                    for (List<FDBStoredRecord<M>> records : loaded) {
+                        for (FDBStoredRecord<M> record : records) {
+                            if (record != null) {
+                                byPrimaryKey.put(record.getPrimaryKey(), record);
+                            }
+                        }
+                    }
+                    final List<FDBStoredRecord<M>> records = new ArrayList<>(primaryKeys.size());
+                    for (Tuple primaryKey : primaryKeys) {
+                        records.add(byPrimaryKey.get(primaryKey));
+                    }
+                    return records;
+                });
+        return context.instrument(FDBStoreTimer.Events.LOAD_RECORDS, result);
+    }
+
+    // Whether the second packed key is the first one plus one, read as big-endian numbers of the same length, so that no
+    // other key of the same length falls between them. For integer keys, this is true of consecutive values.
+    private static boolean isAdjacentKey(@Nonnull byte[] previous, @Nonnull byte[] next) {
+        if (previous.length != next.length) {
+            return false;
+        }
+        int i = previous.length - 1;
+        while (i >= 0 && previous[i] == (byte)0xff && next[i] == 0) {
+            i--;
+        }
+        if (i < 0 || (next[i] & 0xff) != (previous[i] & 0xff) + 1) {
+            return false;
+        }
+        for (int j = 0; j < i; j++) {
+            if (previous[j] != next[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Load the records for a run of adjacent keys with a single range read. Other records that happen to be
+    // in the same range are read but not returned.
+    @Nonnull
+    private <M extends Message> CompletableFuture<List<FDBStoredRecord<M>>> loadTypedRecordRange(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                                 @Nonnull final List<Tuple> primaryKeys,
+                                                                                                 @Nonnull final RecordMetaData metaData,
+                                                                                                 final boolean snapshot) {
+        increment(FDBStoreTimer.Counts.LOAD_RECORDS_RANGE_READ);
+        final Subspace recordsSubspace = recordsSubspace();
+        final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder()
+                .setIsolationLevel(snapshot ? IsolationLevel.SNAPSHOT : IsolationLevel.SERIALIZABLE)
+                .setDefaultCursorStreamingMode(CursorStreamingMode.WANT_ALL)
+                .build());
+        final RecordCursor<KeyValue> keyValues = KeyValueCursor.Builder.withSubspace(recordsSubspace)
+                .setContext(context)
+                .setLow(primaryKeys.get(0), EndpointType.RANGE_INCLUSIVE)
+                .setHigh(primaryKeys.get(primaryKeys.size() - 1), EndpointType.RANGE_INCLUSIVE)
+                .setContinuation(null)
+                .setScanProperties(scanProperties)
+                .build();
+        final Set<Tuple> wanted = new HashSet<>(primaryKeys);
+        return pipelineSizer.mapPipelined(new SplitHelper.KeyValueUnsplitter(context, recordsSubspace, keyValues, false, null, scanProperties)
+                        .filter(rawRecord -> wanted.contains(rawRecord.getPrimaryKey())),
+                rawRecord -> deserializeRecord(typedSerializer, rawRecord, metaData, Optional.empty()),
+                PipelineOperation.KEY_TO_RECORD)
+                .asList();
+    }
+
     /**
      * Async version of {@link #loadRecordVersion(Tuple)}. If the
      * record does not have a version, but that cannot be determined
@@ -1142,7 +1364,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                     .limitRowsTo(scanProperties.getExecuteProperties().getReturnedRowLimit());
             }
         }
-        RecordCursor<FDBStoredRecord<M>> result = rawRecords.mapPipelined(rawRecord -> {
+        RecordCursor<FDBStoredRecord<M>> result = pipelineSizer.mapPipelined(rawRecords, rawRecord -> {
             final Optional<CompletableFuture<FDBRecordVersion>> versionFutureOptional;
             if (useOldVersionFormat()) {
                 // Older format versions: do a separate read to get the version.
@@ -1152,7 +1374,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                 versionFutureOptional = Optional.empty();
             }
             return deserializeRecord(typedSerializer, rawRecord, metaData, versionFutureOptional);
-        }, pipelineSizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
+        }, PipelineOperation.KEY_TO_RECORD);
         return context.instrument(FDBStoreTimer.Events.SCAN_RECORDS, result);
     }
 
@@ -1211,6 +1433,24 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         });
     }
 
+    /**
+     * Scan an index for entries left behind by saving a record of an
+     * {@linkplain RecordType#isAppendOnly append-only} record type over an existing record with the same primary key.
+     * Since such a save does not read the old record, its index entries are not removed. They then point to the new
+     * record, but do not match it.
+     * @param index the index to check, which must be a {@link IndexTypes#VALUE} index
+     * @param continuation any continuation from a previous scan
+     * @param scanProperties skip, limit and other properties of the scan
+     * @return a cursor over index entries that do not match the record they point to
+     * @see IndexMaintainer#validateStaleEntries
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public RecordCursor<InvalidIndexEntry> scanAppendOnlyViolations(@Nonnull Index index, @Nullable byte[] continuation,
+                                                                    @Nonnull ScanProperties scanProperties) {
+        return getIndexMaintainer(index).validateStaleEntries(continuation, scanProperties);
+    }
+
     @Override
     @Nonnull
     public CompletableFuture<Void> resolveUniquenessViolation(@Nonnull Index index, @Nonnull Tuple valueKey, @Nullable Tuple remainPrimaryKey) {
@@ -1240,6 +1480,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             if (oldRecord == null) {
                 return AsyncUtil.READY_FALSE;
             }
+            context.setDirtyRecords(true);
             SplitHelper.deleteSplit(getRecordContext(), recordsSubspace(), primaryKey, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldRecord);
             countKeysAndValues(FDBStoreTimer.Counts.DELETE_RECORD_KEY, FDBStoreTimer.Counts.DELETE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.DELETE_RECORD_VALUE_BYTES,
                     oldRecord);
@@ -1303,6 +1544,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         // meta-data is cacheable, but we can't know that from here.
         context.setMetaDataVersionStamp();
         context.setDirtyStoreState(true);
+        context.setDirtyRecords(true);
         final Transaction transaction = context.ensureActive();
         transaction.clear(subspace.range());
     }
@@ -1310,6 +1552,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Override
     public void deleteAllRecords() {
         preloadCache.invalidateAll();
+        context.setDirtyRecords(true);
         Transaction tr = ensureContextActive();
 
         // Clear out all data except for the store header key and the index state space.
@@ -1323,6 +1566,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Override
     public CompletableFuture<Void> deleteRecordsWhereAsync(@Nonnull QueryComponent component) {
         preloadCache.invalidateAll();
+        context.setDirtyRecords(true);
         return new RecordsWhereDeleter(component).run();
     }
 
@@ -1655,6 +1899,16 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return planner.plan(query);
     }
 
+    // Plan a query through the plan cache, or return null if this store does not have one.
+    @Nullable
+    RecordQueryPlanCache.ParameterizedPlan planQueryWithCache(@Nonnull RecordQuery query) {
+        if (planCache == null) {
+            return null;
+        }
+        final RecordQueryPlanner planner = new RecordQueryPlanner(getRecordMetaData(), getRecordStoreState(), getTimer());
+        return planCache.plan(planner, query, getTimer());
+    }
+
 
     @Nonnull
     public static IndexState writeOnlyIfTooManyRecordsForRebuild(long recordCount, boolean indexOnNewRecordTypes) {
@@ -3619,9 +3873,60 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @API(API.Status.EXPERIMENTAL)
     @Nonnull
     public RecordCursor<Tuple> getPrimaryKeyBoundaries(@Nonnull Tuple low, @Nonnull Tuple high) {
+        return getPrimaryKeyBoundaries(recordsSubspace().pack(low), recordsSubspace().pack(high));
+    }
+
+    /**
+     * Split the records of this store into ranges of primary keys that can be scanned in parallel. The ranges are
+     * split at the boundaries returned by {@link #getPrimaryKeyBoundaries(Tuple, Tuple)}, so that each range is
+     * served by (nearly) the same number of FDB servers. If there are more boundaries than needed, consecutive
+     * ranges are grouped together.
+     * <p>
+     * The returned ranges are in primary key order and together cover every possible primary key, so that scanning
+     * each of them with {@link #scanRecords(TupleRange, byte[], ScanProperties)} returns every record once. The
+     * first starts at {@link EndpointType#TREE_START} and the last ends at {@link EndpointType#TREE_END}.
+     * <p>
+     * This has the same limitations as {@link #getPrimaryKeyBoundaries(Tuple, Tuple)}.
+     *
+     * @param maxPartitions the most ranges to return
+     * @return a future that completes to the list of primary key ranges
+     * @see PartitionedRecordScanner
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<List<TupleRange>> getPrimaryKeyPartitions(int maxPartitions) {
+        if (maxPartitions < 1) {
+            throw new RecordCoreArgumentException("maxPartitions must be positive")
+                    .addLogInfo(LogMessageKeys.LIMIT, maxPartitions);
+        }
+        final Range recordsRange = recordsSubspace().range();
+        return getPrimaryKeyBoundaries(recordsRange.begin, recordsRange.end).asList().thenApply(boundaries -> {
+            final List<Tuple> splits;
+            if (boundaries.size() < maxPartitions) {
+                splits = boundaries;
+            } else {
+                // Take evenly spaced boundaries, so each range gets (nearly) the same number of shards.
+                splits = new ArrayList<>(maxPartitions - 1);
+                for (int i = 1; i < maxPartitions; i++) {
+                    splits.add(boundaries.get((int)((long)i * boundaries.size() / maxPartitions)));
+                }
+            }
+            final List<TupleRange> partitions = new ArrayList<>(splits.size() + 1);
+            Tuple low = null;
+            EndpointType lowEndpoint = EndpointType.TREE_START;
+            for (Tuple split : splits) {
+                partitions.add(new TupleRange(low, split, lowEndpoint, EndpointType.RANGE_EXCLUSIVE));
+                low = split;
+                lowEndpoint = EndpointType.RANGE_INCLUSIVE;
+            }
+            partitions.add(new TupleRange(low, null, lowEndpoint, EndpointType.TREE_END));
+            return partitions;
+        });
+    }
+
+    @Nonnull
+    private RecordCursor<Tuple> getPrimaryKeyBoundaries(@Nonnull byte[] rangeStart, @Nonnull byte[] rangeEnd) {
         final Transaction transaction = ensureContextActive();
-        byte[] rangeStart = recordsSubspace().pack(low);
-        byte[] rangeEnd = recordsSubspace().pack(high);
         CloseableAsyncIterator<byte[]> cursor = context.getDatabase().getLocalityProvider().getBoundaryKeys(transaction, rangeStart, rangeEnd);
         final boolean hasSplitRecordSuffix = hasSplitRecordSuffix();
         DistinctFilterCursorClosure closure = new DistinctFilterCursorClosure();
@@ -3863,6 +4168,9 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         @Nullable
         private FDBRecordStoreStateCache storeStateCache = null;
 
+        @Nullable
+        private RecordQueryPlanCache planCache = null;
+
         protected Builder() {
         }
 
@@ -3890,6 +4198,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             this.indexMaintenanceFilter = other.indexMaintenanceFilter;
             this.pipelineSizer = other.pipelineSizer;
             this.storeStateCache = other.storeStateCache;
+            this.planCache = other.planCache;
         }
 
         /**
@@ -3906,6 +4215,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             this.indexMaintenanceFilter = store.indexMaintenanceFilter;
             this.pipelineSizer = store.pipelineSizer;
             this.storeStateCache = store.storeStateCache;
+            this.planCache = store.planCache;
         }
 
         @Override
@@ -4071,6 +4381,19 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             return this;
         }
 
+        @Override
+        @Nullable
+        public RecordQueryPlanCache getPlanCache() {
+            return planCache;
+        }
+
+        @Override
+        @Nonnull
+        public Builder setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+            this.planCache = planCache;
+            return this;
+        }
+
         @Override
         @Nonnull
         public Builder copyBuilder() {
@@ -4092,7 +4415,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                 throw new RecordCoreException("serializer must be supplied");
             }
             return new FDBRecordStore(context, subspaceProvider, formatVersion, getMetaDataProviderForBuild(),
-                    serializer, indexMaintainerRegistry, indexMaintenanceFilter, pipelineSizer, storeStateCache);
+                    serializer, indexMaintainerRegistry, indexMaintenanceFilter, pipelineSizer, storeStateCache, planCache);
         }
 
         @Override
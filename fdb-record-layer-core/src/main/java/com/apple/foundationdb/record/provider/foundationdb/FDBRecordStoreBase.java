@@ -54,6 +54,7 @@ import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath
 import com.apple.foundationdb.record.provider.foundationdb.storestate.FDBRecordStoreStateCache;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.subspace.Subspace;
@@ -68,6 +69,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * Base interface for typed and untyped record stores.
@@ -518,6 +520,40 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
     @API(API.Status.INTERNAL)
     CompletableFuture<FDBStoredRecord<M>> loadRecordInternal(@Nonnull Tuple primaryKey, @Nonnull ExecuteState executeState, boolean snapshot);
 
+    /**
+     * Load the records with the given primary keys.
+     * @param primaryKeys the primary keys for the records
+     * @return a list of the {@link FDBStoredRecord} for each key, in the same order, with <code>null</code> for any that are missing
+     * @see #loadRecordsAsync(List, boolean)
+     */
+    @Nonnull
+    default List<FDBStoredRecord<M>> loadRecords(@Nonnull final List<Tuple> primaryKeys) {
+        return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_LOAD_RECORD, loadRecordsAsync(primaryKeys));
+    }
+
+    /**
+     * Asynchronously load the records with the given primary keys.
+     * @param primaryKeys the primary keys for the records
+     * @return a future that will return a list of the records in the same order as the keys, with <code>null</code> for any that are missing
+     * @see #loadRecordsAsync(List, boolean)
+     */
+    @Nonnull
+    default CompletableFuture<List<FDBStoredRecord<M>>> loadRecordsAsync(@Nonnull final List<Tuple> primaryKeys) {
+        return loadRecordsAsync(primaryKeys, false);
+    }
+
+    /**
+     * Asynchronously load the records with the given primary keys.
+     * Rather than reading each record separately, keys that are adjacent, that is, that differ only by one in an integer last
+     * element, are read together with a single range read. These reads are done concurrently, up to the pipeline size
+     * for {@link PipelineOperation#KEY_TO_RECORD}.
+     * @param primaryKeys the primary keys for the records
+     * @param snapshot whether to load at snapshot isolation
+     * @return a future that will return a list of the records in the same order as the keys, with <code>null</code> for any that are missing
+     */
+    @Nonnull
+    CompletableFuture<List<FDBStoredRecord<M>>> loadRecordsAsync(@Nonnull List<Tuple> primaryKeys, boolean snapshot);
+
     /**
      * Get record into FDB RYW cache.
      * Caller needs to hold on to result until ready or else there is a chance it will get
@@ -906,8 +942,8 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
                                                                 @Nonnull RecordCursor<IndexEntry> indexCursor,
                                                                 @Nonnull IndexOrphanBehavior orphanBehavior,
                                                                 @Nonnull ExecuteState executeState) {
-        RecordCursor<FDBIndexedRecord<M>> recordCursor = indexCursor.mapPipelined(entry ->
-                loadIndexEntryRecord(index, entry, orphanBehavior, executeState), getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+        RecordCursor<FDBIndexedRecord<M>> recordCursor = getPipelineSizer().mapPipelined(indexCursor, entry ->
+                loadIndexEntryRecord(index, entry, orphanBehavior, executeState), PipelineOperation.INDEX_TO_RECORD);
         if (orphanBehavior == IndexOrphanBehavior.SKIP) {
             recordCursor = recordCursor.filter(Objects::nonNull);
         }
@@ -927,8 +963,8 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
     default RecordCursor<FDBIndexedRecord<M>> fetchIndexRecords(@Nonnull RecordCursor<IndexEntry> indexCursor,
                                                                 @Nonnull IndexOrphanBehavior orphanBehavior,
                                                                 @Nonnull ExecuteState executeState) {
-        RecordCursor<FDBIndexedRecord<M>> recordCursor = indexCursor.mapPipelined(entry ->
-                loadIndexEntryRecord(entry, orphanBehavior, executeState), getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+        RecordCursor<FDBIndexedRecord<M>> recordCursor = getPipelineSizer().mapPipelined(indexCursor, entry ->
+                loadIndexEntryRecord(entry, orphanBehavior, executeState), PipelineOperation.INDEX_TO_RECORD);
         if (orphanBehavior == IndexOrphanBehavior.SKIP) {
             recordCursor = recordCursor.filter(Objects::nonNull);
         }
@@ -1390,6 +1426,26 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
      */
     interface PipelineSizer {
         int getPipelineSize(@Nonnull PipelineOperation pipelineOperation);
+
+        /**
+         * Apply an asynchronous function to the elements of a cursor, pipelined as this sizer determines for the given
+         * operation. By default, the pipeline size is fixed when the cursor is created, but a sizer can instead adapt
+         * it while the cursor runs, such as from how long the futures take.
+         * @param cursor the source cursor
+         * @param func the asynchronous function to apply to each element
+         * @param pipelineOperation the kind of operation that the function performs
+         * @param <T> the type of elements of the source cursor
+         * @param <V> the type of elements of the returned cursor
+         * @return a cursor with the results of applying the function
+         * @see AdaptivePipelineSizer
+         */
+        @API(API.Status.EXPERIMENTAL)
+        @Nonnull
+        default <T, V> RecordCursor<V> mapPipelined(@Nonnull RecordCursor<T> cursor,
+                                                    @Nonnull Function<T, CompletableFuture<V>> func,
+                                                    @Nonnull PipelineOperation pipelineOperation) {
+            return cursor.mapPipelined(func, getPipelineSize(pipelineOperation));
+        }
     }
 
     /**
@@ -1619,27 +1675,39 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
 
     /**
      * Plan and execute a query.
+     * If the record store has a {@link RecordQueryPlanCache}, the plan is taken from it when possible.
      * @param query the query to plan and execute
      * @return a cursor for query results
      * @see RecordQueryPlan#execute
+     * @see BaseBuilder#setPlanCache
      */
     @Nonnull
     default RecordCursor<FDBQueriedRecord<M>> executeQuery(@Nonnull RecordQuery query) {
+        final RecordQueryPlanCache.ParameterizedPlan cachedPlan = getUntypedRecordStore().planQueryWithCache(query);
+        if (cachedPlan != null) {
+            return cachedPlan.getPlan().execute(this, cachedPlan.getEvaluationContext());
+        }
         return executeQuery(planQuery(query));
     }
 
     /**
      * Plan and execute a query.
+     * If the record store has a {@link RecordQueryPlanCache}, the plan is taken from it when possible.
      * @param query the query to plan and execute
      * @param continuation continuation from a previous execution of this same query
      * @param executeProperties limits on execution
      * @return a cursor for query results
      * @see RecordQueryPlan#execute
+     * @see BaseBuilder#setPlanCache
      */
     @Nonnull
     default RecordCursor<FDBQueriedRecord<M>> executeQuery(@Nonnull RecordQuery query,
                                                            @Nullable byte[] continuation,
                                                            @Nonnull ExecuteProperties executeProperties) {
+        final RecordQueryPlanCache.ParameterizedPlan cachedPlan = getUntypedRecordStore().planQueryWithCache(query);
+        if (cachedPlan != null) {
+            return cachedPlan.getPlan().execute(this, cachedPlan.getEvaluationContext(), continuation, executeProperties);
+        }
         return executeQuery(planQuery(query), continuation, executeProperties);
     }
 
@@ -1892,6 +1960,27 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
         @Nonnull
         BaseBuilder<M, R> setStoreStateCache(@Nonnull FDBRecordStoreStateCache storeStateCache);
 
+        /**
+         * Get the query plan cache to be used by the record store.
+         *
+         * @return the plan cache used by this record store or {@code null} if queries are planned every time
+         */
+        @API(API.Status.EXPERIMENTAL)
+        @Nullable
+        RecordQueryPlanCache getPlanCache();
+
+        /**
+         * Set the query plan cache to be used by the record store. If set, {@link #executeQuery(RecordQuery)}
+         * (and its variations) reuse a cached plan for queries that differ only in the constants they compare with.
+         * The same cache can be shared by record stores in many transactions. By default there is no plan cache.
+         *
+         * @param planCache the plan cache to use or {@code null} to plan every query
+         * @return this builder
+         */
+        @API(API.Status.EXPERIMENTAL)
+        @Nonnull
+        BaseBuilder<M, R> setPlanCache(@Nullable RecordQueryPlanCache planCache);
+
         /**
          * Make a copy of this builder.
          * This can be used to share enough of the state to connect to the same record store several times in different transactions.
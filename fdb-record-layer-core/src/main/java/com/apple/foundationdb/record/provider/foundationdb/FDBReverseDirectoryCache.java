@@ -20,7 +20,10 @@
 
 package com.apple.foundationdb.record.provider.foundationdb;
 
+import com.apple.foundationdb.KeySelector;
 import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.StreamingMode;
 import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.async.AsyncUtil;
@@ -29,6 +32,7 @@ import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ResolverStateProto;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
@@ -39,17 +43,25 @@ import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 /**
  * A persistent cache providing reverse lookup facilities from the FDB {@link com.apple.foundationdb.directory.DirectoryLayer}.
@@ -371,6 +383,121 @@ public class FDBReverseDirectoryCache {
         }
     }
 
+    /**
+     * Load every entry of the persistent reverse directory cache of the given scope into the database's in-memory
+     * reverse directory cache, so that {@link LocatableResolver#reverseLookup(FDBStoreTimer, Long)} does not need to
+     * read them one at a time. The subspace is read with large range reads of up to
+     * {@link #getMaxRowsPerTransaction()} rows per transaction, or {@link #MAX_ROWS_PER_TRANSACTION} if there is no
+     * row limit, since reading every entry in one transaction could take longer than a transaction can last.
+     *
+     * @param timer {@link FDBStoreTimer} for collecting metrics
+     * @param scope the resolver whose entries to load
+     * @return a future for the number of entries loaded
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Integer> warmInMemoryCache(@Nullable FDBStoreTimer timer, @Nonnull LocatableResolver scope) {
+        final Cache<ScopedValue<Long>, String> inMemoryCache = fdb.getReverseDirectoryInMemoryCache();
+        return forEachEntry(timer, scope, (value, name) -> inMemoryCache.put(scope.wrap(value), name));
+    }
+
+    /**
+     * Write every entry of the persistent reverse directory cache of the given scope to a stream, such as a local
+     * file, from which {@link #loadSnapshot(FDBStoreTimer, LocatableResolver, InputStream)} can later fill the
+     * in-memory cache without reading the database. The snapshot records the {@link LocatableResolver#getVersion
+     * version} of the resolver, so that it is not used once the resolver's mappings are invalidated.
+     *
+     * @param timer {@link FDBStoreTimer} for collecting metrics
+     * @param scope the resolver whose entries to save
+     * @param out the stream to write the snapshot to, which is not closed
+     * @return a future for the number of entries written
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Integer> writeSnapshot(@Nullable FDBStoreTimer timer, @Nonnull LocatableResolver scope,
+                                                    @Nonnull OutputStream out) {
+        final ResolverStateProto.ReverseDirectorySnapshot.Builder snapshot = ResolverStateProto.ReverseDirectorySnapshot.newBuilder();
+        // Get the version first, so that a change during the scan leaves the snapshot out of date rather than mislabeled.
+        return scope.getVersion(timer).thenCombine(scope.getBaseSubspaceAsync(), (version, baseSubspace) -> {
+            snapshot.setVersion(version);
+            snapshot.setResolverSubspace(ByteString.copyFrom(baseSubspace.getKey()));
+            return null;
+        }).thenCompose(vignore -> forEachEntry(timer, scope, (value, name) -> snapshot.addEntriesBuilder().setValue(value).setName(name)))
+                .thenApply(count -> {
+                    try {
+                        snapshot.build().writeTo(out);
+                    } catch (IOException e) {
+                        throw new RecordCoreException("unable to write reverse directory cache snapshot", e);
+                    }
+                    return count;
+                });
+    }
+
+    /**
+     * Fill the database's in-memory reverse directory cache from a snapshot written by
+     * {@link #writeSnapshot(FDBStoreTimer, LocatableResolver, OutputStream)}. The snapshot is only used if it was
+     * taken of the same resolver and the resolver's version has not changed since. Entries added after the snapshot
+     * was taken are not in it, but will still be found by reading the database when they are needed.
+     *
+     * @param timer {@link FDBStoreTimer} for collecting metrics
+     * @param scope the resolver whose entries to load
+     * @param in the stream to read the snapshot from, which is not closed
+     * @return a future for whether the snapshot was valid and was loaded
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Boolean> loadSnapshot(@Nullable FDBStoreTimer timer, @Nonnull LocatableResolver scope,
+                                                   @Nonnull InputStream in) {
+        final ResolverStateProto.ReverseDirectorySnapshot snapshot;
+        try {
+            snapshot = ResolverStateProto.ReverseDirectorySnapshot.parseFrom(in);
+        } catch (IOException e) {
+            throw new RecordCoreException("unable to read reverse directory cache snapshot", e);
+        }
+        return scope.getVersion(timer).thenCombine(scope.getBaseSubspaceAsync(), (version, baseSubspace) -> {
+            if (snapshot.getVersion() != version || !snapshot.getResolverSubspace().equals(ByteString.copyFrom(baseSubspace.getKey()))) {
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info(KeyValueLogMessage.of("ignoring out of date reverse directory cache snapshot",
+                            LogMessageKeys.RESOLVER_PATH, scope,
+                            LogMessageKeys.VERSION, version,
+                            LogMessageKeys.STORED_VERSION, snapshot.getVersion()));
+                }
+                return false;
+            }
+            final Cache<ScopedValue<Long>, String> inMemoryCache = fdb.getReverseDirectoryInMemoryCache();
+            for (ResolverStateProto.ReverseDirectorySnapshot.Entry entry : snapshot.getEntriesList()) {
+                inMemoryCache.put(scope.wrap(entry.getValue()), entry.getName());
+            }
+            return true;
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<Integer> forEachEntry(@Nullable FDBStoreTimer timer, @Nonnull LocatableResolver scope,
+                                                    @Nonnull BiConsumer<Long, String> consumer) {
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicReference<byte[]> lastKey = new AtomicReference<>();
+        return getReverseCacheSubspace(scope).thenCompose(subspace -> AsyncUtil.whileTrue(() -> {
+            final Range range = subspace.range();
+            final KeySelector begin = lastKey.get() == null
+                                      ? KeySelector.firstGreaterOrEqual(range.begin)
+                                      : KeySelector.firstGreaterThan(lastKey.get());
+            final int limit = maxRowsPerTransaction > 0 ? maxRowsPerTransaction : MAX_ROWS_PER_TRANSACTION;
+            return fdb.runAsync(timer, null, context -> context.ensureActive().snapshot()
+                    .getRange(begin, KeySelector.firstGreaterOrEqual(range.end), limit, false, StreamingMode.WANT_ALL)
+                    .asList())
+                    .thenApply(keyValues -> {
+                        // Entries are never changed once written, so reading them in several transactions is consistent.
+                        for (KeyValue kv : keyValues) {
+                            consumer.accept(subspace.unpack(kv.getKey()).getLong(0), Tuple.fromBytes(kv.getValue()).getString(0));
+                            lastKey.set(kv.getKey());
+                        }
+                        count.addAndGet(keyValues.size());
+                        return keyValues.size() == limit;
+                    });
+        }, fdb.getExecutor())).thenApply(vignore -> count.get());
+    }
+
     /**
      * Wait for any asynchronous work started at object creation time to complete. This should only be
      * used for tests in order to avoid spurious conflicts.
@@ -116,6 +116,11 @@ public class FDBStoreTimer extends StoreTimer {
          * This time includes fetching from the database and deserialization.
          */
         LOAD_RECORD("load record"),
+        /**
+         * The amount of time taken loading records by a list of primary keys.
+         * This time includes fetching from the database and deserialization.
+         */
+        LOAD_RECORDS("load records"),
         /**
          * The amount of time taken loading record versions.
          * @deprecated this is no longer published
@@ -199,6 +204,8 @@ public class FDBStoreTimer extends StoreTimer {
         QUERY_DISTINCT("compare query records for distinct"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan} as part of executing a query. */
         QUERY_PK_DISTINCT("compare record primary key for distinct"),
+        /** The amount of time spent reading and sorting records in {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan} as part of executing a query. */
+        QUERY_SORT("sort query records in memory"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardDirectoryOperation}. */
         TIME_WINDOW_LEADERBOARD_GET_DIRECTORY("leaderboard get directory"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardWindowUpdate}. */
@@ -448,6 +455,14 @@ public class FDBStoreTimer extends StoreTimer {
         STORE_STATE_CACHE_HIT("store info cache hit", false),
         /** The number of times the store state cache was unable to return a cached result. */
         STORE_STATE_CACHE_MISS("store info cache miss", false),
+        /** The number of times the query plan cache returned a cached plan. */
+        QUERY_PLAN_CACHE_HIT("query plan cache hit", false),
+        /** The number of times the query plan cache did not have a plan and the query was planned. */
+        QUERY_PLAN_CACHE_MISS("query plan cache miss", false),
+        /** The number of times the record cache returned a cached record. */
+        RECORD_CACHE_HIT("record cache hit", false),
+        /** The number of times the record cache did not have a current record and the record was loaded. */
+        RECORD_CACHE_MISS("record cache miss", false),
         /** The number of record key-value pairs saved. */
         SAVE_RECORD_KEY("number of record keys saved", false),
         /** The size of keys for record key-value pairs saved. */
@@ -462,6 +477,8 @@ public class FDBStoreTimer extends StoreTimer {
         LOAD_TEXT_ENTRY("number of text entries loaded", false),
         /** The number of record key-value pairs loaded. */
         LOAD_RECORD_KEY("number of record keys loaded", false),
+        /** The number of range reads used to load several records with adjacent primary keys together. */
+        LOAD_RECORDS_RANGE_READ("number of range reads loading records", false),
         /** The size of keys for record key-value pairs loaded. */
         LOAD_RECORD_KEY_BYTES("number of record key bytes loaded", true),
         /** The size of values for record key-value pairs loaded. */
@@ -534,6 +551,10 @@ public class FDBStoreTimer extends StoreTimer {
         PLAN_FETCH("number of fetch from partial record plans", false),
         /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.bitmap.ComposedBitmapIndexQueryPlan}. */
         PLAN_COMPOSED_BITMAP_INDEX("number of composed bitmap plans", false),
+        /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        PLAN_SORT("number of in-memory sort plans", false),
+        /** The number of passes over its input made by the in-memory sort of a {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        QUERY_SORT_PASSES("number of in-memory sort passes", false),
         /** The number of records given given to any filter within any plan. */
         QUERY_FILTER_GIVEN("number of records given to any filter within any plan", false),
         /** The number of records passed by any filter within any plan. */
@@ -578,6 +599,8 @@ public class FDBStoreTimer extends StoreTimer {
         ONLINE_INDEX_BUILDER_RANGES_BY_COUNT("number of indexer iterations terminated by scan limit", false),
         /** The number of {@link OnlineIndexer} range scans terminated after hitting the size limit. */
         ONLINE_INDEX_BUILDER_RANGES_BY_SIZE("number of indexer iterations terminated by write limit", false),
+        /** The number of times a parallel {@link OnlineIndexer} build split a range to give part of it to an idle worker. */
+        ONLINE_INDEX_BUILDER_RANGES_SPLIT("number of indexer ranges split for idle workers", false),
         /** The number of times that a leaderboard update adds a time window. */
         TIME_WINDOW_LEADERBOARD_ADD_WINDOW("number of leaderboard windows added", false),
         /** The number of times that a leaderboard update deleted a time window. */
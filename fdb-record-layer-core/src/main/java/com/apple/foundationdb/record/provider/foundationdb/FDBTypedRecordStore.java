@@ -47,6 +47,7 @@ import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath
 import com.apple.foundationdb.record.provider.foundationdb.storestate.FDBRecordStoreStateCache;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
@@ -128,6 +129,12 @@ public class FDBTypedRecordStore<M extends Message> implements FDBRecordStoreBas
         return untypedStore.loadTypedRecord(typedSerializer, primaryKey, snapshot);
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<List<FDBStoredRecord<M>>> loadRecordsAsync(@Nonnull List<Tuple> primaryKeys, boolean snapshot) {
+        return untypedStore.loadTypedRecords(typedSerializer, primaryKeys, snapshot);
+    }
+
     @Nonnull
     @Override
     public CompletableFuture<Void> preloadRecordAsync(@Nonnull Tuple primaryKey) {
@@ -444,6 +451,19 @@ public class FDBTypedRecordStore<M extends Message> implements FDBRecordStoreBas
             return this;
         }
 
+        @Nullable
+        @Override
+        public RecordQueryPlanCache getPlanCache() {
+            return untypedStoreBuilder.getPlanCache();
+        }
+
+        @Nonnull
+        @Override
+        public Builder<M> setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+            untypedStoreBuilder.setPlanCache(planCache);
+            return this;
+        }
+
         @Nonnull
         @Override
         public CompletableFuture<FDBTypedRecordStore<M>> uncheckedOpenAsync() {
@@ -50,8 +50,10 @@ import java.util.concurrent.CompletableFuture;
  * A functional base class is provided by {@link com.apple.foundationdb.record.provider.foundationdb.indexes.StandardIndexMaintainer}.
  *
  * An {@code IndexMaintainer} instance is associated with a particular record store and index meta-data.
- * Implementers should assume that the same maintainer might be used to perform multiple record updates,
- * even though this never happens today.
+ * The record store keeps the maintainer for each index and uses it for every operation on that index for as long as
+ * the store is open, including updates for several records at the same time when saves are pipelined. So a
+ * maintainer must not keep any mutable state of its own beyond its {@link IndexMaintainerState}, or else must make
+ * that state safe to share between concurrent calls.
  *
  * @see IndexMaintainerFactory
  */
@@ -138,6 +140,23 @@ public abstract class IndexMaintainer {
     public abstract RecordCursor<InvalidIndexEntry> validateEntries(@Nullable byte[] continuation,
                                                                     @Nullable ScanProperties scanProperties);
 
+    /**
+     * Find index entries that point to a record that exists but would not have that entry. These are left behind when
+     * a record is saved over another with the same primary key without reading it first, as for an
+     * {@linkplain com.apple.foundationdb.record.metadata.RecordType#isAppendOnly append-only} record type.
+     *
+     * @param continuation any continuation from a previous invocation
+     * @param scanProperties skip, limit and other properties of the scan
+     * @return a cursor over stale index entries
+     * @see FDBRecordStore#scanAppendOnlyViolations
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public RecordCursor<InvalidIndexEntry> validateStaleEntries(@Nullable byte[] continuation,
+                                                                @Nonnull ScanProperties scanProperties) {
+        throw new RecordCoreException("Index " + state.index.getName() + " does not support finding stale entries");
+    }
+
     /**
      * Return <code>true</code> if this index be used to evaluate the given record function.
      * @param function requested function
@@ -63,8 +63,11 @@ public interface IndexMaintainerFactory {
 
     /**
      * Get an index maintainer for the given record store and index meta-data.
+     * The record store calls this once for each index and then shares the maintainer between all operations on that
+     * index, some of which may run concurrently, so the maintainer must not keep per-operation mutable state.
      * @param state the state of the new index maintainer
      * @return a new index maintainer for the type of index given
+     * @see IndexMaintainer
      */
     @Nonnull
     IndexMaintainer getIndexMaintainer(IndexMaintainerState state);
@@ -27,6 +27,7 @@ import com.apple.foundationdb.Range;
 import com.apple.foundationdb.ReadTransaction;
 import com.apple.foundationdb.StreamingMode;
 import com.apple.foundationdb.async.AsyncIterator;
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.CursorStreamingMode;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.KeyRange;
@@ -44,9 +45,13 @@ import com.apple.foundationdb.tuple.Tuple;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * The basic cursor for scanning ranges of the FDB database.
@@ -161,6 +166,103 @@ public class KeyValueCursor extends AsyncIteratorCursor<KeyValue> implements Bas
         }
     }
 
+    /**
+     * An iterator that keeps reading from the range iterator until it has a given number of entries that have not
+     * been returned yet. The range iterator only asks for its next batch once the current one has been used up, so
+     * without this, nothing is being read while the entries of a batch are being processed. It is only used for
+     * snapshot reads, which do not add read conflicts for the entries that are read ahead.
+     */
+    private static class ReadAheadIterator implements AsyncIterator<KeyValue> {
+        @Nonnull
+        private final AsyncIterator<KeyValue> underlying;
+        private final int readAhead;
+        @Nonnull
+        private final Executor executor;
+        @Nonnull
+        private final Deque<KeyValue> buffer = new ArrayDeque<>();
+        @Nullable
+        private CompletableFuture<Void> filling;
+        private boolean done;
+        @Nullable
+        private Throwable error;
+
+        ReadAheadIterator(@Nonnull AsyncIterator<KeyValue> underlying, int readAhead, @Nonnull Executor executor) {
+            this.underlying = underlying;
+            this.readAhead = readAhead;
+            this.executor = executor;
+        }
+
+        private synchronized void startFilling() {
+            if ((filling == null || filling.isDone()) && !done && buffer.size() < readAhead) {
+                filling = AsyncUtil.whileTrue(this::readOne, executor).whenComplete((vignore, err) -> {
+                    if (err != null) {
+                        synchronized (this) {
+                            error = err;
+                            done = true;
+                        }
+                    }
+                });
+            }
+        }
+
+        @Nonnull
+        private CompletableFuture<Boolean> readOne() {
+            return underlying.onHasNext().thenApply(hasNext -> {
+                synchronized (this) {
+                    if (hasNext) {
+                        buffer.addLast(underlying.next());
+                        return buffer.size() < readAhead;
+                    } else {
+                        done = true;
+                        return false;
+                    }
+                }
+            });
+        }
+
+        @Override
+        public synchronized CompletableFuture<Boolean> onHasNext() {
+            if (!buffer.isEmpty()) {
+                return AsyncUtil.READY_TRUE;
+            }
+            if (error != null) {
+                CompletableFuture<Boolean> failed = new CompletableFuture<>();
+                failed.completeExceptionally(error);
+                return failed;
+            }
+            if (done) {
+                return AsyncUtil.READY_FALSE;
+            }
+            startFilling();
+            return filling.handle((vignore, errIgnore) -> null).thenCompose(vignore -> onHasNext());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return onHasNext().join();
+        }
+
+        @Override
+        public KeyValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            synchronized (this) {
+                final KeyValue kv = buffer.removeFirst();
+                startFilling();
+                return kv;
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            if (filling != null) {
+                filling.cancel(false);
+            }
+            underlying.cancel();
+        }
+    }
+
     /**
      * A builder for {@link KeyValueCursor}.
      *
@@ -265,9 +367,15 @@ public class KeyValueCursor extends AsyncIteratorCursor<KeyValue> implements Bas
                 streamingMode = StreamingMode.EXACT;
             }
 
-            final AsyncIterator<KeyValue> iterator = context.readTransaction(scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot())
+            final boolean snapshot = scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot();
+            AsyncIterator<KeyValue> iterator = context.readTransaction(snapshot)
                     .getRange(begin, end, limit, reverse, streamingMode)
                     .iterator();
+            // A serializable read adds a read conflict for everything it reads, including entries that are read ahead
+            // but never returned, so only snapshot reads read ahead.
+            if (snapshot && scanProperties.getReadAhead() > 0) {
+                iterator = new ReadAheadIterator(iterator, scanProperties.getReadAhead(), context.getExecutor());
+            }
 
             final CursorLimitManager limitManager = new CursorLimitManager(context, scanProperties);
             final int valuesLimit = scanProperties.getExecuteProperties().getReturnedRowLimitOrMax();
@@ -57,6 +57,7 @@ import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromSto
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordPlanner;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.synchronizedsession.SynchronizedSession;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.util.LoggableException;
@@ -73,7 +74,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -84,11 +87,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Builds an index online, i.e., concurrently with other database operations. In order to minimize
@@ -121,6 +126,23 @@ import java.util.function.Supplier;
  *     indexBuilder.buildIndex();
  * }
  * </code></pre>
+ *
+ * <p>
+ * Several indexes on the same record types can be built together by adding more target indexes with
+ * {@link Builder#addTargetIndex(Index)}. Each record is then scanned once and given to the maintainers of all of
+ * the target indexes. Each index still has its own {@link RangeSet} and is marked readable on its own, so
+ * a build of several indexes can be continued even if some of them had already been partly built by another indexer.
+ * The first target index is the one whose {@link RangeSet} drives the build and whose lock is held when using
+ * synchronized sessions.
+ * </p>
+ *
+ * <p>
+ * By default, {@link #buildIndexAsync()} builds one range after another. With {@link Builder#setParallelism(int)},
+ * it instead splits the records at the shard boundaries given by {@link FDBRecordStore#getPrimaryKeyBoundaries}
+ * and builds that many ranges at a time. When a worker runs out of ranges, it takes over the second half of
+ * another worker's range, so the workers stay busy until the end. The workers share the {@code recordsPerSecond}
+ * limit.
+ * </p>
  */
 @API(API.Status.UNSTABLE)
 public class OnlineIndexer implements AutoCloseable {
@@ -184,23 +206,26 @@ public class OnlineIndexer implements AutoCloseable {
     @Nullable private SynchronizedSessionRunner synchronizedSessionRunner;
     @Nonnull private final FDBRecordStore.Builder recordStoreBuilder;
     @Nonnull private final Index index;
+    @Nonnull private final List<Index> targetIndexes;
     @Nonnull private final Collection<RecordType> recordTypes;
     @Nonnull private final TupleRange recordsRange;
 
     /**
      * The current number of records to process in a single transaction, this may go up or down when using
      * {@link #runAsync(Function, BiFunction, BiConsumer, List)}, but never above {@link Config#limit}.
+     * The workers of a parallel build share it, so it is only changed while holding this indexer's lock.
      */
-    private int limit;
+    private volatile int limit;
     @Nonnull private final Function<Config, Config> configLoader;
-    @Nonnull private Config config;
-    private int configLoaderInvocationCount = 0;
+    @Nonnull private volatile Config config;
+    private volatile int configLoaderInvocationCount = 0;
 
     /**
      * The number of successful transactions in a row as called by {@link #runAsync(Function, BiFunction, BiConsumer, List)}.
+     * Guarded by this indexer's lock.
      */
     private int successCount;
-    private long timeOfLastProgressLogMillis;
+    @Nonnull private final AtomicLong timeOfLastProgressLogMillis;
     /**
      * The total number of records scanned in the build.
      * @see Builder#setProgressLogIntervalMillis(long)
@@ -213,20 +238,28 @@ public class OnlineIndexer implements AutoCloseable {
     private final boolean useSynchronizedSession;
     private final long leaseLengthMills;
     private final boolean trackProgress;
+    private final int parallelism;
+    /**
+     * The earliest time at which the next rate-limited transaction of a parallel build may start.
+     * @see #reserveRateLimitDelayMillis()
+     */
+    private long nextRateLimitedStartMillis;
 
     @SuppressWarnings("squid:S00107")
     OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
                   @Nonnull FDBRecordStore.Builder recordStoreBuilder,
-                  @Nonnull Index index, @Nonnull Collection<RecordType> recordTypes,
+                  @Nonnull List<Index> targetIndexes, @Nonnull Collection<RecordType> recordTypes,
                   @Nonnull Function<Config, Config> configLoader, @Nonnull Config config,
                   boolean syntheticIndex,
                   @Nonnull IndexStatePrecondition indexStatePrecondition,
                   boolean useSynchronizedSession,
                   long leaseLengthMillis,
-                  boolean trackProgress) {
+                  boolean trackProgress,
+                  int parallelism) {
         this.runner = runner;
         this.recordStoreBuilder = recordStoreBuilder;
-        this.index = index;
+        this.index = targetIndexes.get(0);
+        this.targetIndexes = targetIndexes;
         this.recordTypes = recordTypes;
         this.configLoader = configLoader;
         this.config = config;
@@ -236,9 +269,10 @@ public class OnlineIndexer implements AutoCloseable {
         this.useSynchronizedSession = useSynchronizedSession;
         this.leaseLengthMills = leaseLengthMillis;
         this.trackProgress = trackProgress;
+        this.parallelism = parallelism;
 
         this.recordsRange = computeRecordsRange();
-        timeOfLastProgressLogMillis = System.currentTimeMillis();
+        timeOfLastProgressLogMillis = new AtomicLong(System.currentTimeMillis());
         totalRecordsScanned = new AtomicLong(0);
     }
 
@@ -349,7 +383,7 @@ public class OnlineIndexer implements AutoCloseable {
         return recordStoreBuilder.copyBuilder().setContext(context).openAsync();
     }
 
-    private void loadConfig() {
+    private synchronized void loadConfig() {
         configLoaderInvocationCount++;
         if (configLoader != null) {
             config = configLoader.apply(config);
@@ -410,12 +444,14 @@ public class OnlineIndexer implements AutoCloseable {
         AsyncUtil.whileTrue(() -> {
             loadConfig();
             return getRunner().runAsync(context -> openRecordStore(context).thenCompose(store -> {
-                IndexState indexState = store.getIndexState(index);
-                if (indexState != IndexState.WRITE_ONLY) {
-                    throw new RecordCoreStorageException("Attempted to build non-write-only index",
-                            LogMessageKeys.INDEX_NAME, index.getName(),
-                            recordStoreBuilder.getSubspaceProvider().logKey(), recordStoreBuilder.getSubspaceProvider().toString(context),
-                            LogMessageKeys.INDEX_STATE, indexState);
+                for (Index targetIndex : targetIndexes) {
+                    IndexState indexState = store.getIndexState(targetIndex);
+                    if (indexState != IndexState.WRITE_ONLY) {
+                        throw new RecordCoreStorageException("Attempted to build non-write-only index",
+                                LogMessageKeys.INDEX_NAME, targetIndex.getName(),
+                                recordStoreBuilder.getSubspaceProvider().logKey(), recordStoreBuilder.getSubspaceProvider().toString(context),
+                                LogMessageKeys.INDEX_STATE, indexState);
+                    }
                 }
                 return function.apply(store);
             }), handlePostTransaction, onlineIndexerLogMessageKeyValues).handle((value, e) -> {
@@ -488,8 +524,8 @@ public class OnlineIndexer implements AutoCloseable {
     }
 
     @VisibleForTesting
-    void decreaseLimit(@Nonnull FDBException fdbException,
-                       @Nullable List<Object> additionalLogMessageKeyValues) {
+    synchronized void decreaseLimit(@Nonnull FDBException fdbException,
+                                    @Nullable List<Object> additionalLogMessageKeyValues) {
         limit = Math.max(1, (3 * limit) / 4);
         if (LOGGER.isInfoEnabled()) {
             final KeyValueLogMessage message = KeyValueLogMessage.build("Lessening limit of online index build",
@@ -503,7 +539,7 @@ public class OnlineIndexer implements AutoCloseable {
         }
     }
 
-    private void tryToIncreaseLimit(@Nullable Throwable exception) {
+    private synchronized void tryToIncreaseLimit(@Nullable Throwable exception) {
         if (config.increaseLimitAfter > 0) {
             if (exception == null) {
                 successCount++;
@@ -516,7 +552,7 @@ public class OnlineIndexer implements AutoCloseable {
         }
     }
 
-    private void increaseLimit() {
+    private synchronized void increaseLimit() {
         limit = Math.min(config.maxLimit, Math.max(limit + 1, (4 * limit) / 3));
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info(KeyValueLogMessage.of("Re-increasing limit of online index build",
@@ -528,24 +564,56 @@ public class OnlineIndexer implements AutoCloseable {
 
     // Builds the index for all of the keys within a given range. This does not update the range set
     // associated with this index, so it is really designed to be a helper for other methods.
+    // When there is more than one target index, the range is only known to be unbuilt for the first one. The others
+    // are only given the records in their own missing ranges, and their range sets are updated here.
     @Nonnull
     private CompletableFuture<Tuple> buildRangeOnly(@Nonnull FDBRecordStore store,
                                                     @Nullable Tuple start, @Nullable Tuple end,
                                                     boolean respectLimit, @Nullable AtomicLong recordsScanned) {
-        return buildRangeOnly(store, TupleRange.between(start, end), respectLimit, recordsScanned)
-                .thenApply(realEnd -> realEnd == null ? end : realEnd);
+        if (targetIndexes.size() == 1) {
+            return buildRangeOnly(store, TupleRange.between(start, end), respectLimit, recordsScanned, Collections.emptyMap())
+                    .thenApply(realEnd -> realEnd == null ? end : realEnd);
+        }
+        final byte[] startBytes = packOrNull(start);
+        final byte[] endBytes = packOrNull(end);
+        final List<Index> otherIndexes = targetIndexes.subList(1, targetIndexes.size());
+        final List<CompletableFuture<List<Range>>> missingRangeFutures = new ArrayList<>(otherIndexes.size());
+        for (Index otherIndex : otherIndexes) {
+            missingRangeFutures.add(new RangeSet(store.indexRangeSubspace(otherIndex))
+                    .missingRanges(store.ensureContextActive(), startBytes, endBytes).asList());
+        }
+        return AsyncUtil.whenAll(missingRangeFutures).thenCompose(vignore -> {
+            final Map<Index, List<Range>> missingRanges = new HashMap<>();
+            for (int i = 0; i < otherIndexes.size(); i++) {
+                missingRanges.put(otherIndexes.get(i), missingRangeFutures.get(i).join());
+            }
+            return buildRangeOnly(store, TupleRange.between(start, end), respectLimit, recordsScanned, missingRanges);
+        }).thenCompose(realEnd -> {
+            final Tuple builtEnd = realEnd == null ? end : realEnd;
+            return insertRangeForOtherTargets(store, startBytes, packOrNull(builtEnd)).thenApply(vignore -> builtEnd);
+        });
     }
 
-    // TupleRange version of above.
+    // TupleRange version of above. Target indexes other than the first one that are in missingRanges only get
+    // the records within those ranges; any others get all records in the range.
     @Nonnull
     private CompletableFuture<Tuple> buildRangeOnly(@Nonnull FDBRecordStore store, @Nonnull TupleRange range,
-                                                    boolean respectLimit, @Nullable AtomicLong recordsScanned) {
-        final Subspace scannedRecordsSubspace = indexBuildScannedRecordsSubspace(store, index);
+                                                    boolean respectLimit, @Nullable AtomicLong recordsScanned,
+                                                    @Nonnull Map<Index, List<Range>> missingRanges) {
         if (store.getRecordMetaData() != recordStoreBuilder.getMetaDataProvider().getRecordMetaData()) {
             throw new MetaDataException("Store does not have the same metadata");
         }
         final IndexMaintainer maintainer = store.getIndexMaintainer(index);
-        final boolean isIdempotent = maintainer.isIdempotent();
+        final List<IndexMaintainer> otherMaintainers = new ArrayList<>(targetIndexes.size() - 1);
+        final List<List<Range>> otherMissingRanges = new ArrayList<>(targetIndexes.size() - 1);
+        boolean allIdempotent = maintainer.isIdempotent();
+        for (Index otherIndex : targetIndexes.subList(1, targetIndexes.size())) {
+            final IndexMaintainer otherMaintainer = store.getIndexMaintainer(otherIndex);
+            otherMaintainers.add(otherMaintainer);
+            otherMissingRanges.add(missingRanges.get(otherIndex));
+            allIdempotent &= otherMaintainer.isIdempotent();
+        }
+        final boolean isIdempotent = allIdempotent;
         final ExecuteProperties.Builder executeProperties = ExecuteProperties.newBuilder()
                 .setIsolationLevel(
                         isIdempotent ?
@@ -571,6 +639,8 @@ public class OnlineIndexer implements AutoCloseable {
         }
 
         AtomicLong recordsScannedCounter = new AtomicLong();
+        // Records scanned for each of the other target indexes, which only count those in the ranges they still need.
+        final AtomicLongArray otherRecordsScannedCounters = new AtomicLongArray(otherMaintainers.size());
         // Note: This runs all of the updates in serial in order to not invoke a race condition
         // in the rank code that was causing incorrect results. If everything were thread safe,
         // a larger pipeline size would be possible.
@@ -594,6 +664,16 @@ public class OnlineIndexer implements AutoCloseable {
                 timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED);
             }
             recordsScannedCounter.incrementAndGet();
+            final boolean[] otherNeedsRecord = new boolean[otherMaintainers.size()];
+            if (!otherMaintainers.isEmpty()) {
+                final byte[] primaryKeyBytes = rec.getPrimaryKey().pack();
+                for (int i = 0; i < otherMaintainers.size(); i++) {
+                    if (rangesContain(otherMissingRanges.get(i), primaryKeyBytes)) {
+                        otherNeedsRecord[i] = true;
+                        otherRecordsScannedCounters.incrementAndGet(i);
+                    }
+                }
+            }
             if (!recordTypes.contains(rec.getRecordType())) {
                 // This record is not our type, swipe left
                 return AsyncUtil.READY_TRUE;
@@ -606,13 +686,20 @@ public class OnlineIndexer implements AutoCloseable {
                 timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
             }
 
-            final CompletableFuture<Void> updateMaintainer;
+            CompletableFuture<Void> updateMaintainer;
             if (syntheticPlan == null) {
                 updateMaintainer = maintainer.update(null, rec);
             } else {
                 // Pipeline size is 1, since not all maintainers are thread-safe.
                 updateMaintainer = syntheticPlan.execute(store, rec).forEachAsync(syntheticRecord -> maintainer.update(null, syntheticRecord), 1);
             }
+            for (int i = 0; i < otherMaintainers.size(); i++) {
+                if (otherNeedsRecord[i]) {
+                    final IndexMaintainer otherMaintainer = otherMaintainers.get(i);
+                    // Chained so that the maintainers are still updated one at a time.
+                    updateMaintainer = updateMaintainer.thenCompose(vignore -> otherMaintainer.update(null, rec));
+                }
+            }
 
             return updateMaintainer.thenCompose(vignore ->
                     context.getApproximateTransactionSize().thenApply(size -> {
@@ -634,8 +721,10 @@ public class OnlineIndexer implements AutoCloseable {
                 recordsScanned.addAndGet(recordsScannedInTransaction);
             }
             if (trackProgress) {
-                store.context.ensureActive().mutate(MutationType.ADD, scannedRecordsSubspace.getKey(),
-                        FDBRecordStore.encodeRecordCount(recordsScannedInTransaction));
+                addScannedRecords(store, index, recordsScannedInTransaction);
+                for (int i = 0; i < otherMaintainers.size(); i++) {
+                    addScannedRecords(store, targetIndexes.get(i + 1), otherRecordsScannedCounters.get(i));
+                }
             }
             byte[] nextCont = empty.get() ? null : lastResult.get().getContinuation().toBytes();
             if (nextCont == null) {
@@ -657,6 +746,38 @@ public class OnlineIndexer implements AutoCloseable {
         });
     }
 
+    // Whether the given (packed) primary key is within one of the given ranges. A null list means that all keys are.
+    private static void addScannedRecords(@Nonnull FDBRecordStore store, @Nonnull Index targetIndex, long count) {
+        store.context.ensureActive().mutate(MutationType.ADD, indexBuildScannedRecordsSubspace(store, targetIndex).getKey(),
+                FDBRecordStore.encodeRecordCount(count));
+    }
+
+    private static boolean rangesContain(@Nullable List<Range> ranges, @Nonnull byte[] key) {
+        if (ranges == null) {
+            return true;
+        }
+        for (Range range : ranges) {
+            if (ByteArrayUtil.compareUnsigned(range.begin, key) <= 0 && ByteArrayUtil.compareUnsigned(key, range.end) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Marks a range as built in the range sets of all of the target indexes other than the first one. That one's
+    // range set is maintained by the callers, as it determines what is left to build.
+    @Nonnull
+    private CompletableFuture<Void> insertRangeForOtherTargets(@Nonnull FDBRecordStore store, @Nullable byte[] start, @Nullable byte[] end) {
+        if (targetIndexes.size() == 1) {
+            return AsyncUtil.DONE;
+        }
+        final List<CompletableFuture<Boolean>> insertFutures = new ArrayList<>(targetIndexes.size() - 1);
+        for (Index otherIndex : targetIndexes.subList(1, targetIndexes.size())) {
+            insertFutures.add(new RangeSet(store.indexRangeSubspace(otherIndex)).insertRange(store.ensureContextActive(), start, end));
+        }
+        return AsyncUtil.whenAll(insertFutures);
+    }
+
     // Builds a range within a single transaction. It will look for the missing ranges within the given range and build those while
     // updating the range set.
     @Nonnull
@@ -831,10 +952,15 @@ public class OnlineIndexer implements AutoCloseable {
     }
 
     private void maybeLogBuildProgress(SubspaceProvider subspaceProvider, Tuple startTuple, Tuple endTuple, Tuple realEnd) {
+        final long progressLogIntervalMillis = config.progressLogIntervalMillis;
+        final long now = System.currentTimeMillis();
+        final long lastLogMillis = timeOfLastProgressLogMillis.get();
+        // Only the worker that moves the time of the last log forward logs, when there are several.
         if (LOGGER.isInfoEnabled()
-                && (config.progressLogIntervalMillis > 0
-                    && System.currentTimeMillis() - timeOfLastProgressLogMillis > config.progressLogIntervalMillis)
-                || config.progressLogIntervalMillis == 0) {
+                && (progressLogIntervalMillis > 0
+                    && now - lastLogMillis > progressLogIntervalMillis
+                    && timeOfLastProgressLogMillis.compareAndSet(lastLogMillis, now))
+                || progressLogIntervalMillis == 0) {
             LOGGER.info(KeyValueLogMessage.of("Built Range",
                             LogMessageKeys.INDEX_NAME, index.getName(),
                             LogMessageKeys.INDEX_VERSION, index.getLastModifiedVersion(),
@@ -844,7 +970,6 @@ public class OnlineIndexer implements AutoCloseable {
                             LogMessageKeys.REAL_END, realEnd,
                             LogMessageKeys.RECORDS_SCANNED, totalRecordsScanned.get()),
                             LogMessageKeys.INDEXER_ID, onlineIndexerId);
-            timeOfLastProgressLogMillis = System.currentTimeMillis();
         }
     }
 
@@ -952,19 +1077,23 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     public CompletableFuture<Void> rebuildIndexAsync(@Nonnull FDBRecordStore store) {
         Transaction tr = store.ensureContextActive();
-        store.clearIndexData(index);
+        List<CompletableFuture<Boolean>> rangeFutures = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            store.clearIndexData(targetIndex);
 
-        // Clear the associated range set (done as part of clearIndexData above) and make it instead equal to
-        // the complete range. This isn't super necessary, but it is done
-        // to avoid (1) concurrent OnlineIndexBuilders doing more work and
-        // (2) to allow for write-only indexes to continue to do the right thing.
-        RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(index));
-        CompletableFuture<Boolean> rangeFuture = rangeSet.insertRange(tr, null, null);
+            // Clear the associated range set (done as part of clearIndexData above) and make it instead equal to
+            // the complete range. This isn't super necessary, but it is done
+            // to avoid (1) concurrent OnlineIndexBuilders doing more work and
+            // (2) to allow for write-only indexes to continue to do the right thing.
+            RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(targetIndex));
+            rangeFutures.add(rangeSet.insertRange(tr, null, null));
+        }
+        CompletableFuture<Void> rangeFuture = AsyncUtil.whenAll(rangeFutures);
 
         // Rebuild the index by going through all of the records in a transaction.
         AtomicReference<TupleRange> rangeToGo = new AtomicReference<>(recordsRange);
         CompletableFuture<Void> buildFuture = AsyncUtil.whileTrue(() ->
-                buildRangeOnly(store, rangeToGo.get(), true, null).thenApply(nextStart -> {
+                buildRangeOnly(store, rangeToGo.get(), true, null, Collections.emptyMap()).thenApply(nextStart -> {
                     if (nextStart == null) {
                         return false;
                     } else {
@@ -1022,14 +1151,16 @@ public class OnlineIndexer implements AutoCloseable {
         final Range asRange = recordsRange.toRange();
         return CompletableFuture.allOf(
                 rangeSet.insertRange(store.ensureContextActive(), null, asRange.begin),
-                rangeSet.insertRange(store.ensureContextActive(), asRange.end, null))
+                rangeSet.insertRange(store.ensureContextActive(), asRange.end, null),
+                insertRangeForOtherTargets(store, null, asRange.begin),
+                insertRangeForOtherTargets(store, asRange.end, null))
                 .thenCompose(vignore -> buildEndpoints(store, rangeSet, recordsScanned));
     }
 
     @Nonnull
     private CompletableFuture<TupleRange> buildEndpoints(@Nonnull FDBRecordStore store, @Nonnull RangeSet rangeSet,
                                                          @Nullable AtomicLong recordsScanned) {
-        boolean isIdempotent = store.getIndexMaintainer(index).isIdempotent();
+        boolean isIdempotent = targetIndexes.stream().allMatch(targetIndex -> store.getIndexMaintainer(targetIndex).isIdempotent());
         final IsolationLevel isolationLevel =
                 isIdempotent ?
                 // If idempotent: since double indexing is harmless, we can use individual records protection instead of
@@ -1051,7 +1182,10 @@ public class OnlineIndexer implements AutoCloseable {
                 return buildRange(store, null, firstTuple, recordsScanned).thenApply(vignore -> firstTuple);
             } else {
                 // Empty range -- add the whole thing.
-                return rangeSet.insertRange(store.ensureContextActive(), null, null).thenApply(bignore -> null);
+                return CompletableFuture.allOf(
+                        rangeSet.insertRange(store.ensureContextActive(), null, null),
+                        insertRangeForOtherTargets(store, null, null))
+                        .thenApply(vignore -> null);
             }
         });
 
@@ -1228,22 +1362,64 @@ public class OnlineIndexer implements AutoCloseable {
             message.addKeyAndValue(LogMessageKeys.SHOULD_BUILD_INDEX, true);
             return doBuildIndexAsync(markReadable);
         }
+        if (targetIndexes.size() > 1) {
+            message.addKeyAndValue(LogMessageKeys.TARGET_INDEX_NAMES, targetIndexNames());
+        }
         return getRunner().runAsync(context -> openRecordStore(context).thenCompose(store -> {
-            IndexState indexState = store.getIndexState(index);
-            boolean shouldBuild = shouldBuildIndex(indexState, indexStatePrecondition);
-            message.addKeyAndValue(LogMessageKeys.INITIAL_INDEX_STATE, indexState);
-            message.addKeyAndValue(LogMessageKeys.SHOULD_BUILD_INDEX, shouldBuild);
-            if (shouldBuild) {
-                boolean shouldClear = shouldClearExistingIndexEntries(indexState, indexStatePrecondition);
-                message.addKeyAndValue(LogMessageKeys.SHOULD_CLEAR_EXISTING_DATA, shouldClear);
-                if (shouldClear) {
-                    store.clearIndexData(index);
+            final List<Index> indexesToBuild = new ArrayList<>(targetIndexes.size());
+            CompletableFuture<Void> markWriteOnly = AsyncUtil.DONE;
+            for (Index targetIndex : targetIndexes) {
+                IndexState indexState = store.getIndexState(targetIndex);
+                boolean shouldBuild = shouldBuildIndex(indexState, indexStatePrecondition);
+                if (targetIndex == index) {
+                    message.addKeyAndValue(LogMessageKeys.INITIAL_INDEX_STATE, indexState);
+                    message.addKeyAndValue(LogMessageKeys.SHOULD_BUILD_INDEX, shouldBuild);
                 }
-                return store.markIndexWriteOnly(index).thenApply(vignore -> true);
+                if (shouldBuild) {
+                    boolean shouldClear = shouldClearExistingIndexEntries(indexState, indexStatePrecondition);
+                    if (targetIndex == index) {
+                        message.addKeyAndValue(LogMessageKeys.SHOULD_CLEAR_EXISTING_DATA, shouldClear);
+                    }
+                    if (shouldClear) {
+                        store.clearIndexData(targetIndex);
+                    }
+                    indexesToBuild.add(targetIndex);
+                    markWriteOnly = markWriteOnly.thenCompose(vignore -> store.markIndexWriteOnly(targetIndex)).thenApply(vignore -> null);
+                }
+            }
+            return markWriteOnly.thenApply(vignore -> indexesToBuild);
+        })).thenCompose(indexesToBuild -> {
+            if (indexesToBuild.isEmpty()) {
+                return AsyncUtil.DONE;
+            } else if (indexesToBuild.size() == targetIndexes.size()) {
+                return doBuildIndexAsync(markReadable);
             } else {
-                return AsyncUtil.READY_FALSE;
+                // Some of the target indexes did not need to be built, so build the rest without them.
+                return forTargetIndexes(indexesToBuild).doBuildIndexAsync(markReadable);
             }
-        })).thenCompose(shouldBuild -> shouldBuild ? doBuildIndexAsync(markReadable) : AsyncUtil.DONE);
+        });
+    }
+
+    // An indexer for a subset of this indexer's target indexes that shares its runner and progress counters.
+    // It is only used from within this indexer, which has already checked the index states and holds any lock.
+    @Nonnull
+    private OnlineIndexer forTargetIndexes(@Nonnull List<Index> indexes) {
+        final OnlineIndexer indexer = new OnlineIndexer(getRunner(), recordStoreBuilder, indexes, recordTypes,
+                configLoader, config, syntheticIndex, IndexStatePrecondition.ERROR_IF_DISABLED_CONTINUE_IF_WRITE_ONLY,
+                false, leaseLengthMills, trackProgress, parallelism);
+        indexer.onlineIndexerId = onlineIndexerId;
+        indexer.limit = limit;
+        indexer.totalRecordsScanned = totalRecordsScanned;
+        return indexer;
+    }
+
+    @Nonnull
+    private List<String> targetIndexNames() {
+        final List<String> names = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            names.add(targetIndex.getName());
+        }
+        return names;
     }
 
     @SuppressWarnings("fallthrough")
@@ -1274,24 +1450,58 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     private CompletableFuture<Void> doBuildIndexAsync(boolean markReadable) {
         CompletableFuture<Void> buildFuture = buildEndpoints().thenCompose(tupleRange -> {
-            if (tupleRange != null) {
-                return buildRange(Key.Evaluated.fromTuple(tupleRange.getLow()), Key.Evaluated.fromTuple(tupleRange.getHigh()));
-            } else {
+            if (tupleRange == null) {
                 return CompletableFuture.completedFuture(null);
+            } else if (parallelism > 1) {
+                return buildRangeInParallel(tupleRange);
+            } else {
+                return buildRange(Key.Evaluated.fromTuple(tupleRange.getLow()), Key.Evaluated.fromTuple(tupleRange.getHigh()));
             }
         });
+        if (targetIndexes.size() > 1) {
+            // The build above only went over the ranges missing for the first index. The others may have been
+            // missing more, if they were continued from an earlier build. (Normally this finds nothing left to build.)
+            buildFuture = buildFuture.thenCompose(vignore ->
+                    forTargetIndexes(targetIndexes.subList(1, targetIndexes.size())).doBuildIndexAsync(false));
+        }
 
         if (markReadable) {
-            return buildFuture.thenCompose(vignore ->
-                getRunner().runAsync(context -> openRecordStore(context)
-                        .thenCompose(store -> store.markIndexReadable(index))
-                        .thenApply(ignore -> null))
-            );
+            return buildFuture.thenCompose(vignore -> markTargetIndexesReadable()).thenApply(ignore -> null);
         } else {
             return buildFuture;
         }
     }
 
+    // Mark each of the target indexes readable in its own transaction, so that one that cannot be made readable
+    // (say, because of a uniqueness violation) does not keep the others from being used.
+    @Nonnull
+    private CompletableFuture<Boolean> markTargetIndexesReadable() {
+        final Iterator<Index> indexIterator = targetIndexes.iterator();
+        final AtomicBoolean anyChanged = new AtomicBoolean(false);
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        return AsyncUtil.whileTrue(() -> {
+            if (!indexIterator.hasNext()) {
+                return AsyncUtil.READY_FALSE;
+            }
+            final Index targetIndex = indexIterator.next();
+            return getRunner().runAsync(context -> openRecordStore(context)
+                    .thenCompose(store -> store.markIndexReadable(targetIndex)))
+                    .handle((changed, ex) -> {
+                        if (ex == null) {
+                            anyChanged.compareAndSet(false, changed);
+                        } else {
+                            firstError.compareAndSet(null, ex);
+                        }
+                        return true;
+                    });
+        }, getRunner().getExecutor()).thenApply(vignore -> {
+            if (firstError.get() != null) {
+                throw getRunner().getDatabase().mapAsyncToSyncException(firstError.get());
+            }
+            return anyChanged.get();
+        });
+    }
+
     /**
      * Builds an index across multiple transactions.
      * Synchronous version of {@link #buildIndexAsync}.
@@ -1342,6 +1552,21 @@ public class OnlineIndexer implements AutoCloseable {
             return Collections.singletonList(Pair.of(originalRange.getLow(), originalRange.getHigh()));
         }
 
+        List<Pair<Tuple, Tuple>> splitRanges = splitBoundaries(boundaries, maxSplit);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(KeyValueLogMessage.of("split index build range",
+                            LogMessageKeys.INDEX_NAME, index.getName(),
+                            LogMessageKeys.ORIGINAL_RANGE, originalRange,
+                            LogMessageKeys.SPLIT_RANGES, splitRanges));
+        }
+
+        return splitRanges;
+    }
+
+    // Group consecutive boundaries into at most maxSplit ranges of (nearly) the same number of shards.
+    @Nonnull
+    private static List<Pair<Tuple, Tuple>> splitBoundaries(@Nonnull List<Tuple> boundaries, int maxSplit) {
         List<Pair<Tuple, Tuple>> splitRanges = new ArrayList<>(Math.min(boundaries.size() - 1, maxSplit));
 
         // step size >= 1
@@ -1357,14 +1582,6 @@ public class OnlineIndexer implements AutoCloseable {
             }
             start = next;
         }
-
-        if (LOGGER.isInfoEnabled()) {
-            LOGGER.info(KeyValueLogMessage.of("split index build range",
-                            LogMessageKeys.INDEX_NAME, index.getName(),
-                            LogMessageKeys.ORIGINAL_RANGE, originalRange,
-                            LogMessageKeys.SPLIT_RANGES, splitRanges));
-        }
-
         return splitRanges;
     }
 
@@ -1387,14 +1604,319 @@ public class OnlineIndexer implements AutoCloseable {
         return boundaries;
     }
 
+    // The shard boundaries strictly between low and high, without blocking.
+    @Nonnull
+    private CompletableFuture<List<Tuple>> getInteriorPrimaryKeyBoundariesAsync(@Nonnull Tuple low, @Nonnull Tuple high) {
+        return getInteriorPrimaryKeyBoundariesAsync(Collections.singletonList(Pair.of(low, high)))
+                .thenApply(allBoundaries -> allBoundaries.get(0));
+    }
+
+    // The shard boundaries strictly inside each of the given ranges, all read in one transaction. A range
+    // without an end has no interior boundaries.
+    @Nonnull
+    private CompletableFuture<List<List<Tuple>>> getInteriorPrimaryKeyBoundariesAsync(@Nonnull List<Pair<Tuple, Tuple>> ranges) {
+        return getRunner().runAsync(context -> context.getReadVersionAsync()
+                .thenCompose(vignore -> openRecordStore(context))
+                .thenCompose(store -> {
+                    final List<CompletableFuture<List<Tuple>>> boundaryFutures = new ArrayList<>(ranges.size());
+                    for (Pair<Tuple, Tuple> range : ranges) {
+                        final Tuple low = range.getLeft();
+                        final Tuple high = range.getRight();
+                        if (high == null) {
+                            boundaryFutures.add(CompletableFuture.completedFuture(Collections.emptyList()));
+                        } else {
+                            boundaryFutures.add(store.getPrimaryKeyBoundaries(low, high).asList().thenApply(boundaries -> boundaries.stream()
+                                    .filter(boundary -> low.compareTo(boundary) < 0 && high.compareTo(boundary) > 0)
+                                    .collect(Collectors.toList())));
+                        }
+                    }
+                    return AsyncUtil.getAll(boundaryFutures);
+                }));
+    }
+
+    // Builds the given range with parallelism workers, each running its own sequence of transactions.
+    @Nonnull
+    private CompletableFuture<Void> buildRangeInParallel(@Nonnull TupleRange tupleRange) {
+        final ParallelBuild parallelBuild = new ParallelBuild(recordStoreBuilder.getSubspaceProvider());
+        return getInteriorPrimaryKeyBoundariesAsync(tupleRange.getLow(), tupleRange.getHigh()).thenCompose(interior -> {
+            final List<Tuple> boundaries = new ArrayList<>(interior.size() + 2);
+            boundaries.add(tupleRange.getLow());
+            boundaries.addAll(interior);
+            boundaries.add(tupleRange.getHigh());
+            final List<Pair<Tuple, Tuple>> splitRanges = splitBoundaries(boundaries, parallelism);
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info(KeyValueLogMessage.of("building index in parallel",
+                                LogMessageKeys.INDEX_NAME, index.getName(),
+                                LogMessageKeys.ORIGINAL_RANGE, tupleRange,
+                                LogMessageKeys.SPLIT_RANGES, splitRanges,
+                                LogMessageKeys.INDEXER_ID, onlineIndexerId));
+            }
+            // Only the parts of each split range that are not built yet are handed out.
+            final List<CompletableFuture<Void>> missingRangeFutures = new ArrayList<>(splitRanges.size());
+            for (Pair<Tuple, Tuple> splitRange : splitRanges) {
+                missingRangeFutures.add(addMissingRanges(parallelBuild, splitRange.getLeft(), splitRange.getRight()));
+            }
+            return AsyncUtil.whenAll(missingRangeFutures);
+        }).thenCompose(vignore -> {
+            final List<CompletableFuture<Void>> workers = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(runParallelWorker(parallelBuild));
+            }
+            return AsyncUtil.whenAll(workers);
+        });
+    }
+
+    // One worker of a parallel build: repeatedly builds the next part of the range it holds, and once that is done,
+    // takes a pending range or part of another worker's range, until there is nothing left.
+    @Nonnull
+    private CompletableFuture<Void> runParallelWorker(@Nonnull ParallelBuild parallelBuild) {
+        final AtomicReference<WorkRange> current = new AtomicReference<>();
+        return AsyncUtil.whileTrue(() -> {
+            if (parallelBuild.isFailed()) {
+                // Another worker failed, so stop after this worker's last transaction rather than finishing its range.
+                if (current.get() != null) {
+                    parallelBuild.finish(current.get());
+                    current.set(null);
+                }
+                return AsyncUtil.READY_FALSE;
+            }
+            if (current.get() == null) {
+                final WorkRange pending = parallelBuild.takePending();
+                if (pending == null) {
+                    return stealRange(parallelBuild).thenApply(stolen -> {
+                        current.set(stolen);
+                        return stolen != null;
+                    });
+                }
+                current.set(pending);
+            }
+            final WorkRange workRange = current.get();
+            final Tuple start = parallelBuild.getStart(workRange);
+            final Tuple end = parallelBuild.getEnd(workRange);
+            return MoreAsyncUtil.delayedFuture(reserveRateLimitDelayMillis(), TimeUnit.MILLISECONDS)
+                    .thenCompose(vignore -> buildUnbuiltRange(start, end))
+                    .handle((realEnd, ex) -> {
+                        if (ex == null) {
+                            maybeLogBuildProgress(parallelBuild.subspaceProvider, start, end, realEnd);
+                            if (realEnd == null || realEnd.equals(end) || !parallelBuild.advance(workRange, realEnd)) {
+                                parallelBuild.finish(workRange);
+                                current.set(null);
+                            }
+                            return AsyncUtil.READY_TRUE;
+                        }
+                        // The end may have moved back if the range was split while the transaction was running.
+                        final Tuple currentEnd = parallelBuild.getEnd(workRange);
+                        parallelBuild.finish(workRange);
+                        current.set(null);
+                        final RuntimeException unwrappedEx = getRunner().getDatabase().mapAsyncToSyncException(ex);
+                        if (isRecordBuiltRangeException(unwrappedEx)) {
+                            // Part of the range was built by someone else, most likely by a worker that took over
+                            // the end of this range while this worker's transaction was already going past it.
+                            return addMissingRanges(parallelBuild, start, currentEnd).thenApply(vignore -> true);
+                        }
+                        parallelBuild.fail();
+                        throw unwrappedEx;
+                    })
+                    .thenCompose(Function.identity());
+        }, getRunner().getExecutor());
+    }
+
+    private static boolean isRecordBuiltRangeException(@Nullable Throwable ex) {
+        Throwable cause = ex;
+        while (cause != null) {
+            if (cause instanceof RecordBuiltRangeException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> addMissingRanges(@Nonnull ParallelBuild parallelBuild, @Nonnull Tuple start, @Nullable Tuple end) {
+        return getRunner().runAsync(context -> parallelBuild.subspaceProvider.getSubspaceAsync(context).thenCompose(subspace -> {
+            RangeSet rangeSet = new RangeSet(subspace.subspace(Tuple.from(FDBRecordStore.INDEX_RANGE_SPACE_KEY, index.getSubspaceKey())));
+            return rangeSet.missingRanges(context.ensureActive(), start.pack(), packOrNull(end)).asList();
+        })).thenAccept(missingRanges -> {
+            for (Range missingRange : missingRanges) {
+                parallelBuild.addPending(Tuple.fromBytes(missingRange.begin),
+                        Arrays.equals(missingRange.end, END_BYTES) ? null : Tuple.fromBytes(missingRange.end));
+            }
+        });
+    }
+
+    // Split the range held by another worker at a shard boundary and return the second half, or null if there
+    // is no range left that can be split. The range with the most shards left is chosen. The boundaries of all of
+    // the candidates are read in a single transaction.
+    @Nonnull
+    private CompletableFuture<WorkRange> stealRange(@Nonnull ParallelBuild parallelBuild) {
+        final List<WorkRange> candidates = parallelBuild.getActiveRanges();
+        if (candidates.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<Pair<Tuple, Tuple>> candidateRanges = new ArrayList<>(candidates.size());
+        for (WorkRange candidate : candidates) {
+            candidateRanges.add(Pair.of(parallelBuild.getStart(candidate), parallelBuild.getEnd(candidate)));
+        }
+        return getInteriorPrimaryKeyBoundariesAsync(candidateRanges).thenCompose(allBoundaries -> {
+            int victimIndex = -1;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (!allBoundaries.get(i).isEmpty() && (victimIndex < 0 || allBoundaries.get(i).size() > allBoundaries.get(victimIndex).size())) {
+                    victimIndex = i;
+                }
+            }
+            if (victimIndex < 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final List<Tuple> victimBoundaries = allBoundaries.get(victimIndex);
+            final WorkRange stolen = parallelBuild.split(candidates.get(victimIndex), victimBoundaries.get(victimBoundaries.size() / 2));
+            if (stolen == null) {
+                // The other worker has already gone past the boundary (or finished), so look again.
+                return stealRange(parallelBuild);
+            }
+            final FDBStoreTimer timer = getRunner().getTimer();
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RANGES_SPLIT);
+            }
+            return CompletableFuture.completedFuture(stolen);
+        });
+    }
+
+    // Get how long to wait before starting the next transaction of a parallel build. Each transaction
+    // reserves the time it would take to process limit records at recordsPerSecond, so that all of the
+    // workers together stay within that rate.
+    private synchronized long reserveRateLimitDelayMillis() {
+        if (config.recordsPerSecond == UNLIMITED) {
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        final long start = Math.max(now, nextRateLimitedStartMillis);
+        nextRateLimitedStartMillis = start + 1000L * limit / config.recordsPerSecond;
+        return start - now;
+    }
+
+    /**
+     * A range of primary keys to be built by a worker of a parallel build. Its endpoints are guarded by the
+     * {@link ParallelBuild} that it belongs to.
+     */
+    private static class WorkRange {
+        @Nonnull
+        private Tuple start;
+        @Nullable
+        private Tuple end;
+
+        WorkRange(@Nonnull Tuple start, @Nullable Tuple end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The ranges of a parallel build: those not yet taken by any worker and those being built by one.
+     * Ranges never overlap, but a worker's transaction may already be running past the end of its range when that
+     * range is split. If so, one of the transactions will find that part already built, which the {@link RangeSet}
+     * detects, as it does for separate indexers building the same index.
+     */
+    private static class ParallelBuild {
+        @Nonnull
+        private final SubspaceProvider subspaceProvider;
+        @Nonnull
+        private final Queue<WorkRange> pending = new ArrayDeque<>();
+        @Nonnull
+        private final List<WorkRange> active = new ArrayList<>();
+        private boolean failed;
+
+        ParallelBuild(@Nonnull SubspaceProvider subspaceProvider) {
+            this.subspaceProvider = subspaceProvider;
+        }
+
+        synchronized void addPending(@Nonnull Tuple start, @Nullable Tuple end) {
+            if (!failed) {
+                pending.add(new WorkRange(start, end));
+            }
+        }
+
+        @Nullable
+        synchronized WorkRange takePending() {
+            final WorkRange workRange = pending.poll();
+            if (workRange != null) {
+                active.add(workRange);
+            }
+            return workRange;
+        }
+
+        @Nonnull
+        synchronized List<WorkRange> getActiveRanges() {
+            return new ArrayList<>(active);
+        }
+
+        @Nonnull
+        synchronized Tuple getStart(@Nonnull WorkRange workRange) {
+            return workRange.start;
+        }
+
+        @Nullable
+        synchronized Tuple getEnd(@Nonnull WorkRange workRange) {
+            return workRange.end;
+        }
+
+        // Move the start of the range up to where the last transaction stopped, returning false if the range is
+        // done because it was split in the meantime at or before that point.
+        synchronized boolean advance(@Nonnull WorkRange workRange, @Nonnull Tuple newStart) {
+            if (workRange.end != null && newStart.compareTo(workRange.end) >= 0) {
+                return false;
+            }
+            workRange.start = newStart;
+            return true;
+        }
+
+        synchronized void finish(@Nonnull WorkRange workRange) {
+            active.remove(workRange);
+        }
+
+        // Split off the part of the range from the split point onward as a new active range, if the split point
+        // is still inside it.
+        @Nullable
+        synchronized WorkRange split(@Nonnull WorkRange workRange, @Nonnull Tuple splitPoint) {
+            if (failed || !active.contains(workRange) || splitPoint.compareTo(workRange.start) <= 0
+                    || workRange.end == null || splitPoint.compareTo(workRange.end) >= 0) {
+                return null;
+            }
+            final WorkRange stolen = new WorkRange(splitPoint, workRange.end);
+            workRange.end = splitPoint;
+            active.add(stolen);
+            return stolen;
+        }
+
+        synchronized boolean isFailed() {
+            return failed;
+        }
+
+        // Stop the other workers once one has failed.
+        synchronized void fail() {
+            failed = true;
+            pending.clear();
+            active.clear();
+        }
+    }
+
     /**
      * Mark the index as readable if it is built.
+     * If there is more than one target index, each one that is built is marked readable.
      * @return a future that will complete to <code>true</code> if the index is readable and <code>false</code>
      *     otherwise
      */
     @API(API.Status.EXPERIMENTAL)
     @Nonnull
     public CompletableFuture<Boolean> markReadableIfBuilt() {
+        if (targetIndexes.size() > 1) {
+            // Each index is checked on its own, so that the built ones are marked readable even if others are not.
+            final List<CompletableFuture<Boolean>> readableFutures = new ArrayList<>(targetIndexes.size());
+            for (Index targetIndex : targetIndexes) {
+                readableFutures.add(forTargetIndexes(Collections.singletonList(targetIndex)).markReadableIfBuilt());
+            }
+            return AsyncUtil.getAll(readableFutures).thenApply(readable -> readable.stream().allMatch(Boolean::booleanValue));
+        }
         return getRunner().runAsync(context -> openRecordStore(context).thenCompose(store -> {
             final RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(index));
             return rangeSet.missingRanges(store.ensureContextActive()).iterator().onHasNext()
@@ -1413,6 +1935,7 @@ public class OnlineIndexer implements AutoCloseable {
 
     /**
      * Mark the index as readable.
+     * If there is more than one target index, each is marked readable in a separate transaction.
      * @return a future that will either complete exceptionally if the index can not
      * be made readable or will contain <code>true</code> if the store was modified
      * and <code>false</code> otherwise
@@ -1420,6 +1943,9 @@ public class OnlineIndexer implements AutoCloseable {
     @API(API.Status.EXPERIMENTAL)
     @Nonnull
     public CompletableFuture<Boolean> markReadable() {
+        if (targetIndexes.size() > 1) {
+            return markTargetIndexesReadable();
+        }
         return getRunner().runAsync(context -> openRecordStore(context)
                 .thenCompose(store -> store.markIndexReadable(index)));
     }
@@ -1692,6 +2218,8 @@ public class OnlineIndexer implements AutoCloseable {
         protected FDBRecordStore.Builder recordStoreBuilder;
         @Nullable
         protected Index index;
+        @Nonnull
+        protected List<Index> additionalTargetIndexes = new ArrayList<>();
         @Nullable
         protected Collection<RecordType> recordTypes;
 
@@ -1709,6 +2237,7 @@ public class OnlineIndexer implements AutoCloseable {
         private IndexStatePrecondition indexStatePrecondition = IndexStatePrecondition.BUILD_IF_DISABLED_CONTINUE_BUILD_IF_WRITE_ONLY;
         private boolean useSynchronizedSession = true;
         private long leaseLengthMillis = DEFAULT_LEASE_LENGTH_MILLIS;
+        private int parallelism = 1;
 
         protected Builder() {
         }
@@ -1821,6 +2350,64 @@ public class OnlineIndexer implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Get all of the indexes to be built, starting with the one given by {@link #setIndex}.
+         * @return the indexes to be built
+         */
+        @Nonnull
+        public List<Index> getTargetIndexes() {
+            final List<Index> targetIndexes = new ArrayList<>(additionalTargetIndexes.size() + 1);
+            if (index != null) {
+                targetIndexes.add(index);
+            }
+            targetIndexes.addAll(additionalTargetIndexes);
+            return targetIndexes;
+        }
+
+        /**
+         * Add an index to be built. The first index added (or the one given to {@link #setIndex}) is the main index
+         * of the build. Any others must be on the same record types; they are built in the same pass over the records.
+         * @param index an index to be built
+         * @return this builder
+         */
+        @Nonnull
+        public Builder addTargetIndex(@Nonnull Index index) {
+            if (this.index == null) {
+                this.index = index;
+            } else {
+                additionalTargetIndexes.add(index);
+            }
+            return this;
+        }
+
+        /**
+         * Add an index to be built.
+         * @param indexName an index to be built
+         * @return this builder
+         * @see #addTargetIndex(Index)
+         */
+        @Nonnull
+        public Builder addTargetIndex(@Nonnull String indexName) {
+            return addTargetIndex(getRecordMetaData().getIndex(indexName));
+        }
+
+        /**
+         * Set the indexes to be built. These must all be on the same record types and will be built in a single
+         * pass over the records.
+         * @param indexes the indexes to be built
+         * @return this builder
+         * @see #addTargetIndex(Index)
+         */
+        @Nonnull
+        public Builder setTargetIndexes(@Nonnull List<Index> indexes) {
+            this.index = null;
+            additionalTargetIndexes.clear();
+            for (Index targetIndex : indexes) {
+                addTargetIndex(targetIndex);
+            }
+            return this;
+        }
+
         /**
          * Get the explicit set of record types to be indexed.
          *
@@ -2409,6 +2996,23 @@ public class OnlineIndexer implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Set the number of ranges that {@link #buildIndexAsync()} (or its variations) builds at the same time.
+         * By default this is {@code 1}, which builds the ranges one after another.
+         * <p>
+         * The records are first split at the shard boundaries returned by {@link FDBRecordStore#getPrimaryKeyBoundaries}
+         * into this many ranges, which are built concurrently. A worker that finishes its range takes over half of the
+         * range that has the most shards left. The {@link #setRecordsPerSecond(int) records per second} limit applies
+         * to all of the workers together.
+         * </p>
+         * @param parallelism the number of ranges to build at the same time
+         * @return this builder
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
         /**
          * Build an {@link OnlineIndexer}.
          * @return a new online indexer
@@ -2416,8 +3020,8 @@ public class OnlineIndexer implements AutoCloseable {
         public OnlineIndexer build() {
             validate();
             Config conf = new Config(limit, maxRetries, recordsPerSecond, progressLogIntervalMillis, increaseLimitAfter, maxWriteLimitBytes);
-            return new OnlineIndexer(runner, recordStoreBuilder, index, recordTypes, configLoader, conf, syntheticIndex,
-                    indexStatePrecondition, useSynchronizedSession, leaseLengthMillis, trackProgress);
+            return new OnlineIndexer(runner, recordStoreBuilder, getTargetIndexes(), recordTypes, configLoader, conf, syntheticIndex,
+                    indexStatePrecondition, useSynchronizedSession, leaseLengthMillis, trackProgress, parallelism);
         }
 
         protected void validate() {
@@ -2444,6 +3048,7 @@ public class OnlineIndexer implements AutoCloseable {
                     }
                 }
             }
+            validateAdditionalTargetIndexes(metaData);
             if (recordTypes.stream().anyMatch(RecordType::isSynthetic)) {
                 syntheticIndex = true;
                 // The (stored) types to scan, not the (synthetic) types that are indexed.
@@ -2452,10 +3057,34 @@ public class OnlineIndexer implements AutoCloseable {
             }
         }
 
+        private void validateAdditionalTargetIndexes(@Nonnull RecordMetaData metaData) {
+            if (additionalTargetIndexes.isEmpty()) {
+                return;
+            }
+            final Set<RecordType> indexRecordTypes = new HashSet<>(metaData.recordTypesForIndex(index));
+            final Set<String> indexNames = new HashSet<>();
+            indexNames.add(index.getName());
+            for (Index targetIndex : additionalTargetIndexes) {
+                if (!metaData.hasIndex(targetIndex.getName()) || targetIndex != metaData.getIndex(targetIndex.getName())) {
+                    throw new MetaDataException("Index " + targetIndex.getName() + " not contained within specified metadata");
+                }
+                if (!indexNames.add(targetIndex.getName())) {
+                    throw new MetaDataException("Index " + targetIndex.getName() + " given more than once");
+                }
+                if (!indexRecordTypes.equals(new HashSet<>(metaData.recordTypesForIndex(targetIndex)))) {
+                    throw new MetaDataException("Index " + targetIndex.getName() + " is not on the same record types as index " + index.getName());
+                }
+            }
+            if (indexRecordTypes.stream().anyMatch(RecordType::isSynthetic)) {
+                throw new MetaDataException("Synthetic indexes cannot be built together with other indexes");
+            }
+        }
+
         private void validateLimits() {
             checkPositive(maxRetries, "maximum retries");
             checkPositive(limit, "record limit");
             checkPositive(recordsPerSecond, "records per second value");
+            checkPositive(parallelism, "parallelism");
         }
 
         private static void checkPositive(int value, String desc) {
@@ -0,0 +1,288 @@
+/*
+ * PartitionedRecordScanner.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.cursors.AutoContinuingCursor;
+import com.apple.foundationdb.record.cursors.LazyCursor;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.UnorderedUnionCursor;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Scans all the records of a record store in parallel, each part on its own sequence of transactions.
+ *
+ * <p>
+ * The records are split into ranges of primary keys with {@link FDBRecordStore#getPrimaryKeyPartitions}, which puts
+ * the splits on the boundaries between FDB storage servers. Each range is then scanned by an
+ * {@link AutoContinuingCursor}, which opens a new transaction whenever the one before reaches the limits of the
+ * {@link ScanProperties}. So the scan properties should have a time limit or a scan limit, as the default ones do,
+ * or else a large range will fail when its transaction gets too old.
+ * </p>
+ *
+ * <p>
+ * A caller that hands the ranges out to its own workers can scan each with {@link #scanPartition} and keep a
+ * continuation for each. Alternatively, {@link #scanPartitions} returns the records from all the ranges as they
+ * arrive, in no particular order, with a single continuation that holds the continuation of every range.
+ * </p>
+ *
+ * <pre><code>
+ * try (PartitionedRecordScanner scanner = PartitionedRecordScanner.newBuilder()
+ *         .setRecordStoreBuilder(recordStoreBuilder)
+ *         .setMaxPartitions(8)
+ *         .build()) {
+ *     List&lt;TupleRange&gt; partitions = scanner.getPartitions();
+ *     scanner.scanPartitions(partitions, null).forEach(record -&gt; ...).join();
+ * }
+ * </code></pre>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class PartitionedRecordScanner implements AutoCloseable {
+    /**
+     * Default most number of ranges to split the records into.
+     */
+    public static final int DEFAULT_MAX_PARTITIONS = 10;
+    /**
+     * Default time limit for each transaction, well under the five seconds after which FDB rejects reads.
+     */
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 3000L;
+    /**
+     * Default scan properties, which read at snapshot isolation and give each transaction
+     * {@link #DEFAULT_TIME_LIMIT_MILLIS}.
+     */
+    public static final ScanProperties DEFAULT_SCAN_PROPERTIES = new ScanProperties(ExecuteProperties.newBuilder()
+            .setIsolationLevel(IsolationLevel.SNAPSHOT)
+            .setTimeLimit(DEFAULT_TIME_LIMIT_MILLIS)
+            .build());
+
+    @Nonnull
+    private final FDBDatabaseRunner runner;
+    @Nonnull
+    private final FDBRecordStore.Builder recordStoreBuilder;
+    @Nonnull
+    private final ScanProperties scanProperties;
+    private final int maxPartitions;
+    private final boolean prefetch;
+
+    protected PartitionedRecordScanner(@Nonnull FDBDatabaseRunner runner,
+                                       @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                                       @Nonnull ScanProperties scanProperties,
+                                       int maxPartitions, boolean prefetch) {
+        this.runner = runner;
+        this.recordStoreBuilder = recordStoreBuilder;
+        this.scanProperties = scanProperties;
+        this.maxPartitions = maxPartitions;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Get the runner used to open the transactions of the scan.
+     * @return the runner
+     */
+    @Nonnull
+    public FDBDatabaseRunner getRunner() {
+        return runner;
+    }
+
+    /**
+     * Get the scan properties given to each transaction of the scan.
+     * @return the scan properties
+     */
+    @Nonnull
+    public ScanProperties getScanProperties() {
+        return scanProperties;
+    }
+
+    /**
+     * Get the most number of ranges to split the records into.
+     * @return the most number of partitions
+     */
+    public int getMaxPartitions() {
+        return maxPartitions;
+    }
+
+    /**
+     * Split the records of the record store into ranges of primary keys.
+     * @return a future that completes to the ranges of primary keys, in order
+     * @see FDBRecordStore#getPrimaryKeyPartitions
+     */
+    @Nonnull
+    public CompletableFuture<List<TupleRange>> getPartitionsAsync() {
+        return runner.runAsync(context -> openRecordStore(context)
+                .thenCompose(store -> store.getPrimaryKeyPartitions(maxPartitions)));
+    }
+
+    /**
+     * Synchronous version of {@link #getPartitionsAsync()}.
+     * @return the ranges of primary keys, in order
+     */
+    @Nonnull
+    public List<TupleRange> getPartitions() {
+        return runner.asyncToSync(FDBStoreTimer.Waits.WAIT_GET_BOUNDARY, getPartitionsAsync());
+    }
+
+    /**
+     * Scan the records in one range of primary keys, continuing in new transactions as needed.
+     * @param partition a range returned by {@link #getPartitions()}
+     * @param continuation any continuation from a previous scan of the same range
+     * @return a cursor over the records in the range
+     */
+    @Nonnull
+    public RecordCursor<FDBStoredRecord<Message>> scanPartition(@Nonnull TupleRange partition, @Nullable byte[] continuation) {
+        return new AutoContinuingCursor<>(runner, (context, partitionContinuation) ->
+                new LazyCursor<>(openRecordStore(context)
+                        .thenApply(store -> store.scanRecords(partition, partitionContinuation, scanProperties)),
+                        context.getExecutor()),
+                continuation, prefetch);
+    }
+
+    /**
+     * Scan the records in all the given ranges of primary keys at once, each range on its own transactions. Records
+     * are returned as they are read, so records from different ranges are interleaved in no particular order.
+     * @param partitions ranges returned by {@link #getPartitions()}
+     * @param continuation any continuation from a previous scan of the same list of ranges
+     * @return a cursor over the records in all the ranges
+     */
+    @Nonnull
+    public RecordCursor<FDBStoredRecord<Message>> scanPartitions(@Nonnull List<TupleRange> partitions, @Nullable byte[] continuation) {
+        if (partitions.isEmpty()) {
+            throw new RecordCoreArgumentException("no partitions to scan");
+        }
+        if (partitions.size() == 1) {
+            // A union needs at least two children, and with only one, its continuation can be the child's.
+            return scanPartition(partitions.get(0), continuation);
+        }
+        final List<Function<byte[], RecordCursor<FDBStoredRecord<Message>>>> cursorFunctions = new ArrayList<>(partitions.size());
+        for (TupleRange partition : partitions) {
+            cursorFunctions.add(partitionContinuation -> scanPartition(partition, partitionContinuation));
+        }
+        return UnorderedUnionCursor.create(cursorFunctions, continuation, runner.getTimer());
+    }
+
+    @Nonnull
+    private CompletableFuture<FDBRecordStore> openRecordStore(@Nonnull FDBRecordContext context) {
+        return recordStoreBuilder.copyBuilder().setContext(context).openAsync();
+    }
+
+    @Override
+    public void close() {
+        runner.close();
+    }
+
+    /**
+     * Create a builder for a {@link PartitionedRecordScanner}.
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for {@link PartitionedRecordScanner}.
+     *
+     * <pre><code>
+     * PartitionedRecordScanner.newBuilder().setRecordStoreBuilder(recordStoreBuilder).setMaxPartitions(8).build()
+     * </code></pre>
+     *
+     * or
+     *
+     * <pre><code>
+     * PartitionedRecordScanner.newBuilder().setDatabase(fdb).setRecordStoreBuilder(recordStoreBuilder).build()
+     * </code></pre>
+     */
+    public static class Builder extends RecordStoreRunnerBuilder<Builder> {
+        @Nonnull
+        private ScanProperties scanProperties = DEFAULT_SCAN_PROPERTIES;
+        private int maxPartitions = DEFAULT_MAX_PARTITIONS;
+        private boolean prefetch = true;
+
+        protected Builder() {
+        }
+
+        @Nonnull
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        /**
+         * Set the scan properties given to each transaction of the scan. These should have a limit, such as a time
+         * limit, that stops each transaction before it gets too old.
+         * @param scanProperties the scan properties for each transaction
+         * @return this builder
+         */
+        public Builder setScanProperties(@Nonnull ScanProperties scanProperties) {
+            this.scanProperties = scanProperties;
+            return this;
+        }
+
+        /**
+         * Set the most number of ranges to split the records into, which is also the most number of transactions
+         * that {@link #scanPartitions} has running at once.
+         * @param maxPartitions the most number of partitions
+         * @return this builder
+         */
+        public Builder setMaxPartitions(int maxPartitions) {
+            if (maxPartitions < 1) {
+                throw new RecordCoreArgumentException("maxPartitions must be positive")
+                        .addLogInfo(LogMessageKeys.LIMIT, maxPartitions);
+            }
+            this.maxPartitions = maxPartitions;
+            return this;
+        }
+
+        /**
+         * Set whether each range starts reading its next record, and its next transaction, before being asked for it.
+         * @param prefetch whether to prefetch
+         * @return this builder
+         * @see AutoContinuingCursor
+         */
+        public Builder setPrefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * Build a {@link PartitionedRecordScanner}.
+         * @return a new scanner
+         */
+        @Nonnull
+        public PartitionedRecordScanner build() {
+            final FDBRecordStore.Builder recordStoreBuilder = getRecordStoreBuilder();
+            final FDBDatabaseRunner runner = getRunner();
+            return new PartitionedRecordScanner(runner, recordStoreBuilder, scanProperties, maxPartitions, prefetch);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * RecordStoreRunnerBuilder.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Base builder for the utilities that do their work on a record store over a series of transactions, such as
+ * {@link PartitionedRecordScanner}, {@link BulkRecordLoader} and {@link TimeBucketExpirer}.
+ *
+ * <p>
+ * The built utility opens a record store from the record store builder in each transaction it runs with the
+ * runner. The utility owns the runner and closes it when it is itself closed, even if the runner was given with
+ * {@link #setRunner}.
+ * </p>
+ * @param <B> the type of the concrete builder
+ */
+@API(API.Status.EXPERIMENTAL)
+public abstract class RecordStoreRunnerBuilder<B extends RecordStoreRunnerBuilder<B>> {
+    @Nullable
+    private FDBDatabaseRunner runner;
+    @Nullable
+    private FDBRecordStore.Builder recordStoreBuilder;
+
+    protected RecordStoreRunnerBuilder() {
+    }
+
+    @Nonnull
+    protected abstract B self();
+
+    /**
+     * Set the runner that will be used to run the transactions.
+     * @param runner the runner that connects to the target database
+     * @return this builder
+     */
+    public B setRunner(@Nullable FDBDatabaseRunner runner) {
+        this.runner = runner;
+        return self();
+    }
+
+    /**
+     * Set the database in which to run.
+     *
+     * Normally the database is gotten from {@link #setRecordStore} or {@link #setRecordStoreBuilder}.
+     * @param database the target database
+     * @return this builder
+     */
+    public B setDatabase(@Nonnull FDBDatabase database) {
+        this.runner = database.newRunner();
+        return self();
+    }
+
+    /**
+     * Set the record store builder that will be used to open record store instances in each transaction.
+     * @param recordStoreBuilder the record store builder
+     * @return this builder
+     */
+    public B setRecordStoreBuilder(@Nonnull FDBRecordStore.Builder recordStoreBuilder) {
+        this.recordStoreBuilder = recordStoreBuilder.copyBuilder().setContext(null);
+        if (runner == null && recordStoreBuilder.getContext() != null) {
+            runner = recordStoreBuilder.getContext().newRunner();
+        }
+        return self();
+    }
+
+    /**
+     * Set the record store that will be used as a template to open record store instances in each transaction.
+     * @param recordStore the target record store
+     * @return this builder
+     */
+    public B setRecordStore(@Nonnull FDBRecordStore recordStore) {
+        recordStoreBuilder = recordStore.asBuilder().setContext(null);
+        if (runner == null) {
+            runner = recordStore.getRecordContext().newRunner();
+        }
+        return self();
+    }
+
+    /**
+     * Get the runner to give to the built utility.
+     * @return the runner
+     * @throws RecordCoreException if neither the runner nor the database has been set
+     */
+    @Nonnull
+    protected FDBDatabaseRunner getRunner() {
+        if (runner == null) {
+            throw new RecordCoreException("database runner must be set");
+        }
+        return runner;
+    }
+
+    /**
+     * Get the record store builder to give to the built utility.
+     * @return the record store builder
+     * @throws RecordCoreException if neither the record store nor its builder has been set
+     */
+    @Nonnull
+    protected FDBRecordStore.Builder getRecordStoreBuilder() {
+        if (recordStoreBuilder == null) {
+            throw new RecordCoreException("record store must be set");
+        }
+        return recordStoreBuilder;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * TimeBucketExpirer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.logging.KeyValueLogMessage;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.RecordTypeKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.ThenKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.TimeBucketFunctionKeyExpression;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.tuple.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes old records of a record type whose primary key starts with a {@link TimeBucketFunctionKeyExpression}, one
+ * whole time bucket at a time.
+ *
+ * <p>
+ * Each bucket is removed with {@link FDBRecordStore#deleteRecordsWhere}, which clears the range of the bucket's records
+ * and of their index entries rather than deleting each record. So every index on the record type must also start with the
+ * same time bucket, and the primary key may only have a {@link com.apple.foundationdb.record.metadata.Key.Expressions#recordType()}
+ * before it. A bucket is only deleted once all of it is older than the cutoff, so records can live up to one bucket
+ * width longer than the time to live.
+ * </p>
+ *
+ * <p>
+ * Each call finds the oldest bucket, deletes it if it has expired, and repeats, each bucket in its own transaction,
+ * until the oldest bucket is one that has not expired. This is meant to be called periodically, such as from a
+ * scheduled background task.
+ * </p>
+ *
+ * <pre><code>
+ * try (TimeBucketExpirer expirer = TimeBucketExpirer.newBuilder()
+ *         .setRecordStoreBuilder(recordStoreBuilder)
+ *         .setRecordType("Event")
+ *         .setTimeToLiveMillis(TimeUnit.DAYS.toMillis(30))
+ *         .build()) {
+ *     expirer.expire();
+ * }
+ * </code></pre>
+ *
+ * @see com.apple.foundationdb.record.metadata.RecordTypeBuilder#setTimeBucketedPrimaryKey
+ */
+@API(API.Status.EXPERIMENTAL)
+public class TimeBucketExpirer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimeBucketExpirer.class);
+
+    private static final ScanProperties FIRST_RECORD = new ScanProperties(ExecuteProperties.newBuilder()
+            .setReturnedRowLimit(1)
+            .setIsolationLevel(IsolationLevel.SNAPSHOT)
+            .build());
+
+    @Nonnull
+    private final FDBDatabaseRunner runner;
+    @Nonnull
+    private final FDBRecordStore.Builder recordStoreBuilder;
+    @Nonnull
+    private final String recordTypeName;
+    @Nullable
+    private final Long timeToLiveMillis;
+
+    protected TimeBucketExpirer(@Nonnull FDBDatabaseRunner runner, @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                                @Nonnull String recordTypeName, @Nullable Long timeToLiveMillis) {
+        this.runner = runner;
+        this.recordStoreBuilder = recordStoreBuilder;
+        this.recordTypeName = recordTypeName;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Delete the buckets of records that are entirely older than the time to live, taking the time field to be
+     * milliseconds since the epoch.
+     * @return a future that completes to the number of buckets deleted
+     */
+    @Nonnull
+    public CompletableFuture<Long> expireAsync() {
+        if (timeToLiveMillis == null) {
+            throw new RecordCoreException("time to live must be set");
+        }
+        return expireBeforeAsync(System.currentTimeMillis() - timeToLiveMillis);
+    }
+
+    /**
+     * Synchronous version of {@link #expireAsync()}.
+     * @return the number of buckets deleted
+     */
+    public long expire() {
+        return runner.asyncToSync(FDBStoreTimer.Waits.WAIT_DELETE_RECORD, expireAsync());
+    }
+
+    /**
+     * Delete the buckets of records that are entirely before the given time.
+     * @param cutoff the earliest time to keep, in the unit of the time field
+     * @return a future that completes to the number of buckets deleted
+     */
+    @Nonnull
+    public CompletableFuture<Long> expireBeforeAsync(long cutoff) {
+        final AtomicLong deleted = new AtomicLong();
+        return AsyncUtil.whileTrue(() -> runner.runAsync(context -> deleteOldestBucket(context, cutoff))
+                .thenApply(more -> {
+                    if (more) {
+                        deleted.incrementAndGet();
+                    }
+                    return more;
+                }), runner.getExecutor())
+                .thenApply(vignore -> deleted.get());
+    }
+
+    /**
+     * Synchronous version of {@link #expireBeforeAsync(long)}.
+     * @param cutoff the earliest time to keep, in the unit of the time field
+     * @return the number of buckets deleted
+     */
+    public long expireBefore(long cutoff) {
+        return runner.asyncToSync(FDBStoreTimer.Waits.WAIT_DELETE_RECORD, expireBeforeAsync(cutoff));
+    }
+
+    @Nonnull
+    private CompletableFuture<Boolean> deleteOldestBucket(@Nonnull FDBRecordContext context, long cutoff) {
+        return recordStoreBuilder.copyBuilder().setContext(context).openAsync().thenCompose(store -> {
+            final RecordType recordType = store.getRecordMetaData().getRecordType(recordTypeName);
+            final List<KeyExpression> keys = primaryKeyChildren(recordType);
+            final boolean typePrefix = keys.get(0) instanceof RecordTypeKeyExpression;
+            final int position = typePrefix ? 1 : 0;
+            if (keys.size() <= position || !(keys.get(position) instanceof TimeBucketFunctionKeyExpression)) {
+                throw new MetaDataException("primary key does not start with a time bucket",
+                        LogMessageKeys.RECORD_TYPE, recordTypeName);
+            }
+            final TimeBucketFunctionKeyExpression timeBucket = (TimeBucketFunctionKeyExpression)keys.get(position);
+            final long width = timeBucket.getBucketWidth();
+            final TupleRange range = typePrefix ? TupleRange.allOf(recordType.getRecordTypeKeyTuple()) : TupleRange.ALL;
+            return store.scanRecords(range, null, FIRST_RECORD).first().thenCompose(first -> {
+                if (!first.isPresent()) {
+                    return AsyncUtil.READY_FALSE;
+                }
+                final Tuple primaryKey = first.get().getPrimaryKey();
+                final long bucket = primaryKey.getLong(position);
+                // Written as a subtraction so that a bucket at the end of the range of longs does not overflow.
+                if (bucket > cutoff - width) {
+                    return AsyncUtil.READY_FALSE;
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(KeyValueLogMessage.of("expiring time bucket",
+                            LogMessageKeys.RECORD_TYPE, recordTypeName,
+                            LogMessageKeys.KEY, bucket));
+                }
+                final QueryComponent component = Query.keyExpression(timeBucket).equalsValue(bucket);
+                final CompletableFuture<Void> delete = typePrefix ?
+                                                       store.deleteRecordsWhereAsync(recordTypeName, component) :
+                                                       store.deleteRecordsWhereAsync(component);
+                return delete.thenApply(vignore -> true);
+            });
+        });
+    }
+
+    @Nonnull
+    private static List<KeyExpression> primaryKeyChildren(@Nonnull RecordType recordType) {
+        final KeyExpression primaryKey = recordType.getPrimaryKey();
+        if (primaryKey instanceof ThenKeyExpression) {
+            return ((ThenKeyExpression)primaryKey).getChildren();
+        } else {
+            return Collections.singletonList(primaryKey);
+        }
+    }
+
+    @Override
+    public void close() {
+        runner.close();
+    }
+
+    /**
+     * Create a builder for a {@link TimeBucketExpirer}.
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for {@link TimeBucketExpirer}.
+     *
+     * <pre><code>
+     * TimeBucketExpirer.newBuilder().setRecordStoreBuilder(recordStoreBuilder).setRecordType("Event").setTimeToLiveMillis(ttl).build()
+     * </code></pre>
+     */
+    public static class Builder extends RecordStoreRunnerBuilder<Builder> {
+        @Nullable
+        private String recordTypeName;
+        @Nullable
+        private Long timeToLiveMillis;
+
+        protected Builder() {
+        }
+
+        @Nonnull
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        /**
+         * Set the record type whose records are to be expired.
+         * @param recordTypeName the name of a record type whose primary key starts with a time bucket
+         * @return this builder
+         */
+        public Builder setRecordType(@Nonnull String recordTypeName) {
+            this.recordTypeName = recordTypeName;
+            return this;
+        }
+
+        /**
+         * Set how long records are kept by {@link #expire()}.
+         * @param timeToLiveMillis how long to keep records, in milliseconds
+         * @return this builder
+         */
+        public Builder setTimeToLiveMillis(long timeToLiveMillis) {
+            if (timeToLiveMillis < 0) {
+                throw new RecordCoreArgumentException("time to live must not be negative")
+                        .addLogInfo(LogMessageKeys.TIME_LIMIT, timeToLiveMillis);
+            }
+            this.timeToLiveMillis = timeToLiveMillis;
+            return this;
+        }
+
+        /**
+         * Build a {@link TimeBucketExpirer}.
+         * @return a new expirer
+         */
+        @Nonnull
+        public TimeBucketExpirer build() {
+            final FDBRecordStore.Builder recordStoreBuilder = getRecordStoreBuilder();
+            final FDBDatabaseRunner runner = getRunner();
+            if (recordTypeName == null) {
+                throw new RecordCoreException("record type must be set");
+            }
+            return new TimeBucketExpirer(runner, recordStoreBuilder, recordTypeName, timeToLiveMillis);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * DistinctCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.cursors;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.IllegalContinuationAccessChecker;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * A cursor that keeps track of the keys of the elements already returned, so that duplicates can be removed
+ * across continuations.
+ *
+ * <p>
+ * The keys are held in a {@link SeenKeys}, a compact hash set of byte arrays, which the inner cursor is given
+ * to filter out elements whose key it already contains. The continuation of this cursor includes the
+ * continuation of the inner cursor together with every key added so far, so that a distinct can be resumed in
+ * a later transaction without returning again any element returned by an earlier one.
+ * </p>
+ *
+ * <p>
+ * Both the memory used by the keys and the size of the continuation grow with the number of distinct elements,
+ * so the set has a limit on its size in bytes. Adding a key beyond that limit fails the cursor with a
+ * {@link RecordCoreException} rather than silently returning duplicates.
+ * </p>
+ *
+ * @param <T> the type of elements of the cursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class DistinctCursor<T> implements RecordCursor<T> {
+    @Nonnull
+    private final RecordCursor<T> inner;
+    @Nonnull
+    private final SeenKeys seen;
+
+    @Nullable
+    private CompletableFuture<Boolean> hasNextFuture;
+    @Nullable
+    private RecordCursorResult<T> nextResult;
+
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    private DistinctCursor(@Nonnull RecordCursor<T> inner, @Nonnull SeenKeys seen) {
+        this.inner = inner;
+        this.seen = seen;
+    }
+
+    /**
+     * Create a cursor that removes duplicates across continuations.
+     * @param innerFunction a function from the set of keys seen and the continuation of the inner cursor to an inner
+     * cursor that only returns elements whose key it successfully {@linkplain SeenKeys#add(byte[]) adds} to the set
+     * @param maxBytes the most bytes that the set of keys seen may use
+     * @param continuation any continuation from a previous distinct
+     * @param <T> the type of elements of the cursor
+     * @return a cursor returning the elements of the inner cursor along with continuations that include the keys seen
+     */
+    @Nonnull
+    public static <T> DistinctCursor<T> create(@Nonnull BiFunction<SeenKeys, byte[], RecordCursor<T>> innerFunction,
+                                               long maxBytes,
+                                               @Nullable byte[] continuation) {
+        if (maxBytes <= 0) {
+            throw new RecordCoreArgumentException("distinct size limit must be positive")
+                    .addLogInfo(LogMessageKeys.LIMIT, maxBytes);
+        }
+        final SeenKeys seen = new SeenKeys(maxBytes);
+        byte[] innerContinuation = null;
+        if (continuation != null) {
+            final RecordCursorProto.DistinctContinuation parsed;
+            try {
+                parsed = RecordCursorProto.DistinctContinuation.parseFrom(continuation);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("error parsing continuation", ex)
+                        .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+            }
+            if (parsed.hasContinuation()) {
+                innerContinuation = parsed.getContinuation().toByteArray();
+            }
+            if (parsed.hasSeenKeys()) {
+                seen.addAll(parsed.getSeenKeys().toByteArray());
+            }
+        }
+        return new DistinctCursor<>(innerFunction.apply(seen, innerContinuation), seen);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<T>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        return inner.onNext().thenApply(innerResult -> {
+            // The inner cursor has already added the key of a returned element, so the count includes it.
+            if (!innerResult.getContinuation().isEnd()) {
+                innerResult = innerResult.withContinuation(new Continuation(innerResult.getContinuation(), seen, seen.size()));
+            }
+            mayGetContinuation = !innerResult.hasNext();
+            nextResult = innerResult;
+            return innerResult;
+        });
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (hasNextFuture == null) {
+            mayGetContinuation = false;
+            hasNextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return hasNextFuture;
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mayGetContinuation = true;
+        hasNextFuture = null;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (hasNextFuture != null) {
+            hasNextFuture.cancel(false);
+        }
+        inner.close();
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return inner.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    /**
+     * A hash set of byte arrays that only grows.
+     *
+     * <p>
+     * The keys are stored one after another in a single array, each preceded by its length as a varint, which is
+     * also the form they take in a continuation. An open-addressed table of offsets into that array is used to
+     * find them. Since keys are never removed or moved within the array, the first so many keys can be serialized
+     * at any later time.
+     * </p>
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static class SeenKeys {
+        private static final int INITIAL_TABLE_SIZE = 16;
+
+        private final long maxBytes;
+        @Nonnull
+        private byte[] keys = new byte[64];
+        // The end of the keys after the first n of them, so that a prefix can be serialized later.
+        @Nonnull
+        private int[] ends = new int[INITIAL_TABLE_SIZE / 2];
+        // Offset of each key in keys plus one, or zero for an empty slot.
+        @Nonnull
+        private int[] table = new int[INITIAL_TABLE_SIZE];
+        private int size;
+        private int keysLength;
+
+        SeenKeys(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Add a key to the set.
+         * @param key the key to add
+         * @return {@code true} if the key was not already in the set
+         * @throws RecordCoreException if adding the key would take the set over its size limit
+         */
+        public boolean add(@Nonnull byte[] key) {
+            return add(key, 0, key.length);
+        }
+
+        /**
+         * Get the number of keys in the set.
+         * @return the number of keys
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get the approximate number of bytes used by the set.
+         * @return the memory used by the set
+         */
+        public long getBytes() {
+            return (long)keysLength + (long)table.length * Integer.BYTES + (long)ends.length * Integer.BYTES;
+        }
+
+        private boolean add(@Nonnull byte[] source, int offset, int length) {
+            final int hash = hash(source, offset, length);
+            int slot = hash & (table.length - 1);
+            while (table[slot] != 0) {
+                if (keyEquals(table[slot] - 1, source, offset, length)) {
+                    return false;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            final boolean grow = (size + 1) * 2 > table.length;
+            final int headerLength = varintLength(length);
+            final long newBytes = (long)keysLength + headerLength + length +
+                                  (long)(grow ? table.length * 2 : table.length) * Integer.BYTES +
+                                  (long)(size + 1 > ends.length ? ends.length * 2 : ends.length) * Integer.BYTES;
+            if (newBytes > maxBytes) {
+                throw new RecordCoreException("distinct keys exceed size limit")
+                        .addLogInfo(LogMessageKeys.LIMIT, maxBytes)
+                        .addLogInfo(LogMessageKeys.KEY_COUNT, size);
+            }
+            if (keysLength + headerLength + length > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + headerLength + length));
+            }
+            final int start = keysLength;
+            int pos = writeVarint(keys, start, length);
+            System.arraycopy(source, offset, keys, pos, length);
+            keysLength = pos + length;
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[size++] = keysLength;
+            table[slot] = start + 1;
+            if (grow) {
+                rehash(table.length * 2);
+            }
+            return true;
+        }
+
+        // Add serialized keys, such as from a continuation.
+        void addAll(@Nonnull byte[] serialized) {
+            int pos = 0;
+            while (pos < serialized.length) {
+                int length = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    if (pos >= serialized.length || shift > 28) {
+                        throw new RecordCoreException("invalid distinct keys in continuation");
+                    }
+                    b = serialized[pos++];
+                    length |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                if (length < 0 || length > serialized.length - pos) {
+                    throw new RecordCoreException("invalid distinct keys in continuation");
+                }
+                add(serialized, pos, length);
+                pos += length;
+            }
+        }
+
+        @Nonnull
+        ByteString toByteString(int count) {
+            return count == 0 ? ByteString.EMPTY : ByteString.copyFrom(keys, 0, ends[count - 1]);
+        }
+
+        private void rehash(int newTableSize) {
+            final int[] newTable = new int[newTableSize];
+            int start = 0;
+            for (int i = 0; i < size; i++) {
+                final int length = readLength(start);
+                int slot = hash(keys, start + varintLength(length), length) & (newTableSize - 1);
+                while (newTable[slot] != 0) {
+                    slot = (slot + 1) & (newTableSize - 1);
+                }
+                newTable[slot] = start + 1;
+                start = ends[i];
+            }
+            table = newTable;
+        }
+
+        private boolean keyEquals(int start, @Nonnull byte[] source, int offset, int length) {
+            if (readLength(start) != length) {
+                return false;
+            }
+            final int pos = start + varintLength(length);
+            for (int i = 0; i < length; i++) {
+                if (keys[pos + i] != source[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int readLength(int start) {
+            int pos = start;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = keys[pos++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return length;
+        }
+
+        private static int hash(@Nonnull byte[] source, int offset, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + source[offset + i];
+            }
+            // Spread the bits, since the table index is taken from the low ones.
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        private static int varintLength(int value) {
+            int length = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                length++;
+            }
+            return length;
+        }
+
+        private static int writeVarint(@Nonnull byte[] dest, int pos, int value) {
+            while ((value & ~0x7F) != 0) {
+                dest[pos++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            dest[pos++] = (byte)value;
+            return pos;
+        }
+    }
+
+    private static class Continuation implements RecordCursorContinuation {
+        @Nonnull
+        private final RecordCursorContinuation innerContinuation;
+        @Nonnull
+        private final SeenKeys seen;
+        private final int count;
+        @Nullable
+        private byte[] cachedBytes;
+
+        private Continuation(@Nonnull RecordCursorContinuation innerContinuation, @Nonnull SeenKeys seen, int count) {
+            this.innerContinuation = innerContinuation;
+            this.seen = seen;
+            this.count = count;
+        }
+
+        @Nullable
+        @Override
+        public byte[] toBytes() {
+            if (cachedBytes == null) {
+                final RecordCursorProto.DistinctContinuation.Builder builder = RecordCursorProto.DistinctContinuation.newBuilder();
+                final byte[] innerBytes = innerContinuation.toBytes();
+                if (innerBytes != null) {
+                    builder.setContinuation(ByteString.copyFrom(innerBytes));
+                }
+                builder.setSeenKeys(seen.toByteString(count));
+                cachedBytes = builder.build().toByteArray();
+            }
+            return cachedBytes;
+        }
+
+        @Override
+        public boolean isEnd() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * SortCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.cursors;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.IllegalContinuationAccessChecker;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A cursor that returns the elements of another cursor sorted by a key computed from each element.
+ *
+ * <p>
+ * At most {@code maxSize} elements are held in memory at a time. The cursor makes a pass over its inner cursor,
+ * keeping only the {@code maxSize} smallest elements that come after the last element it has returned. After
+ * those have been returned, it makes another pass if any more were seen. So the inner cursor is read once when it has
+ * no more than {@code maxSize} elements.
+ * </p>
+ *
+ * <p>
+ * The continuation holds the keys of the elements kept so far, so a sort can be resumed in another transaction.
+ * If the inner cursor stops because of an out-of-band limit before a pass is complete, the cursor stops with the same
+ * reason, without returning anything, and its continuation also holds the inner cursor's continuation, so that the
+ * pass carries on from there. Once a pass is complete, the continuation holds the keys of the elements from it that
+ * are still to be returned. Only keys are kept, so the elements for them are loaded again with a loader function
+ * when they are returned after resuming; any element that no longer exists is skipped. The keys must therefore be
+ * unique and identify the element, for example by ending with the primary key.
+ * </p>
+ *
+ * @param <T> the type of elements of the cursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class SortCursor<T> implements RecordCursor<T> {
+    @Nonnull
+    private final Function<byte[], RecordCursor<T>> innerFunction;
+    @Nonnull
+    private final Function<T, Tuple> keyFunction;
+    @Nonnull
+    private final Function<Tuple, CompletableFuture<T>> loader;
+    @Nonnull
+    private final Comparator<Tuple> comparator;
+    @Nonnull
+    private final Comparator<Map.Entry<Tuple, T>> entryComparator;
+    private final int maxSize;
+    @Nullable
+    private final FDBStoreTimer timer;
+    @Nonnull
+    private final Executor executor;
+
+    @Nullable
+    private Tuple lastKey;
+    // The elements kept by the current pass, largest first, so that it is the one to go when there are too many.
+    // A value is null if the element was kept by an earlier transaction and has not been loaded again.
+    @Nonnull
+    private final PriorityQueue<Map.Entry<Tuple, T>> kept;
+    // The continuation of the inner cursor of an unfinished pass.
+    @Nullable
+    private byte[] passContinuation;
+    // The elements from the last finished pass, in order. This list is not changed, so continuations can share it.
+    @Nonnull
+    private List<Map.Entry<Tuple, T>> sorted = Collections.emptyList();
+    private int position;
+    private boolean morePasses = true;
+    @Nullable
+    private RecordCursor<T> inner;
+
+    @Nullable
+    private CompletableFuture<Boolean> hasNextFuture;
+    @Nullable
+    private RecordCursorResult<T> nextResult;
+
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    private SortCursor(@Nonnull Function<byte[], RecordCursor<T>> innerFunction,
+                       @Nonnull Function<T, Tuple> keyFunction,
+                       @Nonnull Function<Tuple, CompletableFuture<T>> loader,
+                       boolean reverse,
+                       int maxSize,
+                       @Nullable byte[] continuation,
+                       @Nullable FDBStoreTimer timer,
+                       @Nonnull Executor executor) {
+        this.innerFunction = innerFunction;
+        this.keyFunction = keyFunction;
+        this.loader = loader;
+        this.comparator = reverse ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        this.entryComparator = Map.Entry.comparingByKey(comparator);
+        this.kept = new PriorityQueue<>(entryComparator.reversed());
+        this.maxSize = maxSize;
+        this.timer = timer;
+        this.executor = executor;
+        if (continuation != null) {
+            final RecordCursorProto.SortContinuation parsed;
+            try {
+                parsed = RecordCursorProto.SortContinuation.parseFrom(continuation);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("error parsing continuation", ex)
+                        .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+            }
+            if (parsed.hasLastKey()) {
+                lastKey = Tuple.fromBytes(parsed.getLastKey().toByteArray());
+            }
+            final List<Map.Entry<Tuple, T>> entries = new ArrayList<>(parsed.getKeysCount());
+            for (ByteString key : parsed.getKeysList()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(Tuple.fromBytes(key.toByteArray()), null));
+            }
+            if (parsed.hasInnerContinuation()) {
+                passContinuation = parsed.getInnerContinuation().toByteArray();
+                kept.addAll(entries);
+            } else {
+                sorted = entries;
+            }
+            morePasses = parsed.getMorePasses();
+        }
+    }
+
+    /**
+     * Create a cursor that sorts the elements of another cursor.
+     * @param innerFunction a function from a continuation to the cursor to be sorted, which is called for each pass
+     * @param keyFunction a function from elements to the unique key to sort them by
+     * @param loader a function to load an element again from its key when resuming, completing to {@code null} if
+     * it no longer exists
+     * @param reverse whether to return elements from the largest key to the smallest
+     * @param maxSize the most elements to hold in memory
+     * @param continuation any continuation from a previous sort
+     * @param timer the timer used to instrument the sort
+     * @param executor the executor for the cursor
+     * @param <T> the type of elements of the cursor
+     * @return a cursor returning the elements of the inner cursor in key order
+     */
+    @Nonnull
+    public static <T> SortCursor<T> create(@Nonnull Function<byte[], RecordCursor<T>> innerFunction,
+                                           @Nonnull Function<T, Tuple> keyFunction,
+                                           @Nonnull Function<Tuple, CompletableFuture<T>> loader,
+                                           boolean reverse,
+                                           int maxSize,
+                                           @Nullable byte[] continuation,
+                                           @Nullable FDBStoreTimer timer,
+                                           @Nonnull Executor executor) {
+        if (maxSize <= 0) {
+            throw new RecordCoreArgumentException("sort size must be positive")
+                    .addLogInfo(LogMessageKeys.LIMIT, maxSize);
+        }
+        return new SortCursor<>(innerFunction, keyFunction, loader, reverse, maxSize, continuation, timer, executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<T>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        return computeNext().thenApply(this::postProcess);
+    }
+
+    @Nonnull
+    private CompletableFuture<RecordCursorResult<T>> computeNext() {
+        if (position < sorted.size()) {
+            final Map.Entry<Tuple, T> entry = sorted.get(position++);
+            lastKey = entry.getKey();
+            if (entry.getValue() != null) {
+                return CompletableFuture.completedFuture(RecordCursorResult.withNextValue(entry.getValue(), sortedContinuation()));
+            }
+            return loader.apply(entry.getKey()).thenCompose(value -> value == null ? computeNext() :
+                    CompletableFuture.completedFuture(RecordCursorResult.withNextValue(value, sortedContinuation())));
+        }
+        if (passContinuation == null && !morePasses) {
+            return CompletableFuture.completedFuture(RecordCursorResult.exhausted());
+        }
+        return sortPass().thenCompose(stopped -> stopped != null ? CompletableFuture.completedFuture(stopped) : computeNext());
+    }
+
+    @Nonnull
+    private Continuation<T> sortedContinuation() {
+        return new Continuation<>(lastKey, sorted.subList(position, sorted.size()), null, morePasses);
+    }
+
+    // Read the rest of the inner cursor, keeping the first maxSize elements after the last one returned.
+    // Returns a result to stop with if the inner cursor stopped early, or else null.
+    @Nonnull
+    private CompletableFuture<RecordCursorResult<T>> sortPass() {
+        final long startTime = System.nanoTime();
+        if (passContinuation == null) {
+            kept.clear();
+            morePasses = false;
+        }
+        inner = innerFunction.apply(passContinuation);
+        final RecordCursor<T> passCursor = inner;
+        final List<RecordCursorResult<T>> innerEnd = new ArrayList<>(1);
+        return AsyncUtil.whileTrue(() -> passCursor.onNext().thenApply(result -> {
+            if (!result.hasNext()) {
+                innerEnd.add(result);
+                return false;
+            }
+            final T value = result.get();
+            final Tuple key = keyFunction.apply(value);
+            if (lastKey == null || comparator.compare(key, lastKey) > 0) {
+                kept.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+                if (kept.size() > maxSize) {
+                    kept.poll();
+                    morePasses = true;
+                }
+            }
+            return true;
+        }), executor).thenApply(vignore -> {
+            passCursor.close();
+            inner = null;
+            if (timer != null) {
+                timer.recordSinceNanoTime(FDBStoreTimer.Events.QUERY_SORT, startTime);
+            }
+            final RecordCursorResult<T> end = innerEnd.get(0);
+            if (end.getNoNextReason().isOutOfBand()) {
+                // The pass is not finished, so nothing can be returned yet, but it can be carried on from here.
+                passContinuation = end.getContinuation().toBytes();
+                return RecordCursorResult.withoutNextValue(new Continuation<>(lastKey, new ArrayList<>(kept), passContinuation, morePasses),
+                        end.getNoNextReason());
+            }
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.QUERY_SORT_PASSES);
+            }
+            passContinuation = null;
+            final List<Map.Entry<Tuple, T>> entries = new ArrayList<>(kept);
+            entries.sort(entryComparator);
+            kept.clear();
+            sorted = entries;
+            position = 0;
+            return null;
+        });
+    }
+
+    @Nonnull
+    private RecordCursorResult<T> postProcess(@Nonnull RecordCursorResult<T> result) {
+        mayGetContinuation = !result.hasNext();
+        nextResult = result;
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (hasNextFuture == null) {
+            mayGetContinuation = false;
+            hasNextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return hasNextFuture;
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mayGetContinuation = true;
+        hasNextFuture = null;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (inner != null) {
+            inner.close();
+        }
+        if (hasNextFuture != null) {
+            hasNextFuture.cancel(false);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this) && inner != null) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    private static class Continuation<T> implements RecordCursorContinuation {
+        @Nullable
+        private final Tuple lastKey;
+        @Nonnull
+        private final List<Map.Entry<Tuple, T>> entries;
+        @Nullable
+        private final byte[] innerContinuation;
+        private final boolean morePasses;
+        @Nullable
+        private byte[] cachedBytes;
+
+        public Continuation(@Nullable Tuple lastKey, @Nonnull List<Map.Entry<Tuple, T>> entries,
+                            @Nullable byte[] innerContinuation, boolean morePasses) {
+            this.lastKey = lastKey;
+            this.entries = entries;
+            this.innerContinuation = innerContinuation;
+            this.morePasses = morePasses;
+        }
+
+        @Override
+        public boolean isEnd() {
+            return false;
+        }
+
+        @Nonnull
+        @Override
+        public byte[] toBytes() {
+            if (cachedBytes == null) {
+                final RecordCursorProto.SortContinuation.Builder builder = RecordCursorProto.SortContinuation.newBuilder();
+                if (lastKey != null) {
+                    builder.setLastKey(ByteString.copyFrom(lastKey.pack()));
+                }
+                for (Map.Entry<Tuple, T> entry : entries) {
+                    builder.addKeys(ByteString.copyFrom(entry.getKey().pack()));
+                }
+                if (innerContinuation != null) {
+                    builder.setInnerContinuation(ByteString.copyFrom(innerContinuation));
+                }
+                builder.setMorePasses(morePasses);
+                cachedBytes = builder.build().toByteArray();
+            }
+            return cachedBytes;
+        }
+    }
+}
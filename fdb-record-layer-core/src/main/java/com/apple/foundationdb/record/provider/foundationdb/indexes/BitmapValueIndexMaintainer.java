@@ -150,14 +150,9 @@ public class BitmapValueIndexMaintainer extends StandardIndexMaintainer {
                 final long trimmedEnd = Math.min(entryEnd, endPosition);
                 if (trimmedStart < trimmedEnd) {
                     final Tuple trimmedKey = indexEntry.getKey().popBack().add(trimmedStart);
-                    final byte[] trimmedBitmap = new byte[((int)(trimmedEnd - trimmedStart) + 7) / 8];
-                    for (long i = trimmedStart; i < trimmedEnd; i++) {
-                        int offset = (int)(i - entryStart);
-                        if ((entryBitmap[offset / 8] & (byte)(1 << (offset % 8))) != 0) {
-                            int trimmedOffset = (int)(i - trimmedStart);
-                            trimmedBitmap[trimmedOffset / 8] |= (byte)(1 << (trimmedOffset % 8));
-                        }
-                    }
+                    final byte[] trimmedBitmap = WordBitmap.fromBytes(entryBitmap)
+                            .range((int)(trimmedStart - entryStart), (int)(trimmedEnd - entryStart))
+                            .toBytes();
                     final Tuple subValue = Tuple.from(trimmedBitmap);
                     return Optional.of(new IndexEntry(indexEntry.getIndex(), trimmedKey, subValue));
                 } else {
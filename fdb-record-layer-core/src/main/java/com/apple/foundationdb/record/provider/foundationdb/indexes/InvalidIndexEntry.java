@@ -87,6 +87,7 @@ public class InvalidIndexEntry {
     public enum Reasons implements Reason {
         ORPHAN("index entry does not point to an existing record"),
         MISSING("index entry is missing for a record"),
+        STALE("index entry does not match the record it points to"),
         ;
 
         private final String description;
@@ -109,6 +110,10 @@ public class InvalidIndexEntry {
         return new InvalidIndexEntry(entry, Reasons.MISSING, record);
     }
 
+    public static InvalidIndexEntry newStale(@Nonnull IndexEntry entry, @Nonnull FDBStoredRecord<Message> record) {
+        return new InvalidIndexEntry(entry, Reasons.STALE, record);
+    }
+
     @Nonnull
     public IndexEntry getEntry() {
         return entry;
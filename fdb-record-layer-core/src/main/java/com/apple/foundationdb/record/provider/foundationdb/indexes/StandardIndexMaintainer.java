@@ -296,9 +296,27 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     protected <M extends Message> CompletableFuture<Void> updateIndexKeys(@Nonnull final FDBIndexableRecord<M> savedRecord,
                                                                           final boolean remove,
                                                                           @Nonnull final List<IndexEntry> indexEntries) {
-        return CompletableFuture.allOf(indexEntries.stream()
-                .map(entry -> updateOneKeyAsync(savedRecord, remove, entry))
-                .toArray(CompletableFuture[]::new));
+        if (indexEntries.size() == 1) {
+            return updateOneKeyAsync(savedRecord, remove, indexEntries.get(0));
+        }
+        // Most updates only set or clear keys and so are already done; only wait for those that are not.
+        List<CompletableFuture<Void>> pending = null;
+        for (IndexEntry entry : indexEntries) {
+            final CompletableFuture<Void> future = updateOneKeyAsync(savedRecord, remove, entry);
+            if (!MoreAsyncUtil.isCompletedNormally(future)) {
+                if (pending == null) {
+                    pending = new ArrayList<>();
+                }
+                pending.add(future);
+            }
+        }
+        if (pending == null) {
+            return AsyncUtil.DONE;
+        } else if (pending.size() == 1) {
+            return pending.get(0);
+        } else {
+            return AsyncUtil.whenAll(pending);
+        }
     }
 
     /**
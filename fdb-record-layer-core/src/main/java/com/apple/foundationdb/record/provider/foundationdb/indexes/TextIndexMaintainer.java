@@ -22,7 +22,10 @@ package com.apple.foundationdb.record.provider.foundationdb.indexes;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.map.BunchedMap;
 import com.apple.foundationdb.map.BunchedMapMultiIterator;
@@ -55,6 +58,7 @@ import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
@@ -66,6 +70,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -123,6 +128,14 @@ import java.util.function.Function;
  * </p>
  *
  * <p>
+ * If the {@value IndexOptions#TEXT_SCORING_STATISTICS_OPTION} option is set to {@code true}, the index also keeps,
+ * for each grouping key, the number of documents containing each token, the number of tokens in each document,
+ * and the totals of both. These are updated with atomic mutations, so they do not add conflicts between records.
+ * They allow the index to be scanned by {@link IndexScanType#BY_TEXT_SCORE}, which returns the documents that best
+ * match a query ranked by their <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> score.
+ * </p>
+ *
+ * <p>
  * <b>Note:</b> At the moment, this index is under active development and should be considered
  * experimental. At the current time, this index will be correctly updated on insert and removal
  * and can be manually scanned, but it will only be selected by the query planner in limited circumstances
@@ -144,12 +157,28 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
     @VisibleForTesting
     @Nonnull
     static final Tuple TOKENIZER_VERSION_SUBSPACE_TUPLE = Tuple.from(0L);
+    // Subspaces for the scoring statistics: the number of documents containing each token,
+    // the number of tokens in each document, and the number of documents and tokens in each group.
+    @VisibleForTesting
+    @Nonnull
+    static final Tuple DOCUMENT_FREQUENCY_SUBSPACE_TUPLE = Tuple.from(1L);
+    @VisibleForTesting
+    @Nonnull
+    static final Tuple DOCUMENT_LENGTH_SUBSPACE_TUPLE = Tuple.from(2L);
+    @VisibleForTesting
+    @Nonnull
+    static final Tuple DOCUMENT_TOTALS_SUBSPACE_TUPLE = Tuple.from(3L);
+    @Nonnull
+    static final Tuple DOCUMENT_COUNT_KEY = Tuple.from(0L);
+    @Nonnull
+    static final Tuple TOKEN_COUNT_KEY = Tuple.from(1L);
 
     @Nonnull
     private final TextTokenizer tokenizer;
     private final int tokenizerVersion;
     private final boolean addAggressiveConflictRanges;
     private final boolean omitPositionLists;
+    private final boolean scoringStatistics;
 
     /**
      * Get the text tokenizer associated with this index. This uses the
@@ -199,6 +228,10 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         return index.getBooleanOption(IndexOptions.TEXT_OMIT_POSITIONS_OPTION, false);
     }
 
+    static boolean getIfScoringStatistics(@Nonnull Index index) {
+        return index.getBooleanOption(IndexOptions.TEXT_SCORING_STATISTICS_OPTION, false);
+    }
+
     // Gets the position of the text field this index is tokenizing from within the
     // index's expression. This is the first column of the index expression after
     // all grouping columns (or the first column if there are no grouping columns).
@@ -225,6 +258,7 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         this.tokenizerVersion = getIndexTokenizerVersion(state.index);
         this.addAggressiveConflictRanges = getIfAddAggressiveConflictRanges(state.index);
         this.omitPositionLists = getIfOmitPositions(state.index);
+        this.scoringStatistics = getIfScoringStatistics(state.index);
     }
 
     private static int varIntSize(int val) {
@@ -260,6 +294,28 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         state.transaction.clear(getRecordTokenizerKey(primaryKey));
     }
 
+    private void updateScoringStatistics(@Nonnull Tuple groupingKey, @Nonnull Tuple groupedKey,
+                                         @Nonnull Map<String, List<Integer>> positionMap, boolean remove) {
+        final Subspace frequencySubspace = getSecondarySubspace().subspace(DOCUMENT_FREQUENCY_SUBSPACE_TUPLE).subspace(groupingKey);
+        final byte[] documentDelta = ByteArrayUtil.encodeInt(remove ? -1L : 1L);
+        for (String token : positionMap.keySet()) {
+            state.transaction.mutate(MutationType.ADD, frequencySubspace.pack(token), documentDelta);
+        }
+        long length = 0;
+        for (List<Integer> positions : positionMap.values()) {
+            length += positions.size();
+        }
+        final byte[] lengthKey = getSecondarySubspace().subspace(DOCUMENT_LENGTH_SUBSPACE_TUPLE).subspace(groupingKey).pack(groupedKey);
+        if (remove) {
+            state.transaction.clear(lengthKey);
+        } else {
+            state.transaction.set(lengthKey, Tuple.from(length).pack());
+        }
+        final Subspace totalsSubspace = getSecondarySubspace().subspace(DOCUMENT_TOTALS_SUBSPACE_TUPLE).subspace(groupingKey);
+        state.transaction.mutate(MutationType.ADD, totalsSubspace.pack(DOCUMENT_COUNT_KEY), documentDelta);
+        state.transaction.mutate(MutationType.ADD, totalsSubspace.pack(TOKEN_COUNT_KEY), ByteArrayUtil.encodeInt(remove ? -length : length));
+    }
+
     @Nonnull
     private Pair<Integer, Integer> estimateSize(@Nullable Tuple groupingKey, @Nonnull Map<String, List<Integer>> positionMap, @Nonnull Tuple groupedKey) {
         final int idSize = groupedKey.pack().length;
@@ -334,6 +390,9 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
             state.context.ensureActive().addReadConflictRange(indexRange.begin, indexRange.end);
             state.context.ensureActive().addWriteConflictRange(indexRange.begin, indexRange.end);
         }
+        if (scoringStatistics) {
+            updateScoringStatistics(groupingKey == null ? TupleHelpers.EMPTY : groupingKey, groupedKey, positionMap, remove);
+        }
         final BunchedMap<Tuple, List<Integer>> bunchedMap = getBunchedMap(state.context);
         CompletableFuture<Void> tokenInsertFuture = RecordCursor.fromIterator(state.context.getExecutor(), positionMap.entrySet().iterator())
                 .forEachAsync((Map.Entry<String, List<Integer>> tokenEntry) -> {
@@ -504,9 +563,38 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         }
     }
 
+    /**
+     * Whether updating this index is idempotent. The scoring statistics are counters, so an index that keeps them
+     * must not be updated twice for the same record, as can happen while it is being built.
+     * @return whether updating this index is idempotent
+     */
+    @Override
+    public boolean isIdempotent() {
+        return !scoringStatistics;
+    }
+
+    /**
+     * Delete the index entries and, if the index keeps them, the scoring statistics of the records with the given
+     * grouping key prefix.
+     *
+     * @param tr the transaction in which to delete the data
+     * @param prefix the grouping key prefix of the records to delete
+     * @return a future that is complete when the data has been deleted
+     */
+    @Override
+    public CompletableFuture<Void> deleteWhere(Transaction tr, @Nonnull Tuple prefix) {
+        if (scoringStatistics) {
+            for (Tuple subspaceTuple : new Tuple[] {DOCUMENT_FREQUENCY_SUBSPACE_TUPLE, DOCUMENT_LENGTH_SUBSPACE_TUPLE, DOCUMENT_TOTALS_SUBSPACE_TUPLE}) {
+                final byte[] key = getSecondarySubspace().subspace(subspaceTuple).pack(prefix);
+                tr.clear(key, ByteArrayUtil.strinc(key));
+            }
+        }
+        return super.deleteWhere(tr, prefix);
+    }
+
     /**
      * Scan this index between a range of tokens. This index type requires that it be scanned only
-     * by text token. The range to scan can otherwise be between any two entries in the list, and
+     * by text token, or by text score if it keeps scoring statistics (see {@link #scanByScore}). The range to scan can otherwise be between any two entries in the list, and
      * scans over a prefix are supported by passing a value of <code>range</code> that uses
      * {@link com.apple.foundationdb.record.EndpointType#PREFIX_STRING PREFIX_STRING} as both endpoint types.
      * The keys returned in the index entry will include the token that was found in the index
@@ -519,7 +607,7 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
      * @param continuation any continuation from a previous scan invocation
      * @param scanProperties skip, limit and other properties of the scan
      * @return a cursor over all index entries in <code>range</code>
-     * @throws RecordCoreException if <code>scanType</code> is not {@link IndexScanType#BY_TEXT_TOKEN}
+     * @throws RecordCoreException if <code>scanType</code> is not {@link IndexScanType#BY_TEXT_TOKEN} or {@link IndexScanType#BY_TEXT_SCORE}
      * @see TextCursor
      */
     @Nonnull
@@ -529,8 +617,11 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
                                          @Nonnull TupleRange range,
                                          @Nullable byte[] continuation,
                                          @Nonnull ScanProperties scanProperties) {
+        if (scanType == IndexScanType.BY_TEXT_SCORE) {
+            return scanByScore(range, continuation, scanProperties);
+        }
         if (scanType != IndexScanType.BY_TEXT_TOKEN) {
-            throw new RecordCoreException("Can only scan text index by text token.");
+            throw new RecordCoreException("Can only scan text index by text token or text score.");
         }
         int textPosition = textFieldPosition(state.index.getRootExpression());
         TextSubspaceSplitter subspaceSplitter = new TextSubspaceSplitter(state.indexSubspace, textPosition + 1);
@@ -560,6 +651,64 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         return cursor;
     }
 
+    /**
+     * Scan this index for the documents that best match a query, in descending order of their
+     * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> score. The range must be a single tuple of the
+     * grouping columns (if any) followed by the query text, as from {@link TupleRange#allOf(Tuple)}. The query is
+     * tokenized with the index's tokenizer, and a document matches if it contains any of the query's tokens.
+     * The key of each index entry returned is the range's tuple followed by the rest of the document's index key,
+     * which ends with its primary key, and the value is a tuple containing only the score.
+     *
+     * <p>
+     * This merges the posting lists of the query tokens, reading the length of each matching document, and keeps
+     * only the best documents in a heap, so the returned row limit should be set to the number of results wanted.
+     * The ranking honors the scanned record, byte and time limits of the scan, and can be resumed from its
+     * continuation in a later transaction. Scores computed in different transactions use the statistics of each.
+     * See {@link TextScoreCursor} for the details.
+     * </p>
+     *
+     * @param range the grouping columns and query text
+     * @param continuation any continuation from a previous scan invocation
+     * @param scanProperties skip, limit and other properties of the scan
+     * @return a cursor over the best matching documents
+     * @throws RecordCoreException if the index does not keep scoring statistics or the range is not a single tuple
+     */
+    @Nonnull
+    private RecordCursor<IndexEntry> scanByScore(@Nonnull TupleRange range,
+                                                 @Nullable byte[] continuation,
+                                                 @Nonnull ScanProperties scanProperties) {
+        if (!scoringStatistics) {
+            throw new RecordCoreException("text index does not keep scoring statistics",
+                    LogMessageKeys.INDEX_NAME, state.index.getName());
+        }
+        final int textPosition = textFieldPosition(state.index.getRootExpression());
+        final Tuple queryKey = range.getLow();
+        if (queryKey == null || !queryKey.equals(range.getHigh()) || queryKey.size() != textPosition + 1 || !(queryKey.get(textPosition) instanceof String)) {
+            throw new RecordCoreException("text score scan requires grouping columns followed by query text",
+                    LogMessageKeys.INDEX_NAME, state.index.getName(),
+                    LogMessageKeys.RANGE, range);
+        }
+        final Tuple groupingKey = TupleHelpers.subTuple(queryKey, 0, textPosition);
+        final List<String> tokens = new ArrayList<>(tokenizer.tokenizeToMap(queryKey.getString(textPosition), tokenizerVersion, TextTokenizer.TokenizerMode.QUERY).keySet());
+
+        final ExecuteProperties executeProperties = scanProperties.getExecuteProperties();
+        final int skip = executeProperties.getSkip();
+        final int limit = executeProperties.getReturnedRowLimit();
+        final int maxResults = limit == ReadTransaction.ROW_LIMIT_UNLIMITED ? Integer.MAX_VALUE : (int)Math.min(Integer.MAX_VALUE, (long)skip + Math.max(limit, 1));
+        RecordCursor<IndexEntry> cursor = new TextScoreCursor(state.context,
+                state.context.readTransaction(executeProperties.getIsolationLevel().isSnapshot()),
+                state.index, state.indexSubspace, getSecondarySubspace(), queryKey, textPosition, tokens, maxResults,
+                state.store.getPipelineSize(PipelineOperation.TEXT_INDEX_SCORE),
+                scanProperties.with(ExecuteProperties::clearSkipAndAdjustLimit), continuation);
+        if (skip != 0) {
+            cursor = cursor.skip(skip);
+        }
+        if (limit != ReadTransaction.ROW_LIMIT_UNLIMITED) {
+            cursor = cursor.limitRowsTo(limit);
+        }
+        return cursor;
+    }
+
     private static class InstrumentedBunchedMap<K, V> extends BunchedMap<K, V> {
         @Nonnull
         private final FDBStoreTimer timer;
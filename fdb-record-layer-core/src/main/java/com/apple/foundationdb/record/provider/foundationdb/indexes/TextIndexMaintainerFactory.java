@@ -57,7 +57,8 @@ public class TextIndexMaintainerFactory implements IndexMaintainerFactory {
             IndexOptions.TEXT_TOKENIZER_NAME_OPTION,
             IndexOptions.TEXT_TOKENIZER_VERSION_OPTION,
             IndexOptions.TEXT_OMIT_POSITIONS_OPTION,
-            IndexOptions.TEXT_ADD_AGGRESSIVE_CONFLICT_RANGES_OPTION
+            IndexOptions.TEXT_ADD_AGGRESSIVE_CONFLICT_RANGES_OPTION,
+            IndexOptions.TEXT_SCORING_STATISTICS_OPTION
     );
 
     /**
@@ -138,8 +139,8 @@ public class TextIndexMaintainerFactory implements IndexMaintainerFactory {
              * </ul>
              *
              * <p>
-             * Note that the {@link IndexOptions#TEXT_TOKENIZER_NAME_OPTION} is <em>not</em> allowed to change
-             * (without rebuilding the index).
+             * Note that the {@link IndexOptions#TEXT_TOKENIZER_NAME_OPTION} and {@link IndexOptions#TEXT_SCORING_STATISTICS_OPTION}
+             * are <em>not</em> allowed to change (without rebuilding the index).
              * </p>
              *
              * @param oldIndex an older version of this index
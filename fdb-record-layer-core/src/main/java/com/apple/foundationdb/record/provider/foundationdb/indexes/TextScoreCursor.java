@@ -0,0 +1,530 @@
+/*
+ * TextScoreCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.map.BunchedMap;
+import com.apple.foundationdb.map.BunchedMapMultiIterator;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.cursors.BaseCursor;
+import com.apple.foundationdb.record.cursors.CursorLimitManager;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link com.apple.foundationdb.record.RecordCursor RecordCursor} over the documents in an index of type
+ * "{@value com.apple.foundationdb.record.metadata.IndexTypes#TEXT}" that best match a query, in descending order
+ * of their <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> score.
+ *
+ * <p>
+ * The posting lists of the query's tokens are merged one document at a time, in document order. The lengths of
+ * the matching documents are read a batch at a time, and each document is scored and offered to a heap that
+ * keeps only as many documents as will be returned. Every document merged counts as a scanned record, and the
+ * keys and values read count as scanned bytes, so the ranking stops when an out-of-band limit is reached. It then
+ * returns no results and a continuation holding the heap and the last document merged, from which a later
+ * transaction resumes the ranking. Once the ranking is complete, the continuation of each result holds the rest
+ * of the ranking, and the continuation of the last result asks for the documents ranked after it, which are
+ * ranked again when the scan is resumed.
+ * </p>
+ *
+ * <p>
+ * The size of the heap, and so of the continuations, is bounded by the skip plus the returned row limit of the
+ * scan. Without a returned row limit, every matching document is kept.
+ * </p>
+ *
+ * @see TextIndexMaintainer
+ */
+@API(API.Status.EXPERIMENTAL)
+class TextScoreCursor implements BaseCursor<IndexEntry> {
+    // BM25 term frequency saturation and document length normalization parameters.
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    // Best first: higher scores, then lower keys.
+    private static final Comparator<ScoredDocument> RANKING = Comparator.comparingDouble(ScoredDocument::getScore).reversed()
+            .thenComparing(ScoredDocument::getKey);
+
+    @Nonnull
+    private final FDBRecordContext context;
+    @Nonnull
+    private final ReadTransaction tr;
+    @Nonnull
+    private final Index index;
+    @Nonnull
+    private final Subspace indexSubspace;
+    @Nonnull
+    private final Subspace secondarySubspace;
+    @Nonnull
+    private final Tuple queryKey;
+    private final int textPosition;
+    @Nonnull
+    private final List<String> tokens;
+    private final int maxResults;
+    private final int pipelineSize;
+    @Nonnull
+    private final CursorLimitManager limitManager;
+
+    @Nullable
+    private final ScoredDocument after;
+    // Worst first, so that the head is the one to drop.
+    @Nonnull
+    private final PriorityQueue<ScoredDocument> best = new PriorityQueue<>(RANKING.reversed());
+    @Nullable
+    private Tuple lastDocument;
+    @Nonnull
+    private final List<BunchedMapMultiIterator<Tuple, List<Integer>, Tuple>> postings = new ArrayList<>();
+    private boolean postingsExhausted;
+    @Nullable
+    private NoNextReason stoppedReason;
+    private long documentCount;
+    private double averageLength;
+    @Nullable
+    private double[] inverseDocumentFrequencies;
+
+    @Nullable
+    private List<ScoredDocument> ranked;
+    private boolean exhausted;
+    private int returned;
+
+    @Nullable
+    private CompletableFuture<Void> rankFuture;
+    @Nullable
+    private CompletableFuture<Boolean> hasNextFuture;
+    @Nullable
+    private RecordCursorResult<IndexEntry> nextResult;
+
+    @SuppressWarnings("squid:S00107") // too many parameters
+    TextScoreCursor(@Nonnull FDBRecordContext context,
+                    @Nonnull ReadTransaction tr,
+                    @Nonnull Index index,
+                    @Nonnull Subspace indexSubspace,
+                    @Nonnull Subspace secondarySubspace,
+                    @Nonnull Tuple queryKey,
+                    int textPosition,
+                    @Nonnull List<String> tokens,
+                    int maxResults,
+                    int pipelineSize,
+                    @Nonnull ScanProperties scanProperties,
+                    @Nullable byte[] continuation) {
+        this.context = context;
+        this.tr = tr;
+        this.index = index;
+        this.indexSubspace = indexSubspace;
+        this.secondarySubspace = secondarySubspace;
+        this.queryKey = queryKey;
+        this.textPosition = textPosition;
+        this.tokens = tokens;
+        this.maxResults = maxResults;
+        this.pipelineSize = Math.max(1, pipelineSize);
+        this.limitManager = new CursorLimitManager(context, scanProperties);
+
+        if (continuation == null) {
+            after = null;
+        } else {
+            final RecordCursorProto.TextScoreContinuation parsed;
+            try {
+                parsed = RecordCursorProto.TextScoreContinuation.parseFrom(continuation);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("error parsing continuation", ex)
+                        .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+            }
+            after = parsed.hasAfter() ? ScoredDocument.fromProto(parsed.getAfter()) : null;
+            if (parsed.getRanked()) {
+                ranked = new ArrayList<>(parsed.getBestCount());
+                for (RecordCursorProto.TextScoreContinuation.ScoredDocument document : parsed.getBestList()) {
+                    ranked.add(ScoredDocument.fromProto(document));
+                }
+                exhausted = parsed.getExhausted();
+            } else {
+                for (RecordCursorProto.TextScoreContinuation.ScoredDocument document : parsed.getBestList()) {
+                    offer(ScoredDocument.fromProto(document));
+                }
+                if (parsed.hasLastDocument()) {
+                    lastDocument = Tuple.fromBytes(parsed.getLastDocument().toByteArray());
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<IndexEntry>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        if (ranked != null) {
+            return CompletableFuture.completedFuture(computeNext());
+        }
+        if (rankFuture == null) {
+            rankFuture = rank();
+        }
+        return rankFuture.thenApply(vignore -> computeNext());
+    }
+
+    @Nonnull
+    private RecordCursorResult<IndexEntry> computeNext() {
+        if (ranked == null) {
+            // Stopped by an out-of-band limit before the ranking was complete.
+            nextResult = RecordCursorResult.withoutNextValue(new Continuation(after, new ArrayList<>(best), lastDocument, false, false),
+                    stoppedReason);
+        } else if (returned < ranked.size()) {
+            final ScoredDocument document = ranked.get(returned++);
+            nextResult = RecordCursorResult.withNextValue(new IndexEntry(index, queryKey.addAll(document.getKey()), Tuple.from(document.getScore())),
+                    rankedContinuation(returned));
+        } else if (exhausted) {
+            nextResult = RecordCursorResult.exhausted();
+        } else {
+            // The heap was full, so there might be more documents ranked after the last one.
+            nextResult = RecordCursorResult.withoutNextValue(rankedContinuation(returned), NoNextReason.RETURN_LIMIT_REACHED);
+        }
+        return nextResult;
+    }
+
+    @Nonnull
+    private RecordCursorContinuation rankedContinuation(int count) {
+        final ScoredDocument last = count == 0 ? after : ranked.get(count - 1);
+        if (count < ranked.size() || exhausted) {
+            return new Continuation(last, ranked.subList(count, ranked.size()), null, true, exhausted);
+        } else {
+            return new Continuation(last, new ArrayList<>(), null, false, false);
+        }
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> rank() {
+        if (tokens.isEmpty()) {
+            postingsExhausted = true;
+            finishRanking();
+            return AsyncUtil.DONE;
+        }
+        final Tuple groupingKey = TupleHelpers.subTuple(queryKey, 0, textPosition);
+        final Subspace totalsSubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_TOTALS_SUBSPACE_TUPLE).subspace(groupingKey);
+        final CompletableFuture<byte[]> documentCountFuture = get(totalsSubspace.pack(TextIndexMaintainer.DOCUMENT_COUNT_KEY));
+        final CompletableFuture<byte[]> tokenCountFuture = get(totalsSubspace.pack(TextIndexMaintainer.TOKEN_COUNT_KEY));
+        final Subspace frequencySubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_FREQUENCY_SUBSPACE_TUPLE).subspace(groupingKey);
+        final List<CompletableFuture<byte[]>> frequencyFutures = new ArrayList<>(tokens.size());
+        final BunchedMap<Tuple, List<Integer>> bunchedMap = TextIndexMaintainer.getBunchedMap(context);
+        final TextSubspaceSplitter splitter = new TextSubspaceSplitter(indexSubspace, textPosition + 1);
+        final byte[] lastDocumentBytes = lastDocument == null ? null : bunchedMap.getSerializer().serializeKey(lastDocument);
+        for (String token : tokens) {
+            frequencyFutures.add(get(frequencySubspace.pack(token)));
+            final byte[] tokenPrefix = groupingKey.add(token).pack();
+            postings.add(bunchedMap.scanMulti(tr, indexSubspace, splitter, tokenPrefix, ByteArrayUtil.strinc(tokenPrefix),
+                    lastDocumentBytes == null ? null : ByteArrayUtil.join(tokenPrefix, lastDocumentBytes),
+                    ReadTransaction.ROW_LIMIT_UNLIMITED,
+                    keyValue -> limitManager.reportScannedBytes((long)keyValue.getKey().length + keyValue.getValue().length),
+                    false));
+        }
+        return documentCountFuture.thenCombine(tokenCountFuture, (documentCountBytes, tokenCountBytes) -> {
+            documentCount = Math.max(1L, decodeCount(documentCountBytes));
+            averageLength = Math.max(1.0, decodeCount(tokenCountBytes) / (double)documentCount);
+            return null;
+        }).thenCompose(vignore -> AsyncUtil.getAll(frequencyFutures)).thenCompose(frequencies -> {
+            inverseDocumentFrequencies = new double[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                final long documentFrequency = decodeCount(frequencies.get(i));
+                inverseDocumentFrequencies[i] = Math.log(1.0 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            }
+            return AsyncUtil.whileTrue(this::mergeBatch, getExecutor());
+        }).thenRun(this::finishRanking);
+    }
+
+    private void finishRanking() {
+        if (postingsExhausted) {
+            final List<ScoredDocument> sorted = new ArrayList<>(best);
+            sorted.sort(RANKING);
+            exhausted = sorted.size() < maxResults;
+            ranked = sorted;
+        }
+    }
+
+    // Merge the postings of up to a pipeline's worth of documents and score them.
+    @Nonnull
+    private CompletableFuture<Boolean> mergeBatch() {
+        final List<Tuple> documents = new ArrayList<>();
+        final List<int[]> termFrequencies = new ArrayList<>();
+        return AsyncUtil.whileTrue(() -> mergeDocument(documents, termFrequencies), getExecutor())
+                .thenCompose(vignore -> scoreDocuments(documents, termFrequencies))
+                .thenApply(vignore -> !postingsExhausted && stoppedReason == null);
+    }
+
+    @Nonnull
+    private CompletableFuture<Boolean> mergeDocument(@Nonnull List<Tuple> documents, @Nonnull List<int[]> termFrequencies) {
+        final List<CompletableFuture<Boolean>> hasNextFutures = new ArrayList<>(postings.size());
+        for (BunchedMapMultiIterator<Tuple, List<Integer>, Tuple> posting : postings) {
+            hasNextFutures.add(posting.onHasNext());
+        }
+        return AsyncUtil.getAll(hasNextFutures).thenApply(hasNexts -> {
+            Tuple document = null;
+            for (int i = 0; i < postings.size(); i++) {
+                if (hasNexts.get(i)) {
+                    final Tuple key = postings.get(i).peek().getKey();
+                    if (document == null || key.compareTo(document) < 0) {
+                        document = key;
+                    }
+                }
+            }
+            if (document == null) {
+                postingsExhausted = true;
+                return false;
+            }
+            if (!limitManager.tryRecordScan()) {
+                stoppedReason = limitManager.getStoppedReason()
+                        .orElseThrow(() -> new RecordCoreException("limit manager stopped TextScoreCursor but did not report a reason"));
+                return false;
+            }
+            // The number of times the document contains each query token. Without position lists, this is only known to be at least one.
+            final int[] frequencies = new int[postings.size()];
+            for (int i = 0; i < postings.size(); i++) {
+                if (hasNexts.get(i) && postings.get(i).peek().getKey().equals(document)) {
+                    frequencies[i] = Math.max(1, postings.get(i).next().getValue().size());
+                    if (context.getTimer() != null) {
+                        context.getTimer().increment(FDBStoreTimer.Counts.LOAD_TEXT_ENTRY);
+                    }
+                }
+            }
+            documents.add(document);
+            termFrequencies.add(frequencies);
+            return documents.size() < pipelineSize;
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> scoreDocuments(@Nonnull List<Tuple> documents, @Nonnull List<int[]> termFrequencies) {
+        if (documents.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        final Subspace lengthSubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_LENGTH_SUBSPACE_TUPLE)
+                .subspace(TupleHelpers.subTuple(queryKey, 0, textPosition));
+        final List<CompletableFuture<byte[]>> lengthFutures = new ArrayList<>(documents.size());
+        for (Tuple document : documents) {
+            lengthFutures.add(get(lengthSubspace.pack(document)));
+        }
+        return AsyncUtil.getAll(lengthFutures).thenAccept(lengths -> {
+            for (int i = 0; i < documents.size(); i++) {
+                final byte[] lengthBytes = lengths.get(i);
+                final double length = lengthBytes == null ? averageLength : Tuple.fromBytes(lengthBytes).getLong(0);
+                final double normalization = BM25_K1 * (1.0 - BM25_B + BM25_B * length / averageLength);
+                final int[] frequencies = termFrequencies.get(i);
+                double score = 0.0;
+                for (int j = 0; j < frequencies.length; j++) {
+                    if (frequencies[j] > 0) {
+                        score += inverseDocumentFrequencies[j] * frequencies[j] * (BM25_K1 + 1.0) / (frequencies[j] + normalization);
+                    }
+                }
+                offer(new ScoredDocument(documents.get(i), score));
+            }
+            lastDocument = documents.get(documents.size() - 1);
+        });
+    }
+
+    private void offer(@Nonnull ScoredDocument document) {
+        if (after != null && RANKING.compare(document, after) <= 0) {
+            // Already returned by an earlier scan.
+            return;
+        }
+        best.add(document);
+        if (best.size() > maxResults) {
+            best.poll();
+        }
+    }
+
+    @Nonnull
+    private CompletableFuture<byte[]> get(@Nonnull byte[] key) {
+        return tr.get(key).thenApply(value -> {
+            limitManager.reportScannedBytes((long)key.length + (value == null ? 0 : value.length));
+            return value;
+        });
+    }
+
+    private static long decodeCount(@Nullable byte[] bytes) {
+        return bytes == null ? 0L : ByteArrayUtil.decodeInt(bytes);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (hasNextFuture == null) {
+            hasNextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return hasNextFuture;
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public IndexEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNextFuture = null;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public byte[] getContinuation() {
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        for (BunchedMapMultiIterator<Tuple, List<Integer>, Tuple> posting : postings) {
+            posting.cancel();
+        }
+        if (rankFuture != null) {
+            rankFuture.cancel(false);
+        }
+        if (hasNextFuture != null) {
+            hasNextFuture.cancel(false);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return context.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        visitor.visitEnter(this);
+        return visitor.visitLeave(this);
+    }
+
+    private static class ScoredDocument {
+        @Nonnull
+        private final Tuple key;
+        private final double score;
+
+        ScoredDocument(@Nonnull Tuple key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        @Nonnull
+        Tuple getKey() {
+            return key;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        @Nonnull
+        RecordCursorProto.TextScoreContinuation.ScoredDocument toProto() {
+            return RecordCursorProto.TextScoreContinuation.ScoredDocument.newBuilder()
+                    .setKey(ByteString.copyFrom(key.pack()))
+                    .setScore(score)
+                    .build();
+        }
+
+        @Nonnull
+        static ScoredDocument fromProto(@Nonnull RecordCursorProto.TextScoreContinuation.ScoredDocument proto) {
+            return new ScoredDocument(Tuple.fromBytes(proto.getKey().toByteArray()), proto.getScore());
+        }
+    }
+
+    private static class Continuation implements RecordCursorContinuation {
+        @Nullable
+        private final ScoredDocument after;
+        @Nonnull
+        private final Collection<ScoredDocument> best;
+        @Nullable
+        private final Tuple lastDocument;
+        private final boolean ranked;
+        private final boolean exhausted;
+        @Nullable
+        private byte[] cachedBytes;
+
+        private Continuation(@Nullable ScoredDocument after, @Nonnull Collection<ScoredDocument> best, @Nullable Tuple lastDocument,
+                             boolean ranked, boolean exhausted) {
+            this.after = after;
+            this.best = best;
+            this.lastDocument = lastDocument;
+            this.ranked = ranked;
+            this.exhausted = exhausted;
+        }
+
+        @Nullable
+        @Override
+        public byte[] toBytes() {
+            if (cachedBytes == null) {
+                final RecordCursorProto.TextScoreContinuation.Builder builder = RecordCursorProto.TextScoreContinuation.newBuilder();
+                if (after != null) {
+                    builder.setAfter(after.toProto());
+                }
+                for (ScoredDocument document : best) {
+                    builder.addBest(document.toProto());
+                }
+                if (lastDocument != null) {
+                    builder.setLastDocument(ByteString.copyFrom(lastDocument.pack()));
+                }
+                if (ranked) {
+                    builder.setRanked(true).setExhausted(exhausted);
+                }
+                cachedBytes = builder.build().toByteArray();
+            }
+            return cachedBytes;
+        }
+
+        @Override
+        public boolean isEnd() {
+            return false;
+        }
+    }
+}
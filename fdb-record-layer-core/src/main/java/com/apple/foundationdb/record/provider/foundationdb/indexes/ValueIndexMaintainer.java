@@ -26,6 +26,7 @@ import com.apple.foundationdb.record.FunctionNames;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.ScanProperties;
@@ -35,12 +36,16 @@ import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -89,6 +94,39 @@ public class ValueIndexMaintainer extends StandardIndexMaintainer {
                 continuation);
     }
 
+    /**
+     * Find stale entries in the index. It scans the index, loads the record associated with each index entry, and
+     * checks that the record would still have that entry. Entries whose record does not exist are not included;
+     * those are found by {@link #validateEntries}.
+     * @param continuation any continuation from a previous invocation
+     * @param scanProperties skip, limit and other properties of the scan
+     * @return a cursor over index entries that do not match their records
+     */
+    @Nonnull
+    @Override
+    public RecordCursor<InvalidIndexEntry> validateStaleEntries(@Nullable byte[] continuation,
+                                                                @Nonnull ScanProperties scanProperties) {
+        final boolean snapshot = scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot();
+        return state.store.getPipelineSizer().mapPipelined(scan(IndexScanType.BY_VALUE, TupleRange.ALL, continuation, scanProperties),
+                indexEntry -> state.store.loadRecordAsync(indexEntry.getPrimaryKey(), snapshot)
+                        .thenApply(record -> record == null || hasIndexEntry(record, indexEntry) ? null : InvalidIndexEntry.newStale(indexEntry, record)),
+                PipelineOperation.INDEX_TO_RECORD)
+                .filter(Objects::nonNull);
+    }
+
+    private boolean hasIndexEntry(@Nonnull FDBStoredRecord<Message> record, @Nonnull IndexEntry indexEntry) {
+        final List<IndexEntry> indexEntries = filteredIndexEntries(record);
+        if (indexEntries == null) {
+            return false;
+        }
+        for (IndexEntry entry : indexEntries) {
+            if (indexEntryKey(entry.getKey(), record.getPrimaryKey()).equals(indexEntry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public boolean canEvaluateAggregateFunction(@Nonnull IndexAggregateFunction function) {
         return (function.getName().equals(FunctionNames.MIN) ||
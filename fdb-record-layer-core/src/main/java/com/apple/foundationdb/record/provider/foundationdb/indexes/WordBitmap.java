@@ -0,0 +1,514 @@
+/*
+ * WordBitmap.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A fixed-size bitmap for working with the bitmaps stored by a {@code BITMAP_VALUE} index.
+ *
+ * <p>
+ * Each bitmap is held in one of two forms. A <em>dense</em> bitmap is an array of {@code long} words, 64 bits to
+ * a word, so that bit-wise operations process a word at a time in simple loops that the JIT can unroll and vectorize.
+ * A <em>sparse</em> bitmap is a sorted array of the positions of its set bits, which takes less space and less time
+ * to combine when only a few bits are set, as is common for high-cardinality groups. {@link #compact} chooses the
+ * smaller form for a bitmap, and operations between bitmaps work with either form.
+ * </p>
+ *
+ * <p>
+ * The index stores bitmaps as bytes, with position {@code i} in bit {@code i % 8} of byte {@code i / 8}.
+ * {@link #fromBytes} and {@link #toBytes} convert to and from that format.
+ * Operations modify the bitmap they are called on, so {@link #copy} it first if the original is still needed.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public final class WordBitmap {
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_MASK = Long.SIZE - 1;
+
+    private final int size;
+    // Exactly one of words and positions is non-null.
+    private long[] words;
+    private int[] positions;
+    private int cardinality;
+
+    private WordBitmap(int size, long[] words, int[] positions, int cardinality) {
+        this.size = size;
+        this.words = words;
+        this.positions = positions;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Create a bitmap with no bits set.
+     * @param size the number of bits in the bitmap
+     * @return a new empty bitmap
+     */
+    @Nonnull
+    public static WordBitmap empty(int size) {
+        checkSize(size);
+        return new WordBitmap(size, null, new int[0], 0);
+    }
+
+    /**
+     * Create a bitmap with all bits set.
+     * @param size the number of bits in the bitmap
+     * @return a new full bitmap
+     */
+    @Nonnull
+    public static WordBitmap full(int size) {
+        checkSize(size);
+        final long[] words = new long[wordCount(size)];
+        Arrays.fill(words, -1L);
+        clearTail(words, size);
+        return new WordBitmap(size, words, null, -1);
+    }
+
+    /**
+     * Create a dense bitmap from the bytes of a bitmap stored in the index.
+     * @param bytes the bitmap bytes
+     * @return a new bitmap with {@code 8} bits for each byte
+     */
+    @Nonnull
+    public static WordBitmap fromBytes(@Nonnull byte[] bytes) {
+        final int size = bytes.length * Byte.SIZE;
+        final long[] words = new long[wordCount(size)];
+        final int fullWords = bytes.length / Long.BYTES;
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words, 0, fullWords);
+        for (int i = fullWords * Long.BYTES; i < bytes.length; i++) {
+            words[fullWords] |= (bytes[i] & 0xFFL) << ((i - fullWords * Long.BYTES) * Byte.SIZE);
+        }
+        return new WordBitmap(size, words, null, -1);
+    }
+
+    /**
+     * Convert this bitmap to bytes as stored in the index.
+     * @return an array of bytes with the bits of this bitmap, with any bits past the end of the bitmap clear
+     */
+    @Nonnull
+    public byte[] toBytes() {
+        final byte[] bytes = new byte[(size + Byte.SIZE - 1) / Byte.SIZE];
+        if (words != null) {
+            final int fullWords = bytes.length / Long.BYTES;
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(words, 0, fullWords);
+            for (int i = fullWords * Long.BYTES; i < bytes.length; i++) {
+                bytes[i] = (byte)(words[fullWords] >>> ((i - fullWords * Long.BYTES) * Byte.SIZE));
+            }
+        } else {
+            for (int i = 0; i < cardinality; i++) {
+                final int position = positions[i];
+                bytes[position / Byte.SIZE] |= (byte)(1 << (position % Byte.SIZE));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the number of bits in this bitmap, set or not.
+     * @return the size of this bitmap
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get whether this bitmap is in the sparse form.
+     * @return {@code true} if this bitmap holds the positions of its set bits
+     */
+    public boolean isSparse() {
+        return positions != null;
+    }
+
+    /**
+     * Get the number of bits that are set.
+     * @return the cardinality of this bitmap
+     */
+    public int getCardinality() {
+        if (cardinality < 0) {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Get whether no bits are set.
+     * @return {@code true} if this bitmap is empty
+     */
+    public boolean isEmpty() {
+        if (cardinality >= 0) {
+            return cardinality == 0;
+        }
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        cardinality = 0;
+        return true;
+    }
+
+    /**
+     * Get whether a bit is set.
+     * @param position the position of the bit
+     * @return {@code true} if the bit is set
+     */
+    public boolean get(int position) {
+        if (words != null) {
+            return (words[position >>> WORD_SHIFT] & (1L << position)) != 0;
+        } else {
+            return Arrays.binarySearch(positions, 0, cardinality, position) >= 0;
+        }
+    }
+
+    /**
+     * Make a copy of this bitmap.
+     * @return a new bitmap with the same bits set
+     */
+    @Nonnull
+    public WordBitmap copy() {
+        return new WordBitmap(size,
+                words == null ? null : words.clone(),
+                positions == null ? null : Arrays.copyOf(positions, cardinality),
+                cardinality);
+    }
+
+    /**
+     * Convert this bitmap to whichever of the dense or sparse forms is smaller.
+     * @return this bitmap
+     */
+    @Nonnull
+    public WordBitmap compact() {
+        final boolean sparse = (long)getCardinality() * Integer.SIZE < size;
+        if (sparse && words != null) {
+            toSparse();
+        } else if (!sparse && positions != null) {
+            toDense();
+        }
+        return this;
+    }
+
+    private void toSparse() {
+        final int[] newPositions = new int[getCardinality()];
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                newPositions[count++] = (i << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        positions = newPositions;
+        words = null;
+    }
+
+    private void toDense() {
+        final long[] newWords = new long[wordCount(size)];
+        for (int i = 0; i < cardinality; i++) {
+            final int position = positions[i];
+            newWords[position >>> WORD_SHIFT] |= 1L << position;
+        }
+        words = newWords;
+        positions = null;
+    }
+
+    /**
+     * Get the bits of a range of this bitmap as a new bitmap.
+     * @param start the first position to include
+     * @param end the position after the last one to include
+     * @return a new bitmap with {@code end - start} bits, the first of which is bit {@code start} of this bitmap
+     */
+    @Nonnull
+    public WordBitmap range(int start, int end) {
+        if (start < 0 || end > size || start > end) {
+            throw new RecordCoreArgumentException("bitmap range out of bounds")
+                    .addLogInfo("start", start, "end", end, "size", size);
+        }
+        final int newSize = end - start;
+        if (words != null) {
+            final long[] newWords = new long[wordCount(newSize)];
+            final int shift = start & WORD_MASK;
+            int wordIndex = start >>> WORD_SHIFT;
+            if (shift == 0) {
+                System.arraycopy(words, wordIndex, newWords, 0, newWords.length);
+            } else {
+                for (int i = 0; i < newWords.length; i++, wordIndex++) {
+                    long word = words[wordIndex] >>> shift;
+                    if (wordIndex + 1 < words.length) {
+                        word |= words[wordIndex + 1] << (Long.SIZE - shift);
+                    }
+                    newWords[i] = word;
+                }
+            }
+            clearTail(newWords, newSize);
+            return new WordBitmap(newSize, newWords, null, -1);
+        } else {
+            int from = Arrays.binarySearch(positions, 0, cardinality, start);
+            if (from < 0) {
+                from = -from - 1;
+            }
+            int to = Arrays.binarySearch(positions, from, cardinality, end);
+            if (to < 0) {
+                to = -to - 1;
+            }
+            final int[] newPositions = new int[to - from];
+            for (int i = from; i < to; i++) {
+                newPositions[i - from] = positions[i] - start;
+            }
+            return new WordBitmap(newSize, null, newPositions, newPositions.length);
+        }
+    }
+
+    /**
+     * Clear every bit that is not also set in another bitmap.
+     * @param other a bitmap of the same size
+     * @return this bitmap
+     */
+    @Nonnull
+    public WordBitmap and(@Nonnull WordBitmap other) {
+        checkSameSize(other);
+        if (words != null && other.words != null) {
+            final long[] otherWords = other.words;
+            for (int i = 0; i < words.length; i++) {
+                words[i] &= otherWords[i];
+            }
+            cardinality = -1;
+        } else if (words != null) {
+            // Only those of the other's sparse positions that are set here remain, so the result is sparse.
+            final int[] newPositions = new int[other.cardinality];
+            int count = 0;
+            for (int i = 0; i < other.cardinality; i++) {
+                final int position = other.positions[i];
+                if ((words[position >>> WORD_SHIFT] & (1L << position)) != 0) {
+                    newPositions[count++] = position;
+                }
+            }
+            words = null;
+            positions = newPositions;
+            cardinality = count;
+        } else if (other.words != null) {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                final int position = positions[i];
+                if ((other.words[position >>> WORD_SHIFT] & (1L << position)) != 0) {
+                    positions[count++] = position;
+                }
+            }
+            cardinality = count;
+        } else {
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                final int position = positions[i];
+                final int otherPosition = other.positions[j];
+                if (position < otherPosition) {
+                    i++;
+                } else if (position > otherPosition) {
+                    j++;
+                } else {
+                    positions[count++] = position;
+                    i++;
+                    j++;
+                }
+            }
+            cardinality = count;
+        }
+        return this;
+    }
+
+    /**
+     * Set every bit that is set in another bitmap.
+     * @param other a bitmap of the same size
+     * @return this bitmap
+     */
+    @Nonnull
+    public WordBitmap or(@Nonnull WordBitmap other) {
+        checkSameSize(other);
+        if (words == null && other.words == null) {
+            mergeSparse(other, false);
+            return this;
+        }
+        if (words == null) {
+            final int[] oldPositions = positions;
+            final int oldCardinality = cardinality;
+            words = other.words.clone();
+            positions = null;
+            for (int i = 0; i < oldCardinality; i++) {
+                final int position = oldPositions[i];
+                words[position >>> WORD_SHIFT] |= 1L << position;
+            }
+        } else if (other.words == null) {
+            for (int i = 0; i < other.cardinality; i++) {
+                final int position = other.positions[i];
+                words[position >>> WORD_SHIFT] |= 1L << position;
+            }
+        } else {
+            final long[] otherWords = other.words;
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= otherWords[i];
+            }
+        }
+        cardinality = -1;
+        return this;
+    }
+
+    /**
+     * Flip every bit that is set in another bitmap.
+     * @param other a bitmap of the same size
+     * @return this bitmap
+     */
+    @Nonnull
+    public WordBitmap xor(@Nonnull WordBitmap other) {
+        checkSameSize(other);
+        if (words == null && other.words == null) {
+            mergeSparse(other, true);
+            return this;
+        }
+        if (words == null) {
+            final int[] oldPositions = positions;
+            final int oldCardinality = cardinality;
+            words = other.words.clone();
+            positions = null;
+            for (int i = 0; i < oldCardinality; i++) {
+                final int position = oldPositions[i];
+                words[position >>> WORD_SHIFT] ^= 1L << position;
+            }
+        } else if (other.words == null) {
+            for (int i = 0; i < other.cardinality; i++) {
+                final int position = other.positions[i];
+                words[position >>> WORD_SHIFT] ^= 1L << position;
+            }
+        } else {
+            final long[] otherWords = other.words;
+            for (int i = 0; i < words.length; i++) {
+                words[i] ^= otherWords[i];
+            }
+        }
+        cardinality = -1;
+        return this;
+    }
+
+    /**
+     * Flip every bit.
+     * @return this bitmap
+     */
+    @Nonnull
+    public WordBitmap not() {
+        if (words == null) {
+            toDense();
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ~words[i];
+        }
+        clearTail(words, size);
+        cardinality = -1;
+        return this;
+    }
+
+    // Union or symmetric difference of two sparse bitmaps, which stays sparse.
+    private void mergeSparse(@Nonnull WordBitmap other, boolean exclusive) {
+        final int[] merged = new int[cardinality + other.cardinality];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality || j < other.cardinality) {
+            if (j >= other.cardinality || (i < cardinality && positions[i] < other.positions[j])) {
+                merged[count++] = positions[i++];
+            } else if (i >= cardinality || positions[i] > other.positions[j]) {
+                merged[count++] = other.positions[j++];
+            } else {
+                if (!exclusive) {
+                    merged[count++] = positions[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        positions = merged;
+        cardinality = count;
+    }
+
+    private void checkSameSize(@Nonnull WordBitmap other) {
+        if (other.size != size) {
+            throw new RecordCoreArgumentException("bitmaps are not the same size")
+                    .addLogInfo("size", size, "otherSize", other.size);
+        }
+    }
+
+    private static void checkSize(int size) {
+        if (size < 0) {
+            throw new RecordCoreArgumentException("bitmap size cannot be negative")
+                    .addLogInfo("size", size);
+        }
+    }
+
+    private static int wordCount(int size) {
+        return (size + WORD_MASK) >>> WORD_SHIFT;
+    }
+
+    // Keep the bits past the end of the bitmap clear, so that whole words can be compared and counted.
+    private static void clearTail(@Nonnull long[] words, int size) {
+        final int tailBits = size & WORD_MASK;
+        if (tailBits != 0) {
+            words[words.length - 1] &= (1L << tailBits) - 1;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final WordBitmap that = (WordBitmap)o;
+        return size == that.size && Arrays.equals(copy().toDenseWords(), that.copy().toDenseWords());
+    }
+
+    @Nonnull
+    private long[] toDenseWords() {
+        if (words == null) {
+            toDense();
+        }
+        return words;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(copy().toDenseWords());
+    }
+
+    @Override
+    public String toString() {
+        return "WordBitmap{size=" + size + ", cardinality=" + getCardinality() + (isSparse() ? ", sparse}" : ", dense}");
+    }
+}
@@ -20,6 +20,10 @@
 
 package com.apple.foundationdb.record.provider.foundationdb.keyspace;
 
+import com.apple.foundationdb.KeySelector;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.StreamingMode;
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
@@ -41,12 +45,21 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -63,6 +76,7 @@ import java.util.stream.Collectors;
  */
 @API(API.Status.MAINTAINED)
 public abstract class LocatableResolver {
+    private static final int WARM_CACHE_TRANSACTION_ROW_LIMIT = 10_000;
     private static final Logger LOGGER = LoggerFactory.getLogger(LocatableResolver.class);
     @Nonnull
     protected final FDBDatabase database;
@@ -384,6 +398,138 @@ public abstract class LocatableResolver {
                                 .orElseThrow(() -> new NoSuchElementException(wrap(name).toString())));
     }
 
+    /**
+     * Map each of several Strings to a Long within the scope of the path that this object was constructed with.
+     * Like {@link #resolve(FDBRecordContext, String)}, this will create any mappings that do not exist.
+     *
+     * <p>
+     * All the names that are not in the directory cache are read in parallel in a single transaction, rather than in
+     * a transaction each, so that, for example, every name needed by a set of {@link KeySpacePath}s can be resolved
+     * with one round trip. Only names that then still need to be created get a transaction of their own.
+     * </p>
+     *
+     * @param context the {@link FDBRecordContext} used to base child transactions on
+     * @param names the values to resolve
+     * @return a future for a map from each of <code>names</code> to its resolved value
+     * @see #resolveAllWithMetadata(FDBRecordContext, Collection, ResolverCreateHooks)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Map<String, Long>> resolveAll(@Nonnull FDBRecordContext context, @Nonnull Collection<String> names) {
+        return resolveAllWithMetadata(context, names, ResolverCreateHooks.getDefault())
+                .thenApply(results -> {
+                    final Map<String, Long> values = new LinkedHashMap<>();
+                    results.forEach((name, result) -> values.put(name, result.getValue()));
+                    return values;
+                });
+    }
+
+    /**
+     * Map each of several Strings to a {@link ResolverResult} within the scope of the path that this object was
+     * constructed with, creating any mappings that do not exist.
+     *
+     * @param context the {@link FDBRecordContext} used to base child transactions on
+     * @param names the values to resolve
+     * @param hooks {@link ResolverCreateHooks} to run on create
+     * @return a future for a map from each of <code>names</code> to its {@link ResolverResult}
+     * @see #resolveAll(FDBRecordContext, Collection)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Map<String, ResolverResult>> resolveAllWithMetadata(@Nonnull FDBRecordContext context,
+                                                                                 @Nonnull Collection<String> names,
+                                                                                 @Nonnull ResolverCreateHooks hooks) {
+        if (!context.getDatabase().equals(database)) {
+            throw new RecordCoreArgumentException("attempted to resolve value against incorrect database");
+        }
+        final Set<String> distinctNames = new LinkedHashSet<>(names);
+        return getVersion(context)
+                .thenApply(database::getDirectoryCache)
+                .thenCompose(directoryCache -> {
+                    final Map<String, ResolverResult> results = new ConcurrentHashMap<>();
+                    final List<String> uncached = new ArrayList<>();
+                    for (String name : distinctNames) {
+                        final ResolverResult cached = directoryCache.getIfPresent(wrap(name));
+                        if (cached == null) {
+                            uncached.add(name);
+                        } else {
+                            results.put(name, cached);
+                        }
+                    }
+                    if (uncached.isEmpty()) {
+                        return CompletableFuture.completedFuture(results);
+                    }
+                    return context.instrument(FDBStoreTimer.Events.DIRECTORY_READ,
+                            runAsyncBorrowingReadVersion(context, childContext ->
+                                    AsyncUtil.getAll(uncached.stream().map(name -> read(childContext, name)).collect(Collectors.toList())))
+                    ).thenCompose(reads -> {
+                        final List<CompletableFuture<Void>> creates = new ArrayList<>();
+                        for (int i = 0; i < uncached.size(); i++) {
+                            final String name = uncached.get(i);
+                            final Optional<ResolverResult> read = reads.get(i);
+                            if (read.isPresent()) {
+                                directoryCache.put(wrap(name), read.get());
+                                results.put(name, read.get());
+                            } else {
+                                creates.add(resolveWithCache(context, wrap(name), directoryCache, hooks)
+                                        .thenAccept(created -> results.put(name, created)));
+                            }
+                        }
+                        return AsyncUtil.whenAll(creates).thenApply(vignore -> results);
+                    });
+                })
+                .thenApply(results -> {
+                    final Map<String, ResolverResult> ordered = new LinkedHashMap<>();
+                    for (String name : distinctNames) {
+                        ordered.put(name, results.get(name));
+                    }
+                    return ordered;
+                });
+    }
+
+    /**
+     * Load this resolver's mappings into the {@link FDBDatabase}'s directory cache, so that later calls to
+     * {@link #resolve(FDBRecordContext, String)} do not need to read them one at a time.
+     * The mapping subspace is read with large range reads, over as many transactions as it takes, until either all
+     * the mappings have been read or <code>maxEntries</code> have been loaded. Loading more mappings than the
+     * cache's size, as set by {@link com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory#setDirectoryCacheSize(int)},
+     * would only evict ones loaded earlier.
+     *
+     * @param timer the {@link FDBStoreTimer} used for collecting metrics
+     * @param maxEntries the maximum number of mappings to load
+     * @return a future for the number of mappings loaded into the cache
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Integer> warmDirectoryCache(@Nullable FDBStoreTimer timer, int maxEntries) {
+        if (maxEntries <= 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicReference<byte[]> lastKey = new AtomicReference<>();
+        return getVersion(timer)
+                .thenApply(database::getDirectoryCache)
+                .thenCompose(directoryCache -> getMappingSubspaceAsync().thenCompose(mappingSubspace -> AsyncUtil.whileTrue(() -> {
+                    final Range range = mappingSubspace.range();
+                    final KeySelector begin = lastKey.get() == null
+                                              ? KeySelector.firstGreaterOrEqual(range.begin)
+                                              : KeySelector.firstGreaterThan(lastKey.get());
+                    final int limit = Math.min(WARM_CACHE_TRANSACTION_ROW_LIMIT, maxEntries - loaded.get());
+                    return runAsync(timer, context -> context.ensureActive().snapshot()
+                            .getRange(begin, KeySelector.firstGreaterOrEqual(range.end), limit, false, StreamingMode.WANT_ALL)
+                            .asList())
+                            .thenApply(keyValues -> {
+                                for (KeyValue kv : keyValues) {
+                                    directoryCache.put(wrap(mappingSubspace.unpack(kv.getKey()).getString(0)), deserializeValue(kv.getValue()));
+                                    lastKey.set(kv.getKey());
+                                }
+                                // Stop at the end of the mappings, or once there are as many as the cache can hold.
+                                return loaded.addAndGet(keyValues.size()) < maxEntries && keyValues.size() == limit;
+                            });
+                }, database.getExecutor())))
+                .thenApply(vignore -> loaded.get());
+    }
+
     /**
      * Lookup the String that maps to the provided value within the scope of the path that this object was constructed with.
      *
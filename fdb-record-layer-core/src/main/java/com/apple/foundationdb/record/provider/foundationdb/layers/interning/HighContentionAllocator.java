@@ -21,10 +21,12 @@
 package com.apple.foundationdb.record.provider.foundationdb.layers.interning;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.KeyValue;
 import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
 import com.apple.foundationdb.subspace.Subspace;
@@ -33,27 +35,40 @@ import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * A supplier of unique integers that tries to balance size of the integer and conflicts on the assignment.
  *
  * Values are chosen randomly from a window that moves forward as the available lower-numbered space fills up.
+ *
+ * <p>
+ * Alternatively, an allocator created with {@link BlockReservations} hands out consecutive values from a block
+ * that the process reserved ahead of time, which avoids the conflicts of many clients choosing from the same window.
+ * </p>
  */
 @API(API.Status.INTERNAL)
 public class HighContentionAllocator {
     private static final byte[] LITTLE_ENDIAN_LONG_ONE = {1, 0, 0, 0, 0, 0, 0, 0};
+    private static final byte[] LITTLE_ENDIAN_LONG_ZERO = {0, 0, 0, 0, 0, 0, 0, 0};
     private static final byte[] KEY_UPDATING_BYTE = new byte[0];
     private static final byte[] INVALID_ALLOCATION_VALUE = new byte[]{(byte) 0xFD};
     private static final Function<Long, CompletableFuture<Boolean>> NOOP_CHECK = ignored -> CompletableFuture.completedFuture(true);
     private final Subspace counterSubspace;
     private final Subspace allocationSubspace;
+    private final FDBRecordContext context;
     private final Transaction transaction;
     private final Function<Long, CompletableFuture<Boolean>> candidateCheck;
+    @Nullable
+    private final BlockReservations blockReservations;
 
     public HighContentionAllocator(@Nonnull FDBRecordContext context,
                                    @Nonnull KeySpacePath basePath) {
@@ -78,14 +93,34 @@ public class HighContentionAllocator {
         this(context, counterSubspace, allocationSubspace, NOOP_CHECK);
     }
 
+    /**
+     * Create an allocator that hands out values from blocks reserved by the given {@link BlockReservations}.
+     * @param context the transaction in which values are allocated
+     * @param blockReservations the blocks of values reserved by this process
+     */
+    public HighContentionAllocator(@Nonnull FDBRecordContext context,
+                                   @Nonnull BlockReservations blockReservations) {
+        this(context, blockReservations.counterSubspace, blockReservations.allocationSubspace, NOOP_CHECK, blockReservations);
+    }
+
     protected HighContentionAllocator(@Nonnull FDBRecordContext context,
                                       @Nonnull Subspace counterSubspace,
                                       @Nonnull Subspace allocationSubspace,
                                       @Nonnull Function<Long, CompletableFuture<Boolean>> candidateCheck) {
+        this(context, counterSubspace, allocationSubspace, candidateCheck, null);
+    }
+
+    protected HighContentionAllocator(@Nonnull FDBRecordContext context,
+                                      @Nonnull Subspace counterSubspace,
+                                      @Nonnull Subspace allocationSubspace,
+                                      @Nonnull Function<Long, CompletableFuture<Boolean>> candidateCheck,
+                                      @Nullable BlockReservations blockReservations) {
+        this.context = context;
         this.transaction = context.ensureActive();
         this.counterSubspace = counterSubspace;
         this.allocationSubspace = allocationSubspace;
         this.candidateCheck = candidateCheck;
+        this.blockReservations = blockReservations;
     }
 
     public static HighContentionAllocator forRoot(@Nonnull FDBRecordContext context,
@@ -99,6 +134,11 @@ public class HighContentionAllocator {
         return new HighContentionAllocator(context, basePath, value -> hasConflictAtRoot(context.ensureActive(), value));
     }
 
+    public static HighContentionAllocator forRoot(@Nonnull FDBRecordContext context, @Nonnull BlockReservations blockReservations) {
+        return new HighContentionAllocator(context, blockReservations.counterSubspace, blockReservations.allocationSubspace,
+                value -> hasConflictAtRoot(context.ensureActive(), value), blockReservations);
+    }
+
     @VisibleForTesting
     public Subspace getAllocationSubspace() {
         return allocationSubspace;
@@ -106,6 +146,9 @@ public class HighContentionAllocator {
 
     public CompletableFuture<Long> allocate(final String valueToStore) {
         final byte[] valueBytes = Tuple.from(valueToStore).pack();
+        if (blockReservations != null) {
+            return chooseReservedCandidate(valueBytes);
+        }
         return initialWindow()
                 .thenCompose(initialWindow -> chooseWindow(initialWindow, false))
                 .thenCompose(window -> chooseCandidate(window, valueBytes));
@@ -185,6 +228,33 @@ public class HighContentionAllocator {
                 }).thenCompose(Function.identity());
     }
 
+    private CompletableFuture<Long> chooseReservedCandidate(final byte[] valueToStore) {
+        return blockReservations.nextCandidate(context).thenCompose(candidate -> {
+            final byte[] allocationKey = allocationSubspace.pack(candidate);
+
+            CompletableFuture<byte[]> previousAllocationValue;
+            CompletableFuture<Boolean> check = candidateCheck.apply(candidate);
+            synchronized (transaction) {
+                previousAllocationValue = transaction.get(allocationKey);
+            }
+
+            return previousAllocationValue
+                    .thenCombine(check, (valueBytes, isGood) -> {
+                        if (valueBytes != null) {
+                            // allocated outside of the block, or by another process after the block's lease expired
+                            return chooseReservedCandidate(valueToStore);
+                        }
+                        synchronized (transaction) {
+                            transaction.set(allocationKey, isGood ? valueToStore : INVALID_ALLOCATION_VALUE);
+                        }
+                        if (!isGood) {
+                            throw new IllegalStateException("database already has keys in allocation range");
+                        }
+                        return CompletableFuture.completedFuture(candidate);
+                    }).thenCompose(Function.identity());
+        });
+    }
+
     public void setWindow(long count) {
         transaction.mutate(MutationType.ADD, counterSubspace.pack(count), LITTLE_ENDIAN_LONG_ONE);
     }
@@ -204,6 +274,262 @@ public class HighContentionAllocator {
         return transaction.snapshot().getRange(checkRange, 1).iterator().onHasNext().thenApply(hasKeys -> !hasKeys);
     }
 
+    /**
+     * Blocks of consecutive values reserved by one process, from which {@link HighContentionAllocator}s created with
+     * this object allocate without conflicting with other processes.
+     *
+     * <p>
+     * Each block is reserved in its own transaction, which moves the allocation window past the block so that
+     * randomly chosen values never fall inside it, and records the block with a lease in the reservation subspace.
+     * Values are then handed out in order, and only the allocation key of each value is written by the transaction
+     * that uses it. A block whose lease has expired, for example because its process stopped, is taken over by the
+     * next process that needs a block, starting after the last value that was allocated from it. Since every value
+     * is still checked against its allocation key, a block taken over from a live process never produces duplicates.
+     * </p>
+     *
+     * <p>
+     * The lease is renewed, in a transaction of its own, when a value is handed out after half of it has passed. If the
+     * block has been taken over by then, this process stops using it and reserves another. A block's reservation is
+     * only removed by the process that holds its lease.
+     * </p>
+     *
+     * <p>
+     * This object keeps the current block in memory, so a process should create one per allocation subspace and share
+     * it among all its transactions. Values from a block that are handed out to transactions which do not commit are
+     * not reused.
+     * </p>
+     */
+    public static class BlockReservations {
+        public static final long DEFAULT_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+        @Nonnull
+        private final Subspace counterSubspace;
+        @Nonnull
+        private final Subspace allocationSubspace;
+        @Nonnull
+        private final Subspace reservationSubspace;
+        private final int blockSize;
+        private final long leaseMillis;
+        // identifies this object's leases, so that it only renews or removes reservations that are still its own
+        @Nonnull
+        private final UUID leaseOwner = UUID.randomUUID();
+
+        @Nullable
+        private Long blockStart;
+        private long next;
+        private long end;
+        private long leaseExpiresMillis;
+        @Nullable
+        private CompletableFuture<Void> pendingReservation;
+        private boolean renewing;
+
+        public BlockReservations(@Nonnull Subspace counterSubspace,
+                                 @Nonnull Subspace allocationSubspace,
+                                 @Nonnull Subspace reservationSubspace,
+                                 int blockSize) {
+            this(counterSubspace, allocationSubspace, reservationSubspace, blockSize, DEFAULT_LEASE_MILLIS);
+        }
+
+        public BlockReservations(@Nonnull Subspace counterSubspace,
+                                 @Nonnull Subspace allocationSubspace,
+                                 @Nonnull Subspace reservationSubspace,
+                                 int blockSize,
+                                 long leaseMillis) {
+            if (blockSize <= 0) {
+                throw new RecordCoreArgumentException("block size must be positive")
+                        .addLogInfo("blockSize", blockSize);
+            }
+            if (leaseMillis <= 0) {
+                throw new RecordCoreArgumentException("lease must be positive")
+                        .addLogInfo("leaseMillis", leaseMillis);
+            }
+            this.counterSubspace = counterSubspace;
+            this.allocationSubspace = allocationSubspace;
+            this.reservationSubspace = reservationSubspace;
+            this.blockSize = blockSize;
+            this.leaseMillis = leaseMillis;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public long getLeaseMillis() {
+            return leaseMillis;
+        }
+
+        private CompletableFuture<Long> nextCandidate(@Nonnull FDBRecordContext context) {
+            final CompletableFuture<Void> reservation;
+            final Long exhaustedStart;
+            boolean reserve = false;
+            Long candidate = null;
+            Long renewStart = null;
+            synchronized (this) {
+                if (next < end) {
+                    candidate = next++;
+                    // renew once half the lease has passed
+                    if (!renewing && System.currentTimeMillis() >= leaseExpiresMillis - leaseMillis / 2) {
+                        renewing = true;
+                        renewStart = blockStart;
+                    }
+                    exhaustedStart = null;
+                    reservation = null;
+                } else {
+                    exhaustedStart = blockStart;
+                    if (pendingReservation == null) {
+                        pendingReservation = new CompletableFuture<>();
+                        reserve = true;
+                    }
+                    reservation = pendingReservation;
+                }
+            }
+            if (candidate != null) {
+                if (renewStart != null) {
+                    renewLease(context, renewStart);
+                }
+                return CompletableFuture.completedFuture(candidate);
+            }
+            if (reserve) {
+                // Reserve in a separate transaction so that the caller's transaction does not conflict on the counters.
+                context.getDatabase().runAsync(context.getTimer(), context.getMdcContext(),
+                        reserveContext -> reserveBlock(reserveContext.ensureActive(), exhaustedStart))
+                        .whenComplete((block, err) -> {
+                            synchronized (this) {
+                                if (err == null) {
+                                    blockStart = block[0];
+                                    next = block[1];
+                                    end = block[2];
+                                    leaseExpiresMillis = block[3];
+                                }
+                                pendingReservation = null;
+                            }
+                            if (err == null) {
+                                reservation.complete(null);
+                            } else {
+                                reservation.completeExceptionally(err);
+                            }
+                        });
+            }
+            return reservation.thenCompose(ignore -> nextCandidate(context));
+        }
+
+        // Extend the lease on the current block in a separate transaction, or stop using the block if it has been taken over.
+        private void renewLease(@Nonnull FDBRecordContext context, @Nonnull Long start) {
+            context.getDatabase().runAsync(context.getTimer(), context.getMdcContext(), renewContext -> {
+                final Transaction transaction = renewContext.ensureActive();
+                final byte[] reservationKey = reservationSubspace.pack(start);
+                // not a snapshot read, so as to conflict with another process taking over the block
+                return transaction.get(reservationKey).thenApply(lease -> {
+                    if (!isOwnLease(lease)) {
+                        return null;
+                    }
+                    final long expires = System.currentTimeMillis() + leaseMillis;
+                    transaction.set(reservationKey, Tuple.from(Tuple.fromBytes(lease).getLong(0), expires, leaseOwner).pack());
+                    return expires;
+                });
+            }).whenComplete((expires, err) -> {
+                synchronized (this) {
+                    renewing = false;
+                    if (err == null && start.equals(blockStart)) {
+                        if (expires == null) {
+                            // taken over by another process
+                            next = end;
+                        } else {
+                            leaseExpiresMillis = expires;
+                        }
+                    }
+                }
+            });
+        }
+
+        private boolean isOwnLease(@Nullable byte[] lease) {
+            if (lease == null) {
+                return false;
+            }
+            final Tuple tuple = Tuple.fromBytes(lease);
+            return tuple.size() > 2 && leaseOwner.equals(tuple.getUUID(2));
+        }
+
+        // Returns the start, first free value and end of the reserved block, and when its lease expires.
+        private CompletableFuture<long[]> reserveBlock(@Nonnull Transaction transaction, @Nullable Long exhaustedStart) {
+            final CompletableFuture<Void> released;
+            if (exhaustedStart == null) {
+                released = AsyncUtil.DONE;
+            } else {
+                final byte[] exhaustedKey = reservationSubspace.pack(exhaustedStart);
+                released = transaction.get(exhaustedKey).thenAccept(lease -> {
+                    if (isOwnLease(lease)) {
+                        transaction.clear(exhaustedKey);
+                    }
+                });
+            }
+            final long now = System.currentTimeMillis();
+            return released.thenCompose(vignore -> transaction.snapshot().getRange(reservationSubspace.range()).asList())
+                    .thenCompose(reservations -> recycleExpiredBlock(transaction, reservations.iterator(), now))
+                    .thenCompose(recycled -> recycled.isPresent() ?
+                                             CompletableFuture.completedFuture(recycled.get()) :
+                                             reserveNewBlock(transaction, now));
+        }
+
+        private CompletableFuture<Optional<long[]>> recycleExpiredBlock(@Nonnull Transaction transaction,
+                                                                        @Nonnull Iterator<KeyValue> reservations,
+                                                                        long now) {
+            while (reservations.hasNext()) {
+                final KeyValue reservation = reservations.next();
+                final Tuple lease = Tuple.fromBytes(reservation.getValue());
+                if (lease.getLong(1) > now) {
+                    continue;
+                }
+                final long start = reservationSubspace.unpack(reservation.getKey()).getLong(0);
+                final long blockEnd = lease.getLong(0);
+                // conflict with any other process taking over the same block
+                transaction.addReadConflictKey(reservation.getKey());
+                return transaction.snapshot().getRange(allocationSubspace.pack(start), allocationSubspace.pack(blockEnd), 1, true).asList()
+                        .thenCompose(allocated -> {
+                            final long first = allocated.isEmpty() ? start : allocationSubspace.unpack(allocated.get(0).getKey()).getLong(0) + 1;
+                            if (first >= blockEnd) {
+                                transaction.clear(reservation.getKey());
+                                return recycleExpiredBlock(transaction, reservations, now);
+                            }
+                            transaction.set(reservation.getKey(), Tuple.from(blockEnd, now + leaseMillis, leaseOwner).pack());
+                            return CompletableFuture.completedFuture(Optional.of(new long[] {start, first, blockEnd, now + leaseMillis}));
+                        });
+            }
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        private CompletableFuture<long[]> reserveNewBlock(@Nonnull Transaction transaction, long now) {
+            final Range counters = counterSubspace.range();
+            return transaction.snapshot().getRange(counters, 1, true).asList().thenApply(list -> {
+                final KeyValue counter = list.isEmpty() ? null : list.get(0);
+                final long start;
+                if (counter == null) {
+                    start = 0;
+                    transaction.addReadConflictRange(counters.begin, counters.end);
+                } else {
+                    final AllocationWindow window = AllocationWindow.startingFrom(counterSubspace.unpack(counter.getKey()).getLong(0));
+                    if (ByteArrayUtil.decodeInt(counter.getValue()) == 0) {
+                        // nothing has been allocated from the current window, so the block can replace it
+                        start = window.getStart();
+                        transaction.addReadConflictRange(counter.getKey(), counters.end);
+                    } else {
+                        start = window.getEnd();
+                        transaction.addReadConflictRange(ByteArrayUtil.join(counter.getKey(), new byte[] {0x00}), counters.end);
+                    }
+                }
+                final long blockEnd = start + blockSize;
+                // move the window for random allocation past the block
+                final byte[] counterKey = counterSubspace.pack(blockEnd);
+                transaction.clear(new Range(counterSubspace.getKey(), counterKey));
+                transaction.mutate(MutationType.ADD, counterKey, LITTLE_ENDIAN_LONG_ZERO);
+                // conflict with any random allocation inside the block made by a transaction that saw the old window
+                transaction.addWriteConflictRange(allocationSubspace.pack(start), allocationSubspace.pack(blockEnd));
+                transaction.set(reservationSubspace.pack(start), Tuple.from(blockEnd, now + leaseMillis, leaseOwner).pack());
+                return new long[] {start, start, blockEnd, now + leaseMillis};
+            });
+        }
+    }
+
     /**
      * A range of possible values to try.
      */
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.provider.foundationdb.layers.interning;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
@@ -74,10 +75,36 @@ public class ScopedInterningLayer extends LocatableResolver {
         this(database, path.toPath(), CompletableFuture.completedFuture(path));
     }
 
+    /**
+     * Creates a resolver rooted at the provided <code>KeySpacePath</code> that allocates values for new keys from
+     * blocks of values reserved by this instance, instead of choosing each one randomly. This avoids conflicts
+     * between processes that create many keys at once, so such a process should share one instance among all of its
+     * transactions.
+     * @param database database that will be used when resolving values
+     * @param path the {@link ResolvedKeySpacePath} where this resolver is rooted
+     * @param allocationBlockSize the number of values reserved at a time
+     * @see HighContentionAllocator.BlockReservations
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public ScopedInterningLayer(@Nonnull FDBDatabase database, @Nonnull ResolvedKeySpacePath path, int allocationBlockSize) {
+        this(database, path.toPath(), CompletableFuture.completedFuture(path), allocationBlockSize);
+    }
+
     private ScopedInterningLayer(@Nonnull FDBDatabase database,
                                  @Nullable KeySpacePath path,
                                  @Nullable CompletableFuture<ResolvedKeySpacePath> resolvedPath) {
+        this(database, path, resolvedPath, null);
+    }
+
+    private ScopedInterningLayer(@Nonnull FDBDatabase database,
+                                 @Nullable KeySpacePath path,
+                                 @Nullable CompletableFuture<ResolvedKeySpacePath> resolvedPath,
+                                 @Nullable Integer allocationBlockSize) {
         super(database, path, resolvedPath);
+        if (allocationBlockSize != null && allocationBlockSize <= 0) {
+            throw new RecordCoreArgumentException("allocation block size must be positive")
+                    .addLogInfo("allocationBlockSize", allocationBlockSize);
+        }
         boolean isRootLevel;
         if (path == null && resolvedPath == null) {
             isRootLevel = true;
@@ -89,7 +116,9 @@ public class ScopedInterningLayer extends LocatableResolver {
             this.nodeSubspaceFuture = baseSubspaceFuture;
         }
         this.stateSubspaceFuture = nodeSubspaceFuture.thenApply(node -> node.get(STATE_SUBSPACE_KEY_SUFFIX));
-        this.interningLayerFuture = nodeSubspaceFuture.thenApply(node -> new StringInterningLayer(node, isRootLevel));
+        this.interningLayerFuture = nodeSubspaceFuture.thenApply(node -> allocationBlockSize != null ?
+                                                                         new StringInterningLayer(node, isRootLevel, allocationBlockSize) :
+                                                                         new StringInterningLayer(node, isRootLevel));
     }
 
     /**
@@ -101,6 +130,18 @@ public class ScopedInterningLayer extends LocatableResolver {
         return new ScopedInterningLayer(database, null, null);
     }
 
+    /**
+     * Creates a global instance of the scoped interning layer that allocates values for new keys from reserved blocks.
+     * @param database the {@link FDBDatabase} for this resolver
+     * @param allocationBlockSize the number of values reserved at a time
+     * @return the global <code>ScopedInterningLayer</code> for this database
+     * @see #ScopedInterningLayer(FDBDatabase, ResolvedKeySpacePath, int)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static ScopedInterningLayer global(@Nonnull FDBDatabase database, int allocationBlockSize) {
+        return new ScopedInterningLayer(database, null, null, allocationBlockSize);
+    }
+
     @Override
     protected CompletableFuture<Optional<ResolverResult>> read(@Nonnull FDBRecordContext context, String key) {
         return context.instrument(FDBStoreTimer.Events.INTERNING_LAYER_READ,
@@ -50,6 +50,8 @@ public class StringInterningLayer {
     private final Subspace reverseMappingSubspace;
     @Nonnull
     private final Subspace counterSubspace;
+    @Nullable
+    private final HighContentionAllocator.BlockReservations blockReservations;
     private final boolean isRootLevel;
 
     public StringInterningLayer(@Nonnull Subspace baseSubspace) {
@@ -60,16 +62,34 @@ public class StringInterningLayer {
         this(baseSubspace.get(2),
                 baseSubspace.get(1),
                 baseSubspace.get(0),
+                null,
+                isRootLevel);
+    }
+
+    /**
+     * Creates an interning layer that allocates values for new strings from blocks reserved by this instance.
+     * @param baseSubspace the subspace holding the layer's data
+     * @param isRootLevel whether the layer is at the root of the database
+     * @param allocationBlockSize the number of values reserved at a time
+     * @see HighContentionAllocator.BlockReservations
+     */
+    public StringInterningLayer(@Nonnull Subspace baseSubspace, boolean isRootLevel, int allocationBlockSize) {
+        this(baseSubspace.get(2),
+                baseSubspace.get(1),
+                baseSubspace.get(0),
+                new HighContentionAllocator.BlockReservations(baseSubspace.get(0), baseSubspace.get(1), baseSubspace.get(3), allocationBlockSize),
                 isRootLevel);
     }
 
     private StringInterningLayer(@Nonnull Subspace mappingSubspace,
                                  @Nonnull Subspace reverseMappingSubspace,
                                  @Nonnull Subspace counterSubspace,
+                                 @Nullable HighContentionAllocator.BlockReservations blockReservations,
                                  boolean isRootLevel) {
         this.mappingSubspace = mappingSubspace;
         this.reverseMappingSubspace = reverseMappingSubspace;
         this.counterSubspace = counterSubspace;
+        this.blockReservations = blockReservations;
         this.isRootLevel = isRootLevel;
     }
 
@@ -175,6 +195,11 @@ public class StringInterningLayer {
     }
 
     private HighContentionAllocator getHca(@Nonnull FDBRecordContext context) {
+        if (blockReservations != null) {
+            return isRootLevel ?
+                   HighContentionAllocator.forRoot(context, blockReservations) :
+                   new HighContentionAllocator(context, blockReservations);
+        }
         return isRootLevel ?
                 HighContentionAllocator.forRoot(context, counterSubspace, reverseMappingSubspace) :
                 new HighContentionAllocator(context, counterSubspace, reverseMappingSubspace);
@@ -314,7 +314,7 @@ public class QueryToKeyMatcher {
             return matches((RecordTypeKeyComparison)query, key, matchingMode, filterMask);
         }
         if (query instanceof QueryKeyExpressionWithComparison) {
-            return matches((QueryKeyExpressionWithComparison)query, key, filterMask);
+            return matches((QueryKeyExpressionWithComparison)query, key, matchingMode, filterMask);
         }
         // Other component types (e.g., Or and Not components) are not handled by this
         // matcher and just return Match.none()
@@ -478,8 +478,16 @@ public class QueryToKeyMatcher {
     }
 
     @Nonnull
-    private Match matches(@Nonnull QueryKeyExpressionWithComparison query, @Nonnull KeyExpression key, @Nullable FilterSatisfiedMask filterMask) {
+    private Match matches(@Nonnull QueryKeyExpressionWithComparison query, @Nonnull KeyExpression key, @Nonnull MatchingMode matchingMode,
+                          @Nullable FilterSatisfiedMask filterMask) {
         if (!Objects.equals(query.getKeyExpression(), key)) {
+            if (key instanceof ThenKeyExpression) {
+                final List<KeyExpression> children = ((ThenKeyExpression) key).getChildren();
+                // Then should express in its contract, but this is good backup
+                if (!children.isEmpty() && matchingMode.equals(MatchingMode.SATISFY_QUERY)) {
+                    return matches(query, children.get(0), matchingMode, filterMask);
+                }
+            }
             return Match.none();
         }
         if (filterMask != null) {
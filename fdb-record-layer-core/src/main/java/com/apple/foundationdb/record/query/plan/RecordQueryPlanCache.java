@@ -0,0 +1,332 @@
+/*
+ * RecordQueryPlanCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.Bindings;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.IndexQueryabilityFilter;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.AndComponent;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
+import com.apple.foundationdb.record.query.expressions.NestedField;
+import com.apple.foundationdb.record.query.expressions.NotComponent;
+import com.apple.foundationdb.record.query.expressions.OneOfThemWithComparison;
+import com.apple.foundationdb.record.query.expressions.OneOfThemWithComponent;
+import com.apple.foundationdb.record.query.expressions.OrComponent;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A bounded cache of query plans that can be shared by many record stores and transactions.
+ *
+ * <p>
+ * Plans are cached by the shape of the query rather than the query itself: each constant that a field is compared
+ * with in the query's filter is replaced by a {@link Comparisons.ParameterComparison parameter}, and the plan for the
+ * resulting query is used for any query that differs only in those constants. The values of the constants are
+ * returned as {@link Bindings} to use when executing the plan. Other comparisons, such as those with lists of values
+ * or with record functions, are left as they are and so are part of the key.
+ * </p>
+ *
+ * <p>
+ * The key also includes the version of the {@link RecordMetaData}, the set of indexes that are not readable in the
+ * {@link RecordStoreState}, and the planner's {@link RecordQueryPlannerConfiguration}, so that a plan is not used with
+ * meta-data, index states or planner options other than those it was planned for. Since the meta-data is only known
+ * by its version, a cache should only be shared by record stores whose meta-data comes from the same source.
+ * </p>
+ *
+ * <p>
+ * Hits and misses are counted by the timer given to {@link #plan} as {@link FDBStoreTimer.Counts#QUERY_PLAN_CACHE_HIT}
+ * and {@link FDBStoreTimer.Counts#QUERY_PLAN_CACHE_MISS}.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryPlanCache {
+    /**
+     * The default maximum number of plans kept by the cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    @Nonnull
+    private final Cache<Key, RecordQueryPlan> plans;
+
+    public RecordQueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public RecordQueryPlanCache(int maxSize) {
+        this.plans = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Get a plan for the given query, either from the cache or from the given planner.
+     * @param planner the planner to use if there is no cached plan
+     * @param query the query to plan
+     * @param timer the timer to count cache hits and misses with
+     * @return the plan along with the bindings for the parameters that stand for the query's constants
+     */
+    @Nonnull
+    public ParameterizedPlan plan(@Nonnull RecordQueryPlanner planner, @Nonnull RecordQuery query, @Nullable StoreTimer timer) {
+        final RecordMetaData metaData = planner.getRecordMetaData();
+        // Validation of the constants' types is lost by replacing them with parameters, so do it first.
+        query.validate(metaData);
+        final Parameterizer parameterizer = new Parameterizer();
+        final RecordQuery parameterizedQuery = parameterizer.parameterize(query);
+        final Key key = new Key(metaData, planner.getRecordStoreState(), planner.getConfiguration(), parameterizedQuery);
+        RecordQueryPlan plan = plans.getIfPresent(key);
+        if (plan == null) {
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS);
+            }
+            plan = planner.plan(parameterizedQuery);
+            plans.put(key, plan);
+        } else if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT);
+        }
+        return new ParameterizedPlan(plan, parameterizer.bindings.build());
+    }
+
+    /**
+     * Get the number of plans in the cache.
+     * @return the number of cached plans
+     */
+    public long size() {
+        return plans.size();
+    }
+
+    /**
+     * Remove all plans from the cache.
+     */
+    public void clear() {
+        plans.invalidateAll();
+    }
+
+    /**
+     * A plan from the cache along with the values of the parameters that it uses in place of the query's constants.
+     */
+    public static class ParameterizedPlan {
+        @Nonnull
+        private final RecordQueryPlan plan;
+        @Nonnull
+        private final Bindings bindings;
+
+        ParameterizedPlan(@Nonnull RecordQueryPlan plan, @Nonnull Bindings bindings) {
+            this.plan = plan;
+            this.bindings = bindings;
+        }
+
+        @Nonnull
+        public RecordQueryPlan getPlan() {
+            return plan;
+        }
+
+        @Nonnull
+        public Bindings getBindings() {
+            return bindings;
+        }
+
+        /**
+         * Get a context for executing the plan, which binds its parameters to the constants of the query.
+         * @return an evaluation context with the bindings for the plan
+         */
+        @Nonnull
+        public EvaluationContext getEvaluationContext() {
+            return EvaluationContext.forBindings(bindings);
+        }
+    }
+
+    /**
+     * Replaces the constants in a query with parameters, collecting their values.
+     */
+    private static class Parameterizer {
+        @Nonnull
+        private final Bindings.Builder bindings = Bindings.newBuilder();
+        private int nextParameter;
+
+        @Nonnull
+        RecordQuery parameterize(@Nonnull RecordQuery query) {
+            final QueryComponent filter = query.getFilter();
+            if (filter == null) {
+                return query;
+            }
+            final QueryComponent parameterizedFilter = parameterize(filter);
+            if (parameterizedFilter == filter) {
+                return query;
+            }
+            return query.toBuilder().setFilter(parameterizedFilter).build();
+        }
+
+        @Nonnull
+        private QueryComponent parameterize(@Nonnull QueryComponent component) {
+            if (component instanceof FieldWithComparison) {
+                final FieldWithComparison fieldWithComparison = (FieldWithComparison)component;
+                final Comparisons.Comparison comparison = parameterize(fieldWithComparison.getComparison());
+                return comparison == fieldWithComparison.getComparison() ? component :
+                       new FieldWithComparison(fieldWithComparison.getFieldName(), comparison);
+            } else if (component instanceof OneOfThemWithComparison) {
+                final OneOfThemWithComparison oneOfThem = (OneOfThemWithComparison)component;
+                final Comparisons.Comparison comparison = parameterize(oneOfThem.getComparison());
+                return comparison == oneOfThem.getComparison() ? component :
+                       new OneOfThemWithComparison(oneOfThem.getFieldName(), oneOfThem.getEmptyMode(), comparison);
+            } else if (component instanceof NestedField) {
+                final NestedField nestedField = (NestedField)component;
+                final QueryComponent child = parameterize(nestedField.getChild());
+                return child == nestedField.getChild() ? component : new NestedField(nestedField.getFieldName(), child);
+            } else if (component instanceof OneOfThemWithComponent) {
+                final OneOfThemWithComponent oneOfThem = (OneOfThemWithComponent)component;
+                final QueryComponent child = parameterize(oneOfThem.getChild());
+                return child == oneOfThem.getChild() ? component :
+                       new OneOfThemWithComponent(oneOfThem.getFieldName(), oneOfThem.getEmptyMode(), child);
+            } else if (component instanceof NotComponent) {
+                final NotComponent notComponent = (NotComponent)component;
+                final QueryComponent child = parameterize(notComponent.getChild());
+                return child == notComponent.getChild() ? component : new NotComponent(child);
+            } else if (component instanceof AndComponent) {
+                final List<QueryComponent> children = parameterize(((AndComponent)component).getChildren());
+                return children == null ? component : AndComponent.from(children);
+            } else if (component instanceof OrComponent) {
+                final List<QueryComponent> children = parameterize(((OrComponent)component).getChildren());
+                return children == null ? component : OrComponent.from(children);
+            } else {
+                return component;
+            }
+        }
+
+        // Returns null if none of the children changed.
+        @Nullable
+        private List<QueryComponent> parameterize(@Nonnull List<QueryComponent> children) {
+            final List<QueryComponent> parameterizedChildren = new ArrayList<>(children.size());
+            boolean changed = false;
+            for (QueryComponent child : children) {
+                final QueryComponent parameterizedChild = parameterize(child);
+                changed |= parameterizedChild != child;
+                parameterizedChildren.add(parameterizedChild);
+            }
+            return changed ? parameterizedChildren : null;
+        }
+
+        @Nonnull
+        private Comparisons.Comparison parameterize(@Nonnull Comparisons.Comparison comparison) {
+            // Only exactly simple comparisons: subclasses may do more with the comparand than compare with it.
+            if (comparison.getClass() != Comparisons.SimpleComparison.class) {
+                return comparison;
+            }
+            final String parameter = Bindings.Internal.CONSTANT.bindingName(Integer.toString(nextParameter++));
+            bindings.set(parameter, comparison.getComparand());
+            return new Comparisons.ParameterComparison(comparison.getType(), parameter, Bindings.Internal.CONSTANT);
+        }
+    }
+
+    /**
+     * The cache key: everything that the plan depends on. The meta-data is only identified by its version, so that
+     * the cache does not keep old meta-data alive.
+     */
+    private static class Key {
+        private final int metaDataVersion;
+        @Nonnull
+        private final Set<String> unreadableIndexes;
+        @Nonnull
+        private final RecordQueryPlannerConfiguration configuration;
+        @Nonnull
+        private final Collection<String> recordTypes;
+        @Nullable
+        private final Collection<String> allowedIndexes;
+        @Nonnull
+        private final IndexQueryabilityFilter queryabilityFilter;
+        @Nullable
+        private final QueryComponent filter;
+        @Nullable
+        private final KeyExpression sort;
+        private final boolean sortReverse;
+        private final boolean removeDuplicates;
+        @Nullable
+        private final List<KeyExpression> requiredResults;
+        private final int hashCode;
+
+        Key(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState,
+            @Nonnull RecordQueryPlannerConfiguration configuration, @Nonnull RecordQuery query) {
+            this.metaDataVersion = metaData.getVersion();
+            this.unreadableIndexes = new TreeSet<>();
+            for (Map.Entry<String, IndexState> entry : recordStoreState.getIndexStates().entrySet()) {
+                if (entry.getValue() != IndexState.READABLE) {
+                    unreadableIndexes.add(entry.getKey());
+                }
+            }
+            this.configuration = configuration;
+            this.recordTypes = new ArrayList<>(query.getRecordTypes());
+            this.allowedIndexes = query.getAllowedIndexes() == null ? null : new ArrayList<>(query.getAllowedIndexes());
+            this.queryabilityFilter = query.getIndexQueryabilityFilter();
+            this.filter = query.getFilter();
+            this.sort = query.getSort();
+            this.sortReverse = query.isSortReverse();
+            this.removeDuplicates = query.removesDuplicates();
+            this.requiredResults = query.getRequiredResults();
+            this.hashCode = Objects.hash(metaDataVersion, unreadableIndexes, configuration,
+                    recordTypes, allowedIndexes, queryabilityFilter, filter, sort, sortReverse, removeDuplicates, requiredResults);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key)o;
+            return metaDataVersion == that.metaDataVersion &&
+                    sortReverse == that.sortReverse &&
+                    removeDuplicates == that.removeDuplicates &&
+                    unreadableIndexes.equals(that.unreadableIndexes) &&
+                    configuration.equals(that.configuration) &&
+                    recordTypes.equals(that.recordTypes) &&
+                    Objects.equals(allowedIndexes, that.allowedIndexes) &&
+                    queryabilityFilter.equals(that.queryabilityFilter) &&
+                    Objects.equals(filter, that.filter) &&
+                    Objects.equals(sort, that.sort) &&
+                    Objects.equals(requiredResults, that.requiredResults);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
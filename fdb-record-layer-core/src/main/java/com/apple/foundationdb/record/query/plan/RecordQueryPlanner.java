@@ -67,6 +67,7 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTextIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTypeFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
@@ -228,6 +229,7 @@ public class RecordQueryPlanner implements QueryPlanner {
      * @param query a query for records on this planner's metadata
      * @return a plan that will return the results of the provided query when executed
      * @throws com.apple.foundationdb.record.RecordCoreException if there is no index that matches the sort in the provided query
+     * and the configuration does not {@linkplain RecordQueryPlannerConfiguration#shouldAllowNonIndexSort allow sorting without one}
      */
     @Nonnull
     @Override
@@ -235,7 +237,36 @@ public class RecordQueryPlanner implements QueryPlanner {
         query.validate(metaData);
 
         final PlanContext planContext = getPlanContext(query);
+        RecordQueryPlan plan = planFilterAndSort(planContext);
 
+        if (timer != null) {
+            plan.logPlanStructure(timer);
+        }
+
+        if (plan.getComplexity() > configuration.getComplexityThreshold()) {
+            throw new RecordQueryPlanComplexityException(plan);
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(KeyValueLogMessage.of("explain of plan",
+                    "explain", PlannerGraphProperty.explain(plan)));
+        }
+        if (configuration.shouldDeferFetchAfterUnionAndIntersection()) {
+            plan = RecordQueryPlannerSubstitutionVisitor.applyVisitors(plan, metaData, indexTypes, planContext.commonPrimaryKey);
+        } else {
+            // Always do filter pushdown
+            plan = plan.accept(new FilterVisitor(metaData, indexTypes, planContext.commonPrimaryKey));
+        }
+        if (query.getRequiredResults() != null) {
+            plan = tryToConvertToCoveringPlan(planContext, plan);
+        }
+
+        return plan;
+    }
+
+    @Nonnull
+    private RecordQueryPlan planFilterAndSort(@Nonnull PlanContext planContext) {
+        final RecordQuery query = planContext.query;
         final BooleanNormalizer normalizer = BooleanNormalizer.forConfiguration(configuration);
         final QueryComponent filter = normalizer.normalizeIfPossible(query.getFilter());
         final KeyExpression sort = query.getSort();
@@ -256,33 +287,15 @@ public class RecordQueryPlanner implements QueryPlanner {
                 if (filter != null) {
                     plan = new RecordQueryFilterPlan(plan, filter);
                 }
+            } else if (configuration.shouldAllowNonIndexSort() && !sort.createsDuplicates()) {
+                // No index gives this order, so plan without it and sort in memory.
+                final RecordQuery unsortedQuery = query.toBuilder().setSort(null).build();
+                plan = new RecordQuerySortPlan(planFilterAndSort(getPlanContext(unsortedQuery)), sort, sortReverse,
+                        configuration.getNonIndexSortMaxRecords());
             } else {
                 throw new RecordCoreException("Cannot sort without appropriate index: " + sort);
             }
         }
-
-        if (timer != null) {
-            plan.logPlanStructure(timer);
-        }
-
-        if (plan.getComplexity() > configuration.getComplexityThreshold()) {
-            throw new RecordQueryPlanComplexityException(plan);
-        }
-
-        if (logger.isTraceEnabled()) {
-            logger.trace(KeyValueLogMessage.of("explain of plan",
-                    "explain", PlannerGraphProperty.explain(plan)));
-        }
-        if (configuration.shouldDeferFetchAfterUnionAndIntersection()) {
-            plan = RecordQueryPlannerSubstitutionVisitor.applyVisitors(plan, metaData, indexTypes, planContext.commonPrimaryKey);
-        } else {
-            // Always do filter pushdown
-            plan = plan.accept(new FilterVisitor(metaData, indexTypes, planContext.commonPrimaryKey));
-        }
-        if (query.getRequiredResults() != null) {
-            plan = tryToConvertToCoveringPlan(planContext, plan);
-        }
-
         return plan;
     }
 
@@ -303,8 +316,9 @@ public class RecordQueryPlanner implements QueryPlanner {
                 p = planSortOnly(new CandidateScan(planContext, index, sortReverse), index.getRootExpression(), sort);
             }
             if (p != null) {
+                // With no sort either, every index is scanned in full, and the choice among them is left as it was.
                 if (bestPlan == null || p.score > bestPlan.score ||
-                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex) > 0)) {
+                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex, sort != null) > 0)) {
                     bestPlan = p;
                     bestIndex = index;
                 }
@@ -337,7 +351,7 @@ public class RecordQueryPlanner implements QueryPlanner {
         return new ScoredPlan(0, planScan(new CandidateScan(planContext, index, false), scanComparisons));
     }
 
-    private int compareIndexes(PlanContext planContext, @Nullable Index index1, @Nullable Index index2) {
+    private int compareIndexes(PlanContext planContext, @Nullable Index index1, @Nullable Index index2, boolean preferCovering) {
         if (index1 == null) {
             if (index2 == null) {
                 return 0;
@@ -347,11 +361,40 @@ public class RecordQueryPlanner implements QueryPlanner {
         } else if (index2 == null) {
             return preferIndexToScan(planContext, index1) ? +1 : -1;
         } else {
+            // Better if the query can be answered from the index entries alone, even though that needs more stored columns.
+            if (preferCovering) {
+                final boolean covering1 = coversRequiredResults(planContext, index1);
+                final boolean covering2 = coversRequiredResults(planContext, index2);
+                if (covering1 != covering2) {
+                    return covering1 ? +1 : -1;
+                }
+            }
             // Better for fewer stored columns.
             return Integer.compare(indexSizeOverhead(planContext, index2), indexSizeOverhead(planContext, index1));
         }
     }
 
+    // Whether the query's required results, along with the primary key, are all in the index's entries.
+    private boolean coversRequiredResults(@Nonnull PlanContext planContext, @Nonnull Index index) {
+        final List<KeyExpression> requiredResults = planContext.query.getRequiredResults();
+        if (requiredResults == null) {
+            return false;
+        }
+        final Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
+        if (recordTypes.size() != 1) {
+            return false;
+        }
+        final AvailableFields availableFields = AvailableFields.fromIndex(recordTypes.iterator().next(), index, indexTypes, planContext.commonPrimaryKey);
+        final Set<KeyExpression> fields = new HashSet<>();
+        for (KeyExpression resultField : requiredResults) {
+            fields.addAll(resultField.normalizeKeyForPositions());
+        }
+        if (planContext.commonPrimaryKey != null) {
+            fields.addAll(planContext.commonPrimaryKey.normalizeKeyForPositions());
+        }
+        return availableFields.containsAll(fields);
+    }
+
     // Compatible behavior with older code: prefer an index on *just* the primary key.
     private boolean preferIndexToScan(PlanContext planContext, @Nonnull Index index) {
         IndexScanPreference indexScanPreference = getIndexScanPreference();
@@ -444,7 +487,7 @@ public class RecordQueryPlanner implements QueryPlanner {
                 //   * need for type filtering if row scan with multiple types.
                 if (bestPlan == null || p.score > bestPlan.score ||
                         p.unsatisfiedFilters.size() < bestPlan.unsatisfiedFilters.size() ||
-                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex) > 0)) {
+                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex, true) > 0)) {
                     bestPlan = p;
                     bestIndex = index;
                 }
@@ -22,8 +22,10 @@ package com.apple.foundationdb.record.query.plan;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.query.plan.plans.QueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
 
 import javax.annotation.Nonnull;
+import java.util.Objects;
 
 /**
  * A set of configuration options for the {@link RecordQueryPlanner}.
@@ -36,17 +38,23 @@ public class RecordQueryPlannerConfiguration {
     private final int complexityThreshold;
     private boolean checkForDuplicateConditions;
     private boolean deferFetchAfterUnionAndIntersection;
+    private final boolean allowNonIndexSort;
+    private final int nonIndexSortMaxRecords;
 
     private RecordQueryPlannerConfiguration(@Nonnull QueryPlanner.IndexScanPreference indexScanPreference,
                                             boolean attemptFailedInJoinAsOr,
                                             int complexityThreshold,
                                             boolean checkForDuplicateConditions,
-                                            boolean deferFetchAfterUnionAndIntersection) {
+                                            boolean deferFetchAfterUnionAndIntersection,
+                                            boolean allowNonIndexSort,
+                                            int nonIndexSortMaxRecords) {
         this.indexScanPreference = indexScanPreference;
         this.attemptFailedInJoinAsOr = attemptFailedInJoinAsOr;
         this.complexityThreshold = complexityThreshold;
         this.checkForDuplicateConditions = checkForDuplicateConditions;
         this.deferFetchAfterUnionAndIntersection = deferFetchAfterUnionAndIntersection;
+        this.allowNonIndexSort = allowNonIndexSort;
+        this.nonIndexSortMaxRecords = nonIndexSortMaxRecords;
     }
 
     /**
@@ -103,6 +111,48 @@ public class RecordQueryPlannerConfiguration {
         return deferFetchAfterUnionAndIntersection;
     }
 
+    /**
+     * Get whether the query planner may sort records in memory when no index gives the order requested by a query.
+     * If not, planning such a query fails.
+     * @return whether the planner may use a {@link RecordQuerySortPlan}
+     */
+    public boolean shouldAllowNonIndexSort() {
+        return allowNonIndexSort;
+    }
+
+    /**
+     * Get the most records that a sort without an index will hold in memory at a time.
+     * If there are more records to sort than this, the input to the sort is read more than once.
+     * @return the maximum number of records in memory for a {@link RecordQuerySortPlan}
+     */
+    public int getNonIndexSortMaxRecords() {
+        return nonIndexSortMaxRecords;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryPlannerConfiguration that = (RecordQueryPlannerConfiguration)o;
+        return indexScanPreference == that.indexScanPreference &&
+                attemptFailedInJoinAsOr == that.attemptFailedInJoinAsOr &&
+                complexityThreshold == that.complexityThreshold &&
+                checkForDuplicateConditions == that.checkForDuplicateConditions &&
+                deferFetchAfterUnionAndIntersection == that.deferFetchAfterUnionAndIntersection &&
+                allowNonIndexSort == that.allowNonIndexSort &&
+                nonIndexSortMaxRecords == that.nonIndexSortMaxRecords;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexScanPreference, attemptFailedInJoinAsOr, complexityThreshold, checkForDuplicateConditions,
+                deferFetchAfterUnionAndIntersection, allowNonIndexSort, nonIndexSortMaxRecords);
+    }
+
     @Nonnull
     public Builder asBuilder() {
         return new Builder(this);
@@ -123,12 +173,17 @@ public class RecordQueryPlannerConfiguration {
         private int complexityThreshold = RecordQueryPlanner.DEFAULT_COMPLEXITY_THRESHOLD;
         private boolean checkForDuplicateConditions = false;
         private boolean deferFetchAfterUnionAndIntersection = false;
+        private boolean allowNonIndexSort = false;
+        private int nonIndexSortMaxRecords = RecordQuerySortPlan.DEFAULT_MAX_RECORDS;
 
         public Builder(@Nonnull RecordQueryPlannerConfiguration configuration) {
             this.indexScanPreference = configuration.indexScanPreference;
             this.attemptFailedInJoinAsOr = configuration.attemptFailedInJoinAsOr;
             this.complexityThreshold = configuration.complexityThreshold;
             this.checkForDuplicateConditions = configuration.checkForDuplicateConditions;
+            this.deferFetchAfterUnionAndIntersection = configuration.deferFetchAfterUnionAndIntersection;
+            this.allowNonIndexSort = configuration.allowNonIndexSort;
+            this.nonIndexSortMaxRecords = configuration.nonIndexSortMaxRecords;
         }
 
         public Builder() {
@@ -159,8 +214,19 @@ public class RecordQueryPlannerConfiguration {
             return this;
         }
 
+        public Builder setAllowNonIndexSort(boolean allowNonIndexSort) {
+            this.allowNonIndexSort = allowNonIndexSort;
+            return this;
+        }
+
+        public Builder setNonIndexSortMaxRecords(int nonIndexSortMaxRecords) {
+            this.nonIndexSortMaxRecords = nonIndexSortMaxRecords;
+            return this;
+        }
+
         public RecordQueryPlannerConfiguration build() {
-            return new RecordQueryPlannerConfiguration(indexScanPreference, attemptFailedInJoinAsOr, complexityThreshold, checkForDuplicateConditions, deferFetchAfterUnionAndIntersection);
+            return new RecordQueryPlannerConfiguration(indexScanPreference, attemptFailedInJoinAsOr, complexityThreshold, checkForDuplicateConditions, deferFetchAfterUnionAndIntersection,
+                    allowNonIndexSort, nonIndexSortMaxRecords);
         }
     }
 }
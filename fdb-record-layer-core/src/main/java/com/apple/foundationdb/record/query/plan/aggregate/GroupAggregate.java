@@ -0,0 +1,189 @@
+/*
+ * GroupAggregate.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.AggregateFunctionNotSupportedException;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Set;
+
+/**
+ * An aggregate function computed over each group by a {@link RecordQueryGroupByPlan}.
+ *
+ * <p>
+ * The supported functions are {@link FunctionNames#COUNT}, which counts records and has no operand,
+ * and {@link FunctionNames#COUNT_NOT_NULL}, {@link FunctionNames#SUM}, {@link FunctionNames#MIN} and
+ * {@link FunctionNames#MAX}, which take a single-column operand. Records whose operand is {@code null}
+ * are ignored by all but {@code count}. The sum of no values is zero; the minimum and maximum are {@code null}.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class GroupAggregate implements PlanHashable {
+    private static final Set<String> SUPPORTED_FUNCTIONS = ImmutableSet.of(
+            FunctionNames.COUNT, FunctionNames.COUNT_NOT_NULL, FunctionNames.SUM, FunctionNames.MIN, FunctionNames.MAX);
+
+    @Nonnull
+    private final String name;
+    @Nonnull
+    private final KeyExpression operand;
+
+    public GroupAggregate(@Nonnull String name, @Nonnull KeyExpression operand) {
+        if (!SUPPORTED_FUNCTIONS.contains(name)) {
+            throw new AggregateFunctionNotSupportedException("Aggregate function not supported for groups",
+                    "function", name);
+        }
+        final int expectedColumns = FunctionNames.COUNT.equals(name) ? 0 : 1;
+        if (operand.getColumnSize() != expectedColumns || operand.createsDuplicates()) {
+            throw new AggregateFunctionNotSupportedException("Aggregate function has wrong number of operand columns",
+                    "function", name,
+                    "operand", operand);
+        }
+        this.name = name;
+        this.operand = operand;
+    }
+
+    /**
+     * Get an aggregate that counts the records in each group.
+     * @return a {@code count} aggregate
+     */
+    @Nonnull
+    public static GroupAggregate count() {
+        return new GroupAggregate(FunctionNames.COUNT, EmptyKeyExpression.EMPTY);
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public KeyExpression getOperand() {
+        return operand;
+    }
+
+    @Nonnull
+    Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + operand + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GroupAggregate that = (GroupAggregate) o;
+        return this.name.equals(that.name) && this.operand.equals(that.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + operand.hashCode();
+    }
+
+    @Override
+    public int planHash() {
+        return name.hashCode() + operand.planHash();
+    }
+
+    /**
+     * The running value of this aggregate for one group.
+     */
+    class Accumulator {
+        private long count;
+        private long longSum;
+        private double doubleSum;
+        private boolean floatingSum;
+        @Nullable
+        private Object extremum;
+
+        <M extends Message> void accumulate(@Nonnull FDBRecord<M> record) {
+            if (FunctionNames.COUNT.equals(name)) {
+                count++;
+                return;
+            }
+            final Key.Evaluated evaluated = operand.evaluateSingleton(record);
+            final Object value = evaluated.getObject(0);
+            if (value == null) {
+                return;
+            }
+            count++;
+            switch (name) {
+                case FunctionNames.SUM:
+                    if (!(value instanceof Number)) {
+                        throw new AggregateFunctionNotSupportedException("Sum of value that is not a number",
+                                "operand", operand,
+                                "valueType", value.getClass());
+                    }
+                    if (value instanceof Double || value instanceof Float) {
+                        floatingSum = true;
+                        doubleSum += ((Number)value).doubleValue();
+                    } else {
+                        longSum += ((Number)value).longValue();
+                    }
+                    break;
+                case FunctionNames.MIN:
+                    if (extremum == null || Tuple.from(value).compareTo(Tuple.from(extremum)) < 0) {
+                        extremum = value;
+                    }
+                    break;
+                case FunctionNames.MAX:
+                    if (extremum == null || Tuple.from(value).compareTo(Tuple.from(extremum)) > 0) {
+                        extremum = value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Nullable
+        Object getResult() {
+            switch (name) {
+                case FunctionNames.SUM:
+                    return floatingSum ? (Object)(doubleSum + longSum) : (Object)longSum;
+                case FunctionNames.MIN:
+                case FunctionNames.MAX:
+                    return extremum;
+                default:
+                    return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * GroupAggregateCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ByteArrayContinuation;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorStartContinuation;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.IllegalContinuationAccessChecker;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A cursor that aggregates consecutive records with the same grouping key, returning one {@link Tuple} per group.
+ * Each tuple has the grouping key's columns followed by the value of each aggregate.
+ *
+ * <p>
+ * The inner cursor must return records ordered by the grouping key. The continuation after a group is the inner
+ * cursor's continuation after the last record of that group, so a resumed cursor starts on a group boundary. If the
+ * inner cursor stops because of an out-of-band limit in the middle of a group, that group is not returned and
+ * the cursor stops with the continuation after the previous group. A single group must therefore be small enough
+ * to be read within those limits.
+ * </p>
+ *
+ * @param <M> type used to represent stored records
+ */
+@API(API.Status.EXPERIMENTAL)
+public class GroupAggregateCursor<M extends Message> implements RecordCursor<Tuple> {
+    @Nonnull
+    private final RecordCursor<FDBQueriedRecord<M>> inner;
+    @Nonnull
+    private final KeyExpression groupingKey;
+    @Nonnull
+    private final List<GroupAggregate> aggregates;
+
+    // The continuation after the last group returned.
+    @Nonnull
+    private RecordCursorContinuation groupEndContinuation;
+    // The first record of the next group, already read from the inner cursor.
+    @Nullable
+    private RecordCursorResult<FDBQueriedRecord<M>> pending;
+    @Nullable
+    private RecordCursorResult<FDBQueriedRecord<M>> innerEnd;
+
+    @Nullable
+    private CompletableFuture<Boolean> hasNextFuture;
+    @Nullable
+    private RecordCursorResult<Tuple> nextResult;
+
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    public GroupAggregateCursor(@Nonnull RecordCursor<FDBQueriedRecord<M>> inner,
+                                @Nonnull KeyExpression groupingKey,
+                                @Nonnull List<GroupAggregate> aggregates,
+                                @Nullable byte[] continuation) {
+        this.inner = inner;
+        this.groupingKey = groupingKey;
+        this.aggregates = aggregates;
+        this.groupEndContinuation = continuation == null ? RecordCursorStartContinuation.START : ByteArrayContinuation.fromNullable(continuation);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<Tuple>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        if (innerEnd != null) {
+            // Already returned the last group.
+            return CompletableFuture.completedFuture(postProcess(RecordCursorResult.withoutNextValue(innerEnd)));
+        }
+        final Group group = new Group();
+        if (pending != null) {
+            group.add(pending);
+            pending = null;
+        }
+        return AsyncUtil.whileTrue(() -> inner.onNext().thenApply(result -> {
+            if (!result.hasNext()) {
+                innerEnd = result;
+                return false;
+            }
+            if (!group.add(result)) {
+                pending = result;
+                return false;
+            }
+            return true;
+        }), getExecutor()).thenApply(vignore -> {
+            final RecordCursorResult<Tuple> result;
+            if (pending == null && innerEnd != null && innerEnd.getNoNextReason().isOutOfBand()) {
+                // Not known whether the group is complete, so leave it for the next continuation.
+                result = RecordCursorResult.withoutNextValue(groupEndContinuation, innerEnd.getNoNextReason());
+            } else if (group.key == null) {
+                result = RecordCursorResult.withoutNextValue(innerEnd);
+            } else {
+                groupEndContinuation = group.continuation;
+                result = RecordCursorResult.withNextValue(group.getRow(), groupEndContinuation);
+            }
+            return postProcess(result);
+        });
+    }
+
+    @Nonnull
+    private RecordCursorResult<Tuple> postProcess(@Nonnull RecordCursorResult<Tuple> result) {
+        mayGetContinuation = !result.hasNext();
+        nextResult = result;
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (hasNextFuture == null) {
+            mayGetContinuation = false;
+            hasNextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return hasNextFuture;
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public Tuple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mayGetContinuation = true;
+        hasNextFuture = null;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+        if (hasNextFuture != null) {
+            hasNextFuture.cancel(false);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return inner.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    private class Group {
+        @Nullable
+        private Tuple key;
+        @Nonnull
+        private final List<GroupAggregate.Accumulator> accumulators = new ArrayList<>(aggregates.size());
+        @Nullable
+        private RecordCursorContinuation continuation;
+
+        // Add a record to this group, unless it belongs to the next one.
+        boolean add(@Nonnull RecordCursorResult<FDBQueriedRecord<M>> result) {
+            final FDBQueriedRecord<M> record = result.get();
+            final Tuple recordKey = groupingKey.evaluateSingleton(record).toTuple();
+            if (key == null) {
+                key = recordKey;
+                for (GroupAggregate aggregate : aggregates) {
+                    accumulators.add(aggregate.newAccumulator());
+                }
+            } else if (!key.equals(recordKey)) {
+                return false;
+            }
+            for (GroupAggregate.Accumulator accumulator : accumulators) {
+                accumulator.accumulate(record);
+            }
+            continuation = result.getContinuation();
+            return true;
+        }
+
+        @Nonnull
+        Tuple getRow() {
+            final List<Object> values = new ArrayList<>(accumulators.size());
+            for (GroupAggregate.Accumulator accumulator : accumulators) {
+                values.add(accumulator.getResult());
+            }
+            return key.addAll(values);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * RecordQueryGroupByPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A plan that computes aggregates for each group of records returned by a child plan ordered by the grouping key.
+ *
+ * <p>
+ * Each row returned is a {@link Tuple} of the grouping key's columns followed by the value of each {@link GroupAggregate}.
+ * Since the child returns the records of each group together, only one group is held in memory at a time, and the child
+ * can be a scan of an index on the grouping key, including a covering one when the index also has the aggregate operands.
+ * Continuations are always at group boundaries.
+ * </p>
+ *
+ * @see GroupAggregateCursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryGroupByPlan implements PlanHashable {
+    @Nonnull
+    private final RecordQueryPlan child;
+    @Nonnull
+    private final KeyExpression groupingKey;
+    @Nonnull
+    private final List<GroupAggregate> aggregates;
+
+    public RecordQueryGroupByPlan(@Nonnull RecordQueryPlan child, @Nonnull KeyExpression groupingKey,
+                                  @Nonnull List<GroupAggregate> aggregates) {
+        this.child = child;
+        this.groupingKey = groupingKey;
+        this.aggregates = ImmutableList.copyOf(aggregates);
+    }
+
+    /**
+     * Plan a query whose results are grouped and aggregated.
+     * The records matching the query are sorted by the grouping key, which is usually satisfied by an index scan.
+     * @param planner the planner to use to plan the query
+     * @param query a query giving the record types and filter, but not a sort
+     * @param groupingKey the key by which to group records
+     * @param aggregates the aggregates to compute for each group
+     * @return a plan returning a row for each group
+     */
+    @Nonnull
+    public static RecordQueryGroupByPlan plan(@Nonnull RecordQueryPlanner planner,
+                                              @Nonnull RecordQuery query,
+                                              @Nonnull KeyExpression groupingKey,
+                                              @Nonnull List<GroupAggregate> aggregates) {
+        if (query.getSort() != null) {
+            throw new RecordCoreArgumentException("Grouped query cannot also be sorted")
+                    .addLogInfo("sort", query.getSort());
+        }
+        if (groupingKey.createsDuplicates()) {
+            throw new RecordCoreArgumentException("Grouping key cannot create duplicates")
+                    .addLogInfo("groupingKey", groupingKey);
+        }
+        // Only these fields are needed, so that a covering index scan can be used.
+        final List<KeyExpression> requiredResults = new ArrayList<>(aggregates.size() + 1);
+        requiredResults.add(groupingKey);
+        for (GroupAggregate aggregate : aggregates) {
+            if (aggregate.getOperand().getColumnSize() > 0 && !requiredResults.contains(aggregate.getOperand())) {
+                requiredResults.add(aggregate.getOperand());
+            }
+        }
+        final RecordQuery sortedQuery = query.toBuilder()
+                .setSort(groupingKey)
+                .setRequiredResults(requiredResults)
+                .build();
+        return new RecordQueryGroupByPlan(planner.plan(sortedQuery), groupingKey, aggregates);
+    }
+
+    /**
+     * Execute this plan.
+     * @param store record store from which to fetch records
+     * @param context evaluation context containing parameter bindings
+     * @param continuation continuation from a previous execution of this same plan
+     * @param executeProperties limits on execution, with the skip and row limit applied to groups
+     * @param <M> type used to represent stored records
+     * @return a cursor of a row for each group
+     */
+    @Nonnull
+    public <M extends Message> RecordCursor<Tuple> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                           @Nonnull EvaluationContext context,
+                                                           @Nullable byte[] continuation,
+                                                           @Nonnull ExecuteProperties executeProperties) {
+        final RecordCursor<Tuple> cursor = new GroupAggregateCursor<>(
+                child.execute(store, context, continuation, executeProperties.clearSkipAndLimit()),
+                groupingKey, aggregates, continuation);
+        return cursor.skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    /**
+     * Execute this plan with no parameter bindings or limits.
+     * @param store record store from which to fetch records
+     * @param continuation continuation from a previous execution of this same plan
+     * @param <M> type used to represent stored records
+     * @return a cursor of a row for each group
+     */
+    @Nonnull
+    public <M extends Message> RecordCursor<Tuple> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                           @Nullable byte[] continuation) {
+        return execute(store, EvaluationContext.EMPTY, continuation, ExecuteProperties.SERIAL_EXECUTE);
+    }
+
+    @Nonnull
+    public RecordQueryPlan getChild() {
+        return child;
+    }
+
+    @Nonnull
+    public KeyExpression getGroupingKey() {
+        return groupingKey;
+    }
+
+    @Nonnull
+    public List<GroupAggregate> getAggregates() {
+        return aggregates;
+    }
+
+    @Override
+    public String toString() {
+        return child + " | GroupBy(" + groupingKey + ", " +
+               aggregates.stream().map(GroupAggregate::toString).collect(Collectors.joining(", ")) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryGroupByPlan that = (RecordQueryGroupByPlan) o;
+        return child.equals(that.child) && groupingKey.equals(that.groupingKey) && aggregates.equals(that.aggregates);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * child.hashCode() + groupingKey.hashCode()) + aggregates.hashCode();
+    }
+
+    @Override
+    public int planHash() {
+        return child.planHash() + groupingKey.planHash() + PlanHashable.planHash(aggregates);
+    }
+}
@@ -30,6 +30,7 @@ import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.cursors.MergeCursor;
 import com.apple.foundationdb.record.provider.foundationdb.cursors.MergeCursorState;
 import com.apple.foundationdb.record.provider.foundationdb.indexes.BitmapValueIndexMaintainer;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.WordBitmap;
 import com.apple.foundationdb.tuple.Tuple;
 
 import javax.annotation.Nonnull;
@@ -58,12 +59,12 @@ class ComposedBitmapIndexCursor extends MergeCursor<IndexEntry, IndexEntry, Merg
     public interface Composer {
         /**
          * Generate a bitmap from several others.
-         * @param bitmaps a list of bitmaps or {@code null} if the corresponding input is absent / empty
-         * @param size the common size of the bitmaps
-         * @return a new bitmap formed from the inputs or {@code null} to represent an empty (all zero) bitmap
+         * @param bitmaps a list of bitmaps or {@code null} if the corresponding input is absent / empty, which must not be modified
+         * @param size the common size of the bitmaps in bits
+         * @return a bitmap formed from the inputs or {@code null} to represent an empty (all zero) bitmap
          */
         @Nullable
-        byte[] compose(@Nonnull List<byte[]> bitmaps, int size);
+        WordBitmap compose(@Nonnull List<WordBitmap> bitmaps, int size);
     }
 
     protected ComposedBitmapIndexCursor(@Nonnull List<MergeCursorState<IndexEntry>> cursorStates, @Nullable FDBStoreTimer timer, @Nonnull Composer composer) {
@@ -117,20 +118,21 @@ class ComposedBitmapIndexCursor extends MergeCursor<IndexEntry, IndexEntry, Merg
         final List<MergeCursorState<IndexEntry>> cursorStates = getCursorStates();
         final IndexEntry firstEntry = resultStates.get(0).getResult().get();
         final int size = firstEntry.getValue().getBytes(0).length;
-        final List<byte[]> bitmaps = new ArrayList<>(cursorStates.size());
+        final List<WordBitmap> bitmaps = new ArrayList<>(cursorStates.size());
         for (MergeCursorState<IndexEntry> cursorState : cursorStates) {
             if (resultStates.contains(cursorState)) {
                 byte[] bitmap = cursorState.getResult().get().getValue().getBytes(0);
                 if (bitmap.length != size) {
                     throw new RecordCoreException("Index bitmaps are not all the same size");
                 }
-                bitmaps.add(bitmap);
+                bitmaps.add(WordBitmap.fromBytes(bitmap).compact());
             } else {
                 bitmaps.add(null);
             }
         }
-        final byte[] composed = composer.compose(bitmaps, size);
-        return new IndexEntry(firstEntry.getIndex(), firstEntry.getKey(), Tuple.fromList(Collections.singletonList(composed)));
+        final WordBitmap composed = composer.compose(bitmaps, size * Byte.SIZE);
+        return new IndexEntry(firstEntry.getIndex(), firstEntry.getKey(),
+                Tuple.fromList(Collections.singletonList(composed == null ? null : composed.toBytes())));
     }
 
     @Nonnull
@@ -30,6 +30,7 @@ import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.WordBitmap;
 import com.apple.foundationdb.record.query.plan.AvailableFields;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryCoveringIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
@@ -45,7 +46,6 @@ import com.google.protobuf.Message;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -253,7 +253,7 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        public byte[] compose(@Nonnull List<byte[]> bitmaps, int size) {
+        public WordBitmap compose(@Nonnull List<WordBitmap> bitmaps, int size) {
             return bitmaps.get(position);
         }
 
@@ -299,16 +299,16 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        public byte[] compose(@Nonnull List<byte[]> bitmaps, int size) {
-            final List<byte[]> operands = new ArrayList<>(children.size());
+        public WordBitmap compose(@Nonnull List<WordBitmap> bitmaps, int size) {
+            final List<WordBitmap> operands = new ArrayList<>(children.size());
             for (ComposerBase child : children) {
                 operands.add(child.compose(bitmaps, size));
             }
-            return operate(operands, new byte[size]);
+            return operate(operands, size);
         }
 
         @Nullable
-        abstract byte[] operate(@Nonnull List<byte[]> operands, @Nonnull byte[] result);
+        abstract WordBitmap operate(@Nonnull List<WordBitmap> operands, int size);
 
         @Override
         public int planHash() {
@@ -334,9 +334,9 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
         }
     }
 
-    // The specific binary operators are mostly the same, except that AND bails out early on empty and they use a different
-    // bit operator in the inner loop. There could be an abstract method for that operation, but it would be invoked
-    // inside the loop, which seems to less the chances for the whole being compiled well.
+    // The word-at-a-time loops are in WordBitmap, so the operators just combine whole bitmaps. The operands may be the
+    // bitmaps from the index entries themselves, which can appear more than once in the expression, so the result is
+    // always a copy.
 
     static class AndComposer extends OperatorComposer {
         public AndComposer(@Nonnull List<ComposerBase> children) {
@@ -351,28 +351,29 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        byte[] operate(@Nonnull List<byte[]> operands, @Nonnull byte[] result) {
-            boolean first = true;
-            boolean empty = true;
-            for (final byte[] operand : operands) {
+        WordBitmap operate(@Nonnull List<WordBitmap> operands, int size) {
+            // Start from the operand with the fewest bits set, since the result cannot have more.
+            WordBitmap smallest = null;
+            for (final WordBitmap operand : operands) {
                 if (operand == null) {
                     return null;
                 }
-                if (first) {
-                    System.arraycopy(operand, 0, result, 0, result.length);
-                    empty = first = false;
-                } else {
-                    empty = true;
-                    for (int j = 0; j < result.length; j++) {
-                        final byte b = (byte) (result[j] & operand[j]);
-                        result[j] = b;
-                        if (empty && b != 0) {
-                            empty = false;
-                        }
+                if (smallest == null || operand.getCardinality() < smallest.getCardinality()) {
+                    smallest = operand;
+                }
+            }
+            if (smallest == null) {
+                return null;
+            }
+            final WordBitmap result = smallest.copy();
+            for (final WordBitmap operand : operands) {
+                if (operand != smallest) {
+                    if (result.and(operand).isEmpty()) {
+                        return null;
                     }
                 }
             }
-            return empty ? null : result;
+            return result.isEmpty() ? null : result;
         }
     }
 
@@ -389,28 +390,19 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        byte[] operate(@Nonnull List<byte[]> operands, @Nonnull byte[] result) {
-            boolean first = true;
-            boolean empty = true;
-            for (final byte[] operand : operands) {
+        WordBitmap operate(@Nonnull List<WordBitmap> operands, int size) {
+            WordBitmap result = null;
+            for (final WordBitmap operand : operands) {
                 if (operand == null) {
                     continue;
                 }
-                if (first) {
-                    System.arraycopy(operand, 0, result, 0, result.length);
-                    empty = first = false;
+                if (result == null) {
+                    result = operand.copy();
                 } else {
-                    empty = true;
-                    for (int j = 0; j < result.length; j++) {
-                        final byte b = (byte) (result[j] | operand[j]);
-                        result[j] = b;
-                        if (empty && b != 0) {
-                            empty = false;
-                        }
-                    }
+                    result.or(operand);
                 }
             }
-            return empty ? null : result;
+            return result == null || result.isEmpty() ? null : result;
         }
     }
 
@@ -427,28 +419,19 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        byte[] operate(@Nonnull List<byte[]> operands, @Nonnull byte[] result) {
-            boolean first = true;
-            boolean empty = true;
-            for (final byte[] operand : operands) {
+        WordBitmap operate(@Nonnull List<WordBitmap> operands, int size) {
+            WordBitmap result = null;
+            for (final WordBitmap operand : operands) {
                 if (operand == null) {
                     continue;
                 }
-                if (first) {
-                    System.arraycopy(operand, 0, result, 0, result.length);
-                    empty = first = false;
+                if (result == null) {
+                    result = operand.copy();
                 } else {
-                    empty = true;
-                    for (int j = 0; j < result.length; j++) {
-                        final byte b = (byte) (result[j] ^ operand[j]);
-                        result[j] = b;
-                        if (empty && b != 0) {
-                            empty = false;
-                        }
-                    }
+                    result.xor(operand);
                 }
             }
-            return empty ? null : result;
+            return result == null || result.isEmpty() ? null : result;
         }
     }
 
@@ -468,17 +451,9 @@ public class ComposedBitmapIndexQueryPlan implements RecordQueryPlanWithNoChildr
 
         @Nullable
         @Override
-        public byte[] compose(@Nonnull List<byte[]> bitmaps, int size) {
-            final byte[] operand = child.compose(bitmaps, size);
-            final byte[] result = new byte[size];
-            if (operand == null) {
-                Arrays.fill(result, (byte)0xFF);
-            } else {
-                for (int i = 0; i < result.length; i++) {
-                    result[i] = (byte)~operand[i];
-                }
-            }
-            return result;
+        public WordBitmap compose(@Nonnull List<WordBitmap> bitmaps, int size) {
+            final WordBitmap operand = child.compose(bitmaps, size);
+            return operand == null ? WordBitmap.full(size) : operand.copy().not();
         }
 
         @Override
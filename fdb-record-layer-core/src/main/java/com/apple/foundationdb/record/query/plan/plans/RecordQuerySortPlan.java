@@ -0,0 +1,217 @@
+/*
+ * RecordQuerySortPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.SortCursor;
+import com.apple.foundationdb.record.query.plan.temp.AliasMap;
+import com.apple.foundationdb.record.query.plan.temp.CorrelationIdentifier;
+import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.Quantifier;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+import com.apple.foundationdb.record.query.plan.temp.explain.Attribute;
+import com.apple.foundationdb.record.query.plan.temp.explain.NodeInfo;
+import com.apple.foundationdb.record.query.plan.temp.explain.PlannerGraph;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A query plan that sorts the records from a child plan in memory, for when no index gives the wanted order.
+ *
+ * <p>
+ * Records are ordered by the sort key and then by primary key. At most {@code maxRecords} records are held in memory,
+ * and the child is executed again for each batch of {@code maxRecords}, so it is only read once if it has no more
+ * records than that.
+ * </p>
+ *
+ * <p>
+ * The child is executed with the same scan and time limits as the sort. If it stops because of one of those in the
+ * middle of a pass, the sort stops too, without returning a record, and its continuation holds the sort and primary
+ * keys of the records kept so far along with the child's continuation, so that the pass carries on from there in
+ * the next transaction. Likewise, the continuation after a record holds the keys of the rest of the batch. Records
+ * are therefore loaded again by primary key when a sort is resumed.
+ * </p>
+ *
+ * @see SortCursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQuerySortPlan implements RecordQueryPlanWithChild {
+    /**
+     * The default number of records held in memory by a sort.
+     */
+    public static final int DEFAULT_MAX_RECORDS = 1000;
+
+    @Nonnull
+    private final Quantifier.Physical inner;
+    @Nonnull
+    private final KeyExpression sortKey;
+    private final boolean reverse;
+    private final int maxRecords;
+
+    public RecordQuerySortPlan(@Nonnull RecordQueryPlan innerPlan, @Nonnull KeyExpression sortKey, boolean reverse, int maxRecords) {
+        this(Quantifier.physical(GroupExpressionRef.of(innerPlan)), sortKey, reverse, maxRecords);
+    }
+
+    public RecordQuerySortPlan(@Nonnull Quantifier.Physical inner, @Nonnull KeyExpression sortKey, boolean reverse, int maxRecords) {
+        this.inner = inner;
+        this.sortKey = sortKey;
+        this.reverse = reverse;
+        this.maxRecords = maxRecords;
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<FDBQueriedRecord<M>> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                                         @Nonnull EvaluationContext context,
+                                                                         @Nullable byte[] continuation,
+                                                                         @Nonnull ExecuteProperties executeProperties) {
+        final ExecuteProperties innerProperties = executeProperties.clearSkipAndLimit();
+        return SortCursor.create(innerContinuation -> getInner().execute(store, context, innerContinuation, innerProperties),
+                record -> sortKey.evaluateSingleton(record).toTuple().add(record.getPrimaryKey()),
+                key -> store.loadRecordAsync(key.getNestedTuple(key.size() - 1))
+                        .thenApply(record -> record == null ? null : FDBQueriedRecord.stored(record)),
+                reverse, maxRecords, continuation, store.getTimer(), store.getExecutor())
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    @Nonnull
+    public KeyExpression getSortKey() {
+        return sortKey;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    @Override
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    @Nonnull
+    private RecordQueryPlan getInner() {
+        return inner.getRangesOverPlan();
+    }
+
+    @Override
+    @Nonnull
+    public RecordQueryPlan getChild() {
+        return getInner();
+    }
+
+    @Nonnull
+    @Override
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of(inner);
+    }
+
+    @Override
+    public String toString() {
+        return getInner() + " | Sort(" + sortKey + (reverse ? " DESC" : "") + ")";
+    }
+
+    @Nonnull
+    @Override
+    public Set<CorrelationIdentifier> getCorrelatedToWithoutChildren() {
+        return ImmutableSet.of();
+    }
+
+    @Nonnull
+    @Override
+    public RecordQuerySortPlan rebaseWithRebasedQuantifiers(@Nonnull final AliasMap translationMap,
+                                                            @Nonnull final List<Quantifier> rebasedQuantifiers) {
+        return new RecordQuerySortPlan(Iterables.getOnlyElement(rebasedQuantifiers).narrow(Quantifier.Physical.class),
+                sortKey, reverse, maxRecords);
+    }
+
+    @Override
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression,
+                                         @Nonnull final AliasMap equivalencesMap) {
+        if (this == otherExpression) {
+            return true;
+        }
+        if (getClass() != otherExpression.getClass()) {
+            return false;
+        }
+        final RecordQuerySortPlan other = (RecordQuerySortPlan) otherExpression;
+        return reverse == other.reverse && maxRecords == other.maxRecords && sortKey.equals(other.sortKey);
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override
+    public boolean equals(final Object other) {
+        return structuralEquals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return structuralHashCode();
+    }
+
+    @Override
+    public int hashCodeWithoutChildren() {
+        return Objects.hash(sortKey, reverse, maxRecords);
+    }
+
+    @Override
+    public int planHash() {
+        return getInner().planHash() + sortKey.planHash() + (reverse ? 1 : 0);
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_SORT);
+        getInner().logPlanStructure(timer);
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + getInner().getComplexity();
+    }
+
+    @Nonnull
+    @Override
+    public PlannerGraph rewritePlannerGraph(@Nonnull final List<? extends PlannerGraph> childGraphs) {
+        return PlannerGraph.fromNodeAndChildGraphs(
+                new PlannerGraph.OperatorNodeWithInfo(this,
+                        NodeInfo.SORT_OPERATOR,
+                        ImmutableList.of("BY {{sortKey}}"),
+                        ImmutableMap.of("sortKey", Attribute.gml(sortKey.toString() + (reverse ? " DESC" : "")))),
+                childGraphs);
+    }
+}
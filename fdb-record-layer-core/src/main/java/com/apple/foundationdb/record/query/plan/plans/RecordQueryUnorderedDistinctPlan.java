@@ -30,6 +30,7 @@ import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.DistinctCursor;
 import com.apple.foundationdb.record.query.plan.temp.AliasMap;
 import com.apple.foundationdb.record.query.plan.temp.CorrelationIdentifier;
 import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
@@ -90,6 +91,14 @@ public class RecordQueryUnorderedDistinctPlan implements RecordQueryPlanWithChil
                                                                          @Nonnull EvaluationContext context,
                                                                          @Nullable byte[] continuation,
                                                                          @Nonnull ExecuteProperties executeProperties) {
+        if (executeProperties.getDistinctBytesLimit() != ExecuteProperties.UNLIMITED_DISTINCT_BYTES) {
+            return DistinctCursor.<FDBQueriedRecord<M>>create((seen, innerContinuation) ->
+                    getInner().execute(store, context, innerContinuation, executeProperties.clearSkipAndLimit())
+                        .filterInstrumented(record -> seen.add(getComparisonKey().evaluateSingleton(record).toTuple().pack()), store.getTimer(),
+                            Collections.emptySet(), duringEvents, uniqueCounts, duplicateCounts),
+                    executeProperties.getDistinctBytesLimit(), continuation)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+        }
         final Set<Key.Evaluated> seen = new HashSet<>();
         return getInner().execute(store, context, continuation, executeProperties.clearSkipAndLimit())
             .filterInstrumented(record -> seen.add(getComparisonKey().evaluateSingleton(record)),
@@ -104,6 +104,11 @@ public class NodeInfo {
             NodeIcon.DATA_ACCESS_OPERATOR,
             "Score For Rank",
             "A score for rank operator converts ranks to scores and executes its input plan with the conversion results bound in named parameters.");
+    public static final NodeInfo SORT_OPERATOR = new NodeInfo(
+            "SortOperator",
+            NodeIcon.COMPUTATION_OPERATOR,
+            "Sort",
+            "A sort operator processes its input records and returns them ordered by the sort key. It holds a bounded number of records in memory and reads its input again if there are more than that.");
     public static final NodeInfo SPATIAL_INDEX_SCAN_OPERATOR = new NodeInfo(
             "SpatialIndexScanOperator",
             NodeIcon.DATA_ACCESS_OPERATOR,
@@ -201,6 +206,7 @@ public class NodeInfo {
                 PREDICATE_FILTER_OPERATOR,
                 SCAN_OPERATOR,
                 SCORE_FOR_RANK_OPERATOR,
+                SORT_OPERATOR,
                 SPATIAL_INDEX_SCAN_OPERATOR,
                 TABLE_FUNCTION_OPERATOR,
                 TEXT_INDEX_SCAN_OPERATOR,
@@ -20,22 +20,37 @@
 
 package com.apple.foundationdb.record.cursors;
 
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseRunner;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBTestBase;
+import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.BooleanSource;
 import com.apple.test.Tags;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test for {@link AutoContinuingCursor}.
@@ -53,29 +68,86 @@ public class AutoContinuingCursorTest extends FDBTestBase {
 
     private void testAutoContinuingCursorGivenCursorGenerator(
             BiFunction<FDBRecordContext, byte[], RecordCursor<Integer>> nextCursorGenerator,
-            List<Integer> expectedList) {
+            List<Integer> expectedList,
+            boolean prefetch) {
         try (FDBDatabaseRunner runner = database.newRunner()) {
-            RecordCursor<Integer> cursor = new AutoContinuingCursor<>(runner, nextCursorGenerator);
+            RecordCursor<Integer> cursor = new AutoContinuingCursor<>(runner, nextCursorGenerator, prefetch);
 
             List<Integer> returnedList = cursor.asList().join();
             assertEquals(expectedList, returnedList);
         }
     }
 
-    @Test
-    public void testAutoContinuingCursorSimple() {
+    @ParameterizedTest(name = "testAutoContinuingCursorSimple [prefetch = {0}]")
+    @BooleanSource
+    public void testAutoContinuingCursorSimple(boolean prefetch) {
         testAutoContinuingCursorGivenCursorGenerator((context, continuation) ->
                         new ListCursor<>(list, continuation).limitRowsTo(3),
-                list);
+                list, prefetch);
     }
 
-    @Test
-    public void testAutoContinuingCursorWhenSomeGeneratedCursorsNeverHaveNext() {
+    @ParameterizedTest(name = "testAutoContinuingCursorWhenSomeGeneratedCursorsNeverHaveNext [prefetch = {0}]")
+    @BooleanSource
+    public void testAutoContinuingCursorWhenSomeGeneratedCursorsNeverHaveNext(boolean prefetch) {
         // This underlying cursor may not produce any item in one transaction. AutoContinuingCursor is expected to make
         // progress until it is truly exhausted.
         testAutoContinuingCursorGivenCursorGenerator((context, continuation) ->
                         new ListCursor<>(list, continuation).limitRowsTo(2).filter(item -> item % 3 == 0),
-                Arrays.asList(3, 6, 9)
+                Arrays.asList(3, 6, 9),
+                prefetch
         );
     }
+
+    @ParameterizedTest(name = "testAutoContinuingCursorKeepsContextOfLastResult [prefetch = {0}]")
+    @BooleanSource
+    public void testAutoContinuingCursorKeepsContextOfLastResult(boolean prefetch) {
+        try (FDBDatabaseRunner runner = database.newRunner()) {
+            final List<FDBRecordContext> contexts = new ArrayList<>();
+            final RecordCursor<FDBRecordContext> cursor = new AutoContinuingCursor<>(runner, (context, continuation) -> {
+                contexts.add(context);
+                return new ListCursor<>(list, continuation).limitRowsTo(3).map(item -> context);
+            }, prefetch);
+            RecordCursorResult<FDBRecordContext> result;
+            int count = 0;
+            while ((result = cursor.getNext()).hasNext()) {
+                // The context that the result came from has not been closed, even if a prefetch has moved on.
+                assertFalse(result.get().isClosed());
+                count++;
+            }
+            assertEquals(list.size(), count);
+            cursor.close();
+            for (FDBRecordContext context : contexts) {
+                assertTrue(context.isClosed());
+            }
+        }
+    }
+
+    @Test
+    public void testAutoContinuingCursorReadAhead() {
+        final Subspace subspace = new Subspace(Tuple.from(UUID.randomUUID()));
+        database.run(context -> {
+            for (int i = 0; i < 100; i++) {
+                context.ensureActive().set(subspace.pack(Tuple.from(i)), Tuple.from(i).pack());
+            }
+            return null;
+        });
+        final List<Integer> expectedList = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder().setReturnedRowLimit(7).setIsolationLevel(IsolationLevel.SNAPSHOT).build())
+                .setReadAhead(5);
+        try {
+            testAutoContinuingCursorGivenCursorGenerator((context, continuation) ->
+                    KeyValueCursor.Builder.withSubspace(subspace)
+                            .setContext(context)
+                            .setContinuation(continuation)
+                            .setScanProperties(scanProperties)
+                            .build()
+                            .map(kv -> (int)Tuple.fromBytes(kv.getValue()).getLong(0)),
+                    expectedList, true);
+        } finally {
+            database.run(context -> {
+                context.ensureActive().clear(subspace.range());
+                return null;
+            });
+        }
+    }
 }
@@ -75,11 +75,13 @@ import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Tests for {@link RecordMetaDataBuilder}.
@@ -281,6 +283,19 @@ public class RecordMetaDataBuilderTest {
                 simpleRecordTypeBuilder.setPrimaryKey(Key.Expressions.concat(Key.Expressions.field("rec_no"), VersionKeyExpression.VERSION)));
     }
 
+    @Test
+    public void appendOnly() {
+        RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(TestRecords1Proto.getDescriptor());
+        builder.getRecordType("MySimpleRecord").setAppendOnly(true);
+        RecordMetaData metaData = builder.getRecordMetaData();
+        assertTrue(metaData.getRecordType("MySimpleRecord").isAppendOnly());
+        assertFalse(metaData.getRecordType("MyOtherRecord").isAppendOnly());
+
+        RecordMetaData fromProto = RecordMetaData.build(metaData.toProto());
+        assertTrue(fromProto.getRecordType("MySimpleRecord").isAppendOnly());
+        assertFalse(fromProto.getRecordType("MyOtherRecord").isAppendOnly());
+    }
+
     @Test
     @SuppressWarnings("deprecation")
     public void selfContainedMetaData() {
@@ -48,6 +48,7 @@ import java.util.zip.Deflater;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -185,6 +186,129 @@ public class TransformedRecordSerializerTest {
                 "raw_length", rawLength, "compressed_length", serialized.length);
     }
 
+    @Test
+    public void compressWithLZ4() {
+        TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(LZ4CompressionCodec.instance())
+                .build();
+
+        // There should be no compression actually added for a small record like this
+        MySimpleRecord smallRecord = MySimpleRecord.newBuilder().setRecNo(1066L).build();
+        byte[] serialized = serialize(serializer, smallRecord);
+        assertEquals(TransformedRecordSerializer.ENCODING_CLEAR, serialized[0]);
+        assertEquals(smallRecord, deserialize(serializer, Tuple.from(1066L), serialized));
+
+        for (String strValue : Arrays.asList(Strings.repeat("foo", 1000), SONNET_108)) {
+            MySimpleRecord record = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(strValue).build();
+            RecordTypeUnion unionRecord = RecordTypeUnion.newBuilder().setMySimpleRecord(record).build();
+            serialized = serialize(serializer, record);
+            assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serialized[0]);
+            assertEquals(LZ4CompressionCodec.ID, serialized[1]);
+            int rawLength = unionRecord.toByteArray().length;
+            assertEquals(rawLength, ByteBuffer.wrap(serialized, 2, 4).order(ByteOrder.BIG_ENDIAN).getInt());
+            assertEquals(record, deserialize(serializer, Tuple.from(1066L), serialized));
+
+            logMetrics("metrics with LZ4 compression",
+                    "raw_length", rawLength, "compressed_length", serialized.length);
+        }
+    }
+
+    @Test
+    public void compressWithZstd() {
+        TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(ZstdCompressionCodec.instance())
+                .build();
+
+        MySimpleRecord smallRecord = MySimpleRecord.newBuilder().setRecNo(1066L).build();
+        byte[] serialized = serialize(serializer, smallRecord);
+        assertEquals(TransformedRecordSerializer.ENCODING_CLEAR, serialized[0]);
+        assertEquals(smallRecord, deserialize(serializer, Tuple.from(1066L), serialized));
+
+        for (String strValue : Arrays.asList(Strings.repeat("foo", 1000), SONNET_108)) {
+            MySimpleRecord record = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(strValue).build();
+            RecordTypeUnion unionRecord = RecordTypeUnion.newBuilder().setMySimpleRecord(record).build();
+            serialized = serialize(serializer, record);
+            assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serialized[0]);
+            assertEquals(ZstdCompressionCodec.ID, serialized[1]);
+            int rawLength = unionRecord.toByteArray().length;
+            assertEquals(rawLength, ByteBuffer.wrap(serialized, 2, 4).order(ByteOrder.BIG_ENDIAN).getInt());
+            assertEquals(record, deserialize(serializer, Tuple.from(1066L), serialized));
+
+            // Readable by a serializer that writes with another codec once it knows about this one.
+            TransformedRecordSerializer<Message> lz4Serializer = TransformedRecordSerializer.newDefaultBuilder()
+                    .setCompressWhenSerializing(true)
+                    .setCompressionCodec(LZ4CompressionCodec.instance())
+                    .addDecompressionCodec(ZstdCompressionCodec.instance())
+                    .build();
+            assertEquals(record, deserialize(lz4Serializer, Tuple.from(1066L), serialized));
+
+            logMetrics("metrics with Zstandard compression",
+                    "raw_length", rawLength, "compressed_length", serialized.length);
+        }
+    }
+
+    @Test
+    public void changeCompressionCodec() {
+        TransformedRecordSerializer<Message> deflateSerializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .build();
+        TransformedRecordSerializer<Message> lz4Serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(LZ4CompressionCodec.instance())
+                .build();
+        MySimpleRecord record = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(SONNET_108).build();
+
+        // Records compressed with Deflate can always be read.
+        byte[] deflateSerialized = serialize(deflateSerializer, record);
+        assertEquals(DeflateCompressionCodec.ID, deflateSerialized[1]);
+        assertEquals(record, deserialize(lz4Serializer, Tuple.from(1066L), deflateSerialized));
+
+        // Records compressed with another codec need that codec.
+        byte[] lz4Serialized = serialize(lz4Serializer, record);
+        RecordSerializationException e = assertThrows(RecordSerializationException.class,
+                () -> deserialize(deflateSerializer, Tuple.from(1066L), lz4Serialized));
+        assertThat(e.getMessage(), containsString("unknown compression version"));
+        TransformedRecordSerializer<Message> migratedSerializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .addDecompressionCodec(LZ4CompressionCodec.instance())
+                .build();
+        assertEquals(record, deserialize(migratedSerializer, Tuple.from(1066L), lz4Serialized));
+        assertEquals(record, deserialize(migratedSerializer.widen(), Tuple.from(1066L), lz4Serialized));
+    }
+
+    @Test
+    public void reuseCompressionResources() {
+        final int level = 7;
+        TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionLevel(level)
+                .build();
+
+        // Serializing one record after another reuses the compression buffer, but must not change the earlier result.
+        MySimpleRecord record1 = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(Strings.repeat("foo", 1000)).build();
+        MySimpleRecord record2 = MySimpleRecord.newBuilder().setRecNo(1415L).setStrValueIndexed(SONNET_108).build();
+        byte[] serialized1 = serialize(serializer, record1);
+        byte[] serialized2 = serialize(serializer, record2);
+        assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serialized1[0]);
+        assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serialized2[0]);
+        assertEquals(record1, deserialize(serializer, Tuple.from(1066L), serialized1));
+        assertEquals(record2, deserialize(serializer, Tuple.from(1415L), serialized2));
+
+        // The compressor and decompressor were returned to their pools.
+        assertThat(DeflateCompressionCodec.DEFLATER_POOL.getPoolSize(level), greaterThan(0));
+        assertThat(DeflateCompressionCodec.INFLATER_POOL.getPoolSize(false), greaterThan(0));
+
+        // A record too big for the thread's buffer still compresses.
+        MySimpleRecord bigRecord = MySimpleRecord.newBuilder().setRecNo(1776L)
+                .setStrValueIndexed(Strings.repeat("bar", TransformedRecordSerializer.MAX_COMPRESSION_BUFFER_SIZE)).build();
+        byte[] serializedBig = serialize(serializer, bigRecord);
+        assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serializedBig[0]);
+        assertEquals(bigRecord, deserialize(serializer, Tuple.from(1776L), serializedBig));
+        assertEquals(record1, deserialize(serializer, Tuple.from(1066L), serialized1));
+    }
+
     @Test
     public void unknownCompressionVersion() {
         RecordSerializationException e = assertThrows(RecordSerializationException.class, () -> {
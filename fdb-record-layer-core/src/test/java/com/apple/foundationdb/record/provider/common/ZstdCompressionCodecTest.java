@@ -0,0 +1,110 @@
+/*
+ * ZstdCompressionCodecTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ZstdCompressionCodec}.
+ */
+public class ZstdCompressionCodecTest {
+    private final ZstdCompressionCodec codec = ZstdCompressionCodec.instance();
+
+    // Compress into exactly as much room as the data takes, at an offset in both arrays, and check that it decompresses back.
+    private int roundTrip(@Nonnull byte[] data) throws DataFormatException {
+        byte[] input = new byte[data.length + 10];
+        System.arraycopy(data, 0, input, 3, data.length);
+        byte[] compressed = new byte[data.length + 7];
+        int compressedLength = codec.compress(input, 3, data.length, compressed, 7, data.length);
+        assertTrue(compressedLength > 0);
+        byte[] decompressed = new byte[data.length + 2];
+        codec.decompress(compressed, 7, compressedLength, decompressed, 1, data.length);
+        assertArrayEquals(data, Arrays.copyOfRange(decompressed, 1, data.length + 1));
+        return compressedLength;
+    }
+
+    @Test
+    public void roundTripRepetitive() throws DataFormatException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("record number ").append(i % 37).append(", ");
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        int compressedLength = roundTrip(data);
+        assertTrue(compressedLength < data.length / 10, "compressed length " + compressedLength + " of " + data.length);
+
+        // Bigger than the per-thread buffer.
+        byte[] runs = new byte[200000];
+        new Random(1066).nextBytes(runs);
+        Arrays.fill(runs, 1000, 150000, (byte)0);
+        roundTrip(runs);
+    }
+
+    @Test
+    public void roundTripRandom() throws DataFormatException {
+        Random random = new Random(1415);
+        for (int i = 0; i < 50; i++) {
+            byte[] data = new byte[100 + random.nextInt(100000)];
+            // Few distinct bytes, so there are both matches and literals.
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte)random.nextInt(4);
+            }
+            roundTrip(data);
+        }
+    }
+
+    @Test
+    public void incompressible() {
+        byte[] data = new byte[1000];
+        new Random(1066).nextBytes(data);
+        byte[] compressed = new byte[data.length];
+        assertEquals(-1, codec.compress(data, 0, data.length, compressed, 0, compressed.length));
+    }
+
+    @Test
+    public void corrupt() {
+        byte[] data = "abcabcabcabcabcabcabcabcabcabcabcabcabcabc".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = new byte[data.length];
+        int compressedLength = codec.compress(data, 0, data.length, compressed, 0, compressed.length);
+        assertTrue(compressedLength > 0);
+        byte[] decompressed = new byte[data.length];
+        byte[] truncated = Arrays.copyOf(compressed, compressedLength - 1);
+        assertThrows(DataFormatException.class,
+                () -> codec.decompress(truncated, 0, truncated.length, decompressed, 0, data.length));
+        assertThrows(DataFormatException.class,
+                () -> codec.decompress(compressed, 0, compressedLength, decompressed, 0, data.length - 1));
+        byte[] badMagic = Arrays.copyOf(compressed, compressedLength);
+        badMagic[0] ^= 0xFF;
+        assertThrows(DataFormatException.class,
+                () -> codec.decompress(badMagic, 0, badMagic.length, decompressed, 0, data.length));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * AdaptivePipelineSizerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link AdaptivePipelineSizer}.
+ */
+public class AdaptivePipelineSizerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void growsWhileLatencyIsSteady() {
+        final AdaptivePipelineSizer sizer = new AdaptivePipelineSizer();
+        assertEquals(AdaptivePipelineSizer.DEFAULT_INITIAL_SIZE, sizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
+        for (int i = 0; i < 100; i++) {
+            sizer.recordLatency(PipelineOperation.KEY_TO_RECORD, FAST);
+        }
+        final int grown = sizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD);
+        assertThat(grown, greaterThan(AdaptivePipelineSizer.DEFAULT_INITIAL_SIZE));
+        // Additive: about one more per pipeline's worth of completions.
+        assertThat(grown, lessThan(AdaptivePipelineSizer.DEFAULT_INITIAL_SIZE + 10));
+
+        for (int i = 0; i < 10000; i++) {
+            sizer.recordLatency(PipelineOperation.KEY_TO_RECORD, FAST);
+        }
+        assertEquals(sizer.getMaxSize(), sizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
+        // Other operations are sized separately.
+        assertEquals(AdaptivePipelineSizer.DEFAULT_INITIAL_SIZE, sizer.getPipelineSize(PipelineOperation.IN_JOIN));
+    }
+
+    @Test
+    public void backsOffWhenLatencyRises() {
+        final AdaptivePipelineSizer sizer = new AdaptivePipelineSizer(2, 20, 50, 2.0);
+        for (int i = 0; i < 100; i++) {
+            sizer.recordLatency(PipelineOperation.INDEX_TO_RECORD, FAST);
+        }
+        final int before = sizer.getPipelineSize(PipelineOperation.INDEX_TO_RECORD);
+        sizer.recordLatency(PipelineOperation.INDEX_TO_RECORD, SLOW);
+        assertEquals(before / 2, sizer.getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+        // Only cut once per pipeline's worth of completions.
+        for (int i = 0; i < before / 2 - 2; i++) {
+            sizer.recordLatency(PipelineOperation.INDEX_TO_RECORD, SLOW);
+        }
+        assertEquals(before / 2, sizer.getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+        for (int i = 0; i < 500; i++) {
+            sizer.recordLatency(PipelineOperation.INDEX_TO_RECORD, SLOW);
+        }
+        assertEquals(sizer.getMinSize(), sizer.getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+
+        // Eventually the higher latency becomes the baseline, and the pipeline can grow again.
+        for (int i = 0; i < 5000; i++) {
+            sizer.recordLatency(PipelineOperation.INDEX_TO_RECORD, SLOW);
+        }
+        assertThat(sizer.getPipelineSize(PipelineOperation.INDEX_TO_RECORD), greaterThan(sizer.getMinSize()));
+    }
+
+    @Test
+    public void mapPipelined() {
+        final AdaptivePipelineSizer sizer = new AdaptivePipelineSizer();
+        final List<Integer> values = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+        final List<Integer> doubled = sizer.mapPipelined(RecordCursor.fromList(values),
+                value -> CompletableFuture.supplyAsync(() -> value * 2), PipelineOperation.RECORD_FUNCTION)
+                .asList().join();
+        assertEquals(values.stream().map(value -> value * 2).collect(Collectors.toList()), doubled);
+        assertThat(sizer.getAverageLatencyNanos(PipelineOperation.RECORD_FUNCTION), greaterThan(0.0));
+    }
+
+    @Test
+    public void invalidSizes() {
+        assertThrows(RecordCoreArgumentException.class, () -> new AdaptivePipelineSizer(0, 10, 100, 2.0));
+        assertThrows(RecordCoreArgumentException.class, () -> new AdaptivePipelineSizer(5, 4, 100, 2.0));
+        assertThrows(RecordCoreArgumentException.class, () -> new AdaptivePipelineSizer(1, 10, 9, 2.0));
+        assertThrows(RecordCoreArgumentException.class, () -> new AdaptivePipelineSizer(1, 10, 100, 1.0));
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * BulkRecordLoaderTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.FDBError;
+import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCoreRetriableTransactionException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link BulkRecordLoader}.
+ */
+@Tag(Tags.RequiresFDB)
+public class BulkRecordLoaderTest extends FDBRecordStoreTestBase {
+
+    private static final RecordMetaDataHook RANK_HOOK = metaData ->
+            metaData.addIndex("MySimpleRecord", new Index("rank_num_value_2", Key.Expressions.field("num_value_2").ungrouped(), IndexTypes.RANK));
+
+    private static List<TestRecords1Proto.MySimpleRecord> records(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(i % 2 == 0 ? "even" : "odd")
+                        .setNumValueUnique(i)
+                        .setNumValue2(i % 7)
+                        .setNumValue3Indexed(i % 5)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private BulkRecordLoader.Builder newLoader() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            return BulkRecordLoader.newBuilder().setDatabase(fdb).setRecordStore(recordStore);
+        }
+    }
+
+    private int indexEntryCount(String indexName) {
+        return recordStore.scanIndex(recordStore.getRecordMetaData().getIndex(indexName), IndexScanType.BY_VALUE,
+                TupleRange.ALL, null, ScanProperties.FORWARD_SCAN).getCount().join();
+    }
+
+    @Test
+    public void loadRecords() {
+        final int count = 250;
+        final long loaded;
+        try (BulkRecordLoader loader = newLoader().setMaxRecordsPerTransaction(40).addDeferredIndex("MySimpleRecord$num_value_3_indexed").build()) {
+            loaded = loader.loadRecords(records(count).iterator());
+        }
+        assertEquals(count, loaded);
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            assertEquals(count, (int)recordStore.scanRecords(null, ScanProperties.FORWARD_SCAN).getCount().join());
+            assertEquals(count, recordStore.getSnapshotRecordCount().join().intValue());
+            for (Index index : recordStore.getRecordMetaData().getAllIndexes()) {
+                assertTrue(recordStore.isIndexReadable(index), index.getName() + " should be readable");
+            }
+            // Maintained during the load.
+            assertEquals(count, indexEntryCount("MySimpleRecord$str_value_indexed"));
+            // Built afterwards.
+            assertEquals(count, indexEntryCount("MySimpleRecord$num_value_unique"));
+            assertEquals(count, indexEntryCount("MySimpleRecord$num_value_3_indexed"));
+            assertEquals(count, indexEntryCount("rank_num_value_2"));
+            final FDBStoredRecord<?> record = recordStore.loadRecord(Tuple.from(17L));
+            assertEquals(records(count).get(17), record.getRecord());
+        }
+    }
+
+    @Test
+    public void requireEmpty() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            recordStore.saveRecord(records(1).get(0));
+            commit(context);
+        }
+        try (BulkRecordLoader loader = newLoader().build()) {
+            assertThrows(RecordCoreException.class, () -> loader.loadRecords(records(10).iterator()));
+        }
+        try (BulkRecordLoader loader = newLoader().setRequireEmpty(false).build()) {
+            assertEquals(9, loader.loadRecords(records(10).subList(1, 10).iterator()));
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            assertEquals(10, indexEntryCount("MySimpleRecord$str_value_indexed"));
+            assertEquals(10, indexEntryCount("rank_num_value_2"));
+        }
+    }
+
+    @Test
+    public void resumeAfterFailure() {
+        final int count = 100;
+        final List<TestRecords1Proto.MySimpleRecord> records = records(count);
+        final Iterator<TestRecords1Proto.MySimpleRecord> failing = new Iterator<TestRecords1Proto.MySimpleRecord>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public TestRecords1Proto.MySimpleRecord next() {
+                if (next == 45) {
+                    throw new IllegalStateException("source failed");
+                }
+                return records.get(next++);
+            }
+        };
+        final BulkRecordLoader.PartialLoadException partialLoad;
+        try (BulkRecordLoader loader = newLoader().setMaxRecordsPerTransaction(20).build()) {
+            partialLoad = assertThrows(BulkRecordLoader.PartialLoadException.class, () -> loader.loadRecords(failing));
+        }
+        assertEquals(40, partialLoad.getRecordCount());
+        assertThat(partialLoad.getCause(), instanceOf(IllegalStateException.class));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            for (Index index : recordStore.getRecordMetaData().getAllIndexes()) {
+                assertTrue(recordStore.isIndexReadable(index), index.getName() + " should be readable");
+            }
+            assertEquals(40, indexEntryCount("MySimpleRecord$num_value_unique"));
+            assertEquals(40, indexEntryCount("rank_num_value_2"));
+        }
+
+        // Starting over fails, since the store is no longer empty, so load the rest.
+        try (BulkRecordLoader loader = newLoader().build()) {
+            assertThrows(RecordCoreException.class, () -> loader.loadRecords(records.iterator()));
+        }
+        try (BulkRecordLoader loader = newLoader().setRequireEmpty(false).build()) {
+            assertEquals(count - 40, loader.loadRecords(records.subList((int)partialLoad.getRecordCount(), count).iterator()));
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, RANK_HOOK);
+            for (Index index : recordStore.getRecordMetaData().getAllIndexes()) {
+                assertTrue(recordStore.isIndexReadable(index), index.getName() + " should be readable");
+            }
+            assertEquals(count, indexEntryCount("MySimpleRecord$str_value_indexed"));
+            assertEquals(count, indexEntryCount("MySimpleRecord$num_value_unique"));
+            assertEquals(count, indexEntryCount("rank_num_value_2"));
+        }
+    }
+
+    @Test
+    public void retryAfterCommitUnknownResult() {
+        final RecordMetaDataHook hook = metaData -> {
+            RANK_HOOK.apply(metaData);
+            metaData.addIndex("MySimpleRecord", new Index("sum_num_value_2", Key.Expressions.field("num_value_2").ungrouped(), IndexTypes.SUM));
+        };
+        final AtomicInteger failures = new AtomicInteger(2);
+        final FDBRecordStore.Builder recordStoreBuilder;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            recordStoreBuilder = new CommitUnknownResultStoreBuilder(recordStore.asBuilder(), failures);
+        }
+        final int count = 100;
+        try (BulkRecordLoader loader = BulkRecordLoader.newBuilder().setDatabase(fdb).setRecordStoreBuilder(recordStoreBuilder)
+                .setMaxRecordsPerTransaction(30).build()) {
+            assertEquals(count, loader.loadRecords(records(count).iterator()));
+        }
+        assertTrue(failures.get() < 0);
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            assertEquals(count, (int)recordStore.scanRecords(null, ScanProperties.FORWARD_SCAN).getCount().join());
+            assertEquals(count, indexEntryCount("MySimpleRecord$str_value_indexed"));
+            // Counts and sums are built after the load, not added to by each attempt.
+            assertEquals(count, recordStore.getSnapshotRecordCount().join().intValue());
+            assertEquals(IntStream.range(0, count).map(i -> i % 7).sum(), recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"),
+                    new IndexAggregateFunction(FunctionNames.SUM, Key.Expressions.field("num_value_2").ungrouped(), "sum_num_value_2"),
+                    TupleRange.ALL, IsolationLevel.SNAPSHOT).join().getLong(0));
+        }
+    }
+
+    @Test
+    public void recordCountKeyNotSupported() {
+        final RecordMetaDataHook hook = metaData -> metaData.setRecordCountKey(Key.Expressions.field("num_value_3_indexed"));
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            commit(context);
+        }
+        try (BulkRecordLoader loader = BulkRecordLoader.newBuilder().setDatabase(fdb).setRecordStore(recordStore).build()) {
+            assertThrows(RecordCoreException.class, () -> loader.loadRecords(records(10).iterator()));
+        }
+    }
+
+    @Test
+    public void builderValidation() {
+        assertTrue(BulkRecordLoader.canMaintainWithoutRead(new Index("value", Key.Expressions.field("num_value_2"))));
+        assertFalse(BulkRecordLoader.canMaintainWithoutRead(new Index("rank", Key.Expressions.field("num_value_2").ungrouped(), IndexTypes.RANK)));
+        assertThrows(RecordCoreArgumentException.class, () -> BulkRecordLoader.newBuilder().setMaxRecordsPerTransaction(0));
+        assertThrows(RecordCoreArgumentException.class, () -> BulkRecordLoader.newBuilder().setMaxBytesPerTransaction(0));
+        assertThrows(RecordCoreException.class, () -> BulkRecordLoader.newBuilder().build());
+        try (BulkRecordLoader loader = newLoader().addDeferredIndex("no_such_index").build()) {
+            assertThrows(RecordCoreException.class, () -> loader.loadRecords(Collections.emptyIterator()));
+        }
+    }
+
+    // Fails the first few transactions that save records after they have been committed, as though the outcome of
+    // the commit was not known. Only those transactions open the store with open().
+    private static class CommitUnknownResultStoreBuilder extends FDBRecordStore.Builder {
+        private final AtomicInteger failures;
+
+        CommitUnknownResultStoreBuilder(@Nonnull FDBRecordStore.Builder other, @Nonnull AtomicInteger failures) {
+            super(other);
+            this.failures = failures;
+        }
+
+        @Nonnull
+        @Override
+        public FDBRecordStore.Builder copyBuilder() {
+            return new CommitUnknownResultStoreBuilder(this, failures);
+        }
+
+        @Nonnull
+        @Override
+        public FDBRecordStore open() {
+            final FDBRecordStore store = super.open();
+            store.getRecordContext().addPostCommit(() -> {
+                final CompletableFuture<Void> future = new CompletableFuture<>();
+                if (failures.getAndDecrement() > 0) {
+                    future.completeExceptionally(new RecordCoreRetriableTransactionException("commit_unknown_result",
+                            new FDBException("commit_unknown_result", FDBError.COMMIT_UNKNOWN_RESULT.code())));
+                } else {
+                    future.complete(null);
+                }
+                return future;
+            });
+            return store;
+        }
+    }
+}
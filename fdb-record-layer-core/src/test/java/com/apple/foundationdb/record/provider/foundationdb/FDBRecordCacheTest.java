@@ -0,0 +1,229 @@
+/*
+ * FDBRecordCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link FDBRecordCache}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBRecordCacheTest extends FDBRecordStoreTestBase {
+    private static final RecordMetaDataHook WITH_VERSIONS = metaData -> metaData.setStoreRecordVersions(true);
+    private static final RecordMetaDataHook WITHOUT_VERSIONS = metaData -> metaData.setStoreRecordVersions(false);
+
+    private FDBRecordCache recordCache;
+
+    @BeforeEach
+    public void setRecordCache() {
+        recordCache = new FDBRecordCache(fdb, 10);
+        fdb.setRecordCache(recordCache);
+    }
+
+    @AfterEach
+    public void removeRecordCache() {
+        fdb.setRecordCache(null);
+    }
+
+    private void saveRecord(@Nonnull RecordMetaDataHook hook, long recNo, @Nonnull String strValue) {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo).setStrValueIndexed(strValue).build());
+            context.commit();
+        }
+    }
+
+    @Test
+    public void cacheAtSameReadVersion() {
+        saveRecord(WITHOUT_VERSIONS, 1066L, "first");
+
+        final long readVersion;
+        final FDBStoredRecord<Message> loaded;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITHOUT_VERSIONS);
+            readVersion = context.getReadVersion();
+            timer.reset();
+            loaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(loaded);
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+            assertEquals(1, recordCache.getSize());
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            context.setReadVersion(readVersion);
+            openSimpleRecordStore(context, WITHOUT_VERSIONS);
+            timer.reset();
+            assertSame(loaded, recordStore.loadRecord(Tuple.from(1066L)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        }
+
+        // Without versions, a newer read version cannot tell whether the record changed.
+        saveRecord(WITHOUT_VERSIONS, 1066L, "second");
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITHOUT_VERSIONS);
+            timer.reset();
+            FDBStoredRecord<Message> reloaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(reloaded);
+            assertEquals("second", TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(reloaded.getRecord()).getStrValueIndexed());
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+        }
+    }
+
+    @Test
+    public void cacheValidatedByVersion() {
+        saveRecord(WITH_VERSIONS, 1066L, "first");
+
+        final FDBStoredRecord<Message> loaded;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            loaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(loaded);
+            assertNotNull(loaded.getVersion());
+        }
+
+        // A later transaction only needs to check the version.
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            timer.reset();
+            assertSame(loaded, recordStore.loadRecord(Tuple.from(1066L)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+        }
+
+        saveRecord(WITH_VERSIONS, 1066L, "second");
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            timer.reset();
+            FDBStoredRecord<Message> reloaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(reloaded);
+            assertNotSame(loaded, reloaded);
+            assertEquals("second", TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(reloaded.getRecord()).getStrValueIndexed());
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+        }
+
+        // A deleted record is not returned from the cache.
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            recordStore.deleteRecord(Tuple.from(1066L));
+            context.commit();
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            assertNull(recordStore.loadRecord(Tuple.from(1066L)));
+            assertEquals(0, recordCache.getSize());
+        }
+    }
+
+    @Test
+    public void dirtyTransactionDoesNotUseCache() {
+        saveRecord(WITH_VERSIONS, 1066L, "first");
+        saveRecord(WITH_VERSIONS, 1415L, "other");
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            assertNotNull(recordStore.loadRecord(Tuple.from(1066L)));
+            assertNotNull(recordStore.loadRecord(Tuple.from(1415L)));
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed("uncommitted").build());
+            timer.reset();
+            FDBStoredRecord<Message> reloaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(reloaded);
+            assertEquals("uncommitted", TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(reloaded.getRecord()).getStrValueIndexed());
+            assertNotNull(recordStore.loadRecord(Tuple.from(1415L)));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+            // Not committed.
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            timer.reset();
+            FDBStoredRecord<Message> loaded = recordStore.loadRecord(Tuple.from(1066L));
+            assertNotNull(loaded);
+            assertEquals("first", TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(loaded.getRecord()).getStrValueIndexed());
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+        }
+    }
+
+    @Test
+    public void metaDataVersionChange() {
+        saveRecord(WITH_VERSIONS, 1066L, "first");
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITH_VERSIONS);
+            assertNotNull(recordStore.loadRecord(Tuple.from(1066L)));
+        }
+
+        final RecordMetaDataHook newVersion = metaData -> {
+            WITH_VERSIONS.apply(metaData);
+            metaData.setVersion(metaData.getVersion() + 1);
+        };
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, newVersion);
+            timer.reset();
+            assertNotNull(recordStore.loadRecord(Tuple.from(1066L)));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_HIT));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.RECORD_CACHE_MISS));
+        }
+    }
+
+    @Test
+    public void sizeLimit() {
+        for (long recNo = 0; recNo < 20; recNo++) {
+            saveRecord(WITHOUT_VERSIONS, recNo, "value " + recNo);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, WITHOUT_VERSIONS);
+            for (long recNo = 0; recNo < 20; recNo++) {
+                assertNotNull(recordStore.loadRecord(Tuple.from(recNo)));
+            }
+        }
+        assertThat(recordCache.getSize(), greaterThan(0L));
+        assertThat(recordCache.getSize(), lessThanOrEqualTo(recordCache.getMaxSize()));
+    }
+
+    @Test
+    public void differentDatabase() {
+        FDBDatabase otherDatabase = new FDBDatabase(FDBDatabaseFactory.instance(), null);
+        assertThrows(RecordCoreArgumentException.class, () -> otherDatabase.setRecordCache(recordCache));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * FDBRecordStoreAppendOnlyTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.InvalidIndexEntry;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for saving records of {@linkplain com.apple.foundationdb.record.metadata.RecordType#isAppendOnly append-only}
+ * record types.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBRecordStoreAppendOnlyTest extends FDBRecordStoreTestBase {
+
+    private static final RecordMetaDataHook APPEND_ONLY_HOOK = metaData -> metaData.getRecordType("MySimpleRecord").setAppendOnly(true);
+
+    private static TestRecords1Proto.MySimpleRecord simpleRecord(long recNo, String strValue) {
+        return TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo).setStrValueIndexed(strValue).setNumValue2((int)recNo).build();
+    }
+
+    @Test
+    public void saveWithoutRead() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, APPEND_ONLY_HOOK);
+            timer.reset();
+            for (long i = 0; i < 10; i++) {
+                recordStore.saveRecord(simpleRecord(i, "even_" + (i % 2 == 0)));
+            }
+            assertEquals(0, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+            assertEquals(10, timer.getCount(FDBStoreTimer.Events.SAVE_RECORD));
+
+            // Other record types still read.
+            recordStore.saveRecord(TestRecords1Proto.MyOtherRecord.newBuilder().setRecNo(100).build());
+            assertEquals(1, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, APPEND_ONLY_HOOK);
+            assertEquals(simpleRecord(3, "even_false"), recordStore.loadRecord(Tuple.from(3L)).getRecord());
+            assertEquals(11L, recordStore.getSnapshotRecordCount().join().longValue());
+            assertEquals(5, (int)recordStore.scanIndexRecords("MySimpleRecord$str_value_indexed", IndexScanType.BY_VALUE,
+                    TupleRange.allOf(Tuple.from("even_true")), null, ScanProperties.FORWARD_SCAN).getCount().join());
+
+            // An explicit existence check still reads.
+            timer.reset();
+            assertThrows(RecordCoreException.class, () -> recordStore.insertRecord(simpleRecord(3, "again")));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+        }
+    }
+
+    @Test
+    public void scanAppendOnlyViolations() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, APPEND_ONLY_HOOK);
+            for (long i = 0; i < 10; i++) {
+                recordStore.saveRecord(simpleRecord(i, "first"));
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, APPEND_ONLY_HOOK);
+            final Index index = recordStore.getRecordMetaData().getIndex("MySimpleRecord$str_value_indexed");
+            assertTrue(recordStore.scanAppendOnlyViolations(index, null, ScanProperties.FORWARD_SCAN).asList().join().isEmpty());
+
+            // A mistake: saving over an existing record leaves its old index entry behind.
+            recordStore.saveRecord(simpleRecord(4, "second"));
+            final List<InvalidIndexEntry> violations = recordStore.scanAppendOnlyViolations(index, null, ScanProperties.FORWARD_SCAN).asList().join();
+            assertEquals(1, violations.size());
+            assertEquals(InvalidIndexEntry.Reasons.STALE, violations.get(0).getReason());
+            assertEquals(Tuple.from("first", 4L), violations.get(0).getEntry().getKey());
+        }
+    }
+
+    @Test
+    public void scanAppendOnlyViolationsUnsupported() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, APPEND_ONLY_HOOK);
+            final Index index = recordStore.getRecordMetaData().getIndex(COUNT_INDEX.getName());
+            assertThrows(RecordCoreException.class, () -> recordStore.scanAppendOnlyViolations(index, null, ScanProperties.FORWARD_SCAN));
+        }
+    }
+}
@@ -33,6 +33,10 @@ import com.google.protobuf.Message;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
@@ -343,4 +347,82 @@ public class FDBRecordStoreCrudTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void loadRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (long recNo : new long[] {1L, 2L, 3L, 4L, 10L, 12L, 20L, 21L, 511L, 512L}) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(recNo)
+                        .setNumValue2((int)recNo * 10)
+                        .build());
+            }
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            timer.reset();
+            final List<Tuple> keys = Arrays.asList(Tuple.from(21L), Tuple.from(2L), Tuple.from(5L), Tuple.from(1L), Tuple.from(3L),
+                    Tuple.from(12L), Tuple.from(4L), Tuple.from(20L), Tuple.from(2L), Tuple.from(11L), Tuple.from("other"),
+                    Tuple.from(512L), Tuple.from(511L));
+            final List<FDBStoredRecord<Message>> records = recordStore.loadRecords(keys);
+            assertEquals(keys.size(), records.size());
+            for (int i = 0; i < keys.size(); i++) {
+                final FDBStoredRecord<Message> record = records.get(i);
+                final Object key = keys.get(i).get(0);
+                if (key.equals(5L) || key.equals(11L) || key.equals("other")) {
+                    assertNull(record);
+                } else {
+                    assertNotNull(record);
+                    assertEquals(keys.get(i), record.getPrimaryKey());
+                    TestRecords1Proto.MySimpleRecord myrec = TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(record.getRecord()).build();
+                    assertEquals((Long)key * 10, myrec.getNumValue2());
+                }
+            }
+            // 1 through 5, 11 and 12, 20 and 21, and 511 and 512 are each read together.
+            assertEquals(4, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_RANGE_READ));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void loadRecordsWithPreloaded() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (long recNo = 1L; recNo <= 4L; recNo++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo).build());
+            }
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.preloadRecordAsync(Tuple.from(1L)).join();
+            recordStore.preloadRecordAsync(Tuple.from(3L)).join();
+            timer.reset();
+            final List<FDBStoredRecord<Message>> records = recordStore.loadRecords(
+                    Arrays.asList(Tuple.from(1L), Tuple.from(2L), Tuple.from(3L), Tuple.from(4L)));
+            assertEquals(Arrays.asList(Tuple.from(1L), Tuple.from(2L), Tuple.from(3L), Tuple.from(4L)),
+                    records.stream().map(FDBStoredRecord::getPrimaryKey).collect(Collectors.toList()));
+            // No preloaded record is read again as part of a range.
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_RANGE_READ));
+        }
+    }
+
+    @Test
+    public void loadRecordsInTransaction() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (long recNo = 1L; recNo <= 5L; recNo++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo).build());
+            }
+            recordStore.deleteRecord(Tuple.from(3L));
+            final List<FDBStoredRecord<Message>> records = recordStore.loadRecords(
+                    Arrays.asList(Tuple.from(1L), Tuple.from(2L), Tuple.from(3L), Tuple.from(4L), Tuple.from(5L)));
+            assertEquals(Arrays.asList(Tuple.from(1L), Tuple.from(2L), null, Tuple.from(4L), Tuple.from(5L)),
+                    records.stream().map(record -> record == null ? null : record.getPrimaryKey()).collect(Collectors.toList()));
+            // Versions of records saved in this transaction are returned too.
+            assertEquals(FDBRecordVersion.incomplete(0), records.get(0).getVersion());
+        }
+    }
+
 }
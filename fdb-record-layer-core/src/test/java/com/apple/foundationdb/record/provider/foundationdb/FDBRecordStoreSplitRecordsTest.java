@@ -49,6 +49,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -573,6 +574,33 @@ public class FDBRecordStoreSplitRecordsTest extends FDBRecordStoreTestBase {
         assertEquals(createdRecords, scannedRecords);
     }
 
+    @Test
+    public void loadRecordsSplit() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, TEST_SPLIT_HOOK);
+            commit(context);
+        }
+
+        final String bigValue = Strings.repeat("X", SplitHelper.SPLIT_RECORD_SIZE + 10);
+        final String smallValue = Strings.repeat("Y", 5);
+
+        final List<FDBStoredRecord<Message>> createdRecords = new ArrayList<>();
+        createdRecords.add(saveAndSplitSimpleRecord(1L, smallValue, 1));
+        createdRecords.add(saveAndSplitSimpleRecord(2L, bigValue, 2));
+        createdRecords.add(saveAndSplitSimpleRecord(3L, smallValue, 3));
+        createdRecords.add(saveAndSplitSimpleRecord(5L, bigValue, 5));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, TEST_SPLIT_HOOK);
+            final List<FDBStoredRecord<Message>> loadedRecords = recordStore.loadRecords(
+                    Arrays.asList(Tuple.from(5L), Tuple.from(3L), Tuple.from(2L), Tuple.from(1L)));
+            Collections.reverse(loadedRecords);
+            assertEquals(createdRecords, loadedRecords);
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_RANGE_READ));
+            commit(context);
+        }
+    }
+
     @Test
     public void testSaveRecordWithDifferentSplits() {
         try (FDBRecordContext context = openContext()) {
@@ -525,6 +525,26 @@ public class FDBRecordStoreTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void updateRepeatedIndexEntries() throws Exception {
+        final RecordMetaDataHook hook = md -> md.addIndex("MySimpleRecord", "repeater$fanout", field("repeater", KeyExpression.FanType.FanOut));
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            final Index index = recordStore.getRecordMetaData().getIndex("repeater$fanout");
+            // The same maintainer is used for every record saved in the transaction.
+            assertSame(recordStore.getIndexMaintainer(index), recordStore.getIndexMaintainer(index));
+
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(1).addAllRepeater(Arrays.asList(1, 2, 3)).build());
+            // Three entries for the repeated field and one for each of the other three indexes.
+            assertEquals(6, timer.getCount(FDBStoreTimer.Counts.SAVE_INDEX_KEY));
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(1).addAllRepeater(Arrays.asList(2, 3, 4, 5)).build());
+            final List<Tuple> keys = recordStore.scanIndex(index, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .map(IndexEntry::getKey).asList().join();
+            assertEquals(Arrays.asList(Tuple.from(2, 1), Tuple.from(3, 1), Tuple.from(4, 1), Tuple.from(5, 1)), keys);
+            commit(context);
+        }
+    }
+
     @Test
     public void updateUnchanged() throws Exception {
         TestRecords1Proto.MySimpleRecord.Builder recBuilder = TestRecords1Proto.MySimpleRecord.newBuilder();
@@ -46,6 +46,9 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -125,6 +128,49 @@ public class FDBReverseDirectoryCacheTest extends FDBTestBase {
     }
 
 
+    @Test
+    public void testWarmInMemoryCache() throws Exception {
+        final LocatableResolver scope = createRandomDirectoryScope();
+        final Map<Long, String> mappings = resolveNames(scope, 5);
+        fdb.clearReverseDirectoryCache();
+
+        assertEquals(5, (int)fdb.getReverseDirectoryCache().warmInMemoryCache(timer, scope).get());
+        for (Map.Entry<Long, String> mapping : mappings.entrySet()) {
+            assertEquals(mapping.getValue(), fdb.getReverseDirectoryInMemoryCache().getIfPresent(scope.wrap(mapping.getKey())));
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final LocatableResolver scope = createRandomDirectoryScope();
+        final Map<Long, String> mappings = resolveNames(scope, 5);
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        assertEquals(5, (int)fdb.getReverseDirectoryCache().writeSnapshot(timer, scope, snapshot).get());
+
+        fdb.clearReverseDirectoryCache();
+        assertTrue(fdb.getReverseDirectoryCache().loadSnapshot(timer, scope, new ByteArrayInputStream(snapshot.toByteArray())).get());
+        for (Map.Entry<Long, String> mapping : mappings.entrySet()) {
+            assertEquals(mapping.getValue(), fdb.getReverseDirectoryInMemoryCache().getIfPresent(scope.wrap(mapping.getKey())));
+        }
+
+        // A snapshot is not used for another resolver or once its resolver's version has changed.
+        fdb.clearReverseDirectoryCache();
+        assertFalse(fdb.getReverseDirectoryCache().loadSnapshot(timer, createRandomDirectoryScope(), new ByteArrayInputStream(snapshot.toByteArray())).get());
+        scope.incrementVersion().get();
+        fdb.clearCaches();
+        assertFalse(fdb.getReverseDirectoryCache().loadSnapshot(timer, scope, new ByteArrayInputStream(snapshot.toByteArray())).get());
+        assertEquals(0, fdb.getReverseDirectoryInMemoryCache().size());
+    }
+
+    private Map<Long, String> resolveNames(@Nonnull LocatableResolver scope, int count) throws Exception {
+        final Map<Long, String> mappings = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String name = "name_" + i;
+            mappings.put(scope.resolve(timer, name).get(), name);
+        }
+        return mappings;
+    }
+
     @Test
     public void testResolveDoesPut() throws Exception {
         FDBReverseDirectoryCache reverseDirectoryCache = fdb.getReverseDirectoryCache();
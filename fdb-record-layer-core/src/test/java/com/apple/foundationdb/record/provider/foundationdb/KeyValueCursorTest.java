@@ -24,6 +24,7 @@ import com.apple.foundationdb.KeyValue;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.ExecuteState;
+import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordCursorIterator;
@@ -40,9 +41,13 @@ import com.apple.test.Tags;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -294,6 +299,60 @@ public class KeyValueCursorTest extends FDBTestBase {
         });
     }
 
+    @ParameterizedTest(name = "readAhead [readAhead = {0}]")
+    @ValueSource(ints = {1, 3, 100})
+    public void readAhead(int readAhead) {
+        fdb.run(context -> {
+            for (boolean reverse : new boolean[] {false, true}) {
+                final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder().setReturnedRowLimit(7).setIsolationLevel(IsolationLevel.SNAPSHOT).build(), reverse)
+                        .setReadAhead(readAhead);
+                final List<Tuple> expected = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    for (int j = 0; j < 5; j++) {
+                        expected.add(Tuple.from(i, j));
+                    }
+                }
+                if (reverse) {
+                    Collections.reverse(expected);
+                }
+                final List<Tuple> results = new ArrayList<>();
+                byte[] continuation = null;
+                do {
+                    KeyValueCursor cursor = KeyValueCursor.Builder.withSubspace(subspace)
+                            .setContext(context)
+                            .setRange(TupleRange.ALL)
+                            .setContinuation(continuation)
+                            .setScanProperties(scanProperties)
+                            .build();
+                    RecordCursorResult<KeyValue> result;
+                    while ((result = cursor.getNext()).hasNext()) {
+                        results.add(Tuple.fromBytes(result.get().getValue()));
+                    }
+                    continuation = result.getContinuation().toBytes();
+                } while (continuation != null);
+                assertEquals(expected, results);
+            }
+
+            // Entries read ahead do not count against the scan limit until they are returned.
+            RecordScanLimiter limiter = RecordScanLimiterFactory.enforce(2);
+            KeyValueCursor cursor = KeyValueCursor.Builder.withSubspace(subspace)
+                    .setContext(context)
+                    .setRange(TupleRange.ALL)
+                    .setScanProperties(new ScanProperties(ExecuteProperties.newBuilder()
+                            .setIsolationLevel(IsolationLevel.SNAPSHOT)
+                            .setState(new ExecuteState(limiter, null))
+                            .build()).setReadAhead(readAhead))
+                    .build();
+            assertEquals(2, (int) cursor.getCount().join());
+            RecordCursorResult<KeyValue> result = cursor.getNext();
+            assertEquals(RecordCursor.NoNextReason.SCAN_LIMIT_REACHED, result.getNoNextReason());
+            assertArrayEquals(Tuple.from(0, 1).pack(), result.getContinuation().toBytes());
+            cursor.close();
+
+            return null;
+        });
+    }
+
     private ScanProperties forwardScanWithLimiter(RecordScanLimiter limiter) {
         return new ScanProperties(ExecuteProperties.SERIAL_EXECUTE.setState(new ExecuteState(limiter, null)));
     }
@@ -0,0 +1,214 @@
+/*
+ * OnlineIndexerMultiTargetTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link OnlineIndexer} building more than one index at a time.
+ */
+public class OnlineIndexerMultiTargetTest extends OnlineIndexerTest {
+
+    private final Index sumIndex = new Index("simple$sum_value_2", field("num_value_2").ungrouped(), IndexTypes.SUM);
+    private final Index otherSumIndex = new Index("simple$sum_value_3", field("num_value_3_indexed").ungrouped(), IndexTypes.SUM);
+    private final Index valueIndex = new Index("simple$value_2", field("num_value_2"));
+
+    private void saveRecords(int count) {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, count).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val + 1).setNumValue3Indexed((int)val * 2).build()
+        ).collect(Collectors.toList());
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+    }
+
+    private void openWithNewIndexes() {
+        openSimpleMetaData(metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", otherSumIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", valueIndex);
+        });
+    }
+
+    private Tuple evaluateSum(@Nonnull Index index) {
+        IndexAggregateFunction aggregateFunction = new IndexAggregateFunction(FunctionNames.SUM, index.getRootExpression(), index.getName());
+        try (FDBRecordContext context = openContext()) {
+            return recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), aggregateFunction,
+                    TupleRange.ALL, IsolationLevel.SERIALIZABLE).join();
+        }
+    }
+
+    @Test
+    public void buildInOnePass() {
+        final int count = 200;
+        saveRecords(count);
+        openWithNewIndexes();
+        try (FDBRecordContext context = openContext()) {
+            context.commit();
+        }
+
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                .setTargetIndexes(Arrays.asList(sumIndex, otherSumIndex, valueIndex))
+                .setLimit(30)
+                .setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                .setTimer(timer)
+                .build()) {
+            indexer.buildIndex();
+        }
+
+        // Each record is only scanned once for all three indexes.
+        assertEquals(count, timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED));
+        try (FDBRecordContext context = openContext()) {
+            assertTrue(recordStore.getRecordStoreState().allIndexesReadable());
+            assertEquals(count, (int)recordStore.scanIndex(valueIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .getCount().join());
+        }
+        assertEquals(Tuple.from((long)count * (count + 1) / 2), evaluateSum(sumIndex));
+        assertEquals(Tuple.from((long)count * (count - 1)), evaluateSum(otherSumIndex));
+    }
+
+    @Test
+    public void continuePartlyBuiltIndex() {
+        final int count = 100;
+        saveRecords(count);
+        openWithNewIndexes();
+        try (FDBRecordContext context = openContext()) {
+            recordStore.markIndexWriteOnly(sumIndex).join();
+            recordStore.markIndexWriteOnly(otherSumIndex).join();
+            context.commit();
+        }
+
+        // Build part of just the second index in the list.
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                .setIndex(otherSumIndex)
+                .build()) {
+            indexer.buildUnbuiltRange(Key.Evaluated.scalar(20L), Key.Evaluated.scalar(60L)).join();
+        }
+
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                .addTargetIndex(sumIndex)
+                .addTargetIndex(otherSumIndex)
+                .setLimit(15)
+                .setIndexStatePrecondition(OnlineIndexer.IndexStatePrecondition.BUILD_IF_DISABLED_CONTINUE_BUILD_IF_WRITE_ONLY)
+                .build()) {
+            indexer.buildIndex();
+        }
+
+        // The records already indexed by the other index must not have been added to its sum again.
+        assertEquals(Tuple.from((long)count * (count + 1) / 2), evaluateSum(sumIndex));
+        assertEquals(Tuple.from((long)count * (count - 1)), evaluateSum(otherSumIndex));
+
+        // Each index counts every record once, including those the other index scanned before the shared build.
+        try (FDBRecordContext context = openContext()) {
+            assertEquals(count, (long)IndexBuildState.loadRecordsScannedAsync(recordStore, sumIndex).join());
+            assertEquals(count, (long)IndexBuildState.loadRecordsScannedAsync(recordStore, otherSumIndex).join());
+        }
+    }
+
+    @Test
+    public void skipReadableIndex() {
+        final int count = 50;
+        saveRecords(count);
+        openWithNewIndexes();
+        try (FDBRecordContext context = openContext()) {
+            recordStore.markIndexDisabled(valueIndex).join();
+            context.commit();
+        }
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                .setIndex(sumIndex)
+                .build()) {
+            indexer.buildIndex();
+        }
+        try (FDBRecordContext context = openContext()) {
+            recordStore.markIndexDisabled(valueIndex).join();
+            context.commit();
+        }
+
+        // The first index is already readable, so only the second should be built.
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                .setTargetIndexes(Arrays.asList(sumIndex, valueIndex))
+                .setIndexStatePrecondition(OnlineIndexer.IndexStatePrecondition.BUILD_IF_DISABLED)
+                .build()) {
+            indexer.buildIndex();
+        }
+        try (FDBRecordContext context = openContext()) {
+            assertEquals(IndexState.READABLE, recordStore.getIndexState(valueIndex));
+            assertEquals(count, (int)recordStore.scanIndex(valueIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .getCount().join());
+        }
+        assertEquals(Tuple.from((long)count * (count + 1) / 2), evaluateSum(sumIndex));
+    }
+
+    @Test
+    public void illegalTargetIndexes() {
+        final Index otherTypeIndex = new Index("other$value", field("num_value_2"));
+        openSimpleMetaData(metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+            metaDataBuilder.addIndex("MyOtherRecord", otherTypeIndex);
+        });
+        RecordCoreException e = assertThrows(MetaDataException.class, () ->
+                OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                        .addTargetIndex(metaData.getIndex(sumIndex.getName()))
+                        .addTargetIndex(metaData.getIndex(otherTypeIndex.getName()))
+                        .build());
+        assertEquals("Index other$value is not on the same record types as index simple$sum_value_2", e.getMessage());
+        e = assertThrows(MetaDataException.class, () ->
+                OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                        .addTargetIndex(metaData.getIndex(sumIndex.getName()))
+                        .addTargetIndex(metaData.getIndex(sumIndex.getName()))
+                        .build());
+        assertEquals("Index simple$sum_value_2 given more than once", e.getMessage());
+    }
+}
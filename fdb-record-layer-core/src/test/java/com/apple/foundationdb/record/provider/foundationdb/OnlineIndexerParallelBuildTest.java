@@ -0,0 +1,294 @@
+/*
+ * OnlineIndexerParallelBuildTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link OnlineIndexer} building ranges in parallel.
+ */
+public class OnlineIndexerParallelBuildTest extends OnlineIndexerTest {
+
+    private final Index sumIndex = new Index("simple$sum_value_2", field("num_value_2").ungrouped(), IndexTypes.SUM);
+    private final Index valueIndex = new Index("simple$value_2", field("num_value_2"));
+
+    /**
+     * A locality provider that puts a boundary before every {@code keysPerShard} keys.
+     */
+    private static class EvenLocalityProvider implements FDBLocalityProvider {
+        @Nonnull
+        private final List<byte[]> boundaries = new ArrayList<>();
+
+        @Nonnull
+        @Override
+        public CloseableAsyncIterator<byte[]> getBoundaryKeys(@Nonnull Transaction tr, @Nonnull byte[] begin, @Nonnull byte[] end) {
+            final Iterator<byte[]> iterator = boundaries.stream()
+                    .filter(key -> ByteArrayUtil.compareUnsigned(begin, key) <= 0 && ByteArrayUtil.compareUnsigned(key, end) < 0)
+                    .iterator();
+            return new CloseableAsyncIterator<byte[]>() {
+                @Override
+                public CompletableFuture<Boolean> onHasNext() {
+                    return CompletableFuture.completedFuture(iterator.hasNext());
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public byte[] next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                    // Nothing to release.
+                }
+            };
+        }
+    }
+
+    private void withShards(int count, int keysPerShard, Runnable test) {
+        final FDBDatabaseFactory factory = FDBDatabaseFactory.instance();
+        final FDBLocalityProvider oldLocalityProvider = factory.getLocalityProvider();
+        final FDBDatabase oldDatabase = fdb;
+        final EvenLocalityProvider localityProvider = new EvenLocalityProvider();
+        factory.setLocalityProvider(localityProvider);
+        // The database picks up the locality provider when it is created.
+        fdb = new FDBDatabase(factory, null);
+        try {
+            openSimpleMetaData();
+            try (FDBRecordContext context = openContext()) {
+                for (long i = 0; i < count; i++) {
+                    recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(i).setNumValue2((int)i + 1).build());
+                    if (i % keysPerShard == 0) {
+                        localityProvider.boundaries.add(recordStore.recordsSubspace().pack(i));
+                    }
+                }
+                context.commit();
+            }
+            test.run();
+        } finally {
+            fdb.close();
+            fdb = oldDatabase;
+            factory.setLocalityProvider(oldLocalityProvider);
+        }
+    }
+
+    private void openWithNewIndexes() {
+        openSimpleMetaData(metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", valueIndex);
+        });
+        try (FDBRecordContext context = openContext()) {
+            context.commit();
+        }
+    }
+
+    private void checkIndexes(int count) {
+        IndexAggregateFunction aggregateFunction = new IndexAggregateFunction(FunctionNames.SUM, sumIndex.getRootExpression(), sumIndex.getName());
+        try (FDBRecordContext context = openContext()) {
+            assertEquals(IndexState.READABLE, recordStore.getIndexState(sumIndex));
+            assertEquals(IndexState.READABLE, recordStore.getIndexState(valueIndex));
+            assertEquals(Tuple.from((long)count * (count + 1) / 2),
+                    recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), aggregateFunction,
+                            TupleRange.ALL, IsolationLevel.SERIALIZABLE).join());
+            assertEquals(count, (int)recordStore.scanIndex(valueIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .getCount().join());
+        }
+    }
+
+    @ParameterizedTest(name = "buildInParallel [parallelism = {0}]")
+    @ValueSource(ints = {2, 4, 30})
+    public void buildInParallel(int parallelism) {
+        final int count = 300;
+        withShards(count, 15, () -> {
+            openWithNewIndexes();
+            final FDBStoreTimer timer = new FDBStoreTimer();
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .addTargetIndex(sumIndex)
+                    .addTargetIndex(valueIndex)
+                    .setLimit(7)
+                    .setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                    .setParallelism(parallelism)
+                    .setTimer(timer)
+                    .build()) {
+                indexer.buildIndex();
+            }
+            assertThat(timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED), greaterThanOrEqualTo(count));
+            checkIndexes(count);
+        });
+    }
+
+    @ParameterizedTest(name = "continueInParallel [parallelism = {0}]")
+    @ValueSource(ints = {3, 8})
+    public void continueInParallel(int parallelism) {
+        final int count = 200;
+        withShards(count, 20, () -> {
+            openWithNewIndexes();
+            try (FDBRecordContext context = openContext()) {
+                recordStore.markIndexWriteOnly(sumIndex).join();
+                recordStore.markIndexWriteOnly(valueIndex).join();
+                context.commit();
+            }
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .setTargetIndexes(Arrays.asList(sumIndex, valueIndex))
+                    .build()) {
+                indexer.buildUnbuiltRange(Key.Evaluated.scalar(40L), Key.Evaluated.scalar(90L)).join();
+                indexer.buildUnbuiltRange(Key.Evaluated.scalar(150L), Key.Evaluated.scalar(155L)).join();
+            }
+
+            final FDBStoreTimer timer = new FDBStoreTimer();
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .setTargetIndexes(Arrays.asList(sumIndex, valueIndex))
+                    .setLimit(11)
+                    .setParallelism(parallelism)
+                    .setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                    .setIndexStatePrecondition(OnlineIndexer.IndexStatePrecondition.BUILD_IF_DISABLED_CONTINUE_BUILD_IF_WRITE_ONLY)
+                    .setTimer(timer)
+                    .build()) {
+                indexer.buildIndex();
+            }
+            checkIndexes(count);
+        });
+    }
+
+    @Test
+    public void idleWorkersSplitRanges() {
+        final int count = 300;
+        withShards(count, 10, () -> {
+            openWithNewIndexes();
+            try (FDBRecordContext context = openContext()) {
+                recordStore.markIndexWriteOnly(sumIndex).join();
+                recordStore.markIndexWriteOnly(valueIndex).join();
+                context.commit();
+            }
+            // Most of the first half is already built, so the worker given it is soon idle.
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .setTargetIndexes(Arrays.asList(sumIndex, valueIndex))
+                    .setLimit(count)
+                    .build()) {
+                indexer.buildUnbuiltRange(Key.Evaluated.scalar(1L), Key.Evaluated.scalar(150L)).join();
+            }
+
+            final FDBStoreTimer timer = new FDBStoreTimer();
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .setTargetIndexes(Arrays.asList(sumIndex, valueIndex))
+                    .setLimit(5)
+                    .setParallelism(2)
+                    .setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                    .setIndexStatePrecondition(OnlineIndexer.IndexStatePrecondition.BUILD_IF_DISABLED_CONTINUE_BUILD_IF_WRITE_ONLY)
+                    .setTimer(timer)
+                    .build()) {
+                indexer.buildIndex();
+            }
+            assertThat(timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RANGES_SPLIT), greaterThan(0));
+            // The records built before are not scanned again.
+            assertThat(timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED), lessThan(count - 100));
+            checkIndexes(count);
+        });
+    }
+
+    @Test
+    public void failureStopsOtherWorkers() {
+        final int count = 300;
+        final int limit = 5;
+        final int parallelism = 4;
+        withShards(count, 10, () -> {
+            openWithNewIndexes();
+            final AtomicInteger indexed = new AtomicInteger();
+            final AtomicInteger indexedBeforeFailure = new AtomicInteger(-1);
+            try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                    .setIndex(valueIndex)
+                    .setLimit(limit)
+                    .setParallelism(parallelism)
+                    .setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                    .setIndexMaintenanceFilter((index, record) -> {
+                        if (Long.valueOf(12L).equals(record.getField(record.getDescriptorForType().findFieldByName("rec_no")))) {
+                            indexedBeforeFailure.set(indexed.get());
+                            throw new RecordCoreException("bad record");
+                        }
+                        indexed.incrementAndGet();
+                        return IndexMaintenanceFilter.IndexValues.ALL;
+                    })
+                    .build()) {
+                assertThrows(RecordCoreException.class, indexer::buildIndex);
+            }
+            // Each of the other workers stops after the transaction it is running, or at most the one after that if it
+            // started before the failure was noticed, instead of building the rest of its range.
+            assertThat(indexed.get() - indexedBeforeFailure.get(), lessThanOrEqualTo(2 * (parallelism - 1) * limit));
+        });
+    }
+
+    @ParameterizedTest(name = "illegalParallelism [parallelism = {0}]")
+    @ValueSource(ints = {0, -1})
+    public void illegalParallelism(int parallelism) {
+        openSimpleMetaData(metaDataBuilder -> metaDataBuilder.addIndex("MySimpleRecord", sumIndex));
+        assertThrows(RecordCoreException.class, () ->
+                OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(metaData).setSubspace(subspace)
+                        .setIndex(sumIndex)
+                        .setParallelism(parallelism)
+                        .build());
+    }
+}
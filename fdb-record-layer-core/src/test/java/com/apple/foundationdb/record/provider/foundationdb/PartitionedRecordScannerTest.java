@@ -0,0 +1,230 @@
+/*
+ * PartitionedRecordScannerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
+import com.apple.foundationdb.record.EndpointType;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link PartitionedRecordScanner} and {@link FDBRecordStore#getPrimaryKeyPartitions}.
+ */
+@Tag(Tags.RequiresFDB)
+public class PartitionedRecordScannerTest extends FDBRecordStoreTestBase {
+
+    /**
+     * A locality provider with a fixed list of boundaries.
+     */
+    private static class FixedLocalityProvider implements FDBLocalityProvider {
+        @Nonnull
+        private final List<byte[]> boundaries = new ArrayList<>();
+
+        @Nonnull
+        @Override
+        public CloseableAsyncIterator<byte[]> getBoundaryKeys(@Nonnull Transaction tr, @Nonnull byte[] begin, @Nonnull byte[] end) {
+            final Iterator<byte[]> iterator = boundaries.stream()
+                    .filter(key -> ByteArrayUtil.compareUnsigned(begin, key) <= 0 && ByteArrayUtil.compareUnsigned(key, end) < 0)
+                    .iterator();
+            return new CloseableAsyncIterator<byte[]>() {
+                @Override
+                public CompletableFuture<Boolean> onHasNext() {
+                    return CompletableFuture.completedFuture(iterator.hasNext());
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public byte[] next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                    // Nothing to release.
+                }
+            };
+        }
+    }
+
+    private void withShards(int count, int keysPerShard, Runnable test) {
+        final FDBDatabaseFactory factory = FDBDatabaseFactory.instance();
+        final FDBLocalityProvider oldLocalityProvider = factory.getLocalityProvider();
+        final FDBDatabase oldDatabase = fdb;
+        final FixedLocalityProvider localityProvider = new FixedLocalityProvider();
+        factory.setLocalityProvider(localityProvider);
+        // The database picks up the locality provider when it is created.
+        fdb = new FDBDatabase(factory, null);
+        try {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context, NO_HOOK);
+                for (long i = 0; i < count; i++) {
+                    recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(i).setNumValue2((int)i).build());
+                    if (i > 0 && i % keysPerShard == 0) {
+                        localityProvider.boundaries.add(recordStore.recordsSubspace().pack(i));
+                    }
+                }
+                commit(context);
+            }
+            test.run();
+        } finally {
+            fdb.close();
+            fdb = oldDatabase;
+            factory.setLocalityProvider(oldLocalityProvider);
+        }
+    }
+
+    @Nonnull
+    private PartitionedRecordScanner.Builder newScanner() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            return PartitionedRecordScanner.newBuilder().setDatabase(fdb).setRecordStore(recordStore);
+        }
+    }
+
+    @Nonnull
+    private static List<Long> recNos(@Nonnull List<FDBStoredRecord<?>> records) {
+        return records.stream().map(rec -> rec.getPrimaryKey().getLong(0)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void primaryKeyPartitions() {
+        withShards(100, 10, () -> {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context, NO_HOOK);
+                // Nine boundaries make ten partitions.
+                List<TupleRange> partitions = recordStore.getPrimaryKeyPartitions(100).join();
+                assertEquals(10, partitions.size());
+                assertEquals(new TupleRange(null, Tuple.from(10L), EndpointType.TREE_START, EndpointType.RANGE_EXCLUSIVE), partitions.get(0));
+                assertEquals(new TupleRange(Tuple.from(10L), Tuple.from(20L), EndpointType.RANGE_INCLUSIVE, EndpointType.RANGE_EXCLUSIVE), partitions.get(1));
+                assertEquals(new TupleRange(Tuple.from(90L), null, EndpointType.RANGE_INCLUSIVE, EndpointType.TREE_END), partitions.get(9));
+
+                partitions = recordStore.getPrimaryKeyPartitions(4).join();
+                assertEquals(4, partitions.size());
+                assertEquals(Tuple.from(30L), partitions.get(0).getHigh());
+                assertEquals(Tuple.from(50L), partitions.get(1).getHigh());
+                assertEquals(Tuple.from(70L), partitions.get(2).getHigh());
+
+                partitions = recordStore.getPrimaryKeyPartitions(1).join();
+                assertEquals(1, partitions.size());
+                assertEquals(TupleRange.ALL, partitions.get(0));
+
+                assertThrows(RecordCoreArgumentException.class, () -> recordStore.getPrimaryKeyPartitions(0));
+            }
+        });
+    }
+
+    @ParameterizedTest(name = "scanPartitions [maxPartitions = {0}]")
+    @ValueSource(ints = {1, 3, 20})
+    public void scanPartitions(int maxPartitions) {
+        final int count = 200;
+        withShards(count, 15, () -> {
+            final List<Long> expected = LongStream.range(0, count).boxed().collect(Collectors.toList());
+            try (PartitionedRecordScanner scanner = newScanner()
+                    .setMaxPartitions(maxPartitions)
+                    // A small scan limit makes each partition run across several transactions.
+                    .setScanProperties(new ScanProperties(ExecuteProperties.newBuilder()
+                            .setIsolationLevel(IsolationLevel.SNAPSHOT)
+                            .setScannedRecordsLimit(7)
+                            .build()))
+                    .build()) {
+                final List<TupleRange> partitions = scanner.getPartitions();
+                assertThat(partitions.size(), lessThanOrEqualTo(maxPartitions));
+
+                // Each partition on its own returns its records in order.
+                final List<Long> concatenated = new ArrayList<>();
+                for (TupleRange partition : partitions) {
+                    concatenated.addAll(recNos(new ArrayList<>(scanner.scanPartition(partition, null).asList().join())));
+                }
+                assertEquals(expected, concatenated);
+
+                // All partitions at once return every record once.
+                final List<Long> merged = recNos(new ArrayList<>(scanner.scanPartitions(partitions, null).asList().join()));
+                assertThat(merged, containsInAnyOrder(expected.toArray()));
+            }
+        });
+    }
+
+    @Test
+    public void scanPartitionsWithContinuation() {
+        final int count = 150;
+        withShards(count, 10, () -> {
+            final List<Long> expected = LongStream.range(0, count).boxed().collect(Collectors.toList());
+            try (PartitionedRecordScanner scanner = newScanner().setMaxPartitions(5).setPrefetch(false).build()) {
+                final List<TupleRange> partitions = scanner.getPartitions();
+                assertEquals(5, partitions.size());
+                final List<Long> results = new ArrayList<>();
+                byte[] continuation = null;
+                do {
+                    try (RecordCursor<FDBStoredRecord<Message>> cursor = scanner.scanPartitions(partitions, continuation).limitRowsTo(13)) {
+                        RecordCursorResult<FDBStoredRecord<Message>> result;
+                        while ((result = cursor.getNext()).hasNext()) {
+                            assertNotNull(result.get());
+                            results.add(result.get().getPrimaryKey().getLong(0));
+                        }
+                        continuation = result.getContinuation().toBytes();
+                    }
+                } while (continuation != null);
+                assertThat(results, containsInAnyOrder(expected.toArray()));
+            }
+        });
+    }
+
+    @Test
+    public void builderValidation() {
+        assertThrows(RecordCoreArgumentException.class, () -> PartitionedRecordScanner.newBuilder().setMaxPartitions(0));
+        assertThrows(RecordCoreException.class, () -> PartitionedRecordScanner.newBuilder().build());
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * TimeBucketExpirerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordMetaDataBuilder;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TestRecordsWithHeaderProto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.RecordTypeBuilder;
+import com.apple.foundationdb.record.metadata.expressions.HashBucketFunctionKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.ThenKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.TimeBucketFunctionKeyExpression;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.function;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.recordType;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.value;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TimeBucketExpirer} and the time and hash bucket functions.
+ */
+@Tag(Tags.RequiresFDB)
+public class TimeBucketExpirerTest extends FDBRecordStoreTestBase {
+    private static final long WIDTH = 100L;
+
+    private static KeyExpression timeBucket(KeyExpression time) {
+        return function(TimeBucketFunctionKeyExpression.FUNCTION_NAME, concat(time, value(WIDTH)));
+    }
+
+    private static RecordMetaData headerMetaData() {
+        final RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(TestRecordsWithHeaderProto.getDescriptor());
+        final KeyExpression time = field("header").nest("num");
+        builder.getRecordType("MyRecord").setTimeBucketedPrimaryKey(time, WIDTH, 4, field("header").nest("rec_no"));
+        builder.addIndex("MyRecord", new Index("bucket$str_value", concat(timeBucket(time), field("str_value"))));
+        return builder.getRecordMetaData();
+    }
+
+    private static TestRecordsWithHeaderProto.MyRecord headerRecord(long recNo, int time) {
+        return TestRecordsWithHeaderProto.MyRecord.newBuilder()
+                .setHeader(TestRecordsWithHeaderProto.HeaderRecord.newBuilder().setRecNo(recNo).setPath("p").setNum(time))
+                .setStrValue(recNo % 2 == 0 ? "even" : "odd")
+                .build();
+    }
+
+    private List<Long> recNos(TupleRange range) {
+        return recordStore.scanRecords(range, null, ScanProperties.FORWARD_SCAN)
+                .map(rec -> rec.getPrimaryKey().getLong(rec.getPrimaryKey().size() - 1))
+                .asList().join();
+    }
+
+    @Test
+    public void bucketFunctions() {
+        final KeyExpression timeBucket = timeBucket(field("num_value_2"));
+        final TestRecords1Proto.MySimpleRecord.Builder builder = TestRecords1Proto.MySimpleRecord.newBuilder();
+        assertEquals(Key.Evaluated.scalar(200L), timeBucket.evaluateSingleton(FDBStoredRecord.newBuilder(builder.setNumValue2(250).build())));
+        assertEquals(Key.Evaluated.scalar(-100L), timeBucket.evaluateSingleton(FDBStoredRecord.newBuilder(builder.setNumValue2(-1).build())));
+        assertEquals(100L, ((TimeBucketFunctionKeyExpression)timeBucket).getBucketWidth());
+
+        final KeyExpression hashBucket = function(HashBucketFunctionKeyExpression.FUNCTION_NAME, concat(field("rec_no"), value(8)));
+        final Set<Object> buckets = new HashSet<>();
+        for (long i = 0; i < 100; i++) {
+            final Key.Evaluated bucket = hashBucket.evaluateSingleton(FDBStoredRecord.newBuilder(builder.setRecNo(i).build()));
+            // The same value is always in the same bucket.
+            assertEquals(bucket, hashBucket.evaluateSingleton(FDBStoredRecord.newBuilder(builder.setRecNo(i).build())));
+            buckets.add(bucket.getObject(0));
+        }
+        assertThat(buckets, containsInAnyOrder(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L));
+
+        // The functions are in the registry, so meta-data using them round trips.
+        final RecordMetaData metaData = headerMetaData();
+        assertEquals(metaData.getRecordType("MyRecord").getPrimaryKey(),
+                RecordMetaData.build(metaData.toProto()).getRecordType("MyRecord").getPrimaryKey());
+        final List<KeyExpression> primaryKey = ((ThenKeyExpression)metaData.getRecordType("MyRecord").getPrimaryKey()).getChildren();
+        assertEquals(3, primaryKey.size());
+        assertTrue(primaryKey.get(0) instanceof TimeBucketFunctionKeyExpression);
+        assertTrue(primaryKey.get(1) instanceof HashBucketFunctionKeyExpression);
+    }
+
+    @Test
+    public void expireBuckets() {
+        final RecordMetaData metaData = headerMetaData();
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            for (int i = 0; i < 50; i++) {
+                // Ten records in each of five buckets: 0, 100, 200, 300 and 400.
+                recordStore.saveRecord(headerRecord(i, i * 10));
+            }
+            commit(context);
+        }
+
+        try (TimeBucketExpirer expirer = newExpirer(metaData, "MyRecord")) {
+            // Bucket 200 is not entirely before 250.
+            assertEquals(2L, expirer.expireBefore(250));
+            assertEquals(0L, expirer.expireBefore(250));
+            assertEquals(1L, expirer.expireBefore(300));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            assertThat(recNos(TupleRange.ALL), containsInAnyOrder(30L, 31L, 32L, 33L, 34L, 35L, 36L, 37L, 38L, 39L,
+                    40L, 41L, 42L, 43L, 44L, 45L, 46L, 47L, 48L, 49L));
+            // Index entries of the expired buckets are gone too.
+            assertEquals(20, (int)recordStore.scanIndex(metaData.getIndex("bucket$str_value"), IndexScanType.BY_VALUE,
+                    TupleRange.ALL, null, ScanProperties.FORWARD_SCAN).getCount().join());
+        }
+
+        try (TimeBucketExpirer expirer = newExpirer(metaData, "MyRecord")) {
+            // Everything is older than thirty days after the epoch.
+            assertEquals(2L, expirer.expire());
+        }
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            assertTrue(recNos(TupleRange.ALL).isEmpty());
+        }
+    }
+
+    @Test
+    public void expireBucketsWithRecordTypePrefix() {
+        final RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(TestRecords1Proto.getDescriptor());
+        final RecordTypeBuilder simpleType = builder.getRecordType("MySimpleRecord");
+        simpleType.setTimeBucketedPrimaryKey(field("num_value_2"), WIDTH, 1, field("rec_no"));
+        simpleType.setPrimaryKey(concat(recordType(), simpleType.getPrimaryKey()));
+        builder.getRecordType("MyOtherRecord").setPrimaryKey(concat(recordType(), field("rec_no")));
+        builder.removeIndex("MySimpleRecord$str_value_indexed");
+        builder.removeIndex("MySimpleRecord$num_value_unique");
+        builder.removeIndex("MySimpleRecord$num_value_3_indexed");
+        builder.addIndex("MySimpleRecord", new Index("bucket$str_value", concat(timeBucket(field("num_value_2")), field("str_value_indexed"))));
+        final RecordMetaData metaData = builder.getRecordMetaData();
+
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            for (int i = 0; i < 20; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(i).setNumValue2(i * 10).setStrValueIndexed("x").build());
+                recordStore.saveRecord(TestRecords1Proto.MyOtherRecord.newBuilder().setRecNo(i).build());
+            }
+            commit(context);
+        }
+
+        try (TimeBucketExpirer expirer = newExpirer(metaData, "MySimpleRecord")) {
+            assertEquals(1L, expirer.expireBefore(150));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            final List<Long> simple = recNos(TupleRange.allOf(metaData.getRecordType("MySimpleRecord").getRecordTypeKeyTuple()));
+            assertEquals(10, simple.size());
+            assertTrue(simple.stream().allMatch(recNo -> recNo >= 10));
+            // Other record types are untouched.
+            assertEquals(20, recNos(TupleRange.allOf(metaData.getRecordType("MyOtherRecord").getRecordTypeKeyTuple())).size());
+        }
+
+        try (TimeBucketExpirer expirer = newExpirer(metaData, "MyOtherRecord")) {
+            assertThrows(RecordCoreException.class, () -> expirer.expireBefore(150));
+        }
+    }
+
+    @Test
+    public void builderValidation() {
+        assertThrows(RecordCoreException.class, () -> TimeBucketExpirer.newBuilder().build());
+        assertThrows(RecordCoreException.class, () -> TimeBucketExpirer.newBuilder().setTimeToLiveMillis(-1));
+        final RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(TestRecords1Proto.getDescriptor());
+        assertThrows(RecordCoreException.class, () -> builder.getRecordType("MySimpleRecord").setTimeBucketedPrimaryKey(field("num_value_2"), 0, 1, field("rec_no")));
+    }
+
+    private TimeBucketExpirer newExpirer(RecordMetaData metaData, String recordTypeName) {
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            return TimeBucketExpirer.newBuilder()
+                    .setDatabase(fdb)
+                    .setRecordStore(recordStore)
+                    .setRecordType(recordTypeName)
+                    .setTimeToLiveMillis(30L * 24 * 60 * 60 * 1000)
+                    .build();
+        }
+    }
+}
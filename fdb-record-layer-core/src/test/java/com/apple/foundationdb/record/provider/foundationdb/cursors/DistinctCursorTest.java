@@ -0,0 +1,129 @@
+/*
+ * DistinctCursorTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.cursors;
+
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link DistinctCursor}.
+ */
+public class DistinctCursorTest {
+
+    @Nonnull
+    private static DistinctCursor<Integer> distinct(@Nonnull List<Integer> values, long maxBytes, @Nullable byte[] continuation) {
+        return DistinctCursor.create((seen, innerContinuation) ->
+                RecordCursor.fromList(values, innerContinuation).filter(value -> seen.add(Tuple.from(value).pack())),
+                maxBytes, continuation);
+    }
+
+    @Test
+    public void distinctAcrossContinuations() {
+        final Random random = new Random(1066);
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(random.nextInt(200));
+        }
+        final List<Integer> expected = new ArrayList<>(new LinkedHashSet<>(values));
+        for (int limit : new int[] {1, 7, 50, 1000}) {
+            final List<Integer> results = new ArrayList<>();
+            byte[] continuation = null;
+            do {
+                try (RecordCursor<Integer> cursor = distinct(values, 100_000, continuation).limitRowsTo(limit)) {
+                    RecordCursorResult<Integer> result;
+                    while ((result = cursor.getNext()).hasNext()) {
+                        results.add(result.get());
+                    }
+                    continuation = result.getContinuation().toBytes();
+                }
+            } while (continuation != null);
+            assertEquals(expected, results);
+        }
+    }
+
+    @Test
+    public void sizeLimit() {
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(i);
+        }
+        final CompletionException ex = assertThrows(CompletionException.class,
+                () -> distinct(values, 1000, null).asList().join());
+        assertThat(ex.getCause(), instanceOf(RecordCoreException.class));
+
+        // Duplicates do not use any more space.
+        final List<Integer> duplicates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            duplicates.add(i % 10);
+        }
+        assertEquals(10, distinct(duplicates, 1000, null).asList().join().size());
+    }
+
+    @Test
+    public void seenKeys() {
+        final Random random = new Random(1415);
+        final DistinctCursor.SeenKeys seen = new DistinctCursor.SeenKeys(Long.MAX_VALUE);
+        final List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // Long enough keys for the length to take more than one byte.
+            final byte[] key = new byte[2 + random.nextInt(300)];
+            random.nextBytes(key);
+            // Start with the index so that the keys are all different.
+            key[0] = (byte)(i >> 8);
+            key[1] = (byte)i;
+            keys.add(key);
+            assertTrue(seen.add(key));
+        }
+        assertEquals(keys.size(), seen.size());
+        for (byte[] key : keys) {
+            assertFalse(seen.add(key.clone()));
+        }
+        assertEquals(keys.size(), seen.size());
+
+        final DistinctCursor.SeenKeys restored = new DistinctCursor.SeenKeys(Long.MAX_VALUE);
+        restored.addAll(seen.toByteString(seen.size()).toByteArray());
+        assertEquals(keys.size(), restored.size());
+        assertThat(restored.getBytes(), lessThanOrEqualTo(seen.getBytes()));
+        for (byte[] key : keys) {
+            assertFalse(restored.add(key));
+        }
+        assertTrue(restored.add(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}));
+    }
+}
@@ -49,6 +49,7 @@ import com.apple.foundationdb.record.logging.TestLogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.RecordTypeBuilder;
 import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
@@ -75,6 +76,7 @@ import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreTestBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.record.provider.foundationdb.OnlineIndexer;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.AndOrComponent;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
@@ -89,6 +91,7 @@ import com.apple.foundationdb.record.query.plan.planning.BooleanNormalizer;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.predicates.match.PredicateMatchers;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
 import com.apple.foundationdb.util.LoggableException;
@@ -115,6 +118,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -130,6 +134,7 @@ import java.util.stream.Stream;
 
 import static com.apple.foundationdb.record.IndexScanType.BY_GROUP;
 import static com.apple.foundationdb.record.IndexScanType.BY_RANK;
+import static com.apple.foundationdb.record.IndexScanType.BY_TEXT_SCORE;
 import static com.apple.foundationdb.record.IndexScanType.BY_TEXT_TOKEN;
 import static com.apple.foundationdb.record.IndexScanType.BY_TIME_WINDOW;
 import static com.apple.foundationdb.record.IndexScanType.BY_VALUE;
@@ -173,9 +178,11 @@ import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Tests for {@code TEXT} type indexes.
@@ -201,6 +208,12 @@ public class TextIndexTest extends FDBRecordStoreTestBase {
             ImmutableMap.of(IndexOptions.TEXT_TOKENIZER_NAME_OPTION, AllSuffixesTextTokenizer.NAME));
     private static final Index SIMPLE_TEXT_NO_POSITIONS = new Index("Simple$text_no_positions", field("text"), IndexTypes.TEXT,
             ImmutableMap.of(IndexOptions.TEXT_OMIT_POSITIONS_OPTION, "true"));
+    private static final Index SIMPLE_TEXT_SCORING = new Index("Simple$text_scoring", field("text"), IndexTypes.TEXT,
+            ImmutableMap.of(IndexOptions.TEXT_SCORING_STATISTICS_OPTION, "true"));
+    private static final Index SIMPLE_TEXT_SCORING_NO_POSITIONS = new Index("Simple$text_scoring_no_positions", field("text"), IndexTypes.TEXT,
+            ImmutableMap.of(IndexOptions.TEXT_SCORING_STATISTICS_OPTION, "true", IndexOptions.TEXT_OMIT_POSITIONS_OPTION, "true"));
+    private static final Index COMPLEX_TEXT_SCORING_BY_GROUP = new Index("Complex$text_scoring_by_group", field("text").groupBy(field("group")), IndexTypes.TEXT,
+            ImmutableMap.of(IndexOptions.TEXT_SCORING_STATISTICS_OPTION, "true"));
     private static final Index COMBINED_TEXT_BY_GROUP = new Index("Combined$text_by_group", field("text").groupBy(field("group")), IndexTypes.TEXT);
     private static final Index COMPLEX_MULTI_TAG_INDEX = new Index("Complex$multi_tag", field("text").groupBy(field("tag", FanType.FanOut)), IndexTypes.TEXT);
     private static final Index COMPLEX_THEN_TAG_INDEX = new Index("Complex$text_tag", concat(field("text"), field("tag", FanType.FanOut)), IndexTypes.TEXT);
@@ -748,6 +761,291 @@ public class TextIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    private List<Long> scanByScore(@Nonnull String query, @Nonnull ScanProperties scanProperties) {
+        return recordStore.scanIndex(SIMPLE_TEXT_SCORING, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from(query)), null, scanProperties)
+                .map(entry -> {
+                    assertEquals(query, entry.getKey().getString(0));
+                    return entry.getKey().getLong(1);
+                })
+                .asList()
+                .join();
+    }
+
+    @Test
+    public void scanSimpleDocumentsByScore() throws Exception {
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_SCORING);
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(1L).setText("the quick brown fox").build());
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(2L).setText("the fox and the fox and the fox").build());
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(3L).setText("a lazy dog").build());
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(4L).setText("quick thinking").build());
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            // More occurrences outweigh a longer document.
+            assertEquals(Arrays.asList(2L, 1L), scanByScore("fox", ScanProperties.FORWARD_SCAN));
+            // Matching more of the query outweighs matching one token more often.
+            assertEquals(Arrays.asList(1L, 2L, 4L), scanByScore("Quick FOX", ScanProperties.FORWARD_SCAN));
+            assertEquals(Collections.emptyList(), scanByScore("cat", ScanProperties.FORWARD_SCAN));
+
+            final List<IndexEntry> scored = recordStore.scanIndex(SIMPLE_TEXT_SCORING, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("quick fox")), null, ScanProperties.FORWARD_SCAN)
+                    .asList().join();
+            assertEquals(3, scored.size());
+            assertThat(scored.get(0).getValue().getDouble(0), greaterThan(scored.get(1).getValue().getDouble(0)));
+            assertThat(scored.get(1).getValue().getDouble(0), greaterThan(scored.get(2).getValue().getDouble(0)));
+
+            // Only the best results are kept, and continuations pick up after them.
+            final ScanProperties limitOne = new ScanProperties(ExecuteProperties.newBuilder().setReturnedRowLimit(1).build());
+            final RecordCursorResult<IndexEntry> first = recordStore.scanIndex(SIMPLE_TEXT_SCORING, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("quick fox")), null, limitOne)
+                    .getNext();
+            assertEquals(Tuple.from("quick fox", 1L), first.get().getKey());
+            final List<IndexEntry> rest = recordStore.scanIndex(SIMPLE_TEXT_SCORING, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("quick fox")),
+                    first.getContinuation().toBytes(), ScanProperties.FORWARD_SCAN).asList().join();
+            assertEquals(scored.subList(1, 3), rest);
+
+            assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(SIMPLE_TEXT_SCORING, BY_TEXT_SCORE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN));
+            commit(context);
+        }
+
+        // Statistics follow updates and deletes.
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.deleteRecord(Tuple.from(2L));
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(3L).setText("a lazy fox").build());
+            assertEquals(Arrays.asList(3L, 1L), scanByScore("fox", ScanProperties.FORWARD_SCAN));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            final Subspace secondarySubspace = recordStore.indexSecondarySubspace(SIMPLE_TEXT_SCORING);
+            final ReadTransaction tr = context.ensureActive();
+            assertEquals(3L, ByteArrayUtil.decodeInt(tr.get(secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_TOTALS_SUBSPACE_TUPLE).pack(0L)).join()));
+            assertEquals(9L, ByteArrayUtil.decodeInt(tr.get(secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_TOTALS_SUBSPACE_TUPLE).pack(1L)).join()));
+            assertEquals(2L, ByteArrayUtil.decodeInt(tr.get(secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_FREQUENCY_SUBSPACE_TUPLE).pack("fox")).join()));
+            assertNull(tr.get(secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_LENGTH_SUBSPACE_TUPLE).pack(2L)).join());
+            assertEquals(Tuple.from(3L), Tuple.fromBytes(tr.get(secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_LENGTH_SUBSPACE_TUPLE).pack(3L)).join()));
+        }
+    }
+
+    @Nonnull
+    private List<IndexEntry> scanByScoreWithLimits(@Nonnull Index index, @Nonnull Tuple query, int limit, int scannedRecordsLimit,
+                                                   @Nonnull Set<RecordCursor.NoNextReason> noNextReasons) {
+        final List<IndexEntry> results = new ArrayList<>();
+        final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder()
+                .setReturnedRowLimit(limit)
+                .setScannedRecordsLimit(scannedRecordsLimit)
+                .build());
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<IndexEntry> cursor = recordStore.scanIndex(index, BY_TEXT_SCORE, TupleRange.allOf(query), continuation, scanProperties)) {
+                RecordCursorResult<IndexEntry> result = cursor.getNext();
+                while (result.hasNext()) {
+                    results.add(result.get());
+                    result = cursor.getNext();
+                }
+                noNextReasons.add(result.getNoNextReason());
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        return results;
+    }
+
+    private void assertScoringStatistics(@Nonnull Index index, @Nonnull Tuple groupingKey, @Nonnull Map<Tuple, String> texts) {
+        final Subspace secondarySubspace = recordStore.indexSecondarySubspace(index);
+        final ReadTransaction tr = recordStore.ensureContextActive();
+        final Subspace totalsSubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_TOTALS_SUBSPACE_TUPLE).subspace(groupingKey);
+        final Subspace frequencySubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_FREQUENCY_SUBSPACE_TUPLE).subspace(groupingKey);
+        final Subspace lengthSubspace = secondarySubspace.subspace(TextIndexMaintainer.DOCUMENT_LENGTH_SUBSPACE_TUPLE).subspace(groupingKey);
+        long tokenCount = 0;
+        final Map<String, Long> documentFrequencies = new HashMap<>();
+        for (Map.Entry<Tuple, String> text : texts.entrySet()) {
+            final List<String> words = Arrays.asList(text.getValue().split(" "));
+            tokenCount += words.size();
+            new HashSet<>(words).forEach(word -> documentFrequencies.merge(word, 1L, Long::sum));
+            assertEquals(Tuple.from((long)words.size()), Tuple.fromBytes(tr.get(lengthSubspace.pack(text.getKey())).join()));
+        }
+        assertEquals(texts.size(), decodeCount(tr.get(totalsSubspace.pack(TextIndexMaintainer.DOCUMENT_COUNT_KEY)).join()));
+        assertEquals(tokenCount, decodeCount(tr.get(totalsSubspace.pack(TextIndexMaintainer.TOKEN_COUNT_KEY)).join()));
+        for (Map.Entry<String, Long> documentFrequency : documentFrequencies.entrySet()) {
+            assertEquals(documentFrequency.getValue().longValue(), decodeCount(tr.get(frequencySubspace.pack(documentFrequency.getKey())).join()),
+                    documentFrequency.getKey());
+        }
+        assertEquals(texts.size(), tr.getRange(lengthSubspace.range()).asList().join().size());
+    }
+
+    private static long decodeCount(@Nullable byte[] bytes) {
+        return bytes == null ? 0L : ByteArrayUtil.decodeInt(bytes);
+    }
+
+    @Nonnull
+    private static String scoringText(long docId) {
+        final StringBuilder text = new StringBuilder("fox");
+        for (long i = 0; i < docId % 4; i++) {
+            text.append(" fox");
+        }
+        if (docId % 2 == 0) {
+            text.append(" dog");
+        }
+        for (long i = 0; i < docId % 5; i++) {
+            text.append(" cat");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void scanByScoreWithScanLimits() throws Exception {
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_SCORING);
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            for (long docId = 0; docId < 40; docId++) {
+                recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(docId).setText(scoringText(docId)).build());
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            final Tuple query = Tuple.from("fox dog");
+            final Set<RecordCursor.NoNextReason> noNextReasons = new HashSet<>();
+            final List<IndexEntry> all = scanByScoreWithLimits(SIMPLE_TEXT_SCORING, query, 0, Integer.MAX_VALUE, noNextReasons);
+            assertEquals(40, all.size());
+            assertEquals(Collections.singleton(SOURCE_EXHAUSTED), noNextReasons);
+            validateScoreOrder(all);
+
+            // Paging by the returned row limit ranks the rest again after each page.
+            noNextReasons.clear();
+            assertEquals(all, scanByScoreWithLimits(SIMPLE_TEXT_SCORING, query, 7, Integer.MAX_VALUE, noNextReasons));
+            assertEquals(ImmutableSet.of(RETURN_LIMIT_REACHED, SOURCE_EXHAUSTED), noNextReasons);
+
+            // The ranking stops at the scanned records limit and resumes from its continuation.
+            noNextReasons.clear();
+            assertEquals(all, scanByScoreWithLimits(SIMPLE_TEXT_SCORING, query, 7, 5, noNextReasons));
+            assertEquals(ImmutableSet.of(SCAN_LIMIT_REACHED, RETURN_LIMIT_REACHED, SOURCE_EXHAUSTED), noNextReasons);
+            noNextReasons.clear();
+            assertEquals(all, scanByScoreWithLimits(SIMPLE_TEXT_SCORING, query, 0, 3, noNextReasons));
+            assertEquals(ImmutableSet.of(SCAN_LIMIT_REACHED, SOURCE_EXHAUSTED), noNextReasons);
+        }
+    }
+
+    private static void validateScoreOrder(@Nonnull List<IndexEntry> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            final double previousScore = entries.get(i - 1).getValue().getDouble(0);
+            final double score = entries.get(i).getValue().getDouble(0);
+            assertTrue(previousScore > score || previousScore == score && entries.get(i - 1).getKey().compareTo(entries.get(i).getKey()) < 0,
+                    "entries out of order: " + entries.get(i - 1) + " before " + entries.get(i));
+        }
+    }
+
+    @Test
+    public void scanByScoreWithNoPositions() throws Exception {
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_SCORING_NO_POSITIONS);
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(1L).setText("the quick brown fox").build());
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(2L).setText("the fox and the fox and the fox").build());
+            recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(3L).setText("a lazy dog").build());
+
+            // Without positions, every match counts once, so the shorter document ranks first.
+            final List<IndexEntry> scored = recordStore.scanIndex(SIMPLE_TEXT_SCORING_NO_POSITIONS, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("fox")), null, ScanProperties.FORWARD_SCAN)
+                    .asList().join();
+            assertEquals(Arrays.asList(Tuple.from("fox", 1L), Tuple.from("fox", 2L)), scored.stream().map(IndexEntry::getKey).collect(Collectors.toList()));
+            // Lengths still count every token.
+            assertScoringStatistics(SIMPLE_TEXT_SCORING_NO_POSITIONS, TupleHelpers.EMPTY, ImmutableMap.of(
+                    Tuple.from(1L), "the quick brown fox",
+                    Tuple.from(2L), "the fox and the fox and the fox",
+                    Tuple.from(3L), "a lazy dog"));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void scanByScoreByGroup() throws Exception {
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(COMPLEX_DOC, COMPLEX_TEXT_SCORING_BY_GROUP);
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.saveRecord(ComplexDocument.newBuilder().setGroup(0L).setDocId(1L).setText("fox dog").build());
+            recordStore.saveRecord(ComplexDocument.newBuilder().setGroup(0L).setDocId(2L).setText("fox fox cat").build());
+            recordStore.saveRecord(ComplexDocument.newBuilder().setGroup(1L).setDocId(1L).setText("fox").build());
+            recordStore.saveRecord(ComplexDocument.newBuilder().setGroup(1L).setDocId(3L).setText("dog dog").build());
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            // Each group is scored with its own statistics and returns only its own documents. The primary key's
+            // group is already in the grouping key, so it is not repeated.
+            assertEquals(Arrays.asList(Tuple.from(0L, "fox", 2L), Tuple.from(0L, "fox", 1L)),
+                    recordStore.scanIndex(COMPLEX_TEXT_SCORING_BY_GROUP, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from(0L, "fox")), null, ScanProperties.FORWARD_SCAN)
+                            .map(IndexEntry::getKey).asList().join());
+            assertEquals(Arrays.asList(Tuple.from(1L, "dog", 3L)),
+                    recordStore.scanIndex(COMPLEX_TEXT_SCORING_BY_GROUP, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from(1L, "dog")), null, ScanProperties.FORWARD_SCAN)
+                            .map(IndexEntry::getKey).asList().join());
+            assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(COMPLEX_TEXT_SCORING_BY_GROUP, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("fox")), null, ScanProperties.FORWARD_SCAN));
+            assertScoringStatistics(COMPLEX_TEXT_SCORING_BY_GROUP, Tuple.from(0L), ImmutableMap.of(Tuple.from(1L), "fox dog", Tuple.from(2L), "fox fox cat"));
+            assertScoringStatistics(COMPLEX_TEXT_SCORING_BY_GROUP, Tuple.from(1L), ImmutableMap.of(Tuple.from(1L), "fox", Tuple.from(3L), "dog dog"));
+
+            // Deleting a group's index data clears its statistics and leaves the others.
+            recordStore.getIndexMaintainer(COMPLEX_TEXT_SCORING_BY_GROUP).deleteWhere(context.ensureActive(), Tuple.from(0L)).join();
+            assertEquals(Collections.emptyList(),
+                    recordStore.scanIndex(COMPLEX_TEXT_SCORING_BY_GROUP, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from(0L, "fox")), null, ScanProperties.FORWARD_SCAN)
+                            .asList().join());
+            assertScoringStatistics(COMPLEX_TEXT_SCORING_BY_GROUP, Tuple.from(0L), Collections.emptyMap());
+            assertScoringStatistics(COMPLEX_TEXT_SCORING_BY_GROUP, Tuple.from(1L), ImmutableMap.of(Tuple.from(1L), "fox", Tuple.from(3L), "dog dog"));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void buildScoringStatisticsOnline() throws Exception {
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_SCORING);
+        final Map<Tuple, String> texts = new HashMap<>();
+        try (FDBRecordContext context = openContext()) {
+            // The indexer opens the store with a check, so it needs a header.
+            openRecordStore(context, hook);
+            recordStore = recordStore.asBuilder().createOrOpen();
+            assertFalse(recordStore.getIndexMaintainer(SIMPLE_TEXT_SCORING).isIdempotent());
+            recordStore.markIndexWriteOnly(SIMPLE_TEXT_SCORING).join();
+            for (long docId = 0; docId < 20; docId++) {
+                recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(docId).setText(scoringText(docId)).build());
+                texts.put(Tuple.from(docId), scoringText(docId));
+            }
+            commit(context);
+        }
+
+        try (OnlineIndexer indexer = OnlineIndexer.newBuilder()
+                .setDatabase(fdb)
+                .setRecordStoreBuilder(recordStore.asBuilder())
+                .setIndex(SIMPLE_TEXT_SCORING)
+                .build()) {
+            indexer.buildRange(Key.Evaluated.scalar(0L), Key.Evaluated.scalar(10L)).join();
+
+            // Save and delete records both in the range that has been built and in the range that has not.
+            try (FDBRecordContext context = openContext()) {
+                openRecordStore(context, hook);
+                for (long docId : new long[] {3L, 13L, 25L}) {
+                    recordStore.saveRecord(SimpleDocument.newBuilder().setDocId(docId).setText("dog bird").build());
+                    texts.put(Tuple.from(docId), "dog bird");
+                }
+                for (long docId : new long[] {5L, 15L}) {
+                    recordStore.deleteRecord(Tuple.from(docId));
+                    texts.remove(Tuple.from(docId));
+                }
+                commit(context);
+            }
+
+            indexer.buildIndex(true);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            assertTrue(recordStore.isIndexReadable(SIMPLE_TEXT_SCORING));
+            assertScoringStatistics(SIMPLE_TEXT_SCORING, TupleHelpers.EMPTY, texts);
+        }
+    }
+
     @Test
     public void saveComplexDocuments() throws Exception {
         ComplexDocument complexDocument = ComplexDocument.newBuilder()
@@ -1305,6 +1603,8 @@ public class TextIndexTest extends FDBRecordStoreTestBase {
             assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(index, BY_GROUP, TupleRange.ALL, null, ScanProperties.REVERSE_SCAN));
             assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(index, BY_RANK, TupleRange.ALL, null, ScanProperties.REVERSE_SCAN));
             assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(index, BY_TIME_WINDOW, TupleRange.ALL, null, ScanProperties.REVERSE_SCAN));
+            // Scoring requires the statistics to be kept.
+            assertThrows(RecordCoreException.class, () -> recordStore.scanIndex(index, BY_TEXT_SCORE, TupleRange.allOf(Tuple.from("fox")), null, ScanProperties.FORWARD_SCAN));
         }
     }
 
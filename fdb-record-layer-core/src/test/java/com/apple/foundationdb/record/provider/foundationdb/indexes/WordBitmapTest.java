@@ -0,0 +1,179 @@
+/*
+ * WordBitmapTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link WordBitmap}, checked against {@link BitSet}.
+ */
+public class WordBitmapTest {
+    private final Random random = new Random(1066);
+
+    @Nonnull
+    private byte[] randomBytes(int length, double density) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length * 8; i++) {
+            if (random.nextDouble() < density) {
+                bytes[i / 8] |= (byte)(1 << (i % 8));
+            }
+        }
+        return bytes;
+    }
+
+    @Nonnull
+    private static byte[] toBytes(@Nonnull BitSet bits, int length) {
+        return Arrays.copyOf(bits.toByteArray(), length);
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        for (int length : new int[] {0, 1, 7, 8, 9, 100, 1250}) {
+            for (double density : new double[] {0.0, 0.01, 0.5, 1.0}) {
+                final byte[] bytes = randomBytes(length, density);
+                final WordBitmap bitmap = WordBitmap.fromBytes(bytes);
+                assertEquals(length * 8, bitmap.getSize());
+                assertEquals(BitSet.valueOf(bytes).cardinality(), bitmap.getCardinality());
+                assertArrayEquals(bytes, bitmap.toBytes());
+                assertArrayEquals(bytes, bitmap.copy().compact().toBytes());
+                for (int i = 0; i < length * 8; i++) {
+                    assertEquals(BitSet.valueOf(bytes).get(i), bitmap.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compactChoosesForm() {
+        final byte[] sparseBytes = new byte[1250];
+        sparseBytes[17] = 1;
+        sparseBytes[1000] = (byte)0x80;
+        final WordBitmap sparse = WordBitmap.fromBytes(sparseBytes).compact();
+        assertTrue(sparse.isSparse());
+        assertEquals(2, sparse.getCardinality());
+        assertTrue(sparse.get(17 * 8));
+        assertTrue(sparse.get(1000 * 8 + 7));
+        assertFalse(sparse.get(1000 * 8 + 6));
+
+        final WordBitmap dense = WordBitmap.fromBytes(randomBytes(1250, 0.5)).compact();
+        assertFalse(dense.isSparse());
+        assertFalse(WordBitmap.full(100).compact().isSparse());
+        assertTrue(WordBitmap.empty(100).isEmpty());
+        assertEquals(100, WordBitmap.full(100).getCardinality());
+    }
+
+    private void checkOperation(@Nonnull BiConsumer<WordBitmap, WordBitmap> operation,
+                                @Nonnull BiConsumer<BitSet, BitSet> expectedOperation) {
+        for (int length : new int[] {1, 13, 64, 1250}) {
+            for (double density1 : new double[] {0.0, 0.005, 0.5}) {
+                for (double density2 : new double[] {0.0, 0.005, 0.5}) {
+                    final byte[] bytes1 = randomBytes(length, density1);
+                    final byte[] bytes2 = randomBytes(length, density2);
+                    final BitSet expected = BitSet.valueOf(bytes1);
+                    expectedOperation.accept(expected, BitSet.valueOf(bytes2));
+                    // Each combination of forms must give the same result.
+                    for (boolean compact1 : new boolean[] {false, true}) {
+                        for (boolean compact2 : new boolean[] {false, true}) {
+                            final WordBitmap bitmap1 = WordBitmap.fromBytes(bytes1);
+                            final WordBitmap bitmap2 = WordBitmap.fromBytes(bytes2);
+                            if (compact1) {
+                                bitmap1.compact();
+                            }
+                            if (compact2) {
+                                bitmap2.compact();
+                            }
+                            operation.accept(bitmap1, bitmap2);
+                            assertArrayEquals(toBytes(expected, length), bitmap1.toBytes());
+                            assertEquals(expected.cardinality(), bitmap1.getCardinality());
+                            assertEquals(expected.isEmpty(), bitmap1.isEmpty());
+                            assertArrayEquals(bytes2, bitmap2.toBytes(), "operand should not change");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void and() {
+        checkOperation(WordBitmap::and, BitSet::and);
+    }
+
+    @Test
+    public void or() {
+        checkOperation(WordBitmap::or, BitSet::or);
+    }
+
+    @Test
+    public void xor() {
+        checkOperation(WordBitmap::xor, BitSet::xor);
+    }
+
+    @Test
+    public void not() {
+        for (int length : new int[] {1, 13, 64, 1250}) {
+            for (double density : new double[] {0.0, 0.005, 0.5, 1.0}) {
+                final byte[] bytes = randomBytes(length, density);
+                final BitSet expected = BitSet.valueOf(bytes);
+                expected.flip(0, length * 8);
+                assertArrayEquals(toBytes(expected, length), WordBitmap.fromBytes(bytes).not().toBytes());
+                assertArrayEquals(toBytes(expected, length), WordBitmap.fromBytes(bytes).compact().not().toBytes());
+            }
+        }
+        // Bits past the end stay clear.
+        final WordBitmap notEmpty = WordBitmap.empty(70).not();
+        assertEquals(70, notEmpty.getCardinality());
+        assertEquals(WordBitmap.full(70), notEmpty);
+    }
+
+    @Test
+    public void range() {
+        for (double density : new double[] {0.3, 0.01}) {
+            final byte[] bytes = randomBytes(1250, density);
+            final BitSet bits = BitSet.valueOf(bytes);
+            for (int[] range : new int[][] {{0, 10000}, {0, 64}, {64, 128}, {3, 5000}, {1000, 1001}, {63, 9999}, {500, 500}}) {
+                final BitSet expected = bits.get(range[0], range[1]);
+                final int length = (range[1] - range[0] + 7) / 8;
+                assertArrayEquals(toBytes(expected, length), WordBitmap.fromBytes(bytes).range(range[0], range[1]).toBytes());
+                assertArrayEquals(toBytes(expected, length), WordBitmap.fromBytes(bytes).compact().range(range[0], range[1]).toBytes());
+            }
+        }
+        assertThrows(RecordCoreArgumentException.class, () -> WordBitmap.empty(10000).range(10, 10001));
+    }
+
+    @Test
+    public void differentSizes() {
+        assertThrows(RecordCoreArgumentException.class, () -> WordBitmap.empty(10).and(WordBitmap.empty(11)));
+    }
+}
@@ -46,6 +46,7 @@ import org.junit.jupiter.api.Test;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -966,6 +967,55 @@ public abstract class LocatableResolverTest extends FDBTestBase {
                 "hook is only run on create, does not update metadata");
     }
 
+    @Test
+    public void testResolveAll() {
+        final Long existing = globalScope.resolve("a").join();
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        final Map<String, Long> resolved;
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            resolved = globalScope.resolveAll(context, Arrays.asList("b", "a", "c", "b")).join();
+        }
+        assertEquals(Arrays.asList("b", "a", "c"), new ArrayList<>(resolved.keySet()));
+        assertEquals(existing, resolved.get("a"));
+        assertThat("new names get distinct values", resolved.get("b"), not(resolved.get("c")));
+        // One read of everything that was not cached, then one for each of the names that had to be created.
+        assertEquals(3, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ));
+
+        database.clearForwardDirectoryCache();
+        for (Map.Entry<String, Long> entry : resolved.entrySet()) {
+            assertEquals(entry.getValue(), globalScope.resolve(entry.getKey()).join());
+        }
+        timer.reset();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            assertEquals(resolved, globalScope.resolveAll(context, resolved.keySet()).join());
+        }
+        assertEquals(0, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "all the names are cached");
+    }
+
+    @Test
+    public void testWarmDirectoryCache() {
+        final Map<String, Long> values = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            values.put("name-" + i, globalScope.resolve("name-" + i).join());
+        }
+        database.clearForwardDirectoryCache();
+
+        assertEquals(2, (int)globalScope.warmDirectoryCache(null, 2).join());
+        database.clearForwardDirectoryCache();
+        assertThat("every mapping is loaded", globalScope.warmDirectoryCache(null, 100).join(), greaterThanOrEqualTo(5));
+
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                assertEquals(entry.getValue(), globalScope.resolve(context, entry.getKey()).join());
+            }
+        }
+        assertEquals(0, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "all the names were loaded into the cache");
+    }
+
     @Test
     public void testUpdateMetadata() {
         database.setResolverStateRefreshTimeMillis(100);
@@ -24,6 +24,7 @@ import com.apple.foundationdb.KeyValue;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
@@ -48,11 +49,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
@@ -60,6 +63,7 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @Tag(Tags.RequiresFDB)
@@ -148,6 +152,121 @@ class HighContentionAllocatorTest extends FDBTestBase {
         }
     }
 
+    @Test
+    void testBlockAllocations() {
+        final HighContentionAllocator.BlockReservations blocks = newBlockReservations(10, HighContentionAllocator.BlockReservations.DEFAULT_LEASE_MILLIS);
+        final Map<Long, String> allocated = new HashMap<>();
+        for (int i = 0; i < 25; i += 5) {
+            try (FDBRecordContext context = database.openContext()) {
+                HighContentionAllocator hca = new HighContentionAllocator(context, blocks);
+                for (int j = i; j < i + 5; j++) {
+                    String storedValue = "allocate-" + j;
+                    Long thisAllocation = hca.allocate(storedValue).join();
+                    assertThat("allocations are unique", allocated, not(hasKey(thisAllocation)));
+                    allocated.put(thisAllocation, storedValue);
+                }
+                context.commit();
+            }
+        }
+        assertThat("values are handed out in order from consecutive blocks", allocated.keySet(),
+                containsInAnyOrder(LongStream.range(0, 25).boxed().toArray()));
+
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            validateAllocation(context, hca, allocated);
+            Long randomAllocation = hca.allocate("random-allocate").join();
+            assertThat("random allocation is after the reserved blocks", randomAllocation, greaterThanOrEqualTo(30L));
+        }
+    }
+
+    @Test
+    void testBlockAllocationsRecycleExpiredBlocks() throws Exception {
+        final Map<Long, String> allocated = new HashMap<>();
+        try (FDBRecordContext context = database.openContext()) {
+            // a very short lease, which has expired by the time another process needs a block
+            HighContentionAllocator hca = new HighContentionAllocator(context, newBlockReservations(10, 1L));
+            for (int i = 0; i < 3; i++) {
+                String storedValue = "allocate-" + i;
+                allocated.put(hca.allocate(storedValue).join(), storedValue);
+            }
+            context.commit();
+        }
+        Thread.sleep(50);
+
+        // a new process takes over the rest of the expired block
+        final HighContentionAllocator.BlockReservations blocks = newBlockReservations(10, HighContentionAllocator.BlockReservations.DEFAULT_LEASE_MILLIS);
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, blocks);
+            for (int i = 3; i < 12; i++) {
+                String storedValue = "allocate-" + i;
+                allocated.put(hca.allocate(storedValue).join(), storedValue);
+            }
+            validateAllocation(context, hca, allocated);
+            context.commit();
+        }
+        assertThat("expired block is used before a new one", allocated.keySet(),
+                containsInAnyOrder(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L));
+    }
+
+    @Test
+    void testBlockLeaseRenewed() throws Exception {
+        final HighContentionAllocator.BlockReservations blocks = newBlockReservations(10, 200L);
+        try (FDBRecordContext context = database.openContext()) {
+            new HighContentionAllocator(context, blocks).allocate("allocate-0").join();
+            context.commit();
+        }
+        final long firstExpiry = leaseExpiry(0L);
+        Thread.sleep(150);
+        try (FDBRecordContext context = database.openContext()) {
+            new HighContentionAllocator(context, blocks).allocate("allocate-1").join();
+            context.commit();
+        }
+        // the renewal runs in a separate transaction
+        long expiry = firstExpiry;
+        for (int i = 0; i < 100 && expiry == firstExpiry; i++) {
+            Thread.sleep(10);
+            expiry = leaseExpiry(0L);
+        }
+        assertThat("handing out a value renews a lease that is half over", expiry, greaterThan(firstExpiry));
+    }
+
+    @Test
+    void testBlockReservationOnlyRemovedByOwner() throws Exception {
+        final HighContentionAllocator.BlockReservations expiring = newBlockReservations(3, 1L);
+        try (FDBRecordContext context = database.openContext()) {
+            new HighContentionAllocator(context, expiring).allocate("allocate-0").join();
+            context.commit();
+        }
+        Thread.sleep(50);
+
+        // another process takes over the rest of the block
+        final HighContentionAllocator.BlockReservations blocks = newBlockReservations(3, HighContentionAllocator.BlockReservations.DEFAULT_LEASE_MILLIS);
+        final Map<Long, String> allocated = new HashMap<>();
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, blocks);
+            for (int i = 1; i < 3; i++) {
+                String storedValue = "allocate-" + i;
+                allocated.put(hca.allocate(storedValue).join(), storedValue);
+            }
+            context.commit();
+        }
+        assertThat(allocated.keySet(), containsInAnyOrder(1L, 2L));
+
+        // the first process moves on to a new block without removing the reservation it no longer holds
+        try (FDBRecordContext context = database.openContext()) {
+            Long value = new HighContentionAllocator(context, expiring).allocate("allocate-3").join();
+            assertThat("a value from a new block", value, greaterThanOrEqualTo(3L));
+            context.commit();
+        }
+        assertThat("the reservation of the other process is kept", leaseExpiry(0L), greaterThan(System.currentTimeMillis()));
+    }
+
+    @Test
+    void testBlockLeaseMustBePositive() {
+        assertThrows(RecordCoreArgumentException.class, () -> newBlockReservations(10, 0L));
+        assertThrows(RecordCoreArgumentException.class, () -> newBlockReservations(0, 1000L));
+    }
+
     @Test
     @Tag(Tags.WipesFDB)
     void testCheckForRootConflicts() {
@@ -214,6 +333,21 @@ class HighContentionAllocatorTest extends FDBTestBase {
         validateAllocationWindow(AllocationWindow.startingFrom(2345));
     }
 
+    private HighContentionAllocator.BlockReservations newBlockReservations(int blockSize, long leaseMillis) {
+        try (FDBRecordContext context = database.openContext()) {
+            Subspace subspace = keySpace.path("test-path").toSubspace(context);
+            return new HighContentionAllocator.BlockReservations(subspace.get(0), subspace.get(1), subspace.get(2), blockSize, leaseMillis);
+        }
+    }
+
+    private long leaseExpiry(long blockStart) {
+        try (FDBRecordContext context = database.openContext()) {
+            Subspace reservationSubspace = keySpace.path("test-path").toSubspace(context).get(2);
+            byte[] lease = context.ensureActive().get(reservationSubspace.pack(blockStart)).join();
+            return lease == null ? -1L : Tuple.fromBytes(lease).getLong(1);
+        }
+    }
+
     private void validateAllocation(FDBRecordContext context, HighContentionAllocator hca, Map<Long, String> allocations) {
         Subspace allocationSubspace = hca.getAllocationSubspace();
         Transaction transaction = context.ensureActive();
@@ -168,6 +168,38 @@ public class FDBCoveringIndexQueryTest extends FDBRecordStoreQueryTestBase {
         assertEquals(324762954, plan.planHash());
     }
 
+    /**
+     * Verify that when there is no filter or sort, the index that is scanned is covering if it has the returned fields.
+     */
+    @Test
+    public void coveringNoFilterNoSort() throws Exception {
+        complexQuerySetup(null);
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setRequiredResults(Collections.singletonList(field("str_value_indexed")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$str_value_indexed"), unbounded()))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, null);
+            int i = 0;
+            try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan).asIterator()) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertTrue(myrec.hasStrValueIndexed());
+                    assertFalse(myrec.hasNumValue3Indexed());
+                    i++;
+                }
+            }
+            assertEquals(100, i);
+            assertDiscardedNone(context);
+        }
+    }
+
     /**
      * Verify that if the filter contains additional parameters not satisfiable by an otherwise
      * covering index that it is not used.
@@ -321,6 +353,54 @@ public class FDBCoveringIndexQueryTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that an index that stores the required results in its value is chosen over an index on the same key
+     * without them, but only when the query has required results.
+     */
+    @Test
+    public void coveringValuePreferredToNarrowerIndex() throws Exception {
+        RecordMetaDataHook hook = metaData -> metaData.addIndex("MySimpleRecord", new Index(
+                "multi_index_value",
+                field("num_value_unique"),
+                field("num_value_2"),
+                IndexTypes.VALUE,
+                IndexOptions.UNIQUE_OPTIONS));
+        complexQuerySetup(hook);
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("num_value_unique").greaterThan(990))
+                .setRequiredResults(Arrays.asList(
+                        field("num_value_unique"),
+                        field("num_value_2")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, coveringIndexScan(indexScan(allOf(indexName("multi_index_value"), bounds(hasTupleString("([990],>"))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            int i = 0;
+            try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan).asIterator()) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertTrue(myrec.getNumValueUnique() > 990);
+                    assertEquals((999 - i) % 3, myrec.getNumValue2());
+                    assertFalse(myrec.hasStrValueIndexed());
+                    i++;
+                }
+            }
+            assertEquals(10, i);
+            assertDiscardedNone(context);
+        }
+
+        // Without required results, the smaller index is still better.
+        RecordQuery fullQuery = query.toBuilder().setRequiredResults(null).build();
+        RecordQueryPlan fullPlan = planner.plan(fullQuery);
+        assertThat(fullPlan, indexScan(allOf(indexName("MySimpleRecord$num_value_unique"), bounds(hasTupleString("([990],>")))));
+    }
+
     /**
      * Verify that an index can be covering for nested fields if the field is in the value of the index.
      */
@@ -0,0 +1,222 @@
+/*
+ * FDBGroupByQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.AggregateFunctionNotSupportedException;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.aggregate.GroupAggregate;
+import com.apple.foundationdb.record.query.plan.aggregate.RecordQueryGroupByPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.bounds;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.coveringIndexScan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.hasTupleString;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.unbounded;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link RecordQueryGroupByPlan}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBGroupByQueryTest extends FDBRecordStoreQueryTestBase {
+
+    private void saveRecords() {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            for (int i = 0; i < 30; i++) {
+                TestRecords1Proto.MySimpleRecord.Builder recBuilder = TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue3Indexed(i % 3);
+                if (i % 10 != 9) {
+                    recBuilder.setNumValue2(i);
+                }
+                recordStore.saveRecord(recBuilder.build());
+            }
+            commit(context);
+        }
+    }
+
+    @Nonnull
+    private RecordQueryGroupByPlan planGroupBy(@Nonnull RecordQuery query, @Nonnull KeyExpression groupingKey,
+                                               @Nonnull GroupAggregate... aggregates) {
+        return RecordQueryGroupByPlan.plan((RecordQueryPlanner)planner, query, groupingKey, Arrays.asList(aggregates));
+    }
+
+    private static RecordQuery simpleQuery() {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .build();
+    }
+
+    @Nonnull
+    private List<Tuple> execute(@Nonnull RecordQueryGroupByPlan plan, @Nonnull ExecuteProperties executeProperties) {
+        final List<Tuple> rows = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context, NO_HOOK);
+                try (RecordCursor<Tuple> cursor = plan.execute(recordStore, EvaluationContext.EMPTY, continuation, executeProperties.resetState())) {
+                    RecordCursorResult<Tuple> result;
+                    do {
+                        result = cursor.getNext();
+                        if (result.hasNext()) {
+                            rows.add(result.get());
+                        }
+                    } while (result.hasNext());
+                    continuation = result.getContinuation().toBytes();
+                }
+            }
+        } while (continuation != null);
+        return rows;
+    }
+
+    /**
+     * Verify that aggregates are computed for each group from an index scan on the grouping key.
+     */
+    @Test
+    public void groupByIndexedField() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        RecordQueryGroupByPlan plan = planGroupBy(simpleQuery(), field("num_value_3_indexed"),
+                GroupAggregate.count(),
+                new GroupAggregate(FunctionNames.COUNT_NOT_NULL, field("num_value_2")),
+                new GroupAggregate(FunctionNames.SUM, field("num_value_2")),
+                new GroupAggregate(FunctionNames.MIN, field("num_value_2")),
+                new GroupAggregate(FunctionNames.MAX, field("num_value_2")));
+        assertThat(plan.getChild(), indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), unbounded())));
+
+        // The records with rec_no 9, 19 and 29 have no num_value_2, one in each group.
+        assertEquals(Arrays.asList(
+                Tuple.from(0L, 10L, 9L, 126L, 0L, 27L),
+                Tuple.from(1L, 10L, 9L, 126L, 1L, 28L),
+                Tuple.from(2L, 10L, 9L, 126L, 2L, 26L)),
+                execute(plan, ExecuteProperties.SERIAL_EXECUTE));
+    }
+
+    /**
+     * Verify that the records are not fetched when the index has every field needed.
+     */
+    @Test
+    public void groupByCovering() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("num_value_3_indexed").greaterThan(0))
+                .build();
+        RecordQueryGroupByPlan plan = planGroupBy(query, field("num_value_3_indexed"),
+                GroupAggregate.count(),
+                new GroupAggregate(FunctionNames.MAX, field("rec_no")));
+        assertThat(plan.getChild(), coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"),
+                bounds(hasTupleString("([0],>"))))));
+
+        assertEquals(Arrays.asList(Tuple.from(1L, 10L, 28L), Tuple.from(2L, 10L, 29L)),
+                execute(plan, ExecuteProperties.SERIAL_EXECUTE));
+    }
+
+    /**
+     * Verify that a limit on the number of groups returned resumes at the next group.
+     */
+    @Test
+    public void groupByWithRowLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        RecordQueryGroupByPlan plan = planGroupBy(simpleQuery(), field("num_value_3_indexed"),
+                GroupAggregate.count());
+        ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setReturnedRowLimit(1).build();
+        assertEquals(Arrays.asList(Tuple.from(0L, 10L), Tuple.from(1L, 10L), Tuple.from(2L, 10L)),
+                execute(plan, executeProperties));
+    }
+
+    /**
+     * Verify that stopping in the middle of a group leaves the whole group for the next continuation.
+     */
+    @Test
+    public void groupByWithScanLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        RecordQueryGroupByPlan plan = planGroupBy(simpleQuery(), field("num_value_3_indexed"),
+                GroupAggregate.count(),
+                new GroupAggregate(FunctionNames.SUM, field("rec_no")));
+        ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setScannedRecordsLimit(15).build();
+        assertEquals(Arrays.asList(Tuple.from(0L, 10L, 135L), Tuple.from(1L, 10L, 145L), Tuple.from(2L, 10L, 155L)),
+                execute(plan, executeProperties));
+    }
+
+    /**
+     * Verify that aggregates which cannot be computed for a group are rejected.
+     */
+    @Test
+    public void unsupportedAggregates() {
+        assertThrows(AggregateFunctionNotSupportedException.class,
+                () -> new GroupAggregate(FunctionNames.RANK, field("num_value_2")));
+        assertThrows(AggregateFunctionNotSupportedException.class,
+                () -> new GroupAggregate(FunctionNames.SUM, concatenateFields("num_value_2", "num_value_3_indexed")));
+        assertThrows(AggregateFunctionNotSupportedException.class,
+                () -> new GroupAggregate(FunctionNames.MAX, field("repeater", KeyExpression.FanType.FanOut)));
+    }
+
+    /**
+     * Verify that grouping without an index on the grouping key fails unless sorting in memory is allowed.
+     */
+    @Test
+    public void groupByWithoutIndex() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        assertThrows(RecordCoreException.class,
+                () -> planGroupBy(simpleQuery(), field("num_value_2"), GroupAggregate.count()));
+    }
+}
@@ -22,12 +22,14 @@ package com.apple.foundationdb.record.provider.foundationdb.query;
 
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursorIterator;
 import com.apple.foundationdb.record.TestRecords1Proto;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.OrComponent;
 import com.apple.foundationdb.record.query.expressions.Query;
@@ -51,6 +53,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import javax.annotation.Nonnull;
 import java.util.Arrays;
@@ -87,6 +90,7 @@ import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -574,6 +578,57 @@ public class FDBOrQueryToUnionTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that an unordered union with duplicates removed does not return records again after a continuation
+     * when a distinct bytes limit is set, and that exceeding the limit fails the query.
+     */
+    @ParameterizedTest(name = "testOrQuery5DistinctAcrossContinuations [limit = {0}]")
+    @ValueSource(ints = {1, 2, 5, 7})
+    public void testOrQuery5DistinctAcrossContinuations(int limit) throws Exception {
+        RecordMetaDataHook hook = complexQuerySetupHook();
+        complexQuerySetup(hook);
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.or(
+                        Query.field("str_value_indexed").lessThan("m"),
+                        Query.field("num_value_3_indexed").greaterThan(3)))
+                .setRemoveDuplicates(true)
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, primaryKeyDistinct(unorderedUnion(
+                indexScan(allOf(indexName("MySimpleRecord$str_value_indexed"), bounds(hasTupleString("([null],[m])")))),
+                indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("([3],>"))))
+        )));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            byte[] continuation = null;
+            Set<Tuple> uniqueKeys = new HashSet<>();
+            int itr = 0;
+            do {
+                ExecuteProperties executeProperties = ExecuteProperties.newBuilder()
+                        .setReturnedRowLimit(limit)
+                        .setDistinctBytesLimit(10_000)
+                        .build();
+                try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, continuation, executeProperties).asIterator()) {
+                    while (cursor.hasNext()) {
+                        assertTrue(uniqueKeys.add(cursor.next().getPrimaryKey()), "record returned more than once");
+                    }
+                    continuation = cursor.getContinuation();
+                }
+                itr++;
+                assertThat("exceeded maximum iterations", itr, lessThan(500));
+            } while (continuation != null);
+            assertEquals(50 + 10, uniqueKeys.size());
+
+            ExecuteProperties tooSmall = ExecuteProperties.newBuilder()
+                    .setDistinctBytesLimit(100)
+                    .build();
+            assertThrows(RecordCoreException.class, () -> context.asyncToSync(FDBStoreTimer.Waits.WAIT_EXECUTE_QUERY,
+                    recordStore.executeQuery(plan, null, tooSmall).getCount()));
+        }
+    }
+
     /**
      * Verify that a complex query with an OR of an AND produces a union plan if appropriate indexes are defined.
      * In particular, verify that it can use the last field of an index and does not require primary key ordering
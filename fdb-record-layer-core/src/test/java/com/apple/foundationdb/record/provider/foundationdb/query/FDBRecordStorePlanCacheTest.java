@@ -0,0 +1,232 @@
+/*
+ * FDBRecordStorePlanCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for executing queries with a {@link RecordQueryPlanCache}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBRecordStorePlanCacheTest extends FDBRecordStoreQueryTestBase {
+
+    private final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+    private final RecordMetaData simpleMetaData = simpleMetaData(NO_HOOK);
+
+    @Nonnull
+    @Override
+    protected FDBRecordStore.Builder getStoreBuilder(@Nonnull FDBRecordContext context, @Nonnull RecordMetaData metaData) {
+        return super.getStoreBuilder(context, metaData).setPlanCache(planCache);
+    }
+
+    // Use the same meta-data version each time, since plans are only shared by queries against the same one.
+    private void openStore(@Nonnull FDBRecordContext context) {
+        createOrOpenRecordStore(context, simpleMetaData);
+    }
+
+    private void saveRecords() {
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            for (int i = 0; i < 30; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue3Indexed(i % 3)
+                        .setNumValue2(i)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private List<Long> queryRecNos(@Nonnull RecordQuery query) {
+        return recordStore.executeQuery(query)
+                .map(rec -> TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).getRecNo())
+                .asList().join();
+    }
+
+    private static RecordQuery valueQuery(int value3, int value2) {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("num_value_3_indexed").equalsValue(value3),
+                        Query.field("num_value_2").lessThan(value2)))
+                .build();
+    }
+
+    @Test
+    public void reusePlanWithOtherConstants() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            assertEquals(Arrays.asList(1L, 4L, 7L), queryRecNos(valueQuery(1, 10)));
+            assertEquals(Arrays.asList(2L, 5L, 8L, 11L, 14L, 17L), queryRecNos(valueQuery(2, 18)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+            assertEquals(1, planCache.size());
+            // Only the planning is timed, not the reuse.
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_INDEX));
+        }
+
+        // The cache outlives the transaction.
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            assertEquals(Arrays.asList(0L, 3L), queryRecNos(valueQuery(0, 5)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(2, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+        }
+    }
+
+    @Test
+    public void replanWhenIndexNotReadable() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            assertEquals(Arrays.asList(1L, 4L, 7L), queryRecNos(valueQuery(1, 10)));
+            recordStore.markIndexDisabled("MySimpleRecord$num_value_3_indexed").join();
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            // The plan using the disabled index must not be reused.
+            assertEquals(Arrays.asList(1L, 4L, 7L), queryRecNos(valueQuery(1, 10)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+            assertEquals(2, planCache.size());
+        }
+    }
+
+    @Test
+    public void differentShapesNotShared() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            queryRecNos(valueQuery(1, 10));
+            final RecordQuery otherQuery = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("num_value_3_indexed").equalsValue(1),
+                            Query.field("num_value_2").greaterThan(20)))
+                    .build();
+            assertEquals(Arrays.asList(22L, 25L, 28L), queryRecNos(otherQuery));
+            assertEquals(2, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+        }
+    }
+
+    @Test
+    public void equalMetaDataShared() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            queryRecNos(valueQuery(1, 10));
+        }
+        try (FDBRecordContext context = openContext()) {
+            // Equal but not the same meta-data.
+            createOrOpenRecordStore(context, simpleMetaData(NO_HOOK));
+            assertEquals(Arrays.asList(1L, 4L, 7L), queryRecNos(valueQuery(1, 10)));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+        }
+    }
+
+    @Test
+    public void otherMetaDataVersionNotShared() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            queryRecNos(valueQuery(1, 10));
+        }
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, simpleMetaData(metaData -> metaData.addIndex("MySimpleRecord", "num_value_2")));
+            assertEquals(Arrays.asList(1L, 4L, 7L), queryRecNos(valueQuery(1, 10)));
+            assertEquals(2, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+            assertEquals(2, planCache.size());
+        }
+    }
+
+    @Test
+    public void otherPlannerConfigurationNotShared() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            final RecordQueryPlanner planner = new RecordQueryPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState());
+            planCache.plan(planner, valueQuery(1, 10), timer);
+            planner.setConfiguration(planner.getConfiguration().asBuilder().setAttemptFailedInJoinAsOr(false).build());
+            planCache.plan(planner, valueQuery(1, 10), timer);
+            assertEquals(2, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_HIT));
+            assertEquals(2, planCache.size());
+        }
+    }
+
+    @Test
+    public void invalidConstantType() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            queryRecNos(valueQuery(1, 10));
+            final RecordQuery badQuery = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("num_value_3_indexed").equalsValue("one"),
+                            Query.field("num_value_2").lessThan(10)))
+                    .build();
+            assertThrows(RecordCoreException.class, () -> queryRecNos(badQuery));
+        }
+    }
+
+    @Test
+    public void planQueryNotCached() {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openStore(context);
+            recordStore.planQuery(valueQuery(1, 10));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_PLAN_CACHE_MISS));
+            assertEquals(0, planCache.size());
+            final List<Long> recNos = recordStore.executeQuery(recordStore.planQuery(valueQuery(1, 10)))
+                    .map(rec -> rec.getPrimaryKey().getLong(0))
+                    .asList().join();
+            assertEquals(Arrays.asList(1L, 4L, 7L), recNos);
+            assertEquals(0, planCache.size());
+        }
+    }
+}
@@ -23,7 +23,9 @@ package com.apple.foundationdb.record.provider.foundationdb.query;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordCursorIterator;
+import com.apple.foundationdb.record.RecordCursorResult;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordMetaDataBuilder;
 import com.apple.foundationdb.record.TestHelpers;
@@ -37,14 +39,18 @@ import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression.FanType;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerFactory;
 import com.apple.foundationdb.record.provider.foundationdb.indexes.ValueIndexMaintainerFactory;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.plan.PlannableIndexTypes;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
 import com.apple.foundationdb.record.query.predicates.match.PredicateMatchers;
+import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.BooleanSource;
 import com.apple.test.Tags;
 import com.google.auto.service.AutoService;
@@ -58,10 +64,14 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.apple.foundationdb.record.TestHelpers.assertDiscardedAtMost;
@@ -86,6 +96,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -848,4 +859,195 @@ public class FDBSortQueryIndexSelectionTest extends FDBRecordStoreQueryTestBase
         }
     }
 
+    private void saveUnindexedSortRecords(int count) {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            for (int i = 0; i < count; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue2((i * 37) % count)
+                        .setNumValue3Indexed(i % 2)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private void allowNonIndexSort(int maxRecords) {
+        ((RecordQueryPlanner)planner).setConfiguration(((RecordQueryPlanner)planner).getConfiguration().asBuilder()
+                .setAllowNonIndexSort(true)
+                .setNonIndexSortMaxRecords(maxRecords)
+                .build());
+    }
+
+    @Nonnull
+    private List<Integer> executeUnindexedSort(@Nonnull RecordQueryPlan plan, int limit) {
+        return executeUnindexedSort(plan, ExecuteProperties.newBuilder().setReturnedRowLimit(limit).build());
+    }
+
+    @Nonnull
+    private List<Integer> executeUnindexedSort(@Nonnull RecordQueryPlan plan, @Nonnull ExecuteProperties executeProperties) {
+        final List<Integer> values = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context, NO_HOOK);
+                final RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, continuation, executeProperties);
+                RecordCursorResult<FDBQueriedRecord<Message>> result;
+                while ((result = cursor.getNext()).hasNext()) {
+                    values.add(TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(result.get().getRecord()).getNumValue2());
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        return values;
+    }
+
+    /**
+     * Verify that sorts on a field without an index are done in memory when allowed.
+     */
+    @ParameterizedTest
+    @BooleanSource
+    public void sortWithoutIndex(boolean reverse) throws Exception {
+        saveUnindexedSortRecords(50);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("num_value_3_indexed").equalsValue(1))
+                .setSort(field("num_value_2"), reverse)
+                .build();
+        assertThrows(RecordCoreException.class, () -> planner.plan(query));
+
+        allowNonIndexSort(RecordQuerySortPlan.DEFAULT_MAX_RECORDS);
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, instanceOf(RecordQuerySortPlan.class));
+        assertThat(((RecordQuerySortPlan)plan).getChild(),
+                indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("[[1],[1]]")))));
+        assertEquals(reverse, plan.isReverse());
+
+        List<Integer> expected = IntStream.range(0, 50).filter(i -> i % 2 == 1).boxed().collect(Collectors.toList());
+        if (reverse) {
+            Collections.reverse(expected);
+        }
+        timer.reset();
+        assertEquals(expected, executeUnindexedSort(plan, Integer.MAX_VALUE));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PASSES));
+    }
+
+    /**
+     * Verify that a sort without an index resumes from the rest of its batch in the continuation, without another pass.
+     */
+    @Test
+    public void sortWithoutIndexWithLimit() throws Exception {
+        saveUnindexedSortRecords(50);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        allowNonIndexSort(RecordQuerySortPlan.DEFAULT_MAX_RECORDS);
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setSort(field("num_value_2"))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, instanceOf(RecordQuerySortPlan.class));
+
+        timer.reset();
+        assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toList()), executeUnindexedSort(plan, 7));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PASSES));
+    }
+
+    /**
+     * Verify that a sort without an index that has more records than fit in memory makes more than one pass.
+     */
+    @Test
+    public void sortWithoutIndexMultiplePasses() throws Exception {
+        saveUnindexedSortRecords(50);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        allowNonIndexSort(12);
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setSort(field("num_value_2"), true)
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, instanceOf(RecordQuerySortPlan.class));
+        assertEquals(12, ((RecordQuerySortPlan)plan).getMaxRecords());
+
+        timer.reset();
+        List<Integer> expected = IntStream.range(0, 50).boxed().collect(Collectors.toList());
+        Collections.reverse(expected);
+        assertEquals(expected, executeUnindexedSort(plan, Integer.MAX_VALUE));
+        assertEquals(5, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PASSES));
+    }
+
+    /**
+     * Verify that a sort without an index that is stopped by scan limits carries on with the same pass when resumed.
+     */
+    @Test
+    public void sortWithoutIndexResumesAcrossScanLimits() throws Exception {
+        saveUnindexedSortRecords(50);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        allowNonIndexSort(12);
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setSort(field("num_value_2"))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, instanceOf(RecordQuerySortPlan.class));
+
+        timer.reset();
+        assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toList()), executeUnindexedSort(plan,
+                ExecuteProperties.newBuilder().setReturnedRowLimit(7).setScannedRecordsLimit(5).build()));
+        assertEquals(5, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PASSES));
+    }
+
+    /**
+     * Verify that a record deleted after a sort without an index stopped is skipped when the sort is resumed.
+     */
+    @Test
+    public void sortWithoutIndexSkipsDeletedRecords() throws Exception {
+        saveUnindexedSortRecords(50);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+        }
+        allowNonIndexSort(12);
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setSort(field("num_value_2"))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+
+        final List<Integer> values = new ArrayList<>();
+        byte[] continuation;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            final RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, null,
+                    ExecuteProperties.newBuilder().setReturnedRowLimit(7).build());
+            RecordCursorResult<FDBQueriedRecord<Message>> result;
+            while ((result = cursor.getNext()).hasNext()) {
+                values.add(TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(result.get().getRecord()).getNumValue2());
+            }
+            continuation = result.getContinuation().toBytes();
+        }
+        assertEquals(IntStream.range(0, 7).boxed().collect(Collectors.toList()), values);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            // Record 7 has num_value_2 9, which is still to be returned from the first batch.
+            assertTrue(recordStore.deleteRecord(Tuple.from(7L)));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, NO_HOOK);
+            recordStore.executeQuery(plan, continuation, ExecuteProperties.SERIAL_EXECUTE)
+                    .forEach(rec -> values.add(TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).getNumValue2()))
+                    .join();
+        }
+        assertEquals(IntStream.range(0, 50).filter(i -> i != 9).boxed().collect(Collectors.toList()), values);
+    }
+
 }
@@ -537,6 +537,14 @@ public class QueryToKeyMatcherTest {
         Match match = matcher.matchesSatisfyingQuery(key);
         assertEquals(MatchType.EQUALITY, match.getType());
         assertEquals(Key.Evaluated.scalar("hello!"), match.getEquality());
+
+        // The function can also be a prefix of a longer key.
+        final KeyExpression longer = concat(key, keyField("f4"));
+        match = matcher.matchesSatisfyingQuery(longer);
+        assertEquals(MatchType.EQUALITY, match.getType());
+        assertEquals(Key.Evaluated.scalar("hello!"), match.getEquality());
+        assertNoMatch(matcher.matchesCoveringKey(longer));
+        assertNoMatch(matcher.matchesSatisfyingQuery(concat(keyField("f4"), key)));
     }
 
     @Test
@@ -0,0 +1,102 @@
+/*
+ * BenchmarkRecordStores.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.jmh.inmemory.InMemoryFDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+/**
+ * Shared set-up for the benchmarks: the meta-data, records of a given size, and record stores backed by
+ * an {@link InMemoryFDBDatabase}.
+ */
+public class BenchmarkRecordStores {
+    @Nonnull
+    public static final RecordMetaData META_DATA = RecordMetaData.build(BenchmarkRecordsProto.getDescriptor());
+    @Nonnull
+    public static final Subspace STORE_SUBSPACE = new Subspace(Tuple.from("benchmark", "store"));
+
+    private static final String[] CUSTOMERS = { "alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi" };
+
+    private BenchmarkRecordStores() {
+    }
+
+    /**
+     * Open (creating if necessary) the benchmark record store within the given context.
+     * @param context the context in which to open the store
+     * @return the open record store
+     */
+    @Nonnull
+    public static FDBRecordStore openStore(@Nonnull FDBRecordContext context) {
+        return FDBRecordStore.newBuilder()
+                .setContext(context)
+                .setMetaDataProvider(META_DATA)
+                .setSubspace(STORE_SUBSPACE)
+                .createOrOpen();
+    }
+
+    /**
+     * Build an order record whose payload has the given size.
+     * @param orderId the primary key of the record
+     * @param payloadSize the number of bytes in the record's payload
+     * @param random source of the payload bytes and other field values
+     * @return a new order record
+     */
+    @Nonnull
+    public static BenchmarkRecordsProto.Order buildOrder(long orderId, int payloadSize, @Nonnull Random random) {
+        final byte[] payload = new byte[payloadSize];
+        random.nextBytes(payload);
+        return BenchmarkRecordsProto.Order.newBuilder()
+                .setOrderId(orderId)
+                .setCustomer(CUSTOMERS[(int)(orderId % CUSTOMERS.length)])
+                .setPrice(random.nextInt(10_000))
+                .setQuantity(1 + random.nextInt(10))
+                .addTag("tag" + (orderId % 10))
+                .addTag("tag" + (orderId % 7))
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    /**
+     * Populate the benchmark record store with records whose primary keys are {@code 0} through
+     * {@code recordCount - 1} and commit.
+     * @param database the database to populate
+     * @param recordCount the number of records to save
+     * @param payloadSize the payload size of each record
+     * @param random source of record contents
+     */
+    public static void populate(@Nonnull InMemoryFDBDatabase database, int recordCount, int payloadSize, @Nonnull Random random) {
+        try (FDBRecordContext context = database.openContext()) {
+            final FDBRecordStore recordStore = openStore(context);
+            for (long i = 0; i < recordCount; i++) {
+                recordStore.saveRecord(buildOrder(i, payloadSize, random));
+            }
+            context.commit();
+        }
+    }
+}
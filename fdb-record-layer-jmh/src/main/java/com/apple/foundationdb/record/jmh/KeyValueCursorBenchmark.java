@@ -0,0 +1,129 @@
+/*
+ * KeyValueCursorBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.jmh.inmemory.InMemoryFDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for scanning a range of keys with a {@link KeyValueCursor}, either in a single pass or a page at
+ * a time by resuming from continuations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyValueCursorBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"100", "10000"})
+    public int keyCount;
+
+    @Param({"false", "true"})
+    public boolean reverse;
+
+    private final Subspace subspace = new Subspace(Tuple.from("benchmark", "scan"));
+    private InMemoryFDBDatabase database;
+    private FDBRecordContext context;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        database = new InMemoryFDBDatabase();
+        final byte[] value = Tuple.from("some value", 1066L).pack();
+        try (FDBRecordContext populateContext = database.openContext()) {
+            for (int i = 0; i < keyCount; i++) {
+                populateContext.ensureActive().set(subspace.pack(Tuple.from(i, "suffix")), value);
+            }
+            populateContext.commit();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openContext() {
+        context = database.openContext();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeContext() {
+        context.close();
+    }
+
+    @Benchmark
+    public int scan() {
+        return KeyValueCursor.Builder.withSubspace(subspace)
+                .setContext(context)
+                .setRange(TupleRange.ALL)
+                .setContinuation(null)
+                .setScanProperties(reverse ? ScanProperties.REVERSE_SCAN : ScanProperties.FORWARD_SCAN)
+                .build()
+                .getCount()
+                .join();
+    }
+
+    @Benchmark
+    public int scanByPages() {
+        final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder()
+                .setReturnedRowLimit(PAGE_SIZE)
+                .build(), reverse);
+        int count = 0;
+        byte[] continuation = null;
+        do {
+            final KeyValueCursor cursor = KeyValueCursor.Builder.withSubspace(subspace)
+                    .setContext(context)
+                    .setRange(TupleRange.ALL)
+                    .setContinuation(continuation)
+                    .setScanProperties(scanProperties)
+                    .build();
+            RecordCursorResult<KeyValue> result = cursor.getNext();
+            while (result.hasNext()) {
+                count++;
+                result = cursor.getNext();
+            }
+            continuation = result.getContinuation().toBytes();
+        } while (continuation != null);
+        return count;
+    }
+}
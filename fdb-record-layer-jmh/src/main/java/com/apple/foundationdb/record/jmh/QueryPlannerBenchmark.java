@@ -0,0 +1,108 @@
+/*
+ * QueryPlannerBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+
+/**
+ * Benchmarks for {@link RecordQueryPlanner#plan} on a few representative query shapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryPlannerBenchmark {
+    /**
+     * The query shapes to plan.
+     */
+    public enum QueryShape {
+        PRIMARY_KEY_EQUALS,
+        INDEX_EQUALS,
+        INDEX_RANGE_WITH_SORT,
+        OR_OF_INDEXES,
+        UNINDEXED_FILTER
+    }
+
+    @Param
+    public QueryShape shape;
+
+    private RecordQueryPlanner planner;
+    private RecordQuery query;
+
+    @Setup
+    public void setup() {
+        planner = new RecordQueryPlanner(BenchmarkRecordStores.META_DATA, new RecordStoreState(null, null));
+        final RecordQuery.Builder builder = RecordQuery.newBuilder().setRecordType("Order");
+        switch (shape) {
+            case PRIMARY_KEY_EQUALS:
+                builder.setFilter(Query.field("order_id").equalsValue(1066L));
+                break;
+            case INDEX_EQUALS:
+                builder.setFilter(Query.field("customer").equalsValue("alice"));
+                break;
+            case INDEX_RANGE_WITH_SORT:
+                builder.setFilter(Query.and(
+                        Query.field("price").greaterThan(100L),
+                        Query.field("price").lessThan(1000L)));
+                builder.setSort(field("price"));
+                break;
+            case OR_OF_INDEXES:
+                builder.setFilter(Query.or(
+                        Query.field("customer").equalsValue("alice"),
+                        Query.field("price").lessThan(10L)));
+                break;
+            case UNINDEXED_FILTER:
+                builder.setFilter(Query.and(
+                        Query.field("quantity").greaterThan(5),
+                        Query.field("tag").oneOfThem().equalsValue("tag3")));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown query shape " + shape);
+        }
+        query = builder.build();
+    }
+
+    @Benchmark
+    public RecordQueryPlan plan() {
+        return planner.plan(query);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * RecordStoreBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.jmh.inmemory.InMemoryFDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link FDBRecordStore#saveRecordAsync} and {@link FDBRecordStore#loadRecordAsync}.
+ *
+ * <p>
+ * The store is populated once per trial. Each iteration then opens a single context and record store, which
+ * is closed without committing at the end of the iteration, so saves (which overwrite existing records with
+ * fresh contents) do not accumulate between iterations. Saves include maintaining the two value indexes and
+ * reading the existing record.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordStoreBenchmark {
+    @Param({"1000"})
+    public int recordCount;
+
+    @Param({"100", "10000", "250000"})
+    public int payloadSize;
+
+    private InMemoryFDBDatabase database;
+    private Random random;
+    private Message[] records;
+    private FDBRecordContext context;
+    private FDBRecordStore recordStore;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        database = new InMemoryFDBDatabase();
+        random = new Random(recordCount ^ payloadSize);
+        BenchmarkRecordStores.populate(database, recordCount, payloadSize, random);
+        // Pre-build replacement records so that building them is not measured.
+        records = new Message[Math.min(recordCount, 100)];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = BenchmarkRecordStores.buildOrder(random.nextInt(recordCount), payloadSize, random);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openStore() {
+        context = database.openContext();
+        recordStore = BenchmarkRecordStores.openStore(context);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() {
+        context.close();
+    }
+
+    @Benchmark
+    public FDBStoredRecord<Message> saveRecord() {
+        return recordStore.saveRecordAsync(records[random.nextInt(records.length)]).join();
+    }
+
+    @Benchmark
+    public FDBStoredRecord<Message> loadRecord() {
+        return recordStore.loadRecordAsync(Tuple.from(random.nextInt(recordCount))).join();
+    }
+
+    @Benchmark
+    public FDBStoredRecord<Message> loadMissingRecord() {
+        return recordStore.loadRecordAsync(Tuple.from(recordCount + random.nextInt(recordCount))).join();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * SplitHelperBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.jmh.inmemory.InMemoryFDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredSizes;
+import com.apple.foundationdb.record.provider.foundationdb.SplitHelper;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link SplitHelper#saveWithSplit} and {@link SplitHelper#loadWithSplit} with values that fit
+ * in a single key and values that need to be split across several.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitHelperBenchmark {
+    private static final int KEY_COUNT = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int valueSize;
+
+    private final Subspace subspace = new Subspace(Tuple.from("benchmark", "split"));
+    private InMemoryFDBDatabase database;
+    private Random random;
+    private byte[] value;
+    private FDBRecordContext context;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        database = new InMemoryFDBDatabase();
+        random = new Random(valueSize);
+        value = new byte[valueSize];
+        random.nextBytes(value);
+        try (FDBRecordContext populateContext = database.openContext()) {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                SplitHelper.saveWithSplit(populateContext, subspace, Tuple.from(i), value, null);
+            }
+            populateContext.commit();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openContext() {
+        context = database.openContext();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeContext() {
+        context.close();
+    }
+
+    @Benchmark
+    public void saveWithSplit() {
+        SplitHelper.saveWithSplit(context, subspace, Tuple.from(random.nextInt(KEY_COUNT)), value, null);
+    }
+
+    @Benchmark
+    public FDBStoredSizes loadWithSplit() {
+        return SplitHelper.loadWithSplit(context.ensureActive(), context, subspace, Tuple.from(random.nextInt(KEY_COUNT)),
+                true, false, null).join();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * TransformedRecordSerializerBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.provider.common.TransformedRecordSerializer;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for serializing and deserializing records with a {@link TransformedRecordSerializer} at different
+ * compression settings. The record payloads are text-like so that they are compressible.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformedRecordSerializerBenchmark {
+    private static final String[] WORDS = { "the", "record", "layer", "stores", "structured", "data", "on", "top", "of",
+                                            "foundationdb", "with", "indexes", "and", "queries" };
+
+    @Param({"100", "10000", "100000"})
+    public int payloadSize;
+
+    /**
+     * Either {@code none} for no compression or the {@link java.util.zip.Deflater} compression level.
+     */
+    @Param({"none", "1", "6", "9"})
+    public String compression;
+
+    private final RecordMetaData metaData = BenchmarkRecordStores.META_DATA;
+    private final Tuple primaryKey = Tuple.from(1066L);
+    private TransformedRecordSerializer<Message> serializer;
+    private RecordType recordType;
+    private Message record;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        final TransformedRecordSerializer.Builder<Message> builder = TransformedRecordSerializer.newDefaultBuilder();
+        if ("none".equals(compression)) {
+            builder.setCompressWhenSerializing(false);
+        } else {
+            builder.setCompressWhenSerializing(true).setCompressionLevel(Integer.parseInt(compression));
+        }
+        serializer = builder.build();
+        recordType = metaData.getRecordType("Order");
+
+        final Random random = new Random(payloadSize);
+        final StringBuilder text = new StringBuilder(payloadSize + 20);
+        while (text.length() < payloadSize) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        text.setLength(payloadSize);
+        record = BenchmarkRecordStores.buildOrder(1066L, 0, random).toBuilder()
+                .setPayload(ByteString.copyFromUtf8(text.toString()))
+                .build();
+        serialized = serializer.serialize(metaData, recordType, record, null);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(metaData, recordType, record, null);
+    }
+
+    @Benchmark
+    public Message deserialize() {
+        return serializer.deserialize(metaData, primaryKey, serialized, null);
+    }
+}
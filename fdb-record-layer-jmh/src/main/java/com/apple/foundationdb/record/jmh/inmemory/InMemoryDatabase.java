@@ -0,0 +1,134 @@
+/*
+ * InMemoryDatabase.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh.inmemory;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.DatabaseOptions;
+import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.AsyncUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A {@link Database} whose transactions are against an {@link InMemoryKeyValueStore}.
+ *
+ * <p>
+ * The {@code run} methods retry their function with a new transaction when its commit conflicts with another
+ * transaction, which is the only retryable error that in-memory transactions produce. The {@code read} methods
+ * call their function once, since a transaction that is not committed cannot fail. Database options are
+ * accepted and ignored.
+ * </p>
+ */
+public class InMemoryDatabase implements Database {
+    private static final int NOT_COMMITTED = 1020;
+
+    @Nonnull
+    private final InMemoryKeyValueStore store;
+    @Nonnull
+    private final Executor executor;
+    @Nonnull
+    private final DatabaseOptions options;
+
+    public InMemoryDatabase(@Nonnull InMemoryKeyValueStore store, @Nonnull Executor executor) {
+        this.store = store;
+        this.executor = executor;
+        this.options = new DatabaseOptions((code, param) -> { });
+    }
+
+    @Override
+    public Transaction createTransaction(Executor e) {
+        return store.createTransaction(e);
+    }
+
+    @Override
+    public DatabaseOptions options() {
+        return options;
+    }
+
+    @Override
+    public <T> T read(Function<? super ReadTransaction, T> retryable, Executor e) {
+        try (Transaction tr = createTransaction(e)) {
+            return retryable.apply(tr);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> readAsync(Function<? super ReadTransaction, ? extends CompletableFuture<T>> retryable, Executor e) {
+        final Transaction tr = createTransaction(e);
+        return AsyncUtil.applySafely(retryable, tr).whenComplete((result, err) -> tr.close());
+    }
+
+    @Override
+    public <T> T run(Function<? super Transaction, T> retryable, Executor e) {
+        while (true) {
+            try (Transaction tr = createTransaction(e)) {
+                final T result = retryable.apply(tr);
+                tr.commit().join();
+                return result;
+            } catch (CompletionException ex) {
+                if (!isNotCommitted(ex.getCause())) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runAsync(Function<? super Transaction, ? extends CompletableFuture<T>> retryable, Executor e) {
+        final Transaction tr = createTransaction(e);
+        return AsyncUtil.applySafely(retryable, tr)
+                .thenCompose(result -> tr.commit().thenApply(ignore -> result))
+                .handle((result, err) -> {
+                    tr.close();
+                    if (err == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    if (isNotCommitted(err instanceof CompletionException ? err.getCause() : err)) {
+                        return runAsync(retryable, e);
+                    }
+                    final CompletableFuture<T> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(err);
+                    return failed;
+                })
+                .thenCompose(Function.identity());
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+
+    private static boolean isNotCommitted(@Nullable Throwable err) {
+        return err instanceof FDBException && ((FDBException)err).getCode() == NOT_COMMITTED;
+    }
+}
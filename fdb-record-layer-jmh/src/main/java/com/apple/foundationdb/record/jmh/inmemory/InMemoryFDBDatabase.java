@@ -0,0 +1,92 @@
+/*
+ * InMemoryFDBDatabase.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh.inmemory;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContextConfig;
+import com.apple.foundationdb.record.provider.foundationdb.InstrumentedTransaction;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link FDBDatabase} whose contexts use an {@link InMemoryTransaction} rather than a transaction against a
+ * FoundationDB cluster. This allows the Record Layer's own code paths to be benchmarked without a cluster (and
+ * without the FDB native client library).
+ */
+public class InMemoryFDBDatabase extends FDBDatabase {
+    @Nonnull
+    private final InMemoryKeyValueStore store;
+    @Nonnull
+    private final InMemoryDatabase database;
+
+    public InMemoryFDBDatabase() {
+        this(new InMemoryKeyValueStore());
+    }
+
+    public InMemoryFDBDatabase(@Nonnull InMemoryKeyValueStore store) {
+        super(FDBDatabaseFactory.instance(), null);
+        this.store = store;
+        this.database = new InMemoryDatabase(store, getExecutor());
+    }
+
+    /**
+     * Get the in-memory store that backs transactions opened by this database.
+     * @return the backing key-value store
+     */
+    @Nonnull
+    public InMemoryKeyValueStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected synchronized void openFDB() {
+        // There is nothing to open.
+    }
+
+    @Nonnull
+    @Override
+    public Database database() {
+        return database;
+    }
+
+    @Nonnull
+    @Override
+    public FDBRecordContext openContext(@Nonnull FDBRecordContextConfig contextConfig) {
+        Transaction transaction = store.createTransaction(newContextExecutor(contextConfig.getMdcContext()));
+        if (contextConfig.getTimer() != null) {
+            transaction = new InstrumentedTransaction(contextConfig.getTimer(), transaction, contextConfig.areAssertionsEnabled());
+        }
+        return new InMemoryRecordContext(this, transaction, contextConfig);
+    }
+
+    /**
+     * A record context over an in-memory transaction. This subclass exists only to reach the protected constructor.
+     */
+    private static class InMemoryRecordContext extends FDBRecordContext {
+        InMemoryRecordContext(@Nonnull FDBDatabase fdb, @Nonnull Transaction transaction, @Nonnull FDBRecordContextConfig config) {
+            super(fdb, transaction, config);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * InMemoryKeyValueStore.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh.inmemory;
+
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sorted map of keys to values that stands in for a FoundationDB cluster when benchmarking.
+ * Transactions against the store are created with {@link #createTransaction(Executor)}.
+ *
+ * <p>
+ * Each transaction buffers its own writes and applies them when it commits. Commits lock the store, so they
+ * are applied one at a time, and each gets the next version from a simple counter. Reads do not take the lock:
+ * as in FoundationDB, a transaction reads the data as of its read version, which is the version of the latest
+ * commit when it first reads, so it never sees part of a commit. Older values are kept only for as long as some
+ * open transaction has a read version that needs them, so a transaction given an older read version than that with
+ * {@link InMemoryTransaction#setReadVersion} does not see values that have since been replaced, where FoundationDB
+ * would fail it as too old.
+ * </p>
+ *
+ * <p>
+ * Also as in FoundationDB, a transaction fails to commit with a {@code not_committed} error if a transaction that
+ * committed after its read version wrote to a range that it read without snapshot isolation. To check this, the
+ * write conflict ranges of recent commits are likewise kept while some open transaction has an earlier read version.
+ * </p>
+ */
+public class InMemoryKeyValueStore {
+    @Nonnull
+    private final ConcurrentNavigableMap<byte[], Versioned> data;
+    @Nonnull
+    private final AtomicLong version;
+    @Nonnull
+    private final List<Watch> watches;
+    @Nonnull
+    private final NavigableMap<Long, Integer> activeReadVersions;
+    @Nonnull
+    private final NavigableMap<Long, NavigableMap<byte[], byte[]>> recentWrites;
+    @Nonnull
+    private final Deque<Map.Entry<byte[], Versioned>> tombstones;
+
+    public InMemoryKeyValueStore() {
+        this.data = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.version = new AtomicLong(1L);
+        this.watches = new ArrayList<>();
+        this.activeReadVersions = new TreeMap<>();
+        this.recentWrites = new TreeMap<>();
+        this.tombstones = new ArrayDeque<>();
+    }
+
+    /**
+     * Create a new transaction against this store.
+     * @param executor the executor to use for asynchronous operations
+     * @return a new in-memory transaction
+     */
+    @Nonnull
+    public InMemoryTransaction createTransaction(@Nonnull Executor executor) {
+        return new InMemoryTransaction(this, executor);
+    }
+
+    /**
+     * Remove all keys from the store. This should not be called while any transactions are open.
+     */
+    public synchronized void clear() {
+        data.clear();
+        tombstones.clear();
+    }
+
+    /**
+     * Get the number of keys in the store.
+     * @return the number of keys in the store
+     */
+    public int size() {
+        int size = 0;
+        for (Versioned value : data.values()) {
+            if (value.value != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Get the value of a key as of a read version.
+     */
+    @Nullable
+    byte[] read(@Nonnull byte[] key, long readVersion) {
+        return valueAt(data.get(key), readVersion);
+    }
+
+    /**
+     * Iterate over the key-value pairs as of a read version, from the given key to the beginning or end of the key space.
+     */
+    @Nonnull
+    Iterator<Map.Entry<byte[], byte[]>> entries(@Nonnull byte[] from, boolean inclusive, boolean descending, long readVersion) {
+        final NavigableMap<byte[], Versioned> range = descending ? data.headMap(from, inclusive).descendingMap() : data.tailMap(from, inclusive);
+        return new VersionedIterator(range.entrySet().iterator(), readVersion);
+    }
+
+    /**
+     * Get the latest value of a key. Called by a committing transaction while it holds the lock on this store.
+     */
+    @Nullable
+    byte[] latest(@Nonnull byte[] key) {
+        final Versioned head = data.get(key);
+        return head == null ? null : head.value;
+    }
+
+    /**
+     * Get the version that the commit in progress will have. Called by a committing transaction while it holds
+     * the lock on this store, before it calls {@link #write} and {@link #clear(byte[], byte[], long)}.
+     */
+    long commitVersion() {
+        return version.get() + 1;
+    }
+
+    /**
+     * Set a key to a value, or clear it if the value is {@code null}, at the given commit version.
+     * Called by a committing transaction while it holds the lock on this store.
+     */
+    void write(@Nonnull byte[] key, @Nullable byte[] value, long commitVersion) {
+        final Versioned head = data.get(key);
+        if (value == null && (head == null || head.value == null)) {
+            return;
+        }
+        final Versioned written = new Versioned(commitVersion, value, head);
+        written.trim(oldestNeededVersion(commitVersion));
+        data.put(key, written);
+        if (value == null) {
+            tombstones.addLast(new AbstractMap.SimpleImmutableEntry<>(key, written));
+        }
+    }
+
+    /**
+     * Clear a range of keys at the given commit version.
+     * Called by a committing transaction while it holds the lock on this store.
+     */
+    void clear(@Nonnull byte[] beginKey, @Nonnull byte[] endKey, long commitVersion) {
+        for (Map.Entry<byte[], Versioned> entry : data.subMap(beginKey, true, endKey, false).entrySet()) {
+            if (entry.getValue().value != null) {
+                write(entry.getKey(), null, commitVersion);
+            }
+        }
+    }
+
+    private long oldestNeededVersion(long commitVersion) {
+        return activeReadVersions.isEmpty() ? commitVersion : activeReadVersions.firstKey();
+    }
+
+    /**
+     * Register a transaction that is reading at the current version.
+     * @return the read version
+     */
+    synchronized long beginRead() {
+        return beginRead(version.get());
+    }
+
+    /**
+     * Register a transaction that is reading at the given version, so that commits after that version are
+     * remembered until it finishes.
+     * @param readVersion the read version
+     * @return the read version
+     */
+    synchronized long beginRead(long readVersion) {
+        activeReadVersions.merge(readVersion, 1, Integer::sum);
+        return readVersion;
+    }
+
+    synchronized void endRead(long readVersion) {
+        activeReadVersions.computeIfPresent(readVersion, (v, count) -> count > 1 ? count - 1 : null);
+        if (activeReadVersions.isEmpty()) {
+            recentWrites.clear();
+        } else {
+            recentWrites.headMap(activeReadVersions.firstKey(), true).clear();
+        }
+        removeTombstones();
+    }
+
+    /**
+     * Remove cleared keys from the map once no open transaction can read the value that they had before.
+     */
+    private void removeTombstones() {
+        final long oldest = oldestNeededVersion(Long.MAX_VALUE);
+        while (!tombstones.isEmpty() && tombstones.peekFirst().getValue().version <= oldest) {
+            final Map.Entry<byte[], Versioned> tombstone = tombstones.removeFirst();
+            data.remove(tombstone.getKey(), tombstone.getValue());
+        }
+    }
+
+    /**
+     * Check whether any transaction that committed after the given read version wrote to the given read conflict ranges.
+     * Called by a committing transaction while it holds the lock on this store.
+     */
+    synchronized boolean conflicts(long readVersion, @Nonnull NavigableMap<byte[], byte[]> readConflicts) {
+        for (NavigableMap<byte[], byte[]> writeConflicts : recentWrites.tailMap(readVersion, false).values()) {
+            for (Map.Entry<byte[], byte[]> range : writeConflicts.entrySet()) {
+                if (intersects(readConflicts, range.getKey(), range.getValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finish a commit, making its writes visible to transactions that start reading after this, and remember
+     * its write conflict ranges if there is any open transaction that could conflict with it.
+     * Called by a committing transaction while it holds the lock on this store, after its writes.
+     */
+    synchronized void committed(long commitVersion, @Nonnull NavigableMap<byte[], byte[]> writeConflicts) {
+        if (!activeReadVersions.isEmpty() && !writeConflicts.isEmpty()) {
+            recentWrites.put(commitVersion, writeConflicts);
+        }
+        version.set(commitVersion);
+        fireWatches();
+        removeTombstones();
+    }
+
+    /**
+     * Add a range to a map of disjoint ranges from begin key to end key, merging it with any ranges that
+     * it overlaps or touches.
+     */
+    static void addRange(@Nonnull NavigableMap<byte[], byte[]> ranges, @Nonnull byte[] beginKey, @Nonnull byte[] endKey) {
+        if (ByteArrayUtil.compareUnsigned(beginKey, endKey) >= 0) {
+            return;
+        }
+        byte[] begin = beginKey;
+        byte[] end = endKey;
+        final Map.Entry<byte[], byte[]> before = ranges.floorEntry(begin);
+        if (before != null && ByteArrayUtil.compareUnsigned(before.getValue(), begin) >= 0) {
+            begin = before.getKey();
+            end = max(end, before.getValue());
+        }
+        final NavigableMap<byte[], byte[]> overlapping = ranges.subMap(begin, true, end, true);
+        for (byte[] overlappingEnd : overlapping.values()) {
+            end = max(end, overlappingEnd);
+        }
+        overlapping.clear();
+        ranges.put(begin, end);
+    }
+
+    /**
+     * Check whether a range overlaps any of a map of disjoint ranges built by {@link #addRange}.
+     */
+    static boolean intersects(@Nonnull NavigableMap<byte[], byte[]> ranges, @Nonnull byte[] begin, @Nonnull byte[] end) {
+        final Map.Entry<byte[], byte[]> range = ranges.lowerEntry(end);
+        return range != null && ByteArrayUtil.compareUnsigned(range.getValue(), begin) > 0;
+    }
+
+    /**
+     * Check whether a key is in any of a map of disjoint ranges built by {@link #addRange}.
+     */
+    static boolean contains(@Nonnull NavigableMap<byte[], byte[]> ranges, @Nonnull byte[] key) {
+        if (ranges.isEmpty()) {
+            return false;
+        }
+        final Map.Entry<byte[], byte[]> range = ranges.floorEntry(key);
+        return range != null && ByteArrayUtil.compareUnsigned(key, range.getValue()) < 0;
+    }
+
+    /**
+     * Get the key immediately after the given key, so that a single key can be treated as a range.
+     */
+    @Nonnull
+    static byte[] keyAfter(@Nonnull byte[] key) {
+        return Arrays.copyOf(key, key.length + 1);
+    }
+
+    @Nonnull
+    private static byte[] max(@Nonnull byte[] a, @Nonnull byte[] b) {
+        return ByteArrayUtil.compareUnsigned(a, b) >= 0 ? a : b;
+    }
+
+    synchronized void addWatch(@Nonnull Watch watch) {
+        watch.value = latest(watch.key);
+        watches.add(watch);
+    }
+
+    /**
+     * Complete any watches whose key no longer has the value it had when the watch was set.
+     */
+    private void fireWatches() {
+        final Iterator<Watch> iterator = watches.iterator();
+        while (iterator.hasNext()) {
+            final Watch watch = iterator.next();
+            if (watch.future.isDone()) {
+                iterator.remove();
+            } else if (!Arrays.equals(watch.value, latest(watch.key))) {
+                iterator.remove();
+                watch.future.complete(null);
+            }
+        }
+    }
+
+    @Nullable
+    private static byte[] valueAt(@Nullable Versioned head, long readVersion) {
+        Versioned current = head;
+        while (current != null && current.version > readVersion) {
+            current = current.previous;
+        }
+        return current == null ? null : current.value;
+    }
+
+    /**
+     * A value written by a commit, linked to the value that it replaced. A {@code null} value marks a cleared key.
+     */
+    private static class Versioned {
+        private final long version;
+        @Nullable
+        private final byte[] value;
+        @Nullable
+        private volatile Versioned previous;
+
+        Versioned(long version, @Nullable byte[] value, @Nullable Versioned previous) {
+            this.version = version;
+            this.value = value;
+            this.previous = previous;
+        }
+
+        /**
+         * Drop the values that no transaction reading at or after the given version can see.
+         */
+        void trim(long oldestReadVersion) {
+            Versioned current = this;
+            while (current != null && current.version > oldestReadVersion) {
+                current = current.previous;
+            }
+            if (current != null) {
+                current.previous = null;
+            }
+        }
+    }
+
+    /**
+     * Iterates over the keys in part of the map that have a value as of a read version.
+     */
+    private static class VersionedIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+        @Nonnull
+        private final Iterator<Map.Entry<byte[], Versioned>> iterator;
+        private final long readVersion;
+        @Nullable
+        private Map.Entry<byte[], byte[]> next;
+
+        VersionedIterator(@Nonnull Iterator<Map.Entry<byte[], Versioned>> iterator, long readVersion) {
+            this.iterator = iterator;
+            this.readVersion = readVersion;
+            this.next = computeNext();
+        }
+
+        @Nullable
+        private Map.Entry<byte[], byte[]> computeNext() {
+            while (iterator.hasNext()) {
+                final Map.Entry<byte[], Versioned> entry = iterator.next();
+                final byte[] value = valueAt(entry.getValue(), readVersion);
+                if (value != null) {
+                    return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<byte[], byte[]> result = next;
+            next = computeNext();
+            return result;
+        }
+    }
+
+    /**
+     * A watch set by a transaction, which becomes active when that transaction commits.
+     */
+    static class Watch {
+        @Nonnull
+        private final byte[] key;
+        @Nonnull
+        private final CompletableFuture<Void> future;
+        @Nullable
+        private byte[] value;
+
+        Watch(@Nonnull byte[] key) {
+            this.key = key;
+            this.future = new CompletableFuture<>();
+        }
+
+        @Nonnull
+        CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
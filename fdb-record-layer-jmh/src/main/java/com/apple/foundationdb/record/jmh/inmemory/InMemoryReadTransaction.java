@@ -0,0 +1,410 @@
+/*
+ * InMemoryReadTransaction.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh.inmemory;
+
+import com.apple.foundationdb.KeySelector;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.StreamingMode;
+import com.apple.foundationdb.TransactionOptions;
+import com.apple.foundationdb.async.AsyncIterable;
+import com.apple.foundationdb.async.AsyncIterator;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A {@link ReadTransaction} that reads from an {@link InMemoryKeyValueStore}.
+ *
+ * <p>
+ * Reads always complete immediately and see the store as of the read version, and range reads are materialized up to their limit when first iterated.
+ * Resolving a {@link KeySelector} needs to know whether it is {@code orEqual}, which the FDB client only exposes
+ * inside its own package, so that is read from the selector's field instead. That field is checked against
+ * selectors with known answers when this class is loaded, so a client that changes it fails loudly.
+ * </p>
+ */
+public class InMemoryReadTransaction implements ReadTransaction {
+    private static final byte[] BEGIN_KEY = new byte[0];
+    private static final byte[] END_KEY = new byte[]{(byte)0xff};
+    @Nonnull
+    private static final String OR_EQUAL_UNAVAILABLE = "cannot read orEqual of KeySelector from this version of the FDB client: "
+            + "InMemoryReadTransaction must be updated to match it";
+    @Nonnull
+    private static final Field OR_EQUAL = orEqualField();
+
+    @Nonnull
+    protected final InMemoryKeyValueStore store;
+    @Nonnull
+    private final Executor executor;
+    @Nonnull
+    private final TransactionOptions options;
+    private final boolean snapshot;
+    private long readVersion;
+
+    protected InMemoryReadTransaction(@Nonnull InMemoryKeyValueStore store, @Nonnull Executor executor, boolean snapshot) {
+        this.store = store;
+        this.executor = executor;
+        this.options = new TransactionOptions((code, param) -> { });
+        this.snapshot = snapshot;
+        this.readVersion = -1L;
+    }
+
+    @Override
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public ReadTransaction snapshot() {
+        return snapshot ? this : new InMemoryReadTransaction(store, executor, true);
+    }
+
+    @Override
+    public CompletableFuture<Long> getReadVersion() {
+        if (readVersion < 0) {
+            readVersion = store.getVersion();
+        }
+        return CompletableFuture.completedFuture(readVersion);
+    }
+
+    @Override
+    public void setReadVersion(long version) {
+        this.readVersion = version;
+    }
+
+    @Override
+    public boolean addReadConflictRangeIfNotSnapshot(byte[] keyBegin, byte[] keyEnd) {
+        if (!snapshot) {
+            addReadConflict(keyBegin, keyEnd);
+        }
+        return !snapshot;
+    }
+
+    @Override
+    public boolean addReadConflictKeyIfNotSnapshot(byte[] key) {
+        if (!snapshot) {
+            addReadConflict(key, InMemoryKeyValueStore.keyAfter(key));
+        }
+        return !snapshot;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> get(byte[] key) {
+        if (!snapshot) {
+            addReadConflict(key, InMemoryKeyValueStore.keyAfter(key));
+        }
+        return CompletableFuture.completedFuture(readValue(key));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getKey(KeySelector selector) {
+        final byte[] key = resolve(selector);
+        if (!snapshot) {
+            final boolean before = ByteArrayUtil.compareUnsigned(key, selector.getKey()) < 0;
+            addReadConflict(before ? key : selector.getKey(), InMemoryKeyValueStore.keyAfter(before ? selector.getKey() : key));
+        }
+        return CompletableFuture.completedFuture(key);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end) {
+        return getRange(begin, end, ROW_LIMIT_UNLIMITED);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit) {
+        return getRange(begin, end, limit, false);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit, boolean reverse) {
+        return getRange(begin, end, limit, reverse, StreamingMode.ITERATOR);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit, boolean reverse, StreamingMode mode) {
+        return new RangeIterable(() -> resolve(begin), () -> resolve(end), limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end) {
+        return getRange(begin, end, ROW_LIMIT_UNLIMITED);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit) {
+        return getRange(begin, end, limit, false);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit, boolean reverse) {
+        return getRange(begin, end, limit, reverse, StreamingMode.ITERATOR);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit, boolean reverse, StreamingMode mode) {
+        return new RangeIterable(() -> begin, () -> end, limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range) {
+        return getRange(range.begin, range.end);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit) {
+        return getRange(range.begin, range.end, limit);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit, boolean reverse) {
+        return getRange(range.begin, range.end, limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit, boolean reverse, StreamingMode mode) {
+        return getRange(range.begin, range.end, limit, reverse, mode);
+    }
+
+    @Override
+    public TransactionOptions options() {
+        return options;
+    }
+
+    @Override
+    public <T> T read(Function<? super ReadTransaction, T> retryable) {
+        return retryable.apply(this);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> readAsync(Function<? super ReadTransaction, ? extends CompletableFuture<T>> retryable) {
+        return AsyncUtil.applySafely(retryable, this);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Note that this transaction read a range, so that it conflicts with another transaction that writes to it
+     * after this transaction's read version. Only called for reads that are not snapshot reads.
+     * @param begin the beginning of the range, inclusive
+     * @param end the end of the range, exclusive
+     */
+    protected void addReadConflict(@Nonnull byte[] begin, @Nonnull byte[] end) {
+        // A transaction that cannot write cannot conflict.
+    }
+
+    /**
+     * Get the value of a key as seen by this transaction.
+     * @param key the key to read
+     * @return the value of the key or {@code null} if it is not set
+     */
+    @Nullable
+    protected byte[] readValue(@Nonnull byte[] key) {
+        return store.read(key, getReadVersion().join());
+    }
+
+    /**
+     * Iterate over the key-value pairs seen by this transaction, from the given key to the beginning or end of
+     * the key space.
+     * @param from the key at which to start
+     * @param inclusive whether {@code from} itself is included
+     * @param descending whether to iterate toward the beginning of the key space rather than the end
+     * @return an iterator over key-value pairs in key order or reverse key order
+     */
+    @Nonnull
+    protected Iterator<Map.Entry<byte[], byte[]>> entries(@Nonnull byte[] from, boolean inclusive, boolean descending) {
+        return store.entries(from, inclusive, descending, getReadVersion().join());
+    }
+
+    /**
+     * Resolve a key selector to an actual key, with the beginning and end of the key space represented
+     * by the empty key and by {@code \xff} as in FoundationDB.
+     */
+    @Nonnull
+    private byte[] resolve(@Nonnull KeySelector selector) {
+        final Iterator<Map.Entry<byte[], byte[]>> before = entries(selector.getKey(), isOrEqual(selector), true);
+        byte[] current = before.hasNext() ? before.next().getKey() : null;
+        int offset = selector.getOffset();
+        if (offset > 0) {
+            final Iterator<Map.Entry<byte[], byte[]>> after = (current == null) ? entries(BEGIN_KEY, true, false) : entries(current, false, false);
+            while (offset > 0) {
+                if (!after.hasNext()) {
+                    return END_KEY;
+                }
+                current = after.next().getKey();
+                offset--;
+            }
+        }
+        while (offset < 0 && current != null) {
+            current = before.hasNext() ? before.next().getKey() : null;
+            offset++;
+        }
+        return current == null ? BEGIN_KEY : current;
+    }
+
+    /**
+     * Get the field behind {@code KeySelector.orEqual()}, which is package-private in the FDB client, and check that
+     * it still means what resolution assumes. If a new client renames or changes it, this fails as soon as the class
+     * is loaded rather than quietly resolving selectors to the wrong keys.
+     */
+    @Nonnull
+    private static Field orEqualField() {
+        final Field field;
+        try {
+            field = KeySelector.class.getDeclaredField("orEqual");
+            field.setAccessible(true);
+        } catch (NoSuchFieldException | SecurityException e) {
+            throw new IllegalStateException(OR_EQUAL_UNAVAILABLE, e);
+        }
+        final byte[] key = new byte[]{0x01};
+        try {
+            if (!field.getBoolean(KeySelector.lastLessOrEqual(key)) || field.getBoolean(KeySelector.lastLessThan(key))
+                    || !field.getBoolean(KeySelector.firstGreaterThan(key)) || field.getBoolean(KeySelector.firstGreaterOrEqual(key))) {
+                throw new IllegalStateException(OR_EQUAL_UNAVAILABLE);
+            }
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new IllegalStateException(OR_EQUAL_UNAVAILABLE, e);
+        }
+        return field;
+    }
+
+    private static boolean isOrEqual(@Nonnull KeySelector selector) {
+        try {
+            return OR_EQUAL.getBoolean(selector);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(OR_EQUAL_UNAVAILABLE, e);
+        }
+    }
+
+    @Nonnull
+    private List<KeyValue> scan(@Nonnull byte[] begin, @Nonnull byte[] end, int limit, boolean reverse) {
+        if (ByteArrayUtil.compareUnsigned(begin, end) >= 0) {
+            return Collections.emptyList();
+        }
+        final Iterator<Map.Entry<byte[], byte[]>> iterator = reverse ? entries(end, false, true) : entries(begin, true, false);
+        final List<KeyValue> result = new ArrayList<>();
+        while (iterator.hasNext() && (limit == ROW_LIMIT_UNLIMITED || result.size() < limit)) {
+            final Map.Entry<byte[], byte[]> entry = iterator.next();
+            if (reverse ? ByteArrayUtil.compareUnsigned(entry.getKey(), begin) < 0 : ByteArrayUtil.compareUnsigned(entry.getKey(), end) >= 0) {
+                break;
+            }
+            result.add(new KeyValue(entry.getKey(), entry.getValue()));
+        }
+        if (!snapshot) {
+            if (limit == ROW_LIMIT_UNLIMITED || result.size() < limit) {
+                addReadConflict(begin, end);
+            } else if (reverse) {
+                addReadConflict(result.get(result.size() - 1).getKey(), end);
+            } else {
+                addReadConflict(begin, InMemoryKeyValueStore.keyAfter(result.get(result.size() - 1).getKey()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Range read result. Like a real range read, the endpoints are not resolved until iteration begins.
+     */
+    private class RangeIterable implements AsyncIterable<KeyValue> {
+        @Nonnull
+        private final KeySupplier begin;
+        @Nonnull
+        private final KeySupplier end;
+        private final int limit;
+        private final boolean reverse;
+
+        RangeIterable(@Nonnull KeySupplier begin, @Nonnull KeySupplier end, int limit, boolean reverse) {
+            this.begin = begin;
+            this.end = end;
+            this.limit = limit;
+            this.reverse = reverse;
+        }
+
+        @Nonnull
+        private List<KeyValue> materialize() {
+            return scan(begin.get(), end.get(), limit, reverse);
+        }
+
+        @Override
+        public AsyncIterator<KeyValue> iterator() {
+            return new ListAsyncIterator(materialize().iterator());
+        }
+
+        @Override
+        public CompletableFuture<List<KeyValue>> asList() {
+            return CompletableFuture.completedFuture(materialize());
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeySupplier {
+        @Nonnull
+        byte[] get();
+    }
+
+    private static class ListAsyncIterator implements AsyncIterator<KeyValue> {
+        @Nonnull
+        private final Iterator<KeyValue> iterator;
+
+        ListAsyncIterator(@Nonnull Iterator<KeyValue> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> onHasNext() {
+            return iterator.hasNext() ? AsyncUtil.READY_TRUE : AsyncUtil.READY_FALSE;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public KeyValue next() {
+            if (!iterator.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public void cancel() {
+            // Nothing is in flight.
+        }
+    }
+}
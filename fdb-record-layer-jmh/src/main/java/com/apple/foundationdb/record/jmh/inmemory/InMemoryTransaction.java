@@ -0,0 +1,646 @@
+/*
+ * InMemoryTransaction.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.jmh.inmemory;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.MutationType;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A {@link Transaction} that reads and writes an {@link InMemoryKeyValueStore}.
+ *
+ * <p>
+ * Writes are buffered in the transaction, where they are visible to its own reads, and are applied to the store
+ * only when it commits. Closing or cancelling the transaction without committing just discards them. Atomic
+ * mutations are buffered as operations and applied to the value in the store at commit, so concurrent
+ * transactions that add to the same key do not lose each other's updates. Versionstamped mutations are likewise
+ * applied at commit, when the new version is known.
+ * </p>
+ *
+ * <p>
+ * Reads that are not snapshot reads, and explicitly added read conflict ranges, are checked at commit against
+ * what other transactions have committed since this one's read version; see {@link InMemoryKeyValueStore} for
+ * how closely this follows FoundationDB.
+ * </p>
+ */
+public class InMemoryTransaction extends InMemoryReadTransaction implements Transaction {
+    private static final int NOT_COMMITTED = 1020;
+    private static final int TRANSACTION_CANCELLED = 1025;
+    private static final int TRANSACTION_READ_ONLY = 2021;
+
+    @Nonnull
+    private final NavigableMap<byte[], PendingWrite> writes;
+    @Nonnull
+    private final NavigableMap<byte[], byte[]> clearedRanges;
+    @Nonnull
+    private final NavigableMap<byte[], byte[]> readConflicts;
+    @Nonnull
+    private final NavigableMap<byte[], byte[]> writeConflicts;
+    @Nonnull
+    private final List<Mutation> versionstampMutations;
+    @Nonnull
+    private final List<InMemoryKeyValueStore.Watch> watches;
+    @Nonnull
+    private final CompletableFuture<byte[]> versionstamp;
+    @Nullable
+    private ReadTransaction snapshotView;
+    private long activeReadVersion;
+    private long approximateSize;
+    private long committedVersion;
+    private boolean finished;
+
+    InMemoryTransaction(@Nonnull InMemoryKeyValueStore store, @Nonnull Executor executor) {
+        super(store, executor, false);
+        this.writes = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.clearedRanges = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.readConflicts = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.writeConflicts = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.versionstampMutations = Collections.synchronizedList(new ArrayList<>());
+        this.watches = Collections.synchronizedList(new ArrayList<>());
+        this.versionstamp = new CompletableFuture<>();
+        this.activeReadVersion = -1L;
+        this.committedVersion = -1L;
+    }
+
+    @Override
+    public CompletableFuture<Long> getReadVersion() {
+        if (activeReadVersion < 0 && !finished) {
+            activeReadVersion = store.beginRead();
+            super.setReadVersion(activeReadVersion);
+        }
+        return super.getReadVersion();
+    }
+
+    @Override
+    public void setReadVersion(long version) {
+        if (!finished) {
+            if (activeReadVersion >= 0) {
+                store.endRead(activeReadVersion);
+            }
+            activeReadVersion = store.beginRead(version);
+        }
+        super.setReadVersion(version);
+    }
+
+    @Override
+    public ReadTransaction snapshot() {
+        if (snapshotView == null) {
+            snapshotView = new SnapshotView();
+        }
+        return snapshotView;
+    }
+
+    @Override
+    public void addReadConflictRange(byte[] keyBegin, byte[] keyEnd) {
+        addReadConflict(keyBegin, keyEnd);
+    }
+
+    @Override
+    public void addReadConflictKey(byte[] key) {
+        addReadConflict(key, InMemoryKeyValueStore.keyAfter(key));
+    }
+
+    @Override
+    public void addWriteConflictRange(byte[] keyBegin, byte[] keyEnd) {
+        addRange(writeConflicts, keyBegin, keyEnd);
+    }
+
+    @Override
+    public void addWriteConflictKey(byte[] key) {
+        addRange(writeConflicts, key, InMemoryKeyValueStore.keyAfter(key));
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        checkActive();
+        approximateSize += key.length + value.length;
+        writes.put(key, new PendingWrite(value));
+        addWriteConflictKey(key);
+    }
+
+    @Override
+    public void clear(byte[] key) {
+        checkActive();
+        approximateSize += key.length;
+        writes.put(key, new PendingWrite(null));
+        addWriteConflictKey(key);
+    }
+
+    @Override
+    public void clear(byte[] beginKey, byte[] endKey) {
+        checkActive();
+        approximateSize += beginKey.length + endKey.length;
+        if (ByteArrayUtil.compareUnsigned(beginKey, endKey) >= 0) {
+            return;
+        }
+        writes.subMap(beginKey, true, endKey, false).clear();
+        addRange(clearedRanges, beginKey, endKey);
+        addWriteConflictRange(beginKey, endKey);
+    }
+
+    @Override
+    public void clear(Range range) {
+        clear(range.begin, range.end);
+    }
+
+    @Override
+    @Deprecated
+    public void clearRangeStartsWith(byte[] prefix) {
+        clear(Range.startsWith(prefix));
+    }
+
+    @Override
+    public void mutate(MutationType optype, byte[] key, byte[] param) {
+        checkActive();
+        approximateSize += key.length + param.length;
+        final Mutation mutation = new Mutation(optype, key, param);
+        if (optype == MutationType.SET_VERSIONSTAMPED_KEY || optype == MutationType.SET_VERSIONSTAMPED_VALUE) {
+            versionstampMutations.add(mutation);
+            if (optype == MutationType.SET_VERSIONSTAMPED_VALUE) {
+                addWriteConflictKey(key);
+            }
+            return;
+        }
+        // Check the type now, so that an unsupported mutation fails here and not in the middle of commit.
+        applyAtomic(optype, null, param);
+        // A key in a range cleared by this transaction starts out empty, whatever is in the store.
+        writes.computeIfAbsent(key, k -> isCleared(k) ? new PendingWrite(null) : new PendingWrite()).add(mutation);
+        addWriteConflictKey(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> commit() {
+        if (finished) {
+            return failed(TRANSACTION_CANCELLED, "Operation aborted because the transaction was cancelled");
+        }
+        synchronized (store) {
+            if (activeReadVersion >= 0 && !readConflicts.isEmpty() && store.conflicts(activeReadVersion, readConflicts)) {
+                rollback();
+                return failed(NOT_COMMITTED, "Transaction not committed due to conflict with another transaction");
+            }
+            finished = true;
+            if (writes.isEmpty() && clearedRanges.isEmpty() && versionstampMutations.isEmpty()) {
+                versionstamp.completeExceptionally(new FDBException("Transaction is read-only and therefore does not have a commit version", TRANSACTION_READ_ONLY));
+            } else {
+                committedVersion = store.commitVersion();
+                for (Map.Entry<byte[], byte[]> range : clearedRanges.entrySet()) {
+                    store.clear(range.getKey(), range.getValue(), committedVersion);
+                }
+                for (Map.Entry<byte[], PendingWrite> write : writes.entrySet()) {
+                    store.write(write.getKey(), write.getValue().apply(store.latest(write.getKey())), committedVersion);
+                }
+                final byte[] stamp = ByteBuffer.allocate(10).order(ByteOrder.BIG_ENDIAN).putLong(committedVersion).putShort((short)0).array();
+                for (Mutation mutation : versionstampMutations) {
+                    if (mutation.type == MutationType.SET_VERSIONSTAMPED_KEY) {
+                        final byte[] key = fillVersionstamp(mutation.key, stamp);
+                        store.write(key, mutation.param, committedVersion);
+                        addWriteConflictKey(key);
+                    } else {
+                        store.write(mutation.key, fillVersionstamp(mutation.param, stamp), committedVersion);
+                    }
+                }
+                if (activeReadVersion >= 0) {
+                    store.endRead(activeReadVersion);
+                    activeReadVersion = -1L;
+                }
+                store.committed(committedVersion, writeConflicts);
+                versionstamp.complete(stamp);
+            }
+            for (InMemoryKeyValueStore.Watch watch : watches) {
+                store.addWatch(watch);
+            }
+        }
+        discard();
+        return AsyncUtil.DONE;
+    }
+
+    @Override
+    public Long getCommittedVersion() {
+        return committedVersion;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getVersionstamp() {
+        return versionstamp;
+    }
+
+    @Override
+    public CompletableFuture<Long> getApproximateSize() {
+        return CompletableFuture.completedFuture(approximateSize);
+    }
+
+    @Override
+    public CompletableFuture<Transaction> onError(Throwable e) {
+        rollback();
+        final CompletableFuture<Transaction> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        rollback();
+    }
+
+    /**
+     * Watch a key for changes. As with FoundationDB, the watch only becomes active when this transaction
+     * commits, and then completes once some later commit changes the value of the key from what it was
+     * in this transaction.
+     * @param key the key to watch
+     * @return a future that completes when the value of the key changes
+     */
+    @Override
+    public CompletableFuture<Void> watch(byte[] key) throws FDBException {
+        checkActive();
+        final InMemoryKeyValueStore.Watch watch = new InMemoryKeyValueStore.Watch(key);
+        watches.add(watch);
+        return watch.getFuture();
+    }
+
+    @Override
+    public Database getDatabase() {
+        return new InMemoryDatabase(store, getExecutor());
+    }
+
+    @Override
+    public <T> T run(Function<? super Transaction, T> retryable) {
+        return retryable.apply(this);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runAsync(Function<? super Transaction, ? extends CompletableFuture<T>> retryable) {
+        return AsyncUtil.applySafely(retryable, this);
+    }
+
+    @Override
+    public void close() {
+        rollback();
+    }
+
+    @Nullable
+    @Override
+    protected byte[] readValue(@Nonnull byte[] key) {
+        final byte[] stored = isCleared(key) ? null : super.readValue(key);
+        final PendingWrite write = writes.get(key);
+        return write == null ? stored : write.apply(stored);
+    }
+
+    @Nonnull
+    @Override
+    protected Iterator<Map.Entry<byte[], byte[]>> entries(@Nonnull byte[] from, boolean inclusive, boolean descending) {
+        if (writes.isEmpty() && clearedRanges.isEmpty()) {
+            return super.entries(from, inclusive, descending);
+        }
+        return new MergedIterator(from, inclusive, descending);
+    }
+
+    @Override
+    protected void addReadConflict(@Nonnull byte[] begin, @Nonnull byte[] end) {
+        getReadVersion();
+        addRange(readConflicts, begin, end);
+    }
+
+    private void checkActive() {
+        if (finished) {
+            throw new FDBException("Operation aborted because the transaction was cancelled", TRANSACTION_CANCELLED);
+        }
+    }
+
+    /**
+     * Add to one of this transaction's range maps. Like a FoundationDB transaction, this one can be used from
+     * several threads at once, and merging ranges takes more than one step.
+     */
+    private static void addRange(@Nonnull NavigableMap<byte[], byte[]> ranges, @Nonnull byte[] begin, @Nonnull byte[] end) {
+        synchronized (ranges) {
+            InMemoryKeyValueStore.addRange(ranges, begin, end);
+        }
+    }
+
+    private boolean isCleared(@Nonnull byte[] key) {
+        return InMemoryKeyValueStore.contains(clearedRanges, key);
+    }
+
+    private void discard() {
+        if (activeReadVersion >= 0) {
+            store.endRead(activeReadVersion);
+            activeReadVersion = -1L;
+        }
+        writes.clear();
+        clearedRanges.clear();
+        readConflicts.clear();
+        versionstampMutations.clear();
+        watches.clear();
+    }
+
+    private void rollback() {
+        if (!finished) {
+            finished = true;
+            for (InMemoryKeyValueStore.Watch watch : watches) {
+                watch.getFuture().completeExceptionally(new FDBException("Operation aborted because the transaction was cancelled", TRANSACTION_CANCELLED));
+            }
+            discard();
+            versionstamp.completeExceptionally(new FDBException("Operation aborted because the transaction was cancelled", TRANSACTION_CANCELLED));
+        }
+    }
+
+    @Nonnull
+    private static <T> CompletableFuture<T> failed(int code, @Nonnull String message) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new FDBException(message, code));
+        return result;
+    }
+
+    /**
+     * Replace the ten bytes at the little-endian offset given by the last four bytes of {@code param} with
+     * the versionstamp, dropping the offset itself.
+     */
+    @Nonnull
+    private static byte[] fillVersionstamp(@Nonnull byte[] param, @Nonnull byte[] stamp) {
+        final int length = param.length - Integer.BYTES;
+        final int offset = ByteBuffer.wrap(param, length, Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        final byte[] result = Arrays.copyOf(param, length);
+        System.arraycopy(stamp, 0, result, offset, stamp.length);
+        return result;
+    }
+
+    @Nullable
+    @SuppressWarnings("squid:S3776") // one case per mutation type
+    private static byte[] applyAtomic(@Nonnull MutationType optype, @Nullable byte[] existing, @Nonnull byte[] param) {
+        switch (optype) {
+            case ADD:
+                return add(existing, param);
+            case BIT_AND:
+            case AND:
+                return existing == null ? param : bitwise(existing, param, (a, b) -> a & b);
+            case BIT_OR:
+            case OR:
+                return bitwise(existing, param, (a, b) -> a | b);
+            case BIT_XOR:
+            case XOR:
+                return bitwise(existing, param, (a, b) -> a ^ b);
+            case MAX:
+                return (existing == null || compareLittleEndian(existing, param) < 0) ? param : padded(existing, param.length);
+            case MIN:
+                return (existing == null || compareLittleEndian(existing, param) > 0) ? param : padded(existing, param.length);
+            case BYTE_MAX:
+                return (existing == null || ByteArrayUtil.compareUnsigned(existing, param) < 0) ? param : existing;
+            case BYTE_MIN:
+                return (existing == null || ByteArrayUtil.compareUnsigned(existing, param) > 0) ? param : existing;
+            case APPEND_IF_FITS:
+                return existing == null ? param : ByteArrayUtil.join(existing, param);
+            case COMPARE_AND_CLEAR:
+                return (existing != null && Arrays.equals(existing, param)) ? null : existing;
+            default:
+                throw new UnsupportedOperationException("unsupported mutation type " + optype);
+        }
+    }
+
+    @Nonnull
+    private static byte[] padded(@Nonnull byte[] value, int length) {
+        return Arrays.copyOf(value, length);
+    }
+
+    @Nonnull
+    private static byte[] add(@Nullable byte[] existing, @Nonnull byte[] param) {
+        final byte[] result = new byte[param.length];
+        int carry = 0;
+        for (int i = 0; i < param.length; i++) {
+            final int a = (existing != null && i < existing.length) ? (existing[i] & 0xff) : 0;
+            final int sum = a + (param[i] & 0xff) + carry;
+            result[i] = (byte)sum;
+            carry = sum >>> 8;
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ByteOperator {
+        int apply(int a, int b);
+    }
+
+    @Nonnull
+    private static byte[] bitwise(@Nullable byte[] existing, @Nonnull byte[] param, @Nonnull ByteOperator operator) {
+        final byte[] result = new byte[param.length];
+        for (int i = 0; i < param.length; i++) {
+            final int a = (existing != null && i < existing.length) ? (existing[i] & 0xff) : 0;
+            result[i] = (byte)operator.apply(a, param[i] & 0xff);
+        }
+        return result;
+    }
+
+    private static int compareLittleEndian(@Nonnull byte[] existing, @Nonnull byte[] param) {
+        for (int i = param.length - 1; i >= 0; i--) {
+            final int a = i < existing.length ? (existing[i] & 0xff) : 0;
+            final int b = param[i] & 0xff;
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+        }
+        return 0;
+    }
+
+    private static class Mutation {
+        @Nonnull
+        private final MutationType type;
+        @Nonnull
+        private final byte[] key;
+        @Nonnull
+        private final byte[] param;
+
+        Mutation(@Nonnull MutationType type, @Nonnull byte[] key, @Nonnull byte[] param) {
+            this.type = type;
+            this.key = key;
+            this.param = param;
+        }
+    }
+
+    /**
+     * A buffered write to one key: either a new value (or {@code null} for a clear) that replaces whatever the
+     * store has, or atomic mutations to apply to the value in the store, or both.
+     */
+    private static class PendingWrite {
+        private final boolean replacesStored;
+        @Nullable
+        private final byte[] value;
+        @Nullable
+        private List<Mutation> mutations;
+
+        PendingWrite() {
+            this.replacesStored = false;
+            this.value = null;
+        }
+
+        PendingWrite(@Nullable byte[] value) {
+            this.replacesStored = true;
+            this.value = value;
+        }
+
+        synchronized void add(@Nonnull Mutation mutation) {
+            if (mutations == null) {
+                mutations = new ArrayList<>();
+            }
+            mutations.add(mutation);
+        }
+
+        @Nullable
+        synchronized byte[] apply(@Nullable byte[] stored) {
+            byte[] result = replacesStored ? value : stored;
+            if (mutations != null) {
+                for (Mutation mutation : mutations) {
+                    result = applyAtomic(mutation.type, result, mutation.param);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Iterates over the store with this transaction's buffered writes and cleared ranges laid over it.
+     */
+    private class MergedIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+        @Nonnull
+        private final Iterator<Map.Entry<byte[], byte[]>> stored;
+        @Nonnull
+        private final Iterator<Map.Entry<byte[], PendingWrite>> pending;
+        private final boolean descending;
+        @Nullable
+        private Map.Entry<byte[], byte[]> nextStored;
+        @Nullable
+        private Map.Entry<byte[], PendingWrite> nextPending;
+        @Nullable
+        private Map.Entry<byte[], byte[]> next;
+
+        MergedIterator(@Nonnull byte[] from, boolean inclusive, boolean descending) {
+            this.stored = InMemoryTransaction.super.entries(from, inclusive, descending);
+            this.pending = (descending ? writes.headMap(from, inclusive).descendingMap() : writes.tailMap(from, inclusive)).entrySet().iterator();
+            this.descending = descending;
+            this.nextStored = stored.hasNext() ? stored.next() : null;
+            this.nextPending = pending.hasNext() ? pending.next() : null;
+            this.next = computeNext();
+        }
+
+        @Nullable
+        private Map.Entry<byte[], byte[]> computeNext() {
+            while (nextStored != null || nextPending != null) {
+                final int order;
+                if (nextPending == null) {
+                    order = -1;
+                } else if (nextStored == null) {
+                    order = 1;
+                } else {
+                    final int comparison = ByteArrayUtil.compareUnsigned(nextStored.getKey(), nextPending.getKey());
+                    order = descending ? -comparison : comparison;
+                }
+                if (order < 0) {
+                    final Map.Entry<byte[], byte[]> entry = nextStored;
+                    nextStored = stored.hasNext() ? stored.next() : null;
+                    if (!isCleared(entry.getKey())) {
+                        return entry;
+                    }
+                } else {
+                    final Map.Entry<byte[], PendingWrite> entry = nextPending;
+                    nextPending = pending.hasNext() ? pending.next() : null;
+                    byte[] storedValue = null;
+                    if (order == 0) {
+                        if (!isCleared(entry.getKey())) {
+                            storedValue = nextStored.getValue();
+                        }
+                        nextStored = stored.hasNext() ? stored.next() : null;
+                    }
+                    final byte[] value = entry.getValue().apply(storedValue);
+                    if (value != null) {
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<byte[], byte[]> result = next;
+            next = computeNext();
+            return result;
+        }
+    }
+
+    /**
+     * The snapshot view of this transaction, which, as in FoundationDB, sees the transaction's own writes.
+     */
+    private class SnapshotView extends InMemoryReadTransaction {
+        SnapshotView() {
+            super(InMemoryTransaction.this.store, InMemoryTransaction.this.getExecutor(), true);
+        }
+
+        @Override
+        public CompletableFuture<Long> getReadVersion() {
+            return InMemoryTransaction.this.getReadVersion();
+        }
+
+        @Override
+        public void setReadVersion(long version) {
+            InMemoryTransaction.this.setReadVersion(version);
+        }
+
+        @Nullable
+        @Override
+        protected byte[] readValue(@Nonnull byte[] key) {
+            return InMemoryTransaction.this.readValue(key);
+        }
+
+        @Nonnull
+        @Override
+        protected Iterator<Map.Entry<byte[], byte[]>> entries(@Nonnull byte[] from, boolean inclusive, boolean descending) {
+            return InMemoryTransaction.this.entries(from, inclusive, descending);
+        }
+    }
+}